@@ -32,6 +32,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @Component(DataManager.NAME)
 public class DataManagerClientImpl implements DataManager {
@@ -146,6 +147,36 @@ public class DataManagerClientImpl implements DataManager {
         return dataService.loadValues(context);
     }
 
+    @Override
+    public ValueTable loadValueTable(ValueLoadContext context) {
+        return dataService.loadValueTable(context);
+    }
+
+    /**
+     * Sends the batch to the middleware in a single call, where operations targeting different data stores are
+     * executed concurrently. If the call fails, all operations of the batch fail.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public void executeBatch(DataLoadBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Object> results;
+        try {
+            results = dataService.executeBatch(batch);
+        } catch (RuntimeException e) {
+            for (DataLoadBatch.Item<?> item : batch.getItems()) {
+                item.getResult().completeExceptionally(e);
+            }
+            return;
+        }
+        List<DataLoadBatch.Item<?>> items = batch.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            ((CompletableFuture<Object>) items.get(i).getResult()).complete(results.get(i));
+        }
+    }
+
     @Override
     public DataManager secure() {
         return this;
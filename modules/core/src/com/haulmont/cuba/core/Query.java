@@ -26,6 +26,7 @@ import javax.persistence.LockModeType;
 import javax.persistence.TemporalType;
 import java.util.List;
 import java.util.Date;
+import java.util.stream.Stream;
 
 /**
  * Interface used to control query execution.
@@ -82,6 +83,20 @@ public interface Query {
     @CheckReturnValue
     Object getFirstResult();
 
+    /**
+     * Execute a SELECT query and return the query results as a stream reading them from a database cursor.
+     * <p>
+     * The results are not cached by the query cache. Rows are read from the cursor in chunks of {@code fetchSize},
+     * and the views are fetched for a whole chunk before its results are passed to the stream. The stream must be
+     * consumed inside the current transaction and closed to release the cursor.
+     *
+     * @param fetchSize number of rows fetched from the database at once
+     * @return a stream of the results
+     * @throws IllegalStateException if called for a Java Persistence query language UPDATE or DELETE statement
+     */
+    @CheckReturnValue
+    Stream getResultStream(int fetchSize);
+
     /**
      * Execute an update or delete statement.
      *
@@ -30,11 +30,16 @@ import com.haulmont.cuba.core.sys.SecurityTokenManager;
 import com.haulmont.cuba.core.sys.persistence.CubaEntityFetchGroup;
 import org.eclipse.persistence.queries.FetchGroup;
 import org.eclipse.persistence.queries.FetchGroupTracker;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
 import javax.inject.Inject;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.haulmont.cuba.core.entity.BaseEntityInternalAccess.*;
 import static java.lang.String.format;
@@ -68,6 +73,10 @@ public class AttributeSecuritySupport {
     @Inject
     protected EntityStates entityStates;
 
+    protected volatile List<HandlerEntry> allHandlers;
+
+    protected final Map<MetaClass, List<HandlerEntry>> handlersByMetaClass = new ConcurrentHashMap<>();
+
     /**
      * Removes restricted attributes from a view.
      *
@@ -219,60 +228,170 @@ public class AttributeSecuritySupport {
         }
     }
 
+    /**
+     * Sets up attribute access of loaded entities and of their references loaded by the view.
+     * <p>The view is planned once for the whole collection: only the view properties leading to entities of types
+     * supported by {@link SetupAttributeAccessHandler}s are traversed, and each handler is invoked for all entities
+     * of its type together.
+     *
+     * @param entities list of just loaded entities
+     * @param view     view used to load the entities
+     */
     public void onLoad(Collection<? extends Entity> entities, View view) {
         Preconditions.checkNotNullArgument(entities, "entities list is null");
-        if (!isAttributeAccessEnabled()) {
+        if (!isAttributeAccessEnabled() || entities.isEmpty()) {
             return;
         }
+        Preconditions.checkNotNullArgument(view, "view is null");
 
+        AttributeAccessPlan plan = createAttributeAccessPlan(view, new IdentityHashMap<>());
+        if (plan.isEmpty()) {
+            return;
+        }
+        Map<MetaClass, List<Entity>> batches = new LinkedHashMap<>();
+        // entities are compared by identity, as different instances with the same id need their own setup
+        Set<Entity> collected = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<Entity, Set<AttributeAccessPlan>> visited = new IdentityHashMap<>();
         for (Entity entity : entities) {
-            onLoad(entity, view);
+            if (entity instanceof BaseGenericIdEntity) {
+                collectEntities(entity, plan, batches, collected, visited);
+            }
         }
+        setupAttributeAccess(batches);
     }
 
     public void onLoad(Entity entity, View view) {
         if (entity instanceof BaseGenericIdEntity) {
-            if (!isAttributeAccessEnabled()) {
-                return;
-            }
-            BaseGenericIdEntity genericIdEntity = (BaseGenericIdEntity) entity;
-            setupAttributeAccess(genericIdEntity);
-            metadataTools.traverseLoadedAttributesByView(view, genericIdEntity, new AttributeAccessVisitor(Sets.newHashSet(entity)));
+            onLoad(Collections.singletonList(entity), view);
         }
     }
 
     @SuppressWarnings("unchecked")
     public <T extends Entity> void setupAttributeAccess(T entity) {
         if (entity instanceof BaseGenericIdEntity || entity instanceof EmbeddableEntity) {
+            List<HandlerEntry> handlers = getHandlers(entity.getMetaClass());
+            if (handlers.isEmpty()) {
+                return;
+            }
             SetupAttributeAccessEvent<T> event = new SetupAttributeAccessEvent<>(entity);
-            boolean handled = false;
-            Map<String, SetupAttributeAccessHandler> handlers = AppBeans.getAll(SetupAttributeAccessHandler.class);
-            if (handlers != null) {
-                for (SetupAttributeAccessHandler handler : handlers.values()) {
-                    MetaClass metaClass = metadata.getExtendedEntities().getOriginalOrThisMetaClass(entity.getMetaClass());
-                    if (handler.supports(metaClass.getJavaClass())) {
-                        handled = true;
-                        handler.setupAccess(event);
-                    }
+            for (HandlerEntry entry : handlers) {
+                long start = System.nanoTime();
+                entry.handler.setupAccess(event);
+                entry.record(1, System.nanoTime() - start);
+            }
+            applyAttributeAccess(event);
+            securityTokenManager.writeSecurityToken(entity);
+        }
+    }
+
+    /**
+     * Invokes handlers for batches of entities of the same type and writes security tokens of all handled entities.
+     *
+     * @param batches entities grouped by original meta-classes having handlers
+     */
+    @SuppressWarnings("unchecked")
+    protected void setupAttributeAccess(Map<MetaClass, List<Entity>> batches) {
+        if (batches.isEmpty()) {
+            return;
+        }
+        List<Entity> handled = new ArrayList<>();
+        for (Map.Entry<MetaClass, List<Entity>> batch : batches.entrySet()) {
+            List<Entity> entities = batch.getValue();
+            List<SetupAttributeAccessEvent> events = new ArrayList<>(entities.size());
+            for (Entity entity : entities) {
+                events.add(new SetupAttributeAccessEvent<>(entity));
+            }
+            for (HandlerEntry entry : getHandlers(batch.getKey())) {
+                long start = System.nanoTime();
+                for (SetupAttributeAccessEvent event : events) {
+                    entry.handler.setupAccess(event);
                 }
+                entry.record(events.size(), System.nanoTime() - start);
+            }
+            for (SetupAttributeAccessEvent event : events) {
+                applyAttributeAccess(event);
+            }
+            handled.addAll(entities);
+        }
+        securityTokenManager.writeSecurityTokens(handled);
+    }
+
+    protected void applyAttributeAccess(SetupAttributeAccessEvent<?> event) {
+        Entity entity = event.getEntity();
+        if (event.getReadonlyAttributes() != null) {
+            Set<String> attributes = event.getReadonlyAttributes();
+            SecurityState state = getOrCreateSecurityState(entity);
+            addReadonlyAttributes(state, attributes.toArray(new String[attributes.size()]));
+        }
+        if (event.getRequiredAttributes() != null) {
+            Set<String> attributes = event.getRequiredAttributes();
+            SecurityState state = getOrCreateSecurityState(entity);
+            addRequiredAttributes(state, attributes.toArray(new String[attributes.size()]));
+        }
+        if (event.getHiddenAttributes() != null) {
+            Set<String> attributes = event.getHiddenAttributes();
+            SecurityState state = getOrCreateSecurityState(entity);
+            addHiddenAttributes(state, attributes.toArray(new String[attributes.size()]));
+        }
+    }
+
+    /**
+     * Decides which properties of the view lead to entities requiring attribute access setup.
+     * <p>A property leading back to a view which is still being planned is always kept, because whether that
+     * view leads to handled entities is not known until its planning is complete.
+     *
+     * @param view  view to plan
+     * @param plans plans of already visited views
+     */
+    protected AttributeAccessPlan createAttributeAccessPlan(View view, Map<View, AttributeAccessPlan> plans) {
+        AttributeAccessPlan plan = plans.get(view);
+        if (plan != null) {
+            return plan;
+        }
+        MetaClass metaClass = metadata.getClassNN(view.getEntityClass());
+        plan = new AttributeAccessPlan(isAttributeAccessEnabledForHierarchy(metaClass));
+        plans.put(view, plan);
+        for (ViewProperty property : view.getProperties()) {
+            View propertyView = property.getView();
+            MetaProperty metaProperty = metaClass.getProperty(property.getName());
+            if (propertyView == null || metaProperty == null || !metaProperty.getRange().isClass()) {
+                continue;
             }
-            if (event.getReadonlyAttributes() != null) {
-                Set<String> attributes = event.getReadonlyAttributes();
-                SecurityState state = getOrCreateSecurityState(entity);
-                addReadonlyAttributes(state, attributes.toArray(new String[attributes.size()]));
+            AttributeAccessPlan propertyPlan = createAttributeAccessPlan(propertyView, plans);
+            if (!propertyPlan.complete || !propertyPlan.isEmpty()) {
+                plan.properties.put(property.getName(), propertyPlan);
             }
-            if (event.getRequiredAttributes() != null) {
-                Set<String> attributes = event.getRequiredAttributes();
-                SecurityState state = getOrCreateSecurityState(entity);
-                addRequiredAttributes(state, attributes.toArray(new String[attributes.size()]));
+        }
+        plan.complete = true;
+        return plan;
+    }
+
+    protected void collectEntities(Entity entity, AttributeAccessPlan plan, Map<MetaClass, List<Entity>> batches,
+                                   Set<Entity> collected, Map<Entity, Set<AttributeAccessPlan>> visited) {
+        if (!visited.computeIfAbsent(entity, e -> Collections.newSetFromMap(new IdentityHashMap<>())).add(plan)) {
+            return;
+        }
+        if (plan.handled
+                && (entity instanceof BaseGenericIdEntity || entity instanceof EmbeddableEntity)
+                && collected.add(entity)) {
+            MetaClass metaClass = metadata.getExtendedEntities().getOriginalOrThisMetaClass(entity.getMetaClass());
+            if (!getHandlers(metaClass).isEmpty()) {
+                batches.computeIfAbsent(metaClass, k -> new ArrayList<>()).add(entity);
             }
-            if (event.getHiddenAttributes() != null) {
-                Set<String> attributes = event.getHiddenAttributes();
-                SecurityState state = getOrCreateSecurityState(entity);
-                addHiddenAttributes(state, attributes.toArray(new String[attributes.size()]));
+        }
+        for (Map.Entry<String, AttributeAccessPlan> property : plan.properties.entrySet()) {
+            if (!entityStates.isLoaded(entity, property.getKey())) {
+                continue;
             }
-            if (handled) {
-                securityTokenManager.writeSecurityToken(entity);
+            Object value = entity.getValue(property.getKey());
+            if (value instanceof Collection) {
+                for (Object item : (Collection) value) {
+                    if (item instanceof Entity) {
+                        collectEntities((Entity) item, property.getValue(), batches, collected, visited);
+                    }
+                }
+            } else if (value instanceof Entity) {
+                collectEntities((Entity) value, property.getValue(), batches, collected, visited);
             }
         }
     }
@@ -284,24 +403,101 @@ public class AttributeSecuritySupport {
      * @param metaClass - entity metaClass
      */
     public boolean isAttributeAccessEnabled(MetaClass metaClass) {
-        Map<String, SetupAttributeAccessHandler> handlers = AppBeans.getAll(SetupAttributeAccessHandler.class);
-        if (handlers != null) {
-            metaClass = metadata.getExtendedEntities().getOriginalOrThisMetaClass(metaClass);
-            for (SetupAttributeAccessHandler handler : handlers.values()) {
-                if (handler.supports(metaClass.getJavaClass())) {
-                    return true;
-                }
+        return !getHandlers(metaClass).isEmpty();
+    }
+
+    /**
+     * Checks if attribute access enabled (if SetupAttributeAccessHandlers exist)
+     */
+    public boolean isAttributeAccessEnabled() {
+        return !getAllHandlers().isEmpty();
+    }
+
+    protected boolean isAttributeAccessEnabledForHierarchy(MetaClass metaClass) {
+        if (isAttributeAccessEnabled(metaClass)) {
+            return true;
+        }
+        for (MetaClass descendant : metaClass.getDescendants()) {
+            if (isAttributeAccessEnabled(descendant)) {
+                return true;
             }
         }
         return false;
     }
 
     /**
-     * Checks if attribute access enabled (if SetupAttributeAccessHandlers exist)
+     * @return handlers supporting the original meta-class of the given one
      */
-    public boolean isAttributeAccessEnabled() {
-        Map<String, SetupAttributeAccessHandler> handlers = AppBeans.getAll(SetupAttributeAccessHandler.class);
-        return handlers != null && !handlers.isEmpty();
+    protected List<HandlerEntry> getHandlers(MetaClass metaClass) {
+        List<HandlerEntry> allHandlers = getAllHandlers();
+        if (allHandlers.isEmpty()) {
+            return allHandlers;
+        }
+        MetaClass originalMetaClass = metadata.getExtendedEntities().getOriginalOrThisMetaClass(metaClass);
+        return handlersByMetaClass.computeIfAbsent(originalMetaClass, mc -> {
+            List<HandlerEntry> result = new ArrayList<>(1);
+            for (HandlerEntry entry : allHandlers) {
+                if (entry.handler.supports(mc.getJavaClass())) {
+                    result.add(entry);
+                }
+            }
+            return result.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(result);
+        });
+    }
+
+    /**
+     * Forgets the handler beans, so they are looked up again after the application context is refreshed.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    protected void resetHandlers() {
+        allHandlers = null;
+        handlersByMetaClass.clear();
+    }
+
+    protected List<HandlerEntry> getAllHandlers() {
+        List<HandlerEntry> result = allHandlers;
+        if (result == null) {
+            Map<String, SetupAttributeAccessHandler> beans = AppBeans.getAll(SetupAttributeAccessHandler.class);
+            result = new ArrayList<>();
+            if (beans != null) {
+                for (Map.Entry<String, SetupAttributeAccessHandler> bean : beans.entrySet()) {
+                    result.add(new HandlerEntry(bean.getKey(), bean.getValue()));
+                }
+            }
+            result = Collections.unmodifiableList(result);
+            allHandlers = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return invocation statistics of attribute access handlers, one line per handler
+     */
+    public String printHandlerStatistics() {
+        StringBuilder sb = new StringBuilder();
+        for (HandlerEntry entry : getAllHandlers()) {
+            long entities = entry.entities.get();
+            long time = entry.time.get();
+            sb.append(entry.name)
+                    .append(": invocations=").append(entry.invocations.get())
+                    .append(", entities=").append(entities)
+                    .append(", totalTime=").append(TimeUnit.NANOSECONDS.toMillis(time)).append("ms")
+                    .append(", avgTimePerEntity=").append(entities > 0 ? TimeUnit.NANOSECONDS.toMicros(time / entities) : 0)
+                    .append("us\n");
+        }
+        return sb.toString();
+    }
+
+    public void resetHandlerStatistics() {
+        for (HandlerEntry entry : getAllHandlers()) {
+            entry.invocations.set(0);
+            entry.entities.set(0);
+            entry.time.set(0);
+        }
+    }
+
+    public int getHandlerCount() {
+        return getAllHandlers().size();
     }
 
     protected void checkRequiredAttributes(Entity entity) {
@@ -456,4 +652,45 @@ public class AttributeSecuritySupport {
             }
         }
     }
+
+    /**
+     * Properties of a view leading to entities which require attribute access setup.
+     */
+    protected static class AttributeAccessPlan {
+        // true if the view entity type or any of its descendants has handlers
+        protected final boolean handled;
+        protected final Map<String, AttributeAccessPlan> properties = new LinkedHashMap<>();
+        // false while the properties of a view are being planned, e.g. when planning a cyclic view
+        protected boolean complete;
+
+        protected AttributeAccessPlan(boolean handled) {
+            this.handled = handled;
+        }
+
+        protected boolean isEmpty() {
+            return !handled && properties.isEmpty();
+        }
+    }
+
+    /**
+     * Attribute access handler bean with its invocation statistics.
+     */
+    protected static class HandlerEntry {
+        protected final String name;
+        protected final SetupAttributeAccessHandler handler;
+        protected final AtomicLong invocations = new AtomicLong();
+        protected final AtomicLong entities = new AtomicLong();
+        protected final AtomicLong time = new AtomicLong();
+
+        protected HandlerEntry(String name, SetupAttributeAccessHandler handler) {
+            this.name = name;
+            this.handler = handler;
+        }
+
+        protected void record(int entityCount, long nanos) {
+            invocations.incrementAndGet();
+            entities.addAndGet(entityCount);
+            time.addAndGet(nanos);
+        }
+    }
 }
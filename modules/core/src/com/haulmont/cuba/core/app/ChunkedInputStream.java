@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Input stream reading data written by {@link ChunkedOutputStream}. The stream ends at the terminating chunk,
+ * the underlying stream is positioned right after it when the data is read to the end or {@link #skipToEnd()}
+ * is invoked. Closing this stream skips the rest of the data but doesn't close the underlying stream.
+ */
+public class ChunkedInputStream extends InputStream {
+
+    protected final DataInputStream in;
+    protected final LongConsumer progressListener;
+    protected int remaining;
+    protected long count;
+    protected boolean finished;
+
+    /**
+     * @param in               underlying stream
+     * @param progressListener listener notified with the total number of read bytes after each chunk
+     */
+    public ChunkedInputStream(InputStream in, @Nullable LongConsumer progressListener) {
+        this.in = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * @return true if the stream contains no data
+     */
+    public boolean isEmpty() throws IOException {
+        return !nextChunk() && count == 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        remaining--;
+        count++;
+        return in.readUnsignedByte();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int n = in.read(b, off, Math.min(len, remaining));
+        if (n < 0) {
+            throw new IOException("Unexpected end of chunked stream");
+        }
+        remaining -= n;
+        count += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return finished ? 0 : Math.min(remaining, in.available());
+    }
+
+    /**
+     * Skips the data which was not read.
+     */
+    public void skipToEnd() throws IOException {
+        while (nextChunk()) {
+            int n = in.skipBytes(remaining);
+            if (n == 0) {
+                if (in.read() < 0) {
+                    throw new IOException("Unexpected end of chunked stream");
+                }
+                n = 1;
+            }
+            remaining -= n;
+            count += n;
+        }
+    }
+
+    /**
+     * @return number of bytes read from this stream
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        skipToEnd();
+    }
+
+    /**
+     * Reads the next chunk header if the current chunk is read completely.
+     *
+     * @return false if the end of data is reached
+     */
+    protected boolean nextChunk() throws IOException {
+        if (remaining > 0) {
+            return true;
+        }
+        if (finished) {
+            return false;
+        }
+        if (count > 0 && progressListener != null) {
+            progressListener.accept(count);
+        }
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid chunk length: " + length);
+        }
+        if (length == 0) {
+            finished = true;
+            return false;
+        }
+        remaining = length;
+        return true;
+    }
+}
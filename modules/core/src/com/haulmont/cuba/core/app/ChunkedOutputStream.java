@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import javax.annotation.Nullable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Output stream writing data to the underlying stream in chunks of limited size. Each chunk is prefixed by its length,
+ * the data is terminated by a chunk of zero length written on {@link #finish()}. Closing this stream finishes the data
+ * but doesn't close the underlying stream.
+ *
+ * @see ChunkedInputStream
+ */
+public class ChunkedOutputStream extends OutputStream {
+
+    protected final DataOutputStream out;
+    protected final byte[] buffer;
+    protected final LongConsumer progressListener;
+    protected int position;
+    protected long count;
+    protected boolean finished;
+
+    /**
+     * @param out              underlying stream
+     * @param chunkSize        maximum size of a chunk in bytes
+     * @param progressListener listener notified with the total number of written bytes after each chunk
+     */
+    public ChunkedOutputStream(OutputStream out, int chunkSize, @Nullable LongConsumer progressListener) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.out = out instanceof DataOutputStream ? (DataOutputStream) out : new DataOutputStream(out);
+        this.buffer = new byte[chunkSize];
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkNotFinished();
+        if (position == buffer.length) {
+            writeChunk();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkNotFinished();
+        while (len > 0) {
+            if (position == buffer.length) {
+                writeChunk();
+            }
+            int n = Math.min(len, buffer.length - position);
+            System.arraycopy(b, off, buffer, position, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes buffered data and the terminating chunk.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        writeChunk();
+        out.writeInt(0);
+        out.flush();
+        finished = true;
+    }
+
+    /**
+     * @return number of bytes written to this stream
+     */
+    public long getCount() {
+        return count + position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    protected void writeChunk() throws IOException {
+        if (position == 0) {
+            return;
+        }
+        out.writeInt(position);
+        out.write(buffer, 0, position);
+        count += position;
+        position = 0;
+        if (progressListener != null) {
+            progressListener.accept(count);
+        }
+    }
+
+    protected void checkNotFinished() throws IOException {
+        if (finished) {
+            throw new IOException("Stream is finished");
+        }
+    }
+}
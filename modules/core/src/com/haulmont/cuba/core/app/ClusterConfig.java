@@ -53,17 +53,65 @@ public interface ClusterConfig extends Config {
     @DefaultBoolean(true)
     boolean getAbortOnStateReceivingFailure();
 
+    /**
+     * @return size of chunks the state of each cluster listener is split into when sent to a joining node, in bytes
+     */
+    @Property("cuba.cluster.stateChunkSize")
+    @DefaultInt(65536)
+    int getStateChunkSize();
+
     /**
      * @return Maximum size of thread pool which is used to send messages to the cluster members
+     * @deprecated asynchronous messages are sent in batches by a single thread, the property is not used
      */
+    @Deprecated
     @Property("cuba.cluster.messageSendingThreadPoolSize")
     @DefaultInt(100)
     int getClusterMessageSendingThreadPoolSize();
 
     /**
-     * @return Maximum queue capacity which is used  by executor to store messages to the cluster members. By default is unbounded
+     * @return Maximum queue capacity which is used to store messages to the cluster members. By default is unbounded
      */
     @Property("cuba.cluster.messageSendingQueueCapacity")
     @DefaultInt(Integer.MAX_VALUE)
     int getClusterMessageSendingQueueCapacity();
+
+    /**
+     * @return how long a thread waits for free space in the full sending queue, in milliseconds. If the queue is
+     * still full after the timeout, the message is sent in the calling thread.
+     */
+    @Property("cuba.cluster.messageSendingTimeout")
+    @DefaultInt(1000)
+    int getClusterMessageSendingTimeout();
+
+    /**
+     * @return how long the first queued message waits for other messages to be sent in the same batch,
+     * in milliseconds
+     */
+    @Property("cuba.cluster.messageBatchDelay")
+    @DefaultInt(5)
+    int getClusterMessageBatchDelay();
+
+    /**
+     * @return maximum size of a batch of messages in bytes. A message bigger than this size is sent alone.
+     */
+    @Property("cuba.cluster.messageBatchMaxSize")
+    @DefaultInt(60000)
+    int getClusterMessageBatchMaxSize();
+
+    /**
+     * @return whether asynchronously sent messages are packed into batches. Nodes of previous versions cannot read
+     * batches, so enable it after all nodes of the cluster are upgraded.
+     */
+    @Property("cuba.cluster.messageBatchingEnabled")
+    @DefaultBoolean(false)
+    boolean getClusterMessageBatchingEnabled();
+
+    /**
+     * @return whether messages are sent in the compact form of registered {@link ClusterMessageCodec}s. Nodes of
+     * previous versions cannot read such messages, so enable it after all nodes of the cluster are upgraded.
+     */
+    @Property("cuba.cluster.messageCodecsEnabled")
+    @DefaultBoolean(false)
+    boolean getClusterMessageCodecsEnabled();
 }
@@ -16,6 +16,12 @@
  */
 package com.haulmont.cuba.core.app;
 
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * Interface to be implemented by middleware cluster listeners. A cluster listener receives messages from other nodes
  * in the cluster.
@@ -50,4 +56,56 @@ public interface ClusterListener<T> {
      * @param state byte array containing the state
      */
     void setState(byte[] state);
+
+    /**
+     * Write state of this cluster node to the stream sent to a joining node.
+     *
+     * <p>The default implementation writes the result of {@link #getState()}. Listeners having a large state should
+     * override this method together with {@link #readState(InputStream)} to write the state incrementally without
+     * building it in memory.</p>
+     *
+     * @param out stream to write the state to, it must not be closed by the listener
+     */
+    default void writeState(OutputStream out) throws IOException {
+        byte[] state = getState();
+        if (state != null) {
+            out.write(state);
+        }
+    }
+
+    /**
+     * Read state written by {@link #writeState(OutputStream)} on other active node.
+     *
+     * <p>The default implementation reads the whole stream and passes it to {@link #setState(byte[])}.
+     * The method is not invoked if the state is empty.</p>
+     *
+     * @param in stream to read the state from, it must not be closed by the listener
+     */
+    default void readState(InputStream in) throws IOException {
+        setState(IOUtils.toByteArray(in));
+    }
+
+    /**
+     * Invoked when nodes join or leave the cluster. Joined nodes have not received the messages sent before,
+     * so a listener which omits data already sent to the cluster should send it again.
+     */
+    default void viewChanged() {
+    }
+
+    /**
+     * Invoked when a message of the class this listener is subscribed to has been sent to all cluster nodes.
+     * Not invoked for messages sent by {@link ClusterManagerAPI#reply(java.io.Serializable)}.
+     *
+     * @param message message which has been sent
+     */
+    default void sent(T message) {
+    }
+
+    /**
+     * Invoked when a message of the class this listener is subscribed to could not be encoded or sent.
+     *
+     * @param message message which has not been sent
+     */
+    default void sendFailed(T message) {
+    }
 }
@@ -17,7 +17,6 @@
 package com.haulmont.cuba.core.app;
 
 import com.google.common.base.Strings;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.cuba.core.global.Events;
 import com.haulmont.cuba.core.global.GlobalConfig;
@@ -38,19 +37,37 @@ import org.springframework.context.event.EventListener;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 
-import javax.annotation.PostConstruct;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.management.MBeanServer;
 import java.io.*;
 import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
 
 /**
  * Standard implementation of middleware clustering based on JGroups.
+ * <p>
+ * Messages sent asynchronously are queued and sent by a single thread. The thread waits
+ * {@code cuba.cluster.messageBatchDelay} milliseconds after the first message is queued and then sends all queued
+ * messages. If {@code cuba.cluster.messageBatchingEnabled} is set, they are packed into batches of up to
+ * {@code cuba.cluster.messageBatchMaxSize} bytes, each batch is sent as a single JGroups message. A queued message
+ * is dropped when a newer one with the same coalescing key is queued, see
+ * {@link #registerCoalescingKey(Class, Function)}. When the queue is full, the calling thread waits for
+ * {@code cuba.cluster.messageSendingTimeout} milliseconds and then sends the message itself.
  */
 @Component(ClusterManagerAPI.NAME)
 public class ClusterManager implements ClusterManagerAPI {
@@ -63,8 +80,6 @@ public class ClusterManager implements ClusterManagerAPI {
 
     protected View currentView;
 
-    protected ThreadPoolExecutor executor;
-
     @Inject
     protected Resources resources;
 
@@ -75,29 +90,61 @@ public class ClusterManager implements ClusterManagerAPI {
 
     protected ThreadLocal<Boolean> forceSyncSending = new ThreadLocal<>();
 
+    // source of the message being received in the current thread
+    protected ThreadLocal<Address> receivingFrom = new ThreadLocal<>();
+
     protected Map<String, MessageStat> messagesStat = new ConcurrentHashMap<>();
 
+    protected Map<Class, ClusterMessageCodec> codecsByClass = new ConcurrentHashMap<>();
+
+    protected Map<Integer, ClusterMessageCodec> codecsById = new ConcurrentHashMap<>();
+
+    protected Map<Class, Function> coalescingKeyFunctions = new ConcurrentHashMap<>();
+
+    protected ReentrantLock queueLock = new ReentrantLock();
+    protected Condition queueNotEmpty = queueLock.newCondition();
+    protected Condition queueNotFull = queueLock.newCondition();
+    protected Deque<QueuedMessage> queue = new ArrayDeque<>();
+    protected Map<Object, QueuedMessage> queuedByCoalescingKey = new HashMap<>();
+    protected long firstQueuedTime;
+    protected boolean senderStopped = true;
+    protected Thread senderThread;
+    protected AtomicInteger activeThreads = new AtomicInteger();
+
+    protected LongAdder sentBatches = new LongAdder();
+    protected LongAdder batchedMessages = new LongAdder();
+    protected LongAdder coalescedMessages = new LongAdder();
+    protected LongAdder overflowedMessages = new LongAdder();
+
+    /**
+     * Header of the state written by previous versions as a single block of listener states.
+     */
     protected static final String STATE_MAGIC = "CUBA_STATE";
 
+    /**
+     * Header of the state streamed by listeners in chunks.
+     */
+    protected static final String STREAMING_STATE_MAGIC = "CUBA_STATE_STREAM";
+
+    protected static final long STATE_PROGRESS_LOG_BYTES = 10 * 1024 * 1024;
+
+    /**
+     * First bytes of a message encoded by a {@link ClusterMessageCodec}. Java serialization stream starts with
+     * 0xACED, so such messages are distinguishable from the ones sent by the standard serialization.
+     */
+    protected static final int CODEC_MAGIC = 0xC0DE;
+
+    protected static final int CODEC_HEADER_LENGTH = 4;
+
+    /**
+     * First bytes of a batch of messages.
+     */
+    protected static final int BATCH_MAGIC = 0xBA7C;
+
     public JChannel getChannel() {
         return channel;
     }
 
-    @PostConstruct
-    protected void init() {
-        int nThreads = clusterConfig.getClusterMessageSendingThreadPoolSize();
-        executor = new ThreadPoolExecutor(nThreads, nThreads,
-                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(clusterConfig.getClusterMessageSendingQueueCapacity()),
-                new ThreadFactoryBuilder().setNameFormat("ClusterManagerMessageSender-%d").build(),
-                new RejectedExecutionHandler() {
-                    @Override
-                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-                        SendMessageRunnable sendMessageRunnable = (SendMessageRunnable) r;
-                        log.info("Queue capacity is exceeded. Message: {}: {}", sendMessageRunnable.message.getClass(), sendMessageRunnable.message);
-                    }
-                });
-    }
-
     @EventListener(AppContextInitializedEvent.class)
     @Order(Events.LOWEST_PLATFORM_PRECEDENCE - 100)
     protected void applicationInitialized() {
@@ -108,7 +155,6 @@ public class ClusterManager implements ClusterManagerAPI {
 
     @EventListener(AppContextStoppedEvent.class)
     protected void applicationStopped() {
-        executor.shutdown();
         stop();
     }
 
@@ -122,7 +168,252 @@ public class ClusterManager implements ClusterManagerAPI {
             internalSend(message, true);
         } else {
             log.trace("Submitting message: {}: {} to send asynchronously", message.getClass(), message);
-            executor.execute(new SendMessageRunnable(message));
+            if (!enqueue(message)) {
+                log.warn("Queue capacity is exceeded, sending message in the current thread. Message: {}: {}",
+                        message.getClass(), message);
+                overflowedMessages.increment();
+                internalSend(message, false);
+            }
+        }
+    }
+
+    /**
+     * Puts the message to the sending queue or replaces a queued message having the same coalescing key.
+     *
+     * @return false if the queue remains full after the sending timeout or the sender is stopped
+     */
+    @SuppressWarnings("unchecked")
+    protected boolean enqueue(Serializable message) {
+        Object coalescingKey = null;
+        Function keyFunction = coalescingKeyFunctions.get(message.getClass());
+        if (keyFunction != null) {
+            Object key = keyFunction.apply(message);
+            if (key != null) {
+                coalescingKey = new AbstractMap.SimpleImmutableEntry<>(message.getClass(), key);
+            }
+        }
+
+        queueLock.lock();
+        try {
+            if (coalescingKey != null) {
+                QueuedMessage queued = queuedByCoalescingKey.get(coalescingKey);
+                if (queued != null) {
+                    // the newer message goes after the messages queued before it
+                    queue.remove(queued);
+                    QueuedMessage replacement = new QueuedMessage(message);
+                    queue.add(replacement);
+                    queuedByCoalescingKey.put(coalescingKey, replacement);
+                    coalescedMessages.increment();
+                    return true;
+                }
+            }
+            long nanos = TimeUnit.MILLISECONDS.toNanos(clusterConfig.getClusterMessageSendingTimeout());
+            while (!senderStopped && queue.size() >= clusterConfig.getClusterMessageSendingQueueCapacity()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = queueNotFull.awaitNanos(nanos);
+            }
+            if (senderStopped) {
+                return false;
+            }
+            QueuedMessage queued = new QueuedMessage(message);
+            if (queue.isEmpty()) {
+                firstQueuedTime = System.nanoTime();
+            }
+            queue.add(queued);
+            if (coalescingKey != null) {
+                queuedByCoalescingKey.put(coalescingKey, queued);
+            }
+            queueNotEmpty.signal();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the batch delay and takes all queued messages.
+     *
+     * @return messages in the order of queueing or null if the sender is stopped and the queue is empty
+     */
+    protected List<Serializable> takeQueuedMessages() throws InterruptedException {
+        queueLock.lock();
+        try {
+            while (queue.isEmpty()) {
+                if (senderStopped) {
+                    return null;
+                }
+                queueNotEmpty.await();
+            }
+            long deadline = firstQueuedTime + TimeUnit.MILLISECONDS.toNanos(clusterConfig.getClusterMessageBatchDelay());
+            long nanos;
+            while (!senderStopped
+                    && queue.size() < clusterConfig.getClusterMessageSendingQueueCapacity()
+                    && (nanos = deadline - System.nanoTime()) > 0) {
+                queueNotEmpty.awaitNanos(nanos);
+            }
+            List<Serializable> messages = new ArrayList<>(queue.size());
+            for (QueuedMessage queued : queue) {
+                messages.add(queued.message);
+            }
+            queue.clear();
+            queuedByCoalescingKey.clear();
+            queueNotFull.signalAll();
+            return messages;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Encodes the messages and sends them packed into batches limited by {@code cuba.cluster.messageBatchMaxSize},
+     * or one by one if batching is disabled.
+     */
+    protected void sendBatches(List<Serializable> messages) {
+        boolean batching = clusterConfig.getClusterMessageBatchingEnabled();
+        int maxSize = clusterConfig.getClusterMessageBatchMaxSize();
+        List<EncodedMessage> batch = new ArrayList<>();
+        int batchSize = 0;
+        for (Serializable message : messages) {
+            long start = System.nanoTime();
+            byte[] bytes;
+            try {
+                bytes = encode(message);
+            } catch (Exception e) {
+                log.error("Cluster message serialization error. Message: {}: {}", message.getClass(), message, e);
+                notifySendFailed(message);
+                continue;
+            }
+            if (!batch.isEmpty() && (!batching || batchSize + bytes.length > maxSize)) {
+                sendBatch(batch);
+                batch.clear();
+                batchSize = 0;
+            }
+            batch.add(new EncodedMessage(message, bytes, System.nanoTime() - start));
+            batchSize += bytes.length;
+        }
+        if (!batch.isEmpty()) {
+            sendBatch(batch);
+        }
+    }
+
+    protected void sendBatch(List<EncodedMessage> batch) {
+        JChannel channel = this.channel;
+        if (channel == null) {
+            return;
+        }
+        StopWatch sw = new Slf4JStopWatch("sendClusterMessageBatch");
+        long start = System.nanoTime();
+        try {
+            byte[] buffer = encodeBatch(batch);
+            log.debug("Sending batch of {} messages ({} bytes)", batch.size(), buffer.length);
+            channel.send(new Message(null, null, buffer));
+            for (EncodedMessage encoded : batch) {
+                notifySent(encoded.message);
+            }
+        } catch (Exception e) {
+            log.error("Error sending message", e);
+            for (EncodedMessage encoded : batch) {
+                notifySendFailed(encoded.message);
+            }
+        } finally {
+            sw.stop();
+        }
+        long sendNanos = (System.nanoTime() - start) / batch.size();
+        for (EncodedMessage encoded : batch) {
+            MessageStat stat = messagesStat.get(encoded.message.getClass().getName());
+            if (stat != null) {
+                stat.updateSent(encoded.bytes.length, encoded.nanos + sendNanos);
+            }
+        }
+        sentBatches.increment();
+        batchedMessages.add(batch.size());
+    }
+
+    /**
+     * Notifies the listener subscribed to the message class that the message has been sent to all nodes.
+     */
+    @SuppressWarnings("unchecked")
+    protected void notifySent(Serializable message) {
+        ClusterListener listener = listeners.get(message.getClass().getName());
+        if (listener != null) {
+            try {
+                listener.sent(message);
+            } catch (RuntimeException e) {
+                log.error("Error notifying cluster listener about sending of {}", message.getClass(), e);
+            }
+        }
+    }
+
+    /**
+     * Notifies the listener subscribed to the message class that the message has not been sent.
+     */
+    @SuppressWarnings("unchecked")
+    protected void notifySendFailed(Serializable message) {
+        ClusterListener listener = listeners.get(message.getClass().getName());
+        if (listener != null) {
+            try {
+                listener.sendFailed(message);
+            } catch (RuntimeException e) {
+                log.error("Error notifying cluster listener about failed sending of {}", message.getClass(), e);
+            }
+        }
+    }
+
+    /**
+     * Packs encoded messages into a single buffer. A batch of one message is not wrapped.
+     */
+    protected byte[] encodeBatch(List<EncodedMessage> batch) throws IOException {
+        if (batch.size() == 1) {
+            return batch.get(0).bytes;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeShort(BATCH_MAGIC);
+        out.writeInt(batch.size());
+        for (EncodedMessage encoded : batch) {
+            out.writeInt(encoded.bytes.length);
+            out.write(encoded.bytes);
+        }
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    protected void startSender() {
+        queueLock.lock();
+        try {
+            senderStopped = false;
+        } finally {
+            queueLock.unlock();
+        }
+        senderThread = new Thread(new MessageSender(), "ClusterManagerMessageSender");
+        senderThread.setDaemon(true);
+        senderThread.start();
+    }
+
+    /**
+     * Stops the sender thread after sending the queued messages.
+     */
+    protected void stopSender() {
+        queueLock.lock();
+        try {
+            senderStopped = true;
+            queueNotEmpty.signalAll();
+            queueNotFull.signalAll();
+        } finally {
+            queueLock.unlock();
+        }
+        if (senderThread != null) {
+            try {
+                senderThread.join(clusterConfig.getClusterMessageSendingTimeout());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            senderThread = null;
         }
     }
 
@@ -134,33 +425,107 @@ public class ClusterManager implements ClusterManagerAPI {
         internalSend(message, true);
     }
 
+    @Override
+    public void reply(Serializable message) {
+        Address source = receivingFrom.get();
+        if (source == null) {
+            throw new IllegalStateException("No cluster message is being received in the current thread");
+        }
+        if (channel == null)
+            return;
+
+        activeThreads.incrementAndGet();
+        try {
+            doSend(message, source, false);
+        } finally {
+            activeThreads.decrementAndGet();
+        }
+    }
+
     protected void internalSend(Serializable message, boolean sync) {
+        activeThreads.incrementAndGet();
+        try {
+            doSend(message, null, sync);
+        } finally {
+            activeThreads.decrementAndGet();
+        }
+    }
+
+    /**
+     * Sends the message to the given node or to all nodes if the destination is null.
+     */
+    protected void doSend(Serializable message, @Nullable Address destination, boolean sync) {
         StopWatch sw = new Slf4JStopWatch(String.format("sendClusterMessage(%s)", message.getClass().getSimpleName()));
+        long start = System.nanoTime();
+        byte[] bytes;
         try {
-            byte[] bytes;
             try {
-                bytes = SerializationSupport.serialize(message);
+                bytes = encode(message);
             } catch (Exception e) {
                 log.error("Cluster message serialization error", e);
+                notifySendFailed(message);
                 throw new RuntimeException("Cluster message serialization error", e);
             }
             log.debug("Sending message: {}: {} ({} bytes)", message.getClass(), message, bytes.length);
-            MessageStat stat = messagesStat.get(message.getClass().getName());
-            if (stat != null) {
-                stat.updateSent(bytes.length);
-            }
-            Message msg = new Message(null, null, bytes);
+            Message msg = new Message(destination, null, bytes);
             if (sync) {
                 msg.setFlag(Message.Flag.RSVP);
             }
             try {
                 channel.send(msg);
+                if (destination == null) {
+                    notifySent(message);
+                }
             } catch (Exception e) {
                 log.error("Error sending message", e);
+                notifySendFailed(message);
             }
         } finally {
             sw.stop();
         }
+        MessageStat stat = messagesStat.get(message.getClass().getName());
+        if (stat != null) {
+            stat.updateSent(bytes.length, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Converts the message to bytes using the registered codec or the standard serialization if codecs are
+     * disabled by {@code cuba.cluster.messageCodecsEnabled}, there is no codec for the message class or the codec
+     * doesn't support this particular message.
+     */
+    @SuppressWarnings("unchecked")
+    protected byte[] encode(Serializable message) throws IOException {
+        ClusterMessageCodec codec = clusterConfig.getClusterMessageCodecsEnabled()
+                ? codecsByClass.get(message.getClass()) : null;
+        if (codec == null || !codec.supports(message)) {
+            return SerializationSupport.serialize(message);
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeShort(CODEC_MAGIC);
+        out.writeShort(codec.getTypeId());
+        codec.write(message, out);
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    /**
+     * Restores the message from bytes produced by {@link #encode(Serializable)} on this or other cluster node.
+     */
+    protected Serializable decode(byte[] bytes) throws IOException {
+        if (bytes.length >= CODEC_HEADER_LENGTH
+                && (bytes[0] & 0xFF) == CODEC_MAGIC >> 8 && (bytes[1] & 0xFF) == (CODEC_MAGIC & 0xFF)) {
+            int typeId = (bytes[2] & 0xFF) << 8 | bytes[3] & 0xFF;
+            ClusterMessageCodec codec = codecsById.get(typeId);
+            if (codec == null) {
+                throw new IllegalStateException("Cluster message codec is not registered for type id " + typeId);
+            }
+            DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(bytes, CODEC_HEADER_LENGTH, bytes.length - CODEC_HEADER_LENGTH));
+            return codec.read(in);
+        }
+        return (Serializable) SerializationSupport.deserialize(bytes);
     }
 
     @Override
@@ -184,6 +549,14 @@ public class ClusterManager implements ClusterManagerAPI {
         messagesStat.put(className, new MessageStat());
     }
 
+    @Override
+    public <T extends Serializable> void registerCoalescingKey(Class<T> messageClass,
+                                                               Function<? super T, ?> keyFunction) {
+        Preconditions.checkNotNullArgument(messageClass, "messageClass is null");
+        Preconditions.checkNotNullArgument(keyFunction, "keyFunction is null");
+        coalescingKeyFunctions.put(messageClass, keyFunction);
+    }
+
     @Override
     public synchronized void removeListener(Class messageClass, ClusterListener listener) {
         String className = messageClass.getName();
@@ -191,7 +564,27 @@ public class ClusterManager implements ClusterManagerAPI {
         messagesStat.remove(className);
     }
 
-
+    @Override
+    public synchronized void registerCodec(ClusterMessageCodec<?> codec) {
+        Preconditions.checkNotNullArgument(codec, "codec is null");
+        int typeId = codec.getTypeId();
+        if (typeId <= 0 || typeId > ClusterMessageCodec.MAX_TYPE_ID) {
+            throw new IllegalArgumentException(String.format("Invalid type id %s of cluster message codec %s",
+                    typeId, codec.getClass().getName()));
+        }
+        ClusterMessageCodec existing = codecsById.get(typeId);
+        if (existing == null) {
+            existing = codecsByClass.get(codec.getMessageClass());
+        }
+        if (existing != null) {
+            throw new IllegalStateException(String.format("Cannot register cluster message codec %s (%s): " +
+                            "codec %s (%s) is already registered for %s",
+                    codec.getClass().getName(), typeId, existing.getClass().getName(), existing.getTypeId(),
+                    existing.getMessageClass().getName()));
+        }
+        codecsById.put(typeId, codec);
+        codecsByClass.put(codec.getMessageClass(), codec);
+    }
 
     @Override
     public void start() {
@@ -203,13 +596,14 @@ public class ClusterManager implements ClusterManagerAPI {
             configName = "jgroups.xml";
         }
 
+        startSender();
         try (InputStream stream = resources.getResource(configName).getInputStream()) {
             initJGroupsProperties();
             initLogger();
 
             channel = new JChannel(XmlConfigurator.getInstance(stream));
             channel.setDiscardOwnMessages(true); // do not receive a copy of our own messages
-            channel.setReceiver(new ClusterReceiver());
+            channel.setReceiver(createReceiver());
             channel.connect(getClusterName());
             try {
                 log.info("Receiving cluster state...");
@@ -224,10 +618,15 @@ public class ClusterManager implements ClusterManagerAPI {
             registerJmxBeans();
         } catch (Exception e) {
             channel = null;
+            stopSender();
             throw new RuntimeException("Error starting cluster", e);
         }
     }
 
+    protected Receiver createReceiver() {
+        return new ClusterReceiver();
+    }
+
     protected void initLogger() {
         LogFactory.setCustomLogFactory(JGroupsLoggerFactory.INSTANCE);
     }
@@ -272,12 +671,38 @@ public class ClusterManager implements ClusterManagerAPI {
 
     @Override
     public int getActiveThreadsCount() {
-        return executor.getActiveCount();
+        return activeThreads.get();
     }
 
     @Override
     public int getMessagesCount() {
-        return executor.getQueue().size();
+        queueLock.lock();
+        try {
+            return queue.size();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    @Override
+    public long getSentBatches() {
+        return sentBatches.longValue();
+    }
+
+    @Override
+    public double getAverageBatchSize() {
+        long batches = sentBatches.longValue();
+        return batches == 0 ? 0 : (double) batchedMessages.longValue() / batches;
+    }
+
+    @Override
+    public long getCoalescedMessages() {
+        return coalescedMessages.longValue();
+    }
+
+    @Override
+    public long getOverflowedMessages() {
+        return overflowedMessages.longValue();
     }
 
     @Override
@@ -286,6 +711,7 @@ public class ClusterManager implements ClusterManagerAPI {
             return;
 
         log.info("Stopping cluster");
+        stopSender();
         unregisterJmxBeans();
         try {
             channel.close();
@@ -344,14 +770,24 @@ public class ClusterManager implements ClusterManagerAPI {
             MessageStat stat = entry.getValue();
             if (stat != null) {
                 messagesStats
-                        .append(String.format("Class: %s; received: %s, %s bytes; sent: %s, %s bytes\n",
-                                entry.getKey(), stat.getReceivedMessages(), stat.getReceivedBytes(),
-                                stat.getSentMessages(), stat.getSentBytes()));
+                        .append(String.format("Class: %s; codec: %s; received: %s, %s bytes, %s ms; sent: %s, %s bytes, %s ms\n",
+                                entry.getKey(), getCodecName(entry.getKey()),
+                                stat.getReceivedMessages(), stat.getReceivedBytes(), stat.getReceivedTime(),
+                                stat.getSentMessages(), stat.getSentBytes(), stat.getSentTime()));
             }
         }
         return messagesStats.toString();
     }
 
+    protected String getCodecName(String className) {
+        for (ClusterMessageCodec codec : codecsByClass.values()) {
+            if (codec.getMessageClass().getName().equals(className)) {
+                return codec.getTypeId() + "";
+            }
+        }
+        return "serialization";
+    }
+
     @Override
     public long getSentMessages(String className) {
         Preconditions.checkNotNullArgument(className, "Message class is null");
@@ -401,12 +837,50 @@ public class ClusterManager implements ClusterManagerAPI {
                 log.debug("Null buffer received");
                 return;
             }
+            receivingFrom.set(msg.getSrc());
+            try {
+                if (bytes.length >= 2 && (bytes[0] & 0xFF) == BATCH_MAGIC >> 8 && (bytes[1] & 0xFF) == (BATCH_MAGIC & 0xFF)) {
+                    receiveBatch(bytes);
+                } else {
+                    receiveMessage(bytes);
+                }
+            } finally {
+                receivingFrom.remove();
+            }
+        }
+
+        protected void receiveBatch(byte[] bytes) {
+            List<byte[]> messages = new ArrayList<>();
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 2, bytes.length - 2))) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    byte[] message = new byte[in.readInt()];
+                    in.readFully(message);
+                    messages.add(message);
+                }
+            } catch (IOException e) {
+                log.error("Error reading cluster message batch", e);
+                return;
+            }
+            log.debug("Received batch of {} messages ({} bytes)", messages.size(), bytes.length);
+            for (byte[] message : messages) {
+                try {
+                    receiveMessage(message);
+                } catch (RuntimeException e) {
+                    log.error("Error receiving cluster message", e);
+                }
+            }
+        }
+
+        protected void receiveMessage(byte[] bytes) {
             StopWatch sw = new Slf4JStopWatch();
+            long start = System.nanoTime();
             String simpleClassName = null;
+            MessageStat stat = null;
             try {
                 Serializable data;
                 try {
-                    data = (Serializable) SerializationSupport.deserialize(bytes);
+                    data = decode(bytes);
                 } catch (Exception e) {
                     log.error("Cluster message deserialization error", e);
                     throw new RuntimeException("Cluster message deserialization error", e);
@@ -414,10 +888,7 @@ public class ClusterManager implements ClusterManagerAPI {
                 String className = data.getClass().getName();
                 simpleClassName = data.getClass().getSimpleName();
                 log.debug("Received message: {}: {} ({} bytes)", data.getClass(), data, bytes.length);
-                MessageStat stat = messagesStat.get(className);
-                if (stat != null) {
-                    stat.updateReceived(bytes.length);
-                }
+                stat = messagesStat.get(className);
                 @SuppressWarnings("unchecked")
                 ClusterListener<Serializable> listener = listeners.get(className);
                 if (listener != null) {
@@ -425,6 +896,9 @@ public class ClusterManager implements ClusterManagerAPI {
                 }
             } finally {
                 sw.stop(String.format("receiveClusterMessage(%s)", simpleClassName));
+                if (stat != null) {
+                    stat.updateReceived(bytes.length, System.nanoTime() - start);
+                }
             }
         }
 
@@ -432,36 +906,38 @@ public class ClusterManager implements ClusterManagerAPI {
         public void viewAccepted(View new_view) {
             log.info("New cluster view: {}", new_view);
             currentView = new_view;
+            for (Map.Entry<String, ClusterListener> entry : listeners.entrySet()) {
+                try {
+                    entry.getValue().viewChanged();
+                } catch (RuntimeException e) {
+                    log.error("Error notifying cluster listener about view change: {}", entry.getKey(), e);
+                }
+            }
         }
 
         @Override
         public void getState(OutputStream output) {
-            log.debug("Sending state");
+            log.info("Sending state");
             try (DataOutputStream out = new DataOutputStream(output)) {
-                Map<String, byte[]> state = new HashMap<>();
+                out.writeUTF(STREAMING_STATE_MAGIC);
                 for (Map.Entry<String, ClusterListener> entry : listeners.entrySet()) {
-                    byte[] data;
-                    StopWatch sw = new Slf4JStopWatch(String.format("getClusterState(%s)", entry.getKey()));
+                    String name = entry.getKey();
+                    out.writeBoolean(true);
+                    out.writeUTF(name);
+                    ChunkedOutputStream chunked = new ChunkedOutputStream(out,
+                            clusterConfig.getStateChunkSize(), new StateProgressLogger("Sending", name));
+                    StopWatch sw = new Slf4JStopWatch(String.format("getClusterState(%s)", name));
                     try {
-                        data = entry.getValue().getState();
+                        entry.getValue().writeState(chunked);
+                    } catch (RuntimeException e) {
+                        log.error("Error sending state: {}", name, e);
                     } finally {
                         sw.stop();
                     }
-                    if (data != null && data.length > 0) {
-                        state.put(entry.getKey(), data);
-                    }
-                }
-
-                if (state.size() > 0) {
-                    out.writeUTF(STATE_MAGIC);
-                    out.writeInt(state.size());
-                    for (Map.Entry<String, byte[]> entry : state.entrySet()) {
-                        log.debug("Sending state: {} ({} bytes)", entry.getKey(), entry.getValue().length);
-                        out.writeUTF(entry.getKey());
-                        out.writeInt(entry.getValue().length);
-                        out.write(entry.getValue());
-                    }
+                    chunked.finish();
+                    log.info("Sent state: {} ({} bytes)", name, chunked.getCount());
                 }
+                out.writeBoolean(false);
             } catch (RuntimeException | IOException e) {
                 log.error("Error sending state", e);
             }
@@ -474,44 +950,71 @@ public class ClusterManager implements ClusterManagerAPI {
 
         @Override
         public void setState(InputStream input) {
-            log.debug("Receiving state");
+            log.info("Receiving state");
 
             try (DataInputStream in = new DataInputStream(input)) {
-                if (input.available() == 0)
+                String magic;
+                try {
+                    magic = in.readUTF();
+                } catch (EOFException e) {
+                    log.debug("Empty state received");
                     return;
-
-                String magic = in.readUTF();
-                if (!STATE_MAGIC.equals(magic)) {
+                }
+                if (STATE_MAGIC.equals(magic)) {
+                    readBlockState(in);
+                    return;
+                }
+                if (!STREAMING_STATE_MAGIC.equals(magic)) {
                     log.debug("Invalid magic in state received");
                     return;
                 }
-                int count = in.readInt();
-                for (int i = 0; i < count; i++) {
+                while (in.readBoolean()) {
                     String name = in.readUTF();
-                    int len = in.readInt();
+                    ChunkedInputStream chunked = new ChunkedInputStream(in, new StateProgressLogger("Receiving", name));
                     StopWatch sw = new Slf4JStopWatch(String.format("setClusterState(%s)", name));
                     try {
-                        log.debug("Receiving state: {} ({} bytes)", name, len);
-                        byte[] data = new byte[len];
-                        int c = in.read(data);
-                        if (c != len) {
-                            log.error("Error receiving state: invalid data length");
-                            return;
-                        }
                         ClusterListener listener = listeners.get(name);
-                        if (listener != null) {
-                            listener.setState(data);
+                        if (listener != null && !chunked.isEmpty()) {
+                            listener.readState(chunked);
                         }
+                    } catch (RuntimeException | IOException e) {
+                        log.error("Error receiving state: {}", name, e);
                     } finally {
                         sw.stop();
                     }
+                    chunked.skipToEnd();
+                    log.info("Received state: {} ({} bytes)", name, chunked.getCount());
                 }
-                log.debug("State received");
+                log.info("State received");
             } catch (Exception e) {
                 log.error("Error receiving state", e);
             }
         }
 
+        /**
+         * Reads the state sent by a node of the previous version.
+         */
+        protected void readBlockState(DataInputStream in) throws IOException {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                int len = in.readInt();
+                StopWatch sw = new Slf4JStopWatch(String.format("setClusterState(%s)", name));
+                try {
+                    log.debug("Receiving state: {} ({} bytes)", name, len);
+                    byte[] data = new byte[len];
+                    in.readFully(data);
+                    ClusterListener listener = listeners.get(name);
+                    if (listener != null) {
+                        listener.setState(data);
+                    }
+                } finally {
+                    sw.stop();
+                }
+            }
+            log.info("State received");
+        }
+
         @Override
         public void block() {
         }
@@ -521,16 +1024,69 @@ public class ClusterManager implements ClusterManagerAPI {
         }
     }
 
-    protected class SendMessageRunnable implements Runnable {
-        protected Serializable message;
+    protected static class StateProgressLogger implements LongConsumer {
+        protected final String action;
+        protected final String name;
+        protected long nextLogBytes = STATE_PROGRESS_LOG_BYTES;
 
-        public SendMessageRunnable(Serializable message) {
-            this.message = message;
+        public StateProgressLogger(String action, String name) {
+            this.action = action;
+            this.name = name;
         }
 
+        @Override
+        public void accept(long bytes) {
+            if (bytes >= nextLogBytes) {
+                log.info("{} state: {} ({} bytes so far)", action, name, bytes);
+                nextLogBytes = bytes + STATE_PROGRESS_LOG_BYTES;
+            }
+        }
+    }
+
+    protected class MessageSender implements Runnable {
+
         @Override
         public void run() {
-            internalSend(message, false);
+            while (true) {
+                List<Serializable> messages;
+                try {
+                    messages = takeQueuedMessages();
+                } catch (InterruptedException e) {
+                    log.warn("Cluster message sender is interrupted");
+                    return;
+                }
+                if (messages == null) {
+                    return;
+                }
+                activeThreads.incrementAndGet();
+                try {
+                    sendBatches(messages);
+                } catch (RuntimeException e) {
+                    log.error("Error sending cluster messages", e);
+                } finally {
+                    activeThreads.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    protected static class QueuedMessage {
+        protected Serializable message;
+
+        public QueuedMessage(Serializable message) {
+            this.message = message;
+        }
+    }
+
+    protected static class EncodedMessage {
+        protected final Serializable message;
+        protected final byte[] bytes;
+        protected final long nanos;
+
+        public EncodedMessage(Serializable message, byte[] bytes, long nanos) {
+            this.message = message;
+            this.bytes = bytes;
+            this.nanos = nanos;
         }
     }
 
@@ -539,15 +1095,33 @@ public class ClusterManager implements ClusterManagerAPI {
         protected LongAdder receivedBytes = new LongAdder();
         protected LongAdder receivedMessages = new LongAdder();
         protected LongAdder sentMessages = new LongAdder();
+        protected LongAdder receivedNanos = new LongAdder();
+        protected LongAdder sentNanos = new LongAdder();
 
-        public void updateReceived(int bytes) {
+        public void updateReceived(int bytes, long nanos) {
             receivedMessages.increment();
             receivedBytes.add(bytes);
+            receivedNanos.add(nanos);
         }
 
-        public void updateSent(int bytes) {
+        public void updateSent(int bytes, long nanos) {
             sentMessages.increment();
             sentBytes.add(bytes);
+            sentNanos.add(nanos);
+        }
+
+        /**
+         * @return total time of encoding and sending messages in milliseconds
+         */
+        public long getSentTime() {
+            return TimeUnit.NANOSECONDS.toMillis(sentNanos.longValue());
+        }
+
+        /**
+         * @return total time of decoding and handling received messages in milliseconds
+         */
+        public long getReceivedTime() {
+            return TimeUnit.NANOSECONDS.toMillis(receivedNanos.longValue());
         }
 
         public long getSentBytes() {
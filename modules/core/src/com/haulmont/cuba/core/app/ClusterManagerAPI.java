@@ -17,6 +17,7 @@
 package com.haulmont.cuba.core.app;
 
 import java.io.Serializable;
+import java.util.function.Function;
 
 /**
  * Interface defining methods for communication in a middleware cluster.
@@ -39,6 +40,15 @@ public interface ClusterManagerAPI {
      */
     void sendSync(Serializable message);
 
+    /**
+     * Send a message only to the node which sent the message being received. Can be invoked only from
+     * {@link ClusterListener#receive(Object)}, the message is sent in the current thread.
+     *
+     * @param message serializable message
+     * @throws IllegalStateException if no cluster message is being received in the current thread
+     */
+    void reply(Serializable message);
+
     /**
      * @return whether the synchronous sending is forced for the current thread
      * @see #setSyncSendingForCurrentThread(boolean)
@@ -69,6 +79,25 @@ public interface ClusterManagerAPI {
      */
     void removeListener(Class messageClass, ClusterListener listener);
 
+    /**
+     * Register a function returning a coalescing key of messages of the given class. A message waiting in the
+     * asynchronous sending queue is replaced by a newer message of the same class with an equal key, so only
+     * the latest state is sent. Messages with null key are never coalesced.
+     *
+     * @param messageClass class of messages
+     * @param keyFunction  function returning the coalescing key of a message
+     */
+    <T extends Serializable> void registerCoalescingKey(Class<T> messageClass, Function<? super T, ?> keyFunction);
+
+    /**
+     * Register a compact binary codec for messages of the {@link ClusterMessageCodec#getMessageClass()} class.
+     * Messages without a codec are sent using the standard serialization.
+     *
+     * @param codec codec instance
+     * @throws IllegalStateException if a codec with the same type id or message class is already registered
+     */
+    void registerCodec(ClusterMessageCodec<?> codec);
+
     /**
      * Inform whether the current node is currently the master node in the cluster. A middleware cluster always
      * elects one of its members as master, usually it is the oldest one.
@@ -110,6 +139,26 @@ public interface ClusterManagerAPI {
      */
     int getMessagesCount();
 
+    /**
+     * @return number of batches sent asynchronously
+     */
+    long getSentBatches();
+
+    /**
+     * @return average number of messages in a batch
+     */
+    double getAverageBatchSize();
+
+    /**
+     * @return number of queued messages replaced by newer messages with the same coalescing key
+     */
+    long getCoalescedMessages();
+
+    /**
+     * @return number of messages sent in the calling thread because the sending queue was full
+     */
+    long getOverflowedMessages();
+
     /**
      * Shared state statistics
      *
@@ -118,7 +167,8 @@ public interface ClusterManagerAPI {
     String printSharedStateStat();
 
     /**
-     * Sent/received messages statistics
+     * Sent/received messages statistics: messages count, size in bytes and time spent on encoding and sending
+     * or on decoding and handling of messages, per message class
      *
      * @return statistics
      */
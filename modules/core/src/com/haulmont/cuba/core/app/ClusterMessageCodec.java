@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Compact binary codec of a cluster message type. Codecs are registered in {@link ClusterManagerAPI#registerCodec}
+ * and used instead of {@link com.haulmont.cuba.core.sys.serialization.SerializationSupport} for messages of the
+ * exact {@link #getMessageClass()} class.
+ * <p>
+ * Nodes of previous versions cannot read encoded messages, so codecs are used for sending only if
+ * {@code cuba.cluster.messageCodecsEnabled} is set. Encoded messages are received regardless of this property.
+ * <p>
+ * The type id is written to the wire instead of the class name, so it must be stable across application versions
+ * and unique within the cluster. Ids from 1 to {@link ClusterMessageType#MAX_PLATFORM_TYPE_ID} are reserved for
+ * the platform messages registered in {@link ClusterMessageType}, applications should use ids starting from 1000.
+ * The maximum id is {@link #MAX_TYPE_ID}.
+ *
+ * @param <T> type of message
+ */
+public interface ClusterMessageCodec<T extends Serializable> {
+
+    int MAX_TYPE_ID = 0x7FFF;
+
+    /**
+     * @return stable numeric id of the message type
+     */
+    int getTypeId();
+
+    /**
+     * @return class of messages handled by this codec
+     */
+    Class<T> getMessageClass();
+
+    /**
+     * Checks whether the message can be written by this codec. Messages which are not supported are sent using
+     * the standard serialization.
+     *
+     * @param message message instance
+     * @return true if the message can be written by the codec
+     */
+    default boolean supports(T message) {
+        return true;
+    }
+
+    /**
+     * Writes the message content.
+     *
+     * @param message message instance
+     * @param out     output
+     */
+    void write(T message, DataOutput out) throws IOException;
+
+    /**
+     * Reads the message written by {@link #write(Serializable, DataOutput)}.
+     *
+     * @param in input
+     * @return message instance
+     */
+    T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of type ids of the platform cluster messages encoded by {@link ClusterMessageCodec}s.
+ * <p>
+ * Platform codecs take their ids only from this enum. Ids are checked when the enum is initialized, i.e. when
+ * the first platform codec is registered on startup: an id out of the reserved range or used twice makes
+ * the initialization fail. Ids of application codecs are checked by {@link ClusterManagerAPI#registerCodec}.
+ * <p>
+ * The ids are written to the wire, so they must never be changed or reused.
+ */
+public enum ClusterMessageType {
+
+    INVALIDATE_QUERY_CACHE(1),
+    UNLOCK(2),
+    INVALIDATE_CONFIG_CACHE(3),
+    RELOAD_DYNAMIC_ATTRIBUTES_CACHE(4),
+    SET_SCHEDULING_ACTIVE(5),
+    CANCEL_EXECUTION(6),
+    USER_SESSION_INFO(7),
+    USER_SESSION_HEARTBEAT(8),
+    REQUEST_USER_SESSION(9);
+
+    /**
+     * Maximum type id of a platform message. Applications should use ids starting from {@code MAX_PLATFORM_TYPE_ID + 1}.
+     */
+    public static final int MAX_PLATFORM_TYPE_ID = 999;
+
+    private final int typeId;
+
+    static {
+        Map<Integer, ClusterMessageType> types = new HashMap<>();
+        for (ClusterMessageType type : values()) {
+            if (type.typeId <= 0 || type.typeId > MAX_PLATFORM_TYPE_ID) {
+                throw new IllegalStateException(String.format("Type id %s of cluster message type %s is out of " +
+                        "the range reserved for platform messages", type.typeId, type));
+            }
+            ClusterMessageType existing = types.put(type.typeId, type);
+            if (existing != null) {
+                throw new IllegalStateException(String.format("Cluster message types %s and %s have the same id %s",
+                        existing, type, type.typeId));
+            }
+        }
+    }
+
+    ClusterMessageType(int typeId) {
+        this.typeId = typeId;
+    }
+
+    public int getTypeId() {
+        return typeId;
+    }
+}
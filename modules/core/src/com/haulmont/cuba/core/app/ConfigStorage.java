@@ -61,7 +61,7 @@ public class ConfigStorage implements ConfigStorageAPI {
     private static class InvalidateCacheMsg implements Serializable {
         private static final long serialVersionUID = -3116358584797500962L;
     }
-    
+
     @Inject
     public void setClusterManager(ClusterManagerAPI clusterManager) {
         this.clusterManager = clusterManager;
@@ -71,6 +71,9 @@ public class ConfigStorage implements ConfigStorageAPI {
                 internalClearCache();
             }
         });
+        clusterManager.registerCodec(new EmptyClusterMessageCodec<>(ClusterMessageType.INVALIDATE_CONFIG_CACHE.getTypeId(),
+                InvalidateCacheMsg.class, InvalidateCacheMsg::new));
+        clusterManager.registerCoalescingKey(InvalidateCacheMsg.class, message -> InvalidateCacheMsg.class);
     }
     
     @Override
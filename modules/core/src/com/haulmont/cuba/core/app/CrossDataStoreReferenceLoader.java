@@ -16,6 +16,7 @@
 
 package com.haulmont.cuba.core.app;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.chile.core.model.MetaClass;
@@ -23,6 +24,8 @@ import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.entity.IdProxy;
 import com.haulmont.cuba.core.global.*;
+import org.perf4j.StopWatch;
+import org.perf4j.slf4j.Slf4JStopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Scope;
@@ -30,6 +33,8 @@ import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 /**
@@ -56,6 +61,9 @@ public class CrossDataStoreReferenceLoader {
     @Inject
     private ServerConfig serverConfig;
 
+    @Inject
+    private DataLoadExecutor dataLoadExecutor;
+
     private MetaClass metaClass;
 
     private View view;
@@ -108,35 +116,61 @@ public class CrossDataStoreReferenceLoader {
         }
     }
 
+    /**
+     * Gathers references to other data stores on all levels of the view first, then loads referenced entities by
+     * one chunked query per data store, entity class and view, and sets them to the references.
+     */
     public void processEntities(Collection<? extends Entity> entities) {
         Map<Class<? extends Entity>, List<CrossDataStoreProperty>> crossPropertiesMap = getCrossPropertiesMap();
         if (crossPropertiesMap.isEmpty())
             return;
 
-        Set<Entity> affectedEntities = getAffectedEntities(entities, crossPropertiesMap);
-        if (affectedEntities.isEmpty())
+        Set<EntityCrossDataStoreProperty> pendingReferences = getPendingReferences(entities, crossPropertiesMap);
+        if (pendingReferences.isEmpty())
             return;
 
-        List<EntityCrossDataStoreProperty> entityCrossDataStorePropertyList = new ArrayList<>();
-        for (Entity affectedEntity : affectedEntities) {
-            for (CrossDataStoreProperty crossDataStoreProperty : crossPropertiesMap.get(affectedEntity.getClass())) {
-                entityCrossDataStorePropertyList.add(new EntityCrossDataStoreProperty(affectedEntity, crossDataStoreProperty));
-            }
+        if (pendingReferences.size() == 1) {
+            loadOne(pendingReferences.iterator().next());
+            return;
         }
-        if (entityCrossDataStorePropertyList.size() == 1) {
-            loadOne(entityCrossDataStorePropertyList.get(0));
+
+        Map<String, Map<LoadGroupKey, List<EntityCrossDataStoreProperty>>> groupsByStore = new LinkedHashMap<>();
+        for (EntityCrossDataStoreProperty reference : pendingReferences) {
+            LoadGroupKey key = new LoadGroupKey(reference.crossProp);
+            groupsByStore.computeIfAbsent(key.storeName, s -> new LinkedHashMap<>())
+                    .computeIfAbsent(key, k -> new ArrayList<>())
+                    .add(reference);
+        }
+
+        Map<LoadGroupKey, Map<Object, Entity>> loadedGroups = new HashMap<>();
+        if (groupsByStore.size() > 1 && !joinTransaction && serverConfig.getCrossDataStoreReferenceLoadingParallel()) {
+            Map<String, CompletableFuture<Map<LoadGroupKey, Map<Object, Entity>>>> futures = new LinkedHashMap<>();
+            groupsByStore.forEach((storeName, groups) ->
+                    futures.put(storeName, dataLoadExecutor.submit(() -> loadStoreGroups(storeName, groups))));
+            for (CompletableFuture<Map<LoadGroupKey, Map<Object, Entity>>> future : futures.values()) {
+                loadedGroups.putAll(getResult(future));
+            }
         } else {
-            entityCrossDataStorePropertyList.stream()
-                    .collect(Collectors.groupingBy(EntityCrossDataStoreProperty::getCrossProp))
-                    .forEach((ap, eapList) ->
-                            loadMany(ap, eapList.stream().map(eap -> eap.entity).collect(Collectors.toList()))
-                    );
+            groupsByStore.forEach((storeName, groups) -> loadedGroups.putAll(loadStoreGroups(storeName, groups)));
+        }
+
+        // set references in the calling thread as entities are not thread-safe
+        for (Map<LoadGroupKey, List<EntityCrossDataStoreProperty>> groups : groupsByStore.values()) {
+            for (Map.Entry<LoadGroupKey, List<EntityCrossDataStoreProperty>> entry : groups.entrySet()) {
+                Map<Object, Entity> loaded = loadedGroups.get(entry.getKey());
+                for (EntityCrossDataStoreProperty reference : entry.getValue()) {
+                    Entity relatedEntity = loaded.get(reference.getRelatedId());
+                    if (relatedEntity != null) {
+                        reference.entity.setValue(reference.crossProp.property.getName(), relatedEntity);
+                    }
+                }
+            }
         }
     }
 
-    private Set<Entity> getAffectedEntities(Collection<? extends Entity> entities,
-                                            Map<Class<? extends Entity>, List<CrossDataStoreProperty>> crossPropertiesMap) {
-        Set<Entity> resultSet = new HashSet<>();
+    private Set<EntityCrossDataStoreProperty> getPendingReferences(Collection<? extends Entity> entities,
+                                                                   Map<Class<? extends Entity>, List<CrossDataStoreProperty>> crossPropertiesMap) {
+        Set<EntityCrossDataStoreProperty> resultSet = new LinkedHashSet<>();
         for (Entity entity : entities) {
             metadataTools.traverseAttributesByView(view, entity, new EntityAttributeVisitor() {
                 @Override
@@ -147,7 +181,7 @@ public class CrossDataStoreReferenceLoader {
                                 .filter(ap -> ap.property == property)
                                 .forEach(ap -> {
                                     if (entity.getValue(ap.relatedPropertyName) != null) {
-                                        resultSet.add(entity);
+                                        resultSet.add(new EntityCrossDataStoreProperty(entity, ap));
                                     }
                                 });
                     }
@@ -162,6 +196,17 @@ public class CrossDataStoreReferenceLoader {
         return resultSet;
     }
 
+    private <T> T getResult(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     private void loadOne(EntityCrossDataStoreProperty entityCrossDataStoreProperty) {
         Entity entity = entityCrossDataStoreProperty.entity;
         CrossDataStoreProperty aProp = entityCrossDataStoreProperty.crossProp;
@@ -176,36 +221,44 @@ public class CrossDataStoreReferenceLoader {
         entity.setValue(aProp.property.getName(), relatedEntity);
     }
 
-    private void loadMany(CrossDataStoreProperty crossDataStoreProperty, List<Entity> entities) {
-        int offset = 0, limit = serverConfig.getCrossDataStoreReferenceLoadingBatchSize();
-        while (true) {
-            int end = offset + limit;
-            List<Entity> batch = entities.subList(offset, Math.min(end, entities.size()));
-            loadBatch(crossDataStoreProperty, batch);
-            if (end >= entities.size())
-                break;
-            else
-                offset += limit;
+    private Map<LoadGroupKey, Map<Object, Entity>> loadStoreGroups(String storeName,
+                                                                   Map<LoadGroupKey, List<EntityCrossDataStoreProperty>> groups) {
+        StopWatch stopWatch = new Slf4JStopWatch("CrossDataStoreReferenceLoader." + storeName);
+        try {
+            Map<LoadGroupKey, Map<Object, Entity>> result = new HashMap<>();
+            groups.forEach((key, references) -> result.put(key, loadGroup(key, references)));
+            return result;
+        } finally {
+            stopWatch.stop();
         }
     }
 
-    private void loadBatch(CrossDataStoreProperty crossDataStoreProperty, List<Entity> entities) {
-        List<Object> idList = entities.stream()
-                .map(e -> e.getValue(crossDataStoreProperty.relatedPropertyName))
-                .filter(Objects::nonNull)
+    private Map<Object, Entity> loadGroup(LoadGroupKey key, List<EntityCrossDataStoreProperty> references) {
+        List<Object> idList = references.stream()
+                .map(EntityCrossDataStoreProperty::getRelatedId)
                 .distinct()
                 .collect(Collectors.toList());
 
-        if (idList.isEmpty())
-            return;
+        Map<Object, Entity> result = new HashMap<>();
+        int batchSize = Math.max(serverConfig.getCrossDataStoreReferenceLoadingBatchSize(), 1);
+        for (List<Object> batch : Lists.partition(idList, batchSize)) {
+            for (Entity loadedEntity : loadBatch(key, batch)) {
+                Object id = loadedEntity.getId() instanceof IdProxy ?
+                        ((IdProxy) loadedEntity.getId()).getNN() : loadedEntity.getId();
+                result.put(id, loadedEntity);
+            }
+        }
+        return result;
+    }
 
-        MetaClass cdsrMetaClass = crossDataStoreProperty.property.getRange().asClass();
+    private List<Entity> loadBatch(LoadGroupKey key, List<Object> idList) {
+        MetaClass cdsrMetaClass = key.metaClass;
         LoadContext<Entity> loadContext = new LoadContext<>(cdsrMetaClass);
 
         MetaProperty primaryKeyProperty = metadataTools.getPrimaryKeyProperty(cdsrMetaClass);
         if (primaryKeyProperty == null || !primaryKeyProperty.getRange().isClass()) {
             String queryString = String.format(
-                    "select e from %s e where e.%s in :idList", cdsrMetaClass, crossDataStoreProperty.primaryKeyName);
+                    "select e from %s e where e.%s in :idList", cdsrMetaClass, key.primaryKeyName);
             loadContext.setQuery(LoadContext.createQuery(queryString).setParameter("idList", idList));
         } else {
             // composite key entity
@@ -215,7 +268,7 @@ public class CrossDataStoreReferenceLoader {
             MetaClass idMetaClass = primaryKeyProperty.getRange().asClass();
             for (Iterator<MetaProperty> it = idMetaClass.getProperties().iterator(); it.hasNext(); ) {
                 MetaProperty property = it.next();
-                sb.append("e.").append(crossDataStoreProperty.primaryKeyName).append(".").append(property.getName());
+                sb.append("e.").append(key.primaryKeyName).append(".").append(property.getName());
                 sb.append(" in :list_").append(property.getName());
                 if (it.hasNext())
                     sb.append(" and ");
@@ -230,22 +283,43 @@ public class CrossDataStoreReferenceLoader {
             loadContext.setQuery(query);
         }
 
-        loadContext.setView(crossDataStoreProperty.viewProperty.getView());
+        loadContext.setView(key.view);
         loadContext.setJoinTransaction(joinTransaction);
 
-        List<Entity> loadedEntities = dataManager.loadList(loadContext);
+        return dataManager.loadList(loadContext);
+    }
 
-        for (Entity entity : entities) {
-            Object relatedPropertyValue = entity.getValue(crossDataStoreProperty.relatedPropertyName);
-            loadedEntities.stream()
-                    .filter(e -> {
-                        Object id = e.getId() instanceof IdProxy ? ((IdProxy) e.getId()).getNN() : e.getId();
-                        return id.equals(relatedPropertyValue);
-                    })
-                    .findAny()
-                    .ifPresent(e ->
-                            entity.setValue(crossDataStoreProperty.property.getName(), e)
-                    );
+    /**
+     * Identifies references loaded by the same query: data store, entity class and view.
+     */
+    private static class LoadGroupKey {
+
+        private final String storeName;
+        private final MetaClass metaClass;
+        private final View view;
+        private final String primaryKeyName;
+
+        LoadGroupKey(CrossDataStoreProperty crossDataStoreProperty) {
+            this.metaClass = crossDataStoreProperty.property.getRange().asClass();
+            this.storeName = crossDataStoreProperty.storeName;
+            this.view = crossDataStoreProperty.viewProperty.getView();
+            this.primaryKeyName = crossDataStoreProperty.primaryKeyName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            LoadGroupKey that = (LoadGroupKey) o;
+            // views are compared by identity as different views may have equal names
+            return Objects.equals(storeName, that.storeName)
+                    && metaClass.equals(that.metaClass)
+                    && view == that.view;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(storeName, metaClass, System.identityHashCode(view));
         }
     }
 
@@ -259,8 +333,21 @@ public class CrossDataStoreReferenceLoader {
             this.crossProp = crossDataStoreProperty;
         }
 
-        public CrossDataStoreProperty getCrossProp() {
-            return crossProp;
+        public Object getRelatedId() {
+            return entity.getValue(crossProp.relatedPropertyName);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            EntityCrossDataStoreProperty that = (EntityCrossDataStoreProperty) o;
+            return entity == that.entity && crossProp == that.crossProp;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(entity) + System.identityHashCode(crossProp);
         }
 
         @Override
@@ -275,6 +362,7 @@ public class CrossDataStoreReferenceLoader {
         public final ViewProperty viewProperty;
         public final String relatedPropertyName;
         public final String primaryKeyName;
+        public final String storeName;
 
         public CrossDataStoreProperty(MetaProperty metaProperty, ViewProperty viewProperty) {
             this.property = metaProperty;
@@ -287,6 +375,7 @@ public class CrossDataStoreReferenceLoader {
             primaryKeyName = pkName != null
                     ? pkName
                     : "id"; // sensible default for non-persistent entities
+            storeName = metadataTools.getStoreName(property.getRange().asClass());
         }
 
         @Override
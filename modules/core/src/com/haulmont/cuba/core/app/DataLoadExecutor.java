@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.haulmont.cuba.core.sys.SecurityContextAwareCallable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.util.concurrent.*;
+
+/**
+ * INTERNAL.
+ * Bounded thread pool for loading data from several data stores concurrently. Tasks are executed with the
+ * security context of the submitting thread.
+ * <p>A task submitted from a thread of the pool is executed synchronously, so nested loading can't exhaust the pool.
+ */
+@Component(DataLoadExecutor.NAME)
+public class DataLoadExecutor {
+
+    public static final String NAME = "cuba_DataLoadExecutor";
+
+    private static final ThreadLocal<Boolean> inPoolThread = new ThreadLocal<>();
+
+    @Inject
+    protected ServerConfig serverConfig;
+
+    protected volatile ExecutorService executor;
+
+    /**
+     * Submits a task for asynchronous execution.
+     *
+     * @param task task to execute
+     * @return future completed with the result of the task, or exceptionally if the task throws an exception
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        Callable<T> callable = new SecurityContextAwareCallable<>(task);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (Boolean.TRUE.equals(inPoolThread.get())) {
+            complete(future, task);
+            return future;
+        }
+        getExecutor().execute(() -> {
+            inPoolThread.set(true);
+            try {
+                complete(future, callable);
+            } finally {
+                inPoolThread.remove();
+            }
+        });
+        return future;
+    }
+
+    protected <T> void complete(CompletableFuture<T> future, Callable<T> callable) {
+        try {
+            future.complete(callable.call());
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    protected ExecutorService getExecutor() {
+        ExecutorService result = executor;
+        if (result == null) {
+            synchronized (this) {
+                result = executor;
+                if (result == null) {
+                    int poolSize = Math.max(serverConfig.getDataLoadThreadPoolSize(), 1);
+                    result = Executors.newFixedThreadPool(poolSize,
+                            new ThreadFactoryBuilder().setNameFormat("DataLoader-%d").setDaemon(true).build());
+                    executor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ExecutorService result = executor;
+        if (result != null) {
+            result.shutdownNow();
+        }
+    }
+}
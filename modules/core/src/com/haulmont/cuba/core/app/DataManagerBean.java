@@ -17,6 +17,7 @@
 
 package com.haulmont.cuba.core.app;
 
+import com.google.common.collect.Iterators;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.cuba.core.entity.*;
@@ -32,6 +33,9 @@ import javax.inject.Inject;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Component(DataManager.NAME)
 public class DataManagerBean implements DataManager {
@@ -59,6 +63,9 @@ public class DataManagerBean implements DataManager {
     @Inject
     protected BeanValidation beanValidation;
 
+    @Inject
+    protected DataLoadExecutor dataLoadExecutor;
+
     @Nullable
     @Override
     public <E extends Entity> E load(LoadContext<E> context) {
@@ -80,6 +87,24 @@ public class DataManagerBean implements DataManager {
         return entities;
     }
 
+    @Override
+    public <E extends Entity> Stream<E> loadStream(LoadContext<E> context) {
+        MetaClass metaClass = metadata.getClassNN(context.getMetaClass());
+        DataStore storage = storeFactory.get(getStoreName(metaClass));
+        Stream<E> stream = storage.loadStream(context);
+        if (Stores.getAdditional().isEmpty() || context.getView() == null) {
+            return stream;
+        }
+        // read references from other data stores for a chunk of instances at once
+        Iterator<List<E>> chunks = Iterators.partition(stream.iterator(), serverConfig.getLoadStreamFetchSize());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED), false)
+                .onClose(stream::close)
+                .flatMap(chunk -> {
+                    readCrossDataStoreReferences(chunk, context.getView(), metaClass, context.isJoinTransaction());
+                    return chunk.stream();
+                });
+    }
+
     @Override
     public long getCount(LoadContext<? extends Entity> context) {
         MetaClass metaClass = metadata.getClassNN(context.getMetaClass());
@@ -262,6 +287,65 @@ public class DataManagerBean implements DataManager {
         return store.loadValues(context);
     }
 
+    @Override
+    public ValueTable loadValueTable(ValueLoadContext context) {
+        DataStore store = storeFactory.get(getStoreName(context.getStoreName()));
+        return store.loadValueTable(context);
+    }
+
+    @Override
+    public <E extends Entity> CompletableFuture<List<E>> loadListAsync(LoadContext<E> context) {
+        return dataLoadExecutor.submit(() -> loadList(context));
+    }
+
+    @Override
+    public void executeBatch(DataLoadBatch batch) {
+        Map<String, List<DataLoadBatch.Item<?>>> itemsByStore = new LinkedHashMap<>();
+        for (DataLoadBatch.Item<?> item : batch.getItems()) {
+            itemsByStore.computeIfAbsent(getStoreName(item.getContext()), storeName -> new ArrayList<>()).add(item);
+        }
+        if (itemsByStore.isEmpty()) {
+            return;
+        }
+        // the items of the first store and of stores with items joining the current transaction are executed
+        // in the calling thread, because the transaction is not available in other threads
+        Iterator<List<DataLoadBatch.Item<?>>> iterator = itemsByStore.values().iterator();
+        List<List<DataLoadBatch.Item<?>>> callerItems = new ArrayList<>();
+        callerItems.add(iterator.next());
+
+        List<CompletableFuture<?>> futures = new ArrayList<>(itemsByStore.size() - 1);
+        while (iterator.hasNext()) {
+            List<DataLoadBatch.Item<?>> storeItems = iterator.next();
+            if (storeItems.stream().anyMatch(item -> isJoinTransaction(item.getContext()))) {
+                callerItems.add(storeItems);
+            } else {
+                futures.add(dataLoadExecutor.submit(() -> {
+                    executeItems(storeItems);
+                    return null;
+                }));
+            }
+        }
+        for (List<DataLoadBatch.Item<?>> storeItems : callerItems) {
+            executeItems(storeItems);
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    protected boolean isJoinTransaction(DataLoadContext context) {
+        if (context instanceof LoadContext) {
+            return ((LoadContext) context).isJoinTransaction();
+        } else if (context instanceof ValueLoadContext) {
+            return ((ValueLoadContext) context).isJoinTransaction();
+        }
+        return false;
+    }
+
+    protected void executeItems(List<DataLoadBatch.Item<?>> items) {
+        for (DataLoadBatch.Item<?> item : items) {
+            item.execute(this);
+        }
+    }
+
     protected boolean entityHasDynamicAttributes(Entity entity) {
         return entity instanceof BaseGenericIdEntity
                 && ((BaseGenericIdEntity) entity).getDynamicAttributes() != null;
@@ -379,6 +463,15 @@ public class DataManagerBean implements DataManager {
         return getStoreName(metadata.getTools().getStoreName(metaClass));
     }
 
+    protected String getStoreName(DataLoadContext context) {
+        if (context instanceof LoadContext) {
+            return getStoreName(metadata.getClassNN(((LoadContext) context).getMetaClass()));
+        } else if (context instanceof ValueLoadContext) {
+            return getStoreName(((ValueLoadContext) context).getStoreName());
+        }
+        throw new IllegalArgumentException("Unsupported load context: " + context);
+    }
+
     protected String getStoreName(@Nullable String storeName) {
         return storeName == null ? StoreFactory.NULL_NAME : storeName;
     }
@@ -406,18 +499,49 @@ public class DataManagerBean implements DataManager {
             return dataManager.loadList(context);
         }
 
+        @Override
+        public <E extends Entity> Stream<E> loadStream(LoadContext<E> context) {
+            context.setAuthorizationRequired(true);
+            return dataManager.loadStream(context);
+        }
+
         @Override
         public List<KeyValueEntity> loadValues(ValueLoadContext context) {
             context.setAuthorizationRequired(true);
             return dataManager.loadValues(context);
         }
 
+        @Override
+        public ValueTable loadValueTable(ValueLoadContext context) {
+            context.setAuthorizationRequired(true);
+            return dataManager.loadValueTable(context);
+        }
+
         @Override
         public long getCount(LoadContext<? extends Entity> context) {
             context.setAuthorizationRequired(true);
             return dataManager.getCount(context);
         }
 
+        @Override
+        public <E extends Entity> CompletableFuture<List<E>> loadListAsync(LoadContext<E> context) {
+            context.setAuthorizationRequired(true);
+            return dataManager.loadListAsync(context);
+        }
+
+        @Override
+        public void executeBatch(DataLoadBatch batch) {
+            for (DataLoadBatch.Item<?> item : batch.getItems()) {
+                DataLoadContext context = item.getContext();
+                if (context instanceof LoadContext) {
+                    ((LoadContext) context).setAuthorizationRequired(true);
+                } else if (context instanceof ValueLoadContext) {
+                    ((ValueLoadContext) context).setAuthorizationRequired(true);
+                }
+            }
+            dataManager.executeBatch(batch);
+        }
+
         @Override
         public EntitySet commit(CommitContext context) {
             context.setAuthorizationRequired(true);
@@ -19,15 +19,19 @@ package com.haulmont.cuba.core.app;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.entity.KeyValueEntity;
 import com.haulmont.cuba.core.global.CommitContext;
+import com.haulmont.cuba.core.global.DataLoadBatch;
 import com.haulmont.cuba.core.global.DataManager;
 import com.haulmont.cuba.core.global.LoadContext;
 import com.haulmont.cuba.core.global.ValueLoadContext;
+import com.haulmont.cuba.core.global.ValueTable;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletionException;
 
 @Service(DataService.NAME)
 public class DataServiceBean implements DataService {
@@ -65,4 +69,26 @@ public class DataServiceBean implements DataService {
         context.setAuthorizationRequired(true);
         return dataManager.loadValues(context);
     }
-}
\ No newline at end of file
+
+    @Override
+    public ValueTable loadValueTable(ValueLoadContext context) {
+        context.setAuthorizationRequired(true);
+        return dataManager.loadValueTable(context);
+    }
+
+    @Override
+    public List<Object> executeBatch(DataLoadBatch batch) {
+        dataManager.secure().executeBatch(batch);
+
+        List<Object> results = new ArrayList<>(batch.getItems().size());
+        for (DataLoadBatch.Item<?> item : batch.getItems()) {
+            try {
+                results.add(item.getResult().join());
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+            }
+        }
+        return results;
+    }
+}
@@ -21,10 +21,12 @@ import com.haulmont.cuba.core.entity.KeyValueEntity;
 import com.haulmont.cuba.core.global.CommitContext;
 import com.haulmont.cuba.core.global.LoadContext;
 import com.haulmont.cuba.core.global.ValueLoadContext;
+import com.haulmont.cuba.core.global.ValueTable;
 
 import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Interface defining methods for storing and loading entities in a persistent storage.
@@ -47,6 +49,15 @@ public interface DataStore {
      */
     <E extends Entity> List<E> loadList(LoadContext<E> context);
 
+    /**
+     * Loads collection of entity instances as a stream which must be closed after use.
+     * By default, loads the whole list by {@link #loadList(LoadContext)}.
+     * @return a stream of instances
+     */
+    default <E extends Entity> Stream<E> loadStream(LoadContext<E> context) {
+        return loadList(context).stream();
+    }
+
     /**
      * Returns the number of entity instances for the given query passed in the {@link LoadContext}.
      * @return number of instances in the storage
@@ -65,4 +76,14 @@ public interface DataStore {
      * @return list of KeyValueEntity instances
      */
     List<KeyValueEntity> loadValues(ValueLoadContext context);
+
+    /**
+     * Loads key-value pairs into a table storing values by columns.
+     * By default, converts the result of {@link #loadValues(ValueLoadContext)}.
+     * @param context   defines a query for scalar values and a list of keys for the table columns
+     * @return table of values
+     */
+    default ValueTable loadValueTable(ValueLoadContext context) {
+        return ValueTable.of(context.getProperties(), context.getIdName(), loadValues(context));
+    }
 }
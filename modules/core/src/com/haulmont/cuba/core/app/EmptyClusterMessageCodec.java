@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Serializable;
+import java.util.function.Supplier;
+
+/**
+ * Codec of cluster messages which have no state, only the type id is sent to other nodes.
+ *
+ * @param <T> type of message
+ */
+public class EmptyClusterMessageCodec<T extends Serializable> implements ClusterMessageCodec<T> {
+
+    protected final int typeId;
+    protected final Class<T> messageClass;
+    protected final Supplier<T> factory;
+
+    public EmptyClusterMessageCodec(int typeId, Class<T> messageClass, Supplier<T> factory) {
+        this.typeId = typeId;
+        this.messageClass = messageClass;
+        this.factory = factory;
+    }
+
+    @Override
+    public int getTypeId() {
+        return typeId;
+    }
+
+    @Override
+    public Class<T> getMessageClass() {
+        return messageClass;
+    }
+
+    @Override
+    public void write(T message, DataOutput out) {
+    }
+
+    @Override
+    public T read(DataInput in) {
+        return factory.get();
+    }
+}
@@ -26,6 +26,7 @@ import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.PersistenceSecurity;
 import com.haulmont.cuba.core.Query;
+import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.global.queryconditions.Condition;
 import com.haulmont.cuba.core.global.queryconditions.ConditionJpqlGenerator;
@@ -58,6 +59,7 @@ public class JpqlQueryBuilder {
     protected String[] noConversionParams;
     protected Condition condition;
     protected Sort sort;
+    protected List<?> keysetValues;
 
     protected String entityName;
     protected List<String> valueProperties;
@@ -136,6 +138,11 @@ public class JpqlQueryBuilder {
         return this;
     }
 
+    public JpqlQueryBuilder setKeysetValues(List<?> keysetValues) {
+        this.keysetValues = keysetValues;
+        return this;
+    }
+
     public JpqlQueryBuilder setPreviousResults(UUID sessionId, int queryKey) {
         this.previousResults = true;
         this.sessionId = sessionId;
@@ -201,8 +208,13 @@ public class JpqlQueryBuilder {
                     resultQuery = String.format("select e from %s e where e.%s = :entityId", entityName, getPrimaryKeyProperty().getName());
                     resultParameters = Maps.newHashMap(ImmutableMap.of("entityId", id));
                 } else if (ids != null && !ids.isEmpty()) {
-                    resultQuery = String.format("select e from %s e where e.%s in :entityIds", entityName, getPrimaryKeyProperty().getName());
-                    resultParameters = Maps.newHashMap(ImmutableMap.of("entityIds", ids));
+                    MetaProperty primaryKeyProperty = getPrimaryKeyProperty();
+                    if (primaryKeyProperty.getRange().isClass()) {
+                        buildCompositeIdsQuery(primaryKeyProperty);
+                    } else {
+                        resultQuery = String.format("select e from %s e where e.%s in :entityIds", entityName, primaryKeyProperty.getName());
+                        resultParameters = Maps.newHashMap(ImmutableMap.of("entityIds", ids));
+                    }
                 } else {
                     resultQuery = String.format("select e from %s e", entityName);
                     resultParameters = Collections.emptyMap();
@@ -214,8 +226,45 @@ public class JpqlQueryBuilder {
         restrictByPreviousResults();
     }
 
+    /**
+     * JPQL does not support tuples in the IN expression, so the query for composite ids is built as
+     * {@code (e.id.a = :a0 and e.id.b = :b0) or (e.id.a = :a1 and e.id.b = :b1)}.
+     */
+    protected void buildCompositeIdsQuery(MetaProperty primaryKeyProperty) {
+        List<MetaProperty> idProperties = getCompositeIdProperties(primaryKeyProperty);
+        StringBuilder where = new StringBuilder();
+        resultParameters = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Entity id = (Entity) ids.get(i);
+            if (i > 0) {
+                where.append(" or ");
+            }
+            where.append("(");
+            for (int j = 0; j < idProperties.size(); j++) {
+                String propertyName = idProperties.get(j).getName();
+                String paramName = String.format("entityIds_%d_%d", i, j);
+                if (j > 0) {
+                    where.append(" and ");
+                }
+                where.append(String.format("e.%s.%s = :%s", primaryKeyProperty.getName(), propertyName, paramName));
+                resultParameters.put(paramName, id.getValue(propertyName));
+            }
+            where.append(")");
+        }
+        resultQuery = String.format("select e from %s e where %s", entityName, where);
+    }
+
+    protected List<MetaProperty> getCompositeIdProperties(MetaProperty primaryKeyProperty) {
+        return primaryKeyProperty.getRange().asClass().getProperties().stream()
+                .filter(property -> metadata.getTools().isPersistent(property))
+                .collect(Collectors.toList());
+    }
+
     protected void applySorting() {
-        if (sort != null) {
+        if (keysetValues != null) {
+            resultParameters = resultParameters == null ? new HashMap<>() : new HashMap<>(resultParameters);
+            resultQuery = sortJpqlGenerator.processKeysetQuery(entityName, resultQuery, sort, keysetValues, resultParameters);
+        } else if (sort != null) {
             resultQuery = sortJpqlGenerator.processQuery(entityName, valueProperties, resultQuery, sort);
         }
     }
@@ -73,8 +73,48 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
         }
     }
 
+    /**
+     * Writes unlock messages, i.e. lock infos without a user. Lock infos with a user are sent using the standard
+     * serialization.
+     */
+    private static class UnlockInfoCodec implements ClusterMessageCodec<LockInfo> {
+
+        @Override
+        public int getTypeId() {
+            return ClusterMessageType.UNLOCK.getTypeId();
+        }
+
+        @Override
+        public Class<LockInfo> getMessageClass() {
+            return LockInfo.class;
+        }
+
+        @Override
+        public boolean supports(LockInfo message) {
+            return message.getUser() == null;
+        }
+
+        @Override
+        public void write(LockInfo message, DataOutput out) throws IOException {
+            out.writeUTF(message.getEntityName());
+            out.writeBoolean(message.getEntityId() != null);
+            if (message.getEntityId() != null) {
+                out.writeUTF(message.getEntityId());
+            }
+        }
+
+        @Override
+        public LockInfo read(DataInput in) throws IOException {
+            String name = in.readUTF();
+            String id = in.readBoolean() ? in.readUTF() : null;
+            return new LockInfo(null, name, id);
+        }
+    }
+
     private static final Logger log = LoggerFactory.getLogger(LockManager.class);
 
+    private static final int STATE_RESET_INTERVAL = 1000;
+
     private volatile Map<String, LockDescriptor> config;
 
     private Map<LockKey, LockInfo> locks = new ConcurrentHashMap<>();
@@ -94,6 +134,9 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
     public void setClusterManager(ClusterManagerAPI clusterManager) {
         this.clusterManager = clusterManager;
         this.clusterManager.addListener(LockInfo.class, this);
+        this.clusterManager.registerCodec(new UnlockInfoCodec());
+        this.clusterManager.registerCoalescingKey(LockInfo.class,
+                lockInfo -> new LockKey(lockInfo.getEntityName(), lockInfo.getEntityId()));
     }
 
     private Map<String, LockDescriptor> getConfig() {
@@ -269,4 +312,31 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
             receive(lockInfo);
         }
     }
+
+    @Override
+    public void writeState(OutputStream out) throws IOException {
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        int size = 0;
+        for (LockInfo lockInfo : locks.values()) {
+            oos.writeBoolean(true);
+            oos.writeObject(lockInfo);
+            if (++size % STATE_RESET_INTERVAL == 0) {
+                oos.reset();
+            }
+        }
+        oos.writeBoolean(false);
+        oos.flush();
+    }
+
+    @Override
+    public void readState(InputStream in) throws IOException {
+        ObjectInputStream ois = new ObjectInputStream(in);
+        try {
+            while (ois.readBoolean()) {
+                receive((LockInfo) ois.readObject());
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Error deserializing LockInfo", e);
+        }
+    }
 }
\ No newline at end of file
@@ -16,6 +16,8 @@
 
 package com.haulmont.cuba.core.app;
 
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetaProperty;
@@ -29,6 +31,7 @@ import com.haulmont.cuba.core.app.queryresults.QueryResultsManagerAPI;
 import com.haulmont.cuba.core.entity.*;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.EntityFetcher;
+import com.haulmont.cuba.core.sys.persistence.DbmsSpecificFactory;
 import com.haulmont.cuba.core.sys.persistence.EntityChangedEventManager;
 import com.haulmont.cuba.security.entity.ConstraintOperationType;
 import com.haulmont.cuba.security.entity.EntityAttrAccess;
@@ -47,6 +50,8 @@ import java.util.*;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * INTERNAL.
@@ -221,7 +226,7 @@ public class RdbmsStore implements DataStore {
 
             List<E> entities;
             if (!context.getIds().isEmpty() && entityHasEmbeddedId(metaClass)) {
-                entities = loadBySeparateQueries(context, em, view);
+                entities = loadByCompositeIds(context, em, view, metaClass);
             } else {
                 Query query = createQuery(em, context, false, false);
                 query.setView(view);
@@ -266,11 +271,140 @@ public class RdbmsStore implements DataStore {
         return resultList;
     }
 
+    /**
+     * Reads instances from a database cursor in chunks of {@link ServerConfig#getLoadStreamFetchSize()} size.
+     * Each chunk is processed like the result of {@link #loadList(LoadContext)} and detached before it is passed
+     * to the stream. The transaction is kept open until the stream is closed.
+     */
+    @Override
+    public <E extends Entity> Stream<E> loadStream(LoadContext<E> context) {
+        if (log.isDebugEnabled())
+            log.debug("loadStream: metaClass=" + context.getMetaClass() + ", view=" + context.getView()
+                    + (context.getPrevQueries().isEmpty() ? "" : ", from selected")
+                    + ", query=" + (context.getQuery() == null ? null : JpqlQueryBuilder.printQuery(context.getQuery().getQueryString())));
+
+        MetaClass metaClass = metadata.getClassNN(context.getMetaClass());
+
+        if (isAuthorizationRequired(context) && !isEntityOpPermitted(metaClass, EntityOp.READ)) {
+            log.debug("reading of {} not permitted, returning empty stream", metaClass);
+            return Stream.empty();
+        }
+
+        if (!context.getIds().isEmpty()) {
+            // identifiers are already in memory, so the result is not large
+            return loadList(context).stream();
+        }
+
+        queryResultsManager.savePreviousQueryResults(context);
+
+        int fetchSize = serverConfig.getLoadStreamFetchSize();
+        Transaction tx = getLoadTransaction(context.isJoinTransaction());
+        try {
+            EntityManager em = persistence.getEntityManager(storeName);
+            em.setSoftDeletion(context.isSoftDeletion());
+
+            View view = createRestrictedView(context);
+            Query query = createQuery(em, context, false, false);
+            query.setView(view);
+
+            @SuppressWarnings("unchecked")
+            Stream<E> cursor = query.getResultStream(fetchSize);
+            Iterator<List<E>> chunks = Iterators.transform(
+                    Iterators.partition(cursor.iterator(), fetchSize),
+                    chunk -> processStreamChunk(context, em, view, chunk));
+
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED), false)
+                    .onClose(() -> {
+                        try {
+                            cursor.close();
+                            tx.commit();
+                        } finally {
+                            tx.close();
+                        }
+                    })
+                    .flatMap(List::stream);
+        } catch (RuntimeException e) {
+            tx.close();
+            throw e;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected <E extends Entity> List<E> processStreamChunk(LoadContext<E> context, EntityManager em, View view,
+                                                           List<E> chunk) {
+        List<E> entities = new ArrayList<>(chunk);
+        if (needToFilterByInMemoryReadConstraints(context)) {
+            security.filterByConstraints((Collection<Entity>) entities);
+        }
+
+        if (!entities.isEmpty() && entities.get(0) instanceof BaseGenericIdEntity && context.isLoadDynamicAttributes()) {
+            dynamicAttributesManagerAPI.fetchDynamicAttributes((List<BaseGenericIdEntity>) entities,
+                    collectEntityClassesWithDynamicAttributes(context.getView()));
+        }
+
+        boolean needToApplyInMemoryReadConstraints = needToApplyInMemoryReadConstraints(context);
+        if (needToApplyInMemoryReadConstraints) {
+            security.calculateFilteredData((Collection<Entity>) entities);
+        }
+
+        attributeSecurity.onLoad(entities, view);
+
+        if (context.isJoinTransaction()) {
+            em.flush();
+        }
+        // detach the whole chunk including filtered instances to release the persistence context
+        for (E entity : chunk) {
+            detachEntity(em, entity, view);
+        }
+
+        if (needToApplyInMemoryReadConstraints) {
+            security.applyConstraints((Collection<Entity>) entities);
+        }
+
+        if (context.isAuthorizationRequired()) {
+            attributeSecurity.afterLoad(entities);
+        }
+
+        return entities;
+    }
+
     protected boolean entityHasEmbeddedId(MetaClass metaClass) {
         MetaProperty pkProperty = metadataTools.getPrimaryKeyProperty(metaClass);
         return pkProperty == null || pkProperty.getRange().isClass();
     }
 
+    /**
+     * Loads instances by a list of composite ids using queries restricted by several ids at once. The number of ids
+     * in a query is limited by {@link com.haulmont.cuba.core.sys.persistence.DbmsFeatures#getMaxQueryParameters()}.
+     */
+    protected <E extends Entity> List<E> loadByCompositeIds(LoadContext<E> context, EntityManager em, View view,
+                                                           MetaClass metaClass) {
+        MetaProperty pkProperty = metadataTools.getPrimaryKeyProperty(metaClass);
+        if (pkProperty == null) {
+            return loadBySeparateQueries(context, em, view);
+        }
+        List<MetaProperty> idProperties = pkProperty.getRange().asClass().getProperties().stream()
+                .filter(property -> metadataTools.isPersistent(property))
+                .collect(Collectors.toList());
+        if (idProperties.isEmpty() || idProperties.stream().anyMatch(property -> property.getRange().isClass())) {
+            return loadBySeparateQueries(context, em, view);
+        }
+
+        int maxParameters = DbmsSpecificFactory.getDbmsFeatures(storeName).getMaxQueryParameters();
+        int chunkSize = Math.max(1, maxParameters / idProperties.size());
+
+        LoadContext<?> contextCopy = context.copy();
+        List<E> entities = new ArrayList<>(context.getIds().size());
+        for (List<?> ids : Lists.partition(context.getIds(), chunkSize)) {
+            contextCopy.setIds(ids);
+            Query query = createQuery(em, contextCopy, false, false);
+            query.setView(view);
+            List<E> list = executeQuery(query, false);
+            entities.addAll(list);
+        }
+        return entities;
+    }
+
     protected  <E extends Entity> List<E> loadBySeparateQueries(LoadContext<E> context, EntityManager em, View view) {
         LoadContext<?> contextCopy = context.copy();
         contextCopy.setIds(Collections.emptyList());
@@ -340,6 +474,7 @@ public class RdbmsStore implements DataStore {
                 }
                 context.getQuery().setFirstResult(0);
                 context.getQuery().setMaxResults(0);
+                context.getQuery().setKeysetValues(null);
 
                 Query query = createQuery(em, context, false, false);
                 query.setView(createRestrictedView(context));
@@ -389,6 +524,9 @@ public class RdbmsStore implements DataStore {
                 em.setSoftDeletion(false);
 
             List<BaseGenericIdEntity> entitiesToStoreDynamicAttributes = new ArrayList<>();
+            Map<View, View> restrictedViews = new IdentityHashMap<>();
+            Map<View, List<Entity>> persistedByView = new IdentityHashMap<>();
+            Map<View, List<Entity>> mergedByView = new IdentityHashMap<>();
 
             // persist new
             for (Entity entity : context.getCommitInstances()) {
@@ -404,9 +542,8 @@ public class RdbmsStore implements DataStore {
                         checkOperationPermitted(entity, ConstraintOperationType.CREATE);
 
                     if (!context.isDiscardCommitted()) {
-                        View view = getViewFromContextOrNull(context, entity);
-                        entityFetcher.fetch(entity, view, true);
-                        attributeSecurity.afterPersist(entity, view);
+                        View view = getViewFromContextOrNull(context, entity, restrictedViews);
+                        persistedByView.computeIfAbsent(view, v -> new ArrayList<>()).add(entity);
                     }
 
                     if (entityHasDynamicAttributes(entity)) {
@@ -433,12 +570,13 @@ public class RdbmsStore implements DataStore {
                     Entity merged = em.merge(entity);
                     saved.add(merged);
 
-                    entityFetcher.fetch(merged, getViewFromContext(context, entity));
-                    attributeSecurity.afterMerge(merged);
-
+                    // check before fetching the whole set, so a denied update does not load the other instances
                     if (isAuthorizationRequired(context))
                         checkOperationPermitted(merged, ConstraintOperationType.UPDATE);
 
+                    View view = getViewFromContext(context, entity, restrictedViews);
+                    mergedByView.computeIfAbsent(view, v -> new ArrayList<>()).add(merged);
+
                     if (entityHasDynamicAttributes(entity)) {
                         BaseGenericIdEntity originalBaseGenericIdEntity = (BaseGenericIdEntity) entity;
                         BaseGenericIdEntity mergedBaseGenericIdEntity = (BaseGenericIdEntity) merged;
@@ -448,6 +586,20 @@ public class RdbmsStore implements DataStore {
                 }
             }
 
+            // fetch persisted and merged instances once for the whole set
+            for (Map.Entry<View, List<Entity>> entry : persistedByView.entrySet()) {
+                entityFetcher.fetch(entry.getValue(), entry.getKey(), true);
+                for (Entity entity : entry.getValue()) {
+                    attributeSecurity.afterPersist(entity, entry.getKey());
+                }
+            }
+            for (Map.Entry<View, List<Entity>> entry : mergedByView.entrySet()) {
+                entityFetcher.fetch(entry.getValue(), entry.getKey(), false);
+                for (Entity merged : entry.getValue()) {
+                    attributeSecurity.afterMerge(merged);
+                }
+            }
+
             for (BaseGenericIdEntity entity : entitiesToStoreDynamicAttributes) {
                 dynamicAttributesManagerAPI.storeDynamicAttributes(entity);
             }
@@ -463,7 +615,7 @@ public class RdbmsStore implements DataStore {
                 if (entity instanceof SoftDelete) {
                     attributeSecurity.beforeMerge(entity);
                     e = em.merge(entity);
-                    entityFetcher.fetch(e, getViewFromContext(context, entity));
+                    entityFetcher.fetch(e, getViewFromContext(context, entity, restrictedViews));
                     attributeSecurity.afterMerge(e);
                 } else {
                     e = em.merge(entity);
@@ -537,8 +689,10 @@ public class RdbmsStore implements DataStore {
 
         if (!context.isDiscardCommitted()) {
             if (isAuthorizationRequired(context)) {
+                Set<Entity> persistedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+                persistedSet.addAll(persisted);
                 for (Entity entity : saved) {
-                    if (!persisted.contains(entity)) {
+                    if (!persistedSet.contains(entity)) {
                         attributeSecurity.afterCommit(entity);
                     }
                 }
@@ -554,14 +708,9 @@ public class RdbmsStore implements DataStore {
         Preconditions.checkNotNullArgument(context, "context is null");
         Preconditions.checkNotNullArgument(context.getQuery(), "query is null");
 
-        ValueLoadContext.Query contextQuery = context.getQuery();
+        logValuesQuery(context.getQuery());
 
-        if (log.isDebugEnabled())
-            log.debug("query: " + (JpqlQueryBuilder.printQuery(contextQuery.getQueryString()))
-                    + (contextQuery.getFirstResult() == 0 ? "" : ", first=" + contextQuery.getFirstResult())
-                    + (contextQuery.getMaxResults() == 0 ? "" : ", max=" + contextQuery.getMaxResults()));
-
-        QueryParser queryParser = queryTransformerFactory.parser(contextQuery.getQueryString());
+        QueryParser queryParser = queryTransformerFactory.parser(context.getQuery().getQueryString());
         if (isAuthorizationRequired(context) && !checkValueQueryPermissions(queryParser)) {
             return Collections.emptyList();
         }
@@ -574,25 +723,10 @@ public class RdbmsStore implements DataStore {
 
             List<String> keys = context.getProperties();
 
-            JpqlQueryBuilder queryBuilder = AppBeans.get(JpqlQueryBuilder.NAME);
-
-            queryBuilder.setValueProperties(context.getProperties())
-                    .setQueryString(contextQuery.getQueryString())
-                    .setCondition(contextQuery.getCondition())
-                    .setSort(contextQuery.getSort())
-                    .setQueryParameters(contextQuery.getParameters())
-                    .setNoConversionParams(contextQuery.getNoConversionParams());
-
-            Query query = queryBuilder.getQuery(em);
-
-            if (contextQuery.getFirstResult() != 0)
-                query.setFirstResult(contextQuery.getFirstResult());
-            if (contextQuery.getMaxResults() != 0)
-                query.setMaxResults(contextQuery.getMaxResults());
+            Query query = createValuesQuery(em, context);
 
             List resultList = query.getResultList();
-            List<Integer> notPermittedSelectIndexes = isAuthorizationRequired(context) ?
-                    getNotPermittedSelectIndexes(queryParser) : Collections.emptyList();
+            boolean[] notPermitted = getNotPermittedSelectMask(context, queryParser, keys.size());
             for (Object item : resultList) {
                 KeyValueEntity entity = new KeyValueEntity();
                 entity.setIdName(context.getIdName());
@@ -603,7 +737,7 @@ public class RdbmsStore implements DataStore {
                     for (int i = 0; i < keys.size(); i++) {
                         String key = keys.get(i);
                         if (row.length > i) {
-                            if (notPermittedSelectIndexes.contains(i)) {
+                            if (notPermitted[i]) {
                                 entity.setValue(key, null);
                             } else {
                                 entity.setValue(key, row[i]);
@@ -611,7 +745,7 @@ public class RdbmsStore implements DataStore {
                         }
                     }
                 } else if (!keys.isEmpty()) {
-                    if (!notPermittedSelectIndexes.isEmpty()) {
+                    if (notPermitted[0]) {
                         entity.setValue(keys.get(0), null);
                     } else {
                         entity.setValue(keys.get(0), item);
@@ -625,21 +759,110 @@ public class RdbmsStore implements DataStore {
         return entities;
     }
 
-    protected View getViewFromContext(CommitContext context, Entity entity) {
+    @Override
+    public ValueTable loadValueTable(ValueLoadContext context) {
+        Preconditions.checkNotNullArgument(context, "context is null");
+        Preconditions.checkNotNullArgument(context.getQuery(), "query is null");
+
+        logValuesQuery(context.getQuery());
+
+        List<String> keys = context.getProperties();
+
+        QueryParser queryParser = queryTransformerFactory.parser(context.getQuery().getQueryString());
+        if (isAuthorizationRequired(context) && !checkValueQueryPermissions(queryParser)) {
+            return new ValueTable.Builder(keys, context.getIdName(), 0).build();
+        }
+
+        ValueTable.Builder builder;
+
+        try (Transaction tx = getLoadTransaction(context.isJoinTransaction())) {
+            EntityManager em = persistence.getEntityManager(storeName);
+            em.setSoftDeletion(context.isSoftDeletion());
+
+            Query query = createValuesQuery(em, context);
+
+            List resultList = query.getResultList();
+            builder = new ValueTable.Builder(keys, context.getIdName(), resultList.size());
+            boolean[] notPermitted = getNotPermittedSelectMask(context, queryParser, keys.size());
+            for (int i = 0; i < notPermitted.length; i++) {
+                if (notPermitted[i]) {
+                    builder.maskColumn(i);
+                }
+            }
+            for (Object item : resultList) {
+                builder.addRow(item);
+            }
+
+            tx.commit();
+        }
+
+        return builder.build();
+    }
+
+    protected void logValuesQuery(ValueLoadContext.Query contextQuery) {
+        if (log.isDebugEnabled())
+            log.debug("query: " + (JpqlQueryBuilder.printQuery(contextQuery.getQueryString()))
+                    + (contextQuery.getFirstResult() == 0 ? "" : ", first=" + contextQuery.getFirstResult())
+                    + (contextQuery.getMaxResults() == 0 ? "" : ", max=" + contextQuery.getMaxResults()));
+    }
+
+    protected Query createValuesQuery(EntityManager em, ValueLoadContext context) {
+        ValueLoadContext.Query contextQuery = context.getQuery();
+
+        JpqlQueryBuilder queryBuilder = AppBeans.get(JpqlQueryBuilder.NAME);
+
+        queryBuilder.setValueProperties(context.getProperties())
+                .setQueryString(contextQuery.getQueryString())
+                .setCondition(contextQuery.getCondition())
+                .setSort(contextQuery.getSort())
+                .setQueryParameters(contextQuery.getParameters())
+                .setNoConversionParams(contextQuery.getNoConversionParams());
+
+        Query query = queryBuilder.getQuery(em);
+
+        if (contextQuery.getFirstResult() != 0)
+            query.setFirstResult(contextQuery.getFirstResult());
+        if (contextQuery.getMaxResults() != 0)
+            query.setMaxResults(contextQuery.getMaxResults());
+
+        return query;
+    }
+
+    /**
+     * @return array of {@code size} elements with true at the indexes of select expressions which are not permitted
+     */
+    protected boolean[] getNotPermittedSelectMask(ValueLoadContext context, QueryParser queryParser, int size) {
+        boolean[] mask = new boolean[size];
+        if (isAuthorizationRequired(context)) {
+            for (Integer index : getNotPermittedSelectIndexes(queryParser)) {
+                if (index < size) {
+                    mask[index] = true;
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @param restrictedViews cache of views restricted by attribute permissions, used within a single commit
+     */
+    protected View getViewFromContext(CommitContext context, Entity entity, Map<View, View> restrictedViews) {
         View view = context.getViews().get(entity);
         if (view == null) {
             view = viewRepository.getView(entity.getClass(), View.LOCAL);
         }
-        return isAuthorizationRequired(context) ? attributeSecurity.createRestrictedView(view) : view;
+        return isAuthorizationRequired(context) ?
+                restrictedViews.computeIfAbsent(view, attributeSecurity::createRestrictedView) : view;
     }
 
     @Nullable
-    protected View getViewFromContextOrNull(CommitContext context, Entity entity) {
+    protected View getViewFromContextOrNull(CommitContext context, Entity entity, Map<View, View> restrictedViews) {
         View view = context.getViews().get(entity);
         if (view == null) {
             return null;
         }
-        return isAuthorizationRequired(context) ? attributeSecurity.createRestrictedView(view) : view;
+        return isAuthorizationRequired(context) ?
+                restrictedViews.computeIfAbsent(view, attributeSecurity::createRestrictedView) : view;
     }
 
     protected void checkOperationPermitted(Entity entity, ConstraintOperationType operationType) {
@@ -672,7 +895,8 @@ public class RdbmsStore implements DataStore {
                     .setQueryParameters(contextQuery.getParameters())
                     .setNoConversionParams(contextQuery.getNoConversionParams());
             if (!countQuery) {
-                queryBuilder.setSort(contextQuery.getSort());
+                queryBuilder.setSort(contextQuery.getSort())
+                        .setKeysetValues(contextQuery.getKeysetValues());
             }
         }
 
@@ -705,7 +929,8 @@ public class RdbmsStore implements DataStore {
     protected View createRestrictedView(LoadContext<?> context) {
         View view = context.getView() != null ? context.getView() :
                 viewRepository.getView(metadata.getClassNN(context.getMetaClass()), View.BASE);
-        View copy = View.copy(isAuthorizationRequired(context) ? attributeSecurity.createRestrictedView(view) : view);
+        // views from the repository are not deep-copied, they keep sharing sealed properties and structure signature
+        View copy = View.copyOnWrite(isAuthorizationRequired(context) ? attributeSecurity.createRestrictedView(view) : view);
         if (context.isLoadPartialEntities()
                 && !needToApplyInMemoryReadConstraints(context)
                 && !needToFilterByInMemoryReadConstraints(context)
@@ -956,36 +1181,49 @@ public class RdbmsStore implements DataStore {
      * @param committed all committed entities
      */
     protected void updateReferences(Collection<Entity> persisted, Collection<Entity> committed) {
+        Map<MetaClass, Map<Object, Entity>> committedByClass = new HashMap<>();
+        for (Entity entity : committed) {
+            if (entity.getId() != null) {
+                committedByClass.computeIfAbsent(entity.getMetaClass(), metaClass -> new HashMap<>())
+                        .put(entity.getId(), entity);
+            }
+        }
         for (Entity persistedEntity : persisted) {
-            for (Entity entity : committed) {
-                if (entity != persistedEntity) {
-                    updateReferences(persistedEntity, entity, new HashSet<>());
-                }
+            for (Map.Entry<MetaClass, Map<Object, Entity>> entry : committedByClass.entrySet()) {
+                updateReferences(persistedEntity, persistedEntity, entry.getKey(), entry.getValue(), new HashSet<>());
             }
         }
     }
 
-    protected void updateReferences(Entity entity, Entity refEntity, Set<Entity> visited) {
-        if (entity == null || refEntity == null || visited.contains(entity))
+    /**
+     * Replaces references of the given meta-class by committed instances with the same ids.
+     *
+     * @param root         persisted entity which graph is traversed; it doesn't replace references to itself
+     * @param refMetaClass meta-class of the committed instances
+     * @param refEntities  committed instances by id
+     */
+    protected void updateReferences(Entity entity, Entity root, MetaClass refMetaClass, Map<Object, Entity> refEntities,
+                                    Set<Entity> visited) {
+        if (entity == null || visited.contains(entity))
             return;
         visited.add(entity);
 
-        MetaClass refEntityMetaClass = refEntity.getMetaClass();
         for (MetaProperty property : entity.getMetaClass().getProperties()) {
-            if (!property.getRange().isClass() || !property.getRange().asClass().equals(refEntityMetaClass))
+            if (!property.getRange().isClass() || !property.getRange().asClass().equals(refMetaClass))
                 continue;
             if (entityStates.isLoaded(entity, property.getName())) {
                 if (property.getRange().getCardinality().isMany()) {
                     Collection collection = entity.getValue(property.getName());
                     if (collection != null) {
                         for (Object obj : collection) {
-                            updateReferences((Entity) obj, refEntity, visited);
+                            updateReferences((Entity) obj, root, refMetaClass, refEntities, visited);
                         }
                     }
                 } else {
                     Entity value = entity.getValue(property.getName());
                     if (value != null) {
-                        if (value.getId().equals(refEntity.getId())) {
+                        Entity refEntity = value.getId() != null ? refEntities.get(value.getId()) : null;
+                        if (refEntity != null && refEntity != root) {
                             if (entity instanceof AbstractInstance) {
                                 if (property.isReadOnly() && metadataTools.isNotPersistent(property)) {
                                     continue;
@@ -993,7 +1231,7 @@ public class RdbmsStore implements DataStore {
                                 ((AbstractInstance) entity).setValue(property.getName(), refEntity, false);
                             }
                         } else {
-                            updateReferences(value, refEntity, visited);
+                            updateReferences(value, root, refMetaClass, refEntities, visited);
                         }
                     }
                 }
@@ -270,6 +270,22 @@ public interface ServerConfig extends Config {
     @DefaultInt(50)
     int getCrossDataStoreReferenceLoadingBatchSize();
 
+    /**
+     * @return whether to load related entities from different data stores concurrently, one task per data store.
+     * Not applied when loading joins the current transaction.
+     */
+    @Property("cuba.crossDataStoreReferenceLoadingParallel")
+    @Source(type = SourceType.DATABASE)
+    @DefaultBoolean(false)
+    boolean getCrossDataStoreReferenceLoadingParallel();
+
+    /**
+     * @return maximum number of threads loading data from data stores concurrently, see {@link DataLoadExecutor}
+     */
+    @Property("cuba.dataLoadThreadPoolSize")
+    @DefaultInt(10)
+    int getDataLoadThreadPoolSize();
+
     /**
      * @return use read-only transactions in {@code DataManager} load operations and do not commit them
      */
@@ -309,6 +325,35 @@ public interface ServerConfig extends Config {
     @DefaultBoolean(true)
     boolean getDataManagerBeanValidation();
 
+    /**
+     * Maximum number of JPQL transformation results cached by {@code QueryImpl}, 0 disables the cache.
+     */
+    @Property("cuba.jpqlTransformedQueryCacheSize")
+    @DefaultInt(1000)
+    int getJpqlTransformedQueryCacheSize();
+
+    /**
+     * Maximum number of queries with applied security constraints cached by {@code ConstraintQueryCache},
+     * 0 disables the cache.
+     */
+    @Property("cuba.constraintQueryCacheSize")
+    @DefaultInt(1000)
+    int getConstraintQueryCacheSize();
+
+    /**
+     * Maximum number of fetch group descriptions cached by {@code FetchGroupManager}, 0 disables the cache.
+     */
+    @Property("cuba.fetchGroupCacheSize")
+    @DefaultInt(1000)
+    int getFetchGroupCacheSize();
+
+    /**
+     * Number of rows fetched from the database at once and processed together by {@code DataManager.loadStream()}.
+     */
+    @Property("cuba.loadStreamFetchSize")
+    @DefaultInt(1000)
+    int getLoadStreamFetchSize();
+
     /**
      * Deactivating switch for {@code EntityNotEnhancedException}. By default on application start entities
      * will be checked for Cuba and EclipseLink enhancing interfaces. If any interfaces are missing,
@@ -24,6 +24,7 @@ import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.persistence.DbmsSpecificFactory;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -34,6 +35,8 @@ import static com.haulmont.bali.util.Preconditions.checkNotNullArgument;
 public class SortJpqlGenerator {
     public static final String NAME = "cuba_SortJpqlGenerator";
 
+    public static final String KEYSET_PARAM_PREFIX = "_keyset";
+
     @Inject
     protected Metadata metadata;
     @Inject
@@ -76,6 +79,100 @@ public class SortJpqlGenerator {
         return transformQuery(queryString, sortExpressions, asc);
     }
 
+    /**
+     * Sorts the query by the given sort and the entity id and restricts it by instances following the given key
+     * in this order. Parameters of the restriction are added to the given map. An empty key means the first page,
+     * so only the sorting is applied.
+     * <p>
+     * Sort expressions of {@link JpqlSortExpressionProvider} are not used, because the restriction compares
+     * the attributes themselves. For the same reason, all sort attributes must be mandatory: a NULL value would
+     * not satisfy the restriction, and its position in the order depends on the DBMS.
+     */
+    public String processKeysetQuery(String entityName, String queryString, @Nullable Sort sort,
+                                     List<?> keysetValues, Map<String, Object> parameters) {
+        checkNotNullArgument(entityName, "Keyset pagination is supported only for entity queries");
+        MetaClass metaClass = metadata.getClassNN(entityName);
+
+        List<Sort.Order> orders = sort != null ? sort.getOrders() : Collections.emptyList();
+        Set<Sort.Direction> directions = orders.stream()
+                .map(Sort.Order::getDirection)
+                .collect(Collectors.toSet());
+        if (directions.size() > 1) {
+            throw new UnsupportedOperationException("Sorting by multiple properties in different directions is not supported");
+        }
+        boolean asc = !directions.contains(Sort.Direction.DESC);
+
+        List<String> keyExpressions = new ArrayList<>(orders.size() + 1);
+        for (Sort.Order order : orders) {
+            MetaPropertyPath metaPropertyPath = metaClass.getPropertyPath(order.getProperty());
+            checkNotNullArgument(metaPropertyPath, "Could not resolve property path '%s' in '%s'", order.getProperty(), metaClass);
+
+            if (!metadataTools.isPersistent(metaPropertyPath)
+                    || !isMandatory(metaPropertyPath)
+                    || metaPropertyPath.getRange().isClass()
+                    || metadataTools.isLob(metaPropertyPath.getMetaProperty())) {
+                throw new UnsupportedOperationException(String.format(
+                        "Keyset pagination is not supported for sorting by '%s' in '%s'", order.getProperty(), metaClass));
+            }
+            keyExpressions.add(String.format("{E}.%s", metaPropertyPath.toString()));
+        }
+
+        MetaProperty primaryKeyProperty = metadataTools.getPrimaryKeyProperty(metaClass);
+        if (primaryKeyProperty == null || primaryKeyProperty.getRange().isClass()) {
+            throw new UnsupportedOperationException(
+                    String.format("Keyset pagination is not supported for '%s' without a simple primary key", metaClass));
+        }
+        keyExpressions.add(String.format("{E}.%s", primaryKeyProperty.getName()));
+
+        QueryTransformer transformer = queryTransformerFactory.transformer(queryString);
+        transformer.replaceOrderByExpressions(!asc, keyExpressions.toArray(new String[0]));
+        if (!keysetValues.isEmpty()) {
+            if (keysetValues.size() != keyExpressions.size()) {
+                throw new IllegalArgumentException(String.format("Expected %s keyset values for %s, got %s",
+                        keyExpressions.size(), keyExpressions, keysetValues.size()));
+            }
+            transformer.addWhere(getKeysetCondition(keyExpressions, keysetValues, asc, parameters));
+        }
+        return transformer.getResult();
+    }
+
+    protected boolean isMandatory(MetaPropertyPath metaPropertyPath) {
+        for (MetaProperty metaProperty : metaPropertyPath.getMetaProperties()) {
+            if (!metaProperty.isMandatory()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the row value comparison {@code (a, b) > (:a0, :b1)} expanded to
+     * {@code (a > :a0 or (a = :a0 and b > :b1))}, because JPQL does not support row values.
+     */
+    protected String getKeysetCondition(List<String> keyExpressions, List<?> keysetValues, boolean asc,
+                                        Map<String, Object> parameters) {
+        String operator = asc ? ">" : "<";
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < keyExpressions.size(); i++) {
+            Object value = keysetValues.get(i);
+            if (value == null) {
+                throw new IllegalArgumentException("Keyset value is null for " + keyExpressions.get(i));
+            }
+            parameters.put(KEYSET_PARAM_PREFIX + i, value);
+
+            if (i > 0) {
+                sb.append(" or ");
+            }
+            sb.append("(");
+            for (int j = 0; j < i; j++) {
+                sb.append(keyExpressions.get(j)).append(" = :").append(KEYSET_PARAM_PREFIX).append(j).append(" and ");
+            }
+            sb.append(keyExpressions.get(i)).append(' ').append(operator).append(" :").append(KEYSET_PARAM_PREFIX).append(i);
+            sb.append(")");
+        }
+        return sb.append(")").toString();
+    }
+
     protected String transformQuery(String queryString, List<String> sortExpressions, boolean asc) {
         if (!sortExpressions.isEmpty()) {
             QueryTransformer transformer = queryTransformerFactory.transformer(queryString);
@@ -27,6 +27,8 @@ import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.TypedQuery;
 import com.haulmont.cuba.core.app.ClusterListenerAdapter;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ClusterMessageType;
+import com.haulmont.cuba.core.app.EmptyClusterMessageCodec;
 import com.haulmont.cuba.core.entity.*;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.security.entity.EntityOp;
@@ -88,6 +90,9 @@ public class DynamicAttributesManager implements DynamicAttributesManagerAPI {
                 doLoadCache(false, false);
             }
         });
+        clusterManager.registerCodec(new EmptyClusterMessageCodec<>(ClusterMessageType.RELOAD_DYNAMIC_ATTRIBUTES_CACHE.getTypeId(),
+                ReloadCacheMsg.class, ReloadCacheMsg::new));
+        clusterManager.registerCoalescingKey(ReloadCacheMsg.class, message -> ReloadCacheMsg.class);
     }
 
     @Override
@@ -19,6 +19,8 @@ package com.haulmont.cuba.core.app.execution;
 
 import com.haulmont.cuba.core.app.ClusterListener;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ClusterMessageCodec;
+import com.haulmont.cuba.core.app.ClusterMessageType;
 import com.haulmont.cuba.core.global.TimeSource;
 import com.haulmont.cuba.core.global.UserSessionSource;
 import com.haulmont.cuba.security.app.UserSessionsAPI;
@@ -29,6 +31,9 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -54,6 +59,7 @@ public class ExecutionsImpl implements Executions {
     @PostConstruct
     public void init() {
         clusterManager.addListener(CancelExecutionMessage.class, new CancelExecutionClusterListener());
+        clusterManager.registerCodec(new CancelExecutionMessageCodec());
     }
 
     protected static class CancelExecutionMessage implements Serializable {
@@ -70,6 +76,51 @@ public class ExecutionsImpl implements Executions {
         }
     }
 
+    protected static class CancelExecutionMessageCodec implements ClusterMessageCodec<CancelExecutionMessage> {
+
+        @Override
+        public int getTypeId() {
+            return ClusterMessageType.CANCEL_EXECUTION.getTypeId();
+        }
+
+        @Override
+        public Class<CancelExecutionMessage> getMessageClass() {
+            return CancelExecutionMessage.class;
+        }
+
+        @Override
+        public boolean supports(CancelExecutionMessage message) {
+            return message.userSessionId != null;
+        }
+
+        @Override
+        public void write(CancelExecutionMessage message, DataOutput out) throws IOException {
+            out.writeLong(message.userSessionId.getMostSignificantBits());
+            out.writeLong(message.userSessionId.getLeastSignificantBits());
+            writeNullableString(message.group, out);
+            writeNullableString(message.key, out);
+        }
+
+        @Override
+        public CancelExecutionMessage read(DataInput in) throws IOException {
+            UUID userSessionId = new UUID(in.readLong(), in.readLong());
+            String group = readNullableString(in);
+            String key = readNullableString(in);
+            return new CancelExecutionMessage(userSessionId, group, key);
+        }
+
+        protected void writeNullableString(String value, DataOutput out) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+
+        protected String readNullableString(DataInput in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+
     public ExecutionContext startExecution(String key, String group) {
         if (ExecutionContextHolder.getCurrentContext() != null) {
             throw new IllegalStateException("Execution context already started");
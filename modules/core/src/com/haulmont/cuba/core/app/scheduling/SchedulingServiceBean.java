@@ -23,6 +23,8 @@ import com.haulmont.cuba.core.Query;
 import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.app.ClusterListenerAdapter;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ClusterMessageCodec;
+import com.haulmont.cuba.core.app.ClusterMessageType;
 import com.haulmont.cuba.core.app.SchedulingService;
 import com.haulmont.cuba.core.app.scheduled.MethodInfo;
 import com.haulmont.cuba.core.entity.ScheduledTask;
@@ -30,6 +32,9 @@ import com.haulmont.cuba.security.entity.User;
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -59,6 +64,8 @@ public class SchedulingServiceBean implements SchedulingService {
                 scheduling.setActive(message.active);
             }
         });
+        clusterManager.registerCodec(new SetSchedulingActiveMsgCodec());
+        clusterManager.registerCoalescingKey(SetSchedulingActiveMsg.class, message -> SetSchedulingActiveMsg.class);
     }
 
     @Override
@@ -141,4 +148,27 @@ public class SchedulingServiceBean implements SchedulingService {
                     '}';
         }
     }
+
+    public static class SetSchedulingActiveMsgCodec implements ClusterMessageCodec<SetSchedulingActiveMsg> {
+
+        @Override
+        public int getTypeId() {
+            return ClusterMessageType.SET_SCHEDULING_ACTIVE.getTypeId();
+        }
+
+        @Override
+        public Class<SetSchedulingActiveMsg> getMessageClass() {
+            return SetSchedulingActiveMsg.class;
+        }
+
+        @Override
+        public void write(SetSchedulingActiveMsg message, DataOutput out) throws IOException {
+            out.writeBoolean(message.active);
+        }
+
+        @Override
+        public SetSchedulingActiveMsg read(DataInput in) throws IOException {
+            return new SetSchedulingActiveMsg(in.readBoolean());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.jmx;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * JMX interface for attribute access handlers invoked by {@link com.haulmont.cuba.core.app.AttributeSecuritySupport}.
+ */
+@ManagedResource(description = "Provides statistics of attribute access handlers")
+public interface AttributeAccessHandlersMBean {
+
+    @ManagedAttribute(description = "Number of SetupAttributeAccessHandler beans")
+    int getHandlerCount();
+
+    @ManagedOperation(description = "Print number of invocations and time spent by each handler")
+    String printStatistics();
+
+    @ManagedOperation(description = "Reset handler statistics")
+    String resetStatistics();
+}
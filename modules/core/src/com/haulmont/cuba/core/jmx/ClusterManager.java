@@ -82,6 +82,26 @@ public class ClusterManager implements ClusterManagerMBean {
         return clusterManager.getMessagesCount();
     }
 
+    @Override
+    public long getSentBatches() {
+        return clusterManager.getSentBatches();
+    }
+
+    @Override
+    public double getAverageBatchSize() {
+        return clusterManager.getAverageBatchSize();
+    }
+
+    @Override
+    public long getCoalescedMessages() {
+        return clusterManager.getCoalescedMessages();
+    }
+
+    @Override
+    public long getOverflowedMessages() {
+        return clusterManager.getOverflowedMessages();
+    }
+
     @Override
     public String printSharedStateStat() {
         return clusterManager.printSharedStateStat();
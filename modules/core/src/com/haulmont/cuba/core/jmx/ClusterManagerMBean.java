@@ -61,6 +61,30 @@ public interface ClusterManagerMBean {
      */
     int getMessagesCount();
 
+    /**
+     * @return number of batches sent asynchronously
+     * @see com.haulmont.cuba.core.app.ClusterManagerAPI#getSentBatches()
+     */
+    long getSentBatches();
+
+    /**
+     * @return average number of messages in a batch
+     * @see com.haulmont.cuba.core.app.ClusterManagerAPI#getAverageBatchSize()
+     */
+    double getAverageBatchSize();
+
+    /**
+     * @return number of queued messages replaced by newer ones
+     * @see com.haulmont.cuba.core.app.ClusterManagerAPI#getCoalescedMessages()
+     */
+    long getCoalescedMessages();
+
+    /**
+     * @return number of messages sent in the calling thread because the queue was full
+     * @see com.haulmont.cuba.core.app.ClusterManagerAPI#getOverflowedMessages()
+     */
+    long getOverflowedMessages();
+
     @ManagedOperation(description = "Shared state statistics")
     String printSharedStateStat();
 
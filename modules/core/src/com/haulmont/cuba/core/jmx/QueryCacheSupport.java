@@ -40,6 +40,11 @@ public class QueryCacheSupport implements QueryCacheSupportMBean {
         return queryCache.getMaxSize();
     }
 
+    @Override
+    public long getMaxWeight() {
+        return queryCache.getMaxWeight();
+    }
+
     @Override
     public long getSize() {
         return queryCache.size();
@@ -21,9 +21,13 @@ import org.springframework.jmx.export.annotation.*;
 @ManagedResource(description = "Manages query cache")
 public interface QueryCacheSupportMBean {
 
-    @ManagedAttribute(description = "Maximum number of cached queries")
+    @ManagedAttribute(description = "Maximum number of cached queries, 0 if the cache is limited by weight")
     long getMaxSize();
 
+    @ManagedAttribute(description = "Maximum total weight of cached query results, " +
+            "0 if the cache is limited by number of queries")
+    long getMaxWeight();
+
     @ManagedAttribute(description = "Current number of cached queries")
     long getSize();
 
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.jmx;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * JMX interface for {@link com.haulmont.cuba.core.sys.jpql.QueryTreeCache}.
+ */
+@ManagedResource(description = "Manages cache of parsed JPQL queries")
+public interface QueryTreeCacheSupportMBean {
+
+    @ManagedAttribute(description = "Maximum number of cached query trees")
+    long getMaxSize();
+
+    @ManagedAttribute(description = "Current number of cached query trees")
+    long getSize();
+
+    @ManagedAttribute(description = "Number of times a query tree was taken from the cache")
+    long getHitCount();
+
+    @ManagedAttribute(description = "Number of times a query had to be parsed")
+    long getMissCount();
+
+    @ManagedAttribute(description = "Number of query trees evicted from the cache due to size limit")
+    long getEvictionCount();
+
+    @ManagedOperation(description = "Print cache statistics")
+    String printStatistics();
+
+    @ManagedOperation(description = "Discard all query trees in the cache")
+    String evictAll();
+}
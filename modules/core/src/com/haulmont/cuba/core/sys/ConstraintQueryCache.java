@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.haulmont.cuba.core.app.ServerConfig;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Caches queries rewritten by {@link PersistenceSecurityImpl#applyConstraints(com.haulmont.cuba.core.Query)}.
+ * <p>
+ * The rewritten query depends only on the query string and on the database constraints of the user session. Sessions
+ * sharing permissions and constraints are identified by the fingerprint of their
+ * {@link com.haulmont.cuba.security.global.UserSessionSecurityData}, so repeated secured queries of such sessions
+ * reuse the rewritten query string and the list of added parameters instead of applying constraints again.
+ * Constraints are loaded into the session on login, so editing constraints changes the fingerprint of new sessions
+ * only. Existing sessions keep using their own constraints, and their entries are evicted when the cache is full.
+ * <p>
+ * The cache size is determined by the {@code cuba.constraintQueryCacheSize} app property, 0 disables caching.
+ */
+@Component(ConstraintQueryCache.NAME)
+public class ConstraintQueryCache {
+
+    public static final String NAME = "cuba_ConstraintQueryCache";
+
+    @Inject
+    protected ServerConfig serverConfig;
+
+    protected Cache<Key, Rewrite> cache;
+
+    protected long maxSize;
+
+    public static class Key {
+        protected final String securityDataFingerprint;
+        protected final String queryString;
+        protected final int hashCode;
+
+        public Key(String securityDataFingerprint, String queryString) {
+            this.securityDataFingerprint = securityDataFingerprint;
+            this.queryString = queryString;
+            this.hashCode = Objects.hash(securityDataFingerprint, queryString);
+        }
+
+        public String getSecurityDataFingerprint() {
+            return securityDataFingerprint;
+        }
+
+        public String getQueryString() {
+            return queryString;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return hashCode == key.hashCode
+                    && queryString.equals(key.queryString)
+                    && securityDataFingerprint.equals(key.securityDataFingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("securityDataFingerprint", securityDataFingerprint)
+                    .add("queryString", queryString)
+                    .toString();
+        }
+    }
+
+    public static class Rewrite {
+        /**
+         * Result for queries of entities without database constraints.
+         */
+        public static final Rewrite NONE = new Rewrite(null, ImmutableList.of());
+
+        protected final String queryString;
+        protected final List<String> addedParams;
+
+        public Rewrite(@Nullable String queryString, List<String> addedParams) {
+            this.queryString = queryString;
+            this.addedParams = ImmutableList.copyOf(addedParams);
+        }
+
+        /**
+         * @return true if constraints have been applied to the query
+         */
+        public boolean isApplied() {
+            return queryString != null;
+        }
+
+        /**
+         * @return query string with constraints applied
+         */
+        @Nullable
+        public String getQueryString() {
+            return queryString;
+        }
+
+        /**
+         * @return names of session attribute parameters added by constraints
+         */
+        public List<String> getAddedParams() {
+            return addedParams;
+        }
+    }
+
+    @PostConstruct
+    protected void init() {
+        maxSize = serverConfig.getConstraintQueryCacheSize();
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    @Nullable
+    public Rewrite get(Key key) {
+        return isEnabled() ? cache.getIfPresent(key) : null;
+    }
+
+    public void put(Key key, Rewrite rewrite) {
+        if (isEnabled()) {
+            cache.put(key, rewrite);
+        }
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+}
@@ -16,15 +16,19 @@
 
 package com.haulmont.cuba.core.sys;
 
+import com.google.common.collect.Lists;
 import com.haulmont.chile.core.model.Instance;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Persistence;
 import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.TypedQuery;
 import com.haulmont.cuba.core.entity.EmbeddableEntity;
 import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.IdProxy;
 import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.persistence.DbmsSpecificFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -63,7 +67,7 @@ public class EntityFetcher {
     public void fetch(Entity instance, View view) {
         if (view == null)
             return;
-        fetch(instance, view, new HashMap<>(), false);
+        fetch(Collections.singletonList(instance), view, new HashMap<>(), false);
     }
 
     /**
@@ -73,7 +77,7 @@ public class EntityFetcher {
         if (viewName == null)
             return;
         View view = viewRepository.getView(instance.getClass(), viewName);
-        fetch(instance, view, new HashMap<>(), false);
+        fetch(Collections.singletonList(instance), view, new HashMap<>(), false);
     }
 
     /**
@@ -86,7 +90,7 @@ public class EntityFetcher {
     public void fetch(Entity instance, View view, boolean optimizeForDetached) {
         if (view == null)
             return;
-        fetch(instance, view, new HashMap<>(), optimizeForDetached);
+        fetch(Collections.singletonList(instance), view, new HashMap<>(), optimizeForDetached);
     }
 
     /**
@@ -100,10 +104,55 @@ public class EntityFetcher {
         if (viewName == null)
             return;
         View view = viewRepository.getView(instance.getClass(), viewName);
-        fetch(instance, view, new HashMap<>(), optimizeForDetached);
+        fetch(Collections.singletonList(instance), view, new HashMap<>(), optimizeForDetached);
     }
 
-    protected void fetch(Entity entity, View view, Map<Instance, Set<View>> visited, boolean optimizeForDetached) {
+    /**
+     * Fetch a collection of instances by view object.
+     */
+    public void fetch(Collection<? extends Entity> instances, View view) {
+        if (view == null)
+            return;
+        fetch(instances, view, new HashMap<>(), false);
+    }
+
+    /**
+     * Fetch a collection of instances by view object. References shared by the instances are fetched once.
+     *
+     * @param optimizeForDetached if true, detached objects encountered in the graph will be first checked whether all
+     *                            required attributes are already loaded, and reloaded only when needed.
+     *                            If the argument is false, all detached objects are reloaded anyway.
+     */
+    public void fetch(Collection<? extends Entity> instances, View view, boolean optimizeForDetached) {
+        if (view == null)
+            return;
+        fetch(instances, view, new HashMap<>(), optimizeForDetached);
+    }
+
+    /**
+     * Fetches the graph level by level. Detached references found on a level are reloaded by one query
+     * per entity class, then the next level is fetched.
+     */
+    protected void fetch(Collection<? extends Entity> instances, View view, Map<Instance, Set<View>> visited,
+                         boolean optimizeForDetached) {
+        Map<View, List<Entity>> level = new IdentityHashMap<>();
+        level.put(view, new ArrayList<>(instances));
+
+        while (!level.isEmpty()) {
+            Map<View, List<Entity>> nextLevel = new IdentityHashMap<>();
+            List<DetachedReference> detachedReferences = new ArrayList<>();
+            for (Map.Entry<View, List<Entity>> entry : level.entrySet()) {
+                for (Entity entity : entry.getValue()) {
+                    fetch(entity, entry.getKey(), visited, optimizeForDetached, nextLevel, detachedReferences);
+                }
+            }
+            reloadDetached(detachedReferences, nextLevel);
+            level = nextLevel;
+        }
+    }
+
+    protected void fetch(Entity entity, View view, Map<Instance, Set<View>> visited, boolean optimizeForDetached,
+                         Map<View, List<Entity>> nextLevel, List<DetachedReference> detachedReferences) {
         Set<View> views = visited.get(entity);
         if (views == null) {
             views = new HashSet<>();
@@ -129,7 +178,7 @@ public class EntityFetcher {
                 if (value instanceof Collection) {
                     for (Object item : ((Collection) value)) {
                         if (item instanceof Entity)
-                            fetch((Entity) item, propertyView, visited, optimizeForDetached);
+                            nextLevel.computeIfAbsent(propertyView, v -> new ArrayList<>()).add((Entity) item);
                     }
                 } else if (value instanceof Entity) {
                     Entity e = (Entity) value;
@@ -138,29 +187,112 @@ public class EntityFetcher {
                             if (log.isTraceEnabled()) {
                                 log.trace("Object " + value + " is detached, loading it");
                             }
-                            String storeName = metadata.getTools().getStoreName(e.getMetaClass());
-                            if (storeName != null) {
-                                try (Transaction tx = persistence.getTransaction(storeName)) {
-                                    EntityManager em = persistence.getEntityManager(storeName);
-                                    //noinspection unchecked
-                                    Entity managed = em.find(e.getClass(), e.getId());
-                                    if (managed != null) { // the instance here can be null if it has been deleted
-                                        entity.setValue(property.getName(), managed);
-                                        fetch(managed, propertyView, visited, optimizeForDetached);
-                                    }
-                                    tx.commit();
-                                }
-                            }
+                            detachedReferences.add(new DetachedReference(entity, property.getName(), e, propertyView));
                         }
                     } else {
-                        fetch(e, propertyView, visited, optimizeForDetached);
+                        nextLevel.computeIfAbsent(propertyView, v -> new ArrayList<>()).add(e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads managed instances for detached references, sets them to the referencing entities and adds them to the
+     * next level of the graph.
+     */
+    protected void reloadDetached(List<DetachedReference> detachedReferences, Map<View, List<Entity>> nextLevel) {
+        if (detachedReferences.isEmpty())
+            return;
+
+        Map<String, Map<MetaClass, List<DetachedReference>>> referencesByStore = new LinkedHashMap<>();
+        for (DetachedReference reference : detachedReferences) {
+            MetaClass metaClass = metadata.getExtendedEntities().getEffectiveMetaClass(reference.value.getClass());
+            String storeName = metadata.getTools().getStoreName(metaClass);
+            if (storeName != null) {
+                referencesByStore.computeIfAbsent(storeName, s -> new LinkedHashMap<>())
+                        .computeIfAbsent(metaClass, c -> new ArrayList<>())
+                        .add(reference);
+            }
+        }
+
+        for (Map.Entry<String, Map<MetaClass, List<DetachedReference>>> storeEntry : referencesByStore.entrySet()) {
+            String storeName = storeEntry.getKey();
+            try (Transaction tx = persistence.getTransaction(storeName)) {
+                EntityManager em = persistence.getEntityManager(storeName);
+                for (Map.Entry<MetaClass, List<DetachedReference>> entry : storeEntry.getValue().entrySet()) {
+                    Set<Object> ids = new LinkedHashSet<>();
+                    for (DetachedReference reference : entry.getValue()) {
+                        ids.add(getRealId(reference.value.getId()));
                     }
+                    Map<Object, Entity> loaded = loadByIds(em, storeName, entry.getKey(), ids);
+                    for (DetachedReference reference : entry.getValue()) {
+                        Entity managed = loaded.get(getRealId(reference.value.getId()));
+                        if (managed != null) { // the instance here can be null if it has been deleted
+                            reference.entity.setValue(reference.property, managed);
+                            nextLevel.computeIfAbsent(reference.view, v -> new ArrayList<>()).add(managed);
+                        }
+                    }
+                }
+                tx.commit();
+            }
+        }
+    }
+
+    /**
+     * Loads instances by one query for each chunk of ids, or by {@code find()} for a single id or a composite key.
+     *
+     * @return loaded instances by id
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<Object, Entity> loadByIds(EntityManager em, String storeName, MetaClass metaClass, Set<Object> ids) {
+        Map<Object, Entity> result = new HashMap<>();
+        String pkName = metadata.getTools().getPrimaryKeyName(metaClass);
+        if (ids.size() == 1 || pkName == null || metadata.getTools().hasCompositePrimaryKey(metaClass)) {
+            for (Object id : ids) {
+                Entity managed = em.find(metaClass.getJavaClass(), id);
+                if (managed != null) {
+                    result.put(id, managed);
                 }
             }
+            return result;
+        }
+
+        String queryString = String.format("select e from %s e where e.%s in :ids", metaClass.getName(), pkName);
+        int chunkSize = DbmsSpecificFactory.getDbmsFeatures(storeName).getMaxQueryParameters();
+        for (List<Object> chunk : Lists.partition(new ArrayList<>(ids), chunkSize)) {
+            TypedQuery<Entity> query = em.createQuery(queryString, metaClass.getJavaClass());
+            query.setParameter("ids", chunk);
+            for (Entity managed : query.getResultList()) {
+                result.put(getRealId(managed.getId()), managed);
+            }
         }
+        return result;
+    }
+
+    protected Object getRealId(Object id) {
+        return id instanceof IdProxy ? ((IdProxy) id).getNN() : id;
     }
 
     protected boolean needReloading(Entity entity, View view) {
         return !entityStates.isLoadedWithView(entity, view);
     }
+
+    /**
+     * Reference to a detached instance which must be replaced by a managed one.
+     */
+    protected static class DetachedReference {
+
+        protected final Entity entity;
+        protected final String property;
+        protected final Entity value;
+        protected final View view;
+
+        protected DetachedReference(Entity entity, String property, Entity value, View view) {
+            this.entity = entity;
+            this.property = property;
+            this.value = value;
+            this.view = view;
+        }
+    }
 }
@@ -25,20 +25,24 @@ public class FetchGroupDescription {
     protected Set<String> fetchGroupAttributes = new TreeSet<>();
     protected Map<String, String> fetchHints = new TreeMap<>(); //sort hints by attribute path
     protected boolean batches;
+    protected boolean frozen;
 
     public Set<String> getAttributes() {
         return Collections.unmodifiableSet(fetchGroupAttributes);
     }
 
     public void addAttribute(String attributePath) {
+        checkNotFrozen();
         fetchGroupAttributes.add(attributePath);
     }
 
     public void addAttributes(List<String> attributePaths) {
+        checkNotFrozen();
         fetchGroupAttributes.addAll(attributePaths);
     }
 
     public void removeAttributeIf(Predicate<String> filter) {
+        checkNotFrozen();
         fetchGroupAttributes.removeIf(filter);
     }
 
@@ -47,6 +51,7 @@ public class FetchGroupDescription {
     }
 
     public void addHint(String attributePath, String hint) {
+        checkNotFrozen();
         fetchHints.put(attributePath, hint);
         if (QueryHints.BATCH.equals(hint)) {
             batches = true;
@@ -56,4 +61,22 @@ public class FetchGroupDescription {
     public boolean hasBatches() {
         return batches;
     }
+
+    /**
+     * Makes the description immutable, so it can be shared between queries.
+     */
+    public FetchGroupDescription freeze() {
+        frozen = true;
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    protected void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Fetch group description is immutable");
+        }
+    }
 }
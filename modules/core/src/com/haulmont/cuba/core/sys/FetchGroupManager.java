@@ -17,11 +17,14 @@
 
 package com.haulmont.cuba.core.sys;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.chile.core.model.MetaPropertyPath;
 import com.haulmont.chile.core.model.Range;
+import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.entity.BaseUuidEntity;
 import com.haulmont.cuba.core.entity.EmbeddableEntity;
 import com.haulmont.cuba.core.entity.Entity;
@@ -35,13 +38,16 @@ import org.eclipse.persistence.queries.FetchGroup;
 import org.eclipse.persistence.queries.LoadGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ClassUtils;
 
 import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Component(FetchGroupManager.NAME)
@@ -60,6 +66,33 @@ public class FetchGroupManager {
     @Inject
     private ViewRepository viewRepository;
 
+    @Inject
+    private ServerConfig serverConfig;
+
+    private Cache<FetchGroupKey, FetchGroupDescription> fetchGroupCache;
+
+    private long fetchGroupCacheSize;
+
+    /*
+     * Incremented on each change of the view repository, because calculated fetch groups may include views
+     * taken from the repository. Entries calculated for previous generations are never returned.
+     */
+    private final AtomicLong viewsGeneration = new AtomicLong();
+
+    @PostConstruct
+    private void init() {
+        fetchGroupCacheSize = serverConfig.getFetchGroupCacheSize();
+        fetchGroupCache = CacheBuilder.newBuilder()
+                .maximumSize(fetchGroupCacheSize)
+                .build();
+    }
+
+    @EventListener
+    protected void onViewRepositoryChanged(ViewRepositoryChangedEvent event) {
+        viewsGeneration.incrementAndGet();
+        fetchGroupCache.invalidateAll();
+    }
+
     public void setView(JpaQuery query, String queryString, @Nullable View view, boolean singleResultExpected) {
         Preconditions.checkNotNullArgument(query, "query is null");
         if (view != null) {
@@ -128,10 +161,32 @@ public class FetchGroupManager {
         }
     }
 
+    /**
+     * Returns the description of fetch group and fetch hints for the query and view. The result is cached
+     * by the query string and the structure of the view, so it must not be modified.
+     */
     public FetchGroupDescription calculateFetchGroup(String queryString,
                                                      View view,
                                                      boolean singleResultExpected,
                                                      boolean useFetchGroup) {
+        if (fetchGroupCacheSize <= 0) {
+            return doCalculateFetchGroup(queryString, view, singleResultExpected, useFetchGroup).freeze();
+        }
+
+        FetchGroupKey key = new FetchGroupKey(queryString, view.getStructureSignature(), singleResultExpected,
+                useFetchGroup, viewsGeneration.get());
+        FetchGroupDescription description = fetchGroupCache.getIfPresent(key);
+        if (description == null) {
+            description = doCalculateFetchGroup(queryString, view, singleResultExpected, useFetchGroup).freeze();
+            fetchGroupCache.put(key, description);
+        }
+        return description;
+    }
+
+    private FetchGroupDescription doCalculateFetchGroup(String queryString,
+                                                        View view,
+                                                        boolean singleResultExpected,
+                                                        boolean useFetchGroup) {
         Set<FetchGroupField> fetchGroupFields = new LinkedHashSet<>();
         processView(view, null, fetchGroupFields, useFetchGroup);
 
@@ -455,6 +510,45 @@ public class FetchGroupManager {
         return metadataTools.isCacheable(metaClass) ? FetchMode.UNDEFINED : fetchMode;
     }
 
+    protected static class FetchGroupKey {
+        private final String queryString;
+        private final String viewSignature;
+        private final boolean singleResultExpected;
+        private final boolean useFetchGroup;
+        private final long viewsGeneration;
+        private final int hashCode;
+
+        public FetchGroupKey(String queryString, String viewSignature, boolean singleResultExpected,
+                             boolean useFetchGroup, long viewsGeneration) {
+            this.queryString = queryString;
+            this.viewSignature = viewSignature;
+            this.singleResultExpected = singleResultExpected;
+            this.useFetchGroup = useFetchGroup;
+            this.viewsGeneration = viewsGeneration;
+            this.hashCode = Objects.hash(queryString, viewSignature, singleResultExpected, useFetchGroup, viewsGeneration);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            FetchGroupKey that = (FetchGroupKey) o;
+
+            return hashCode == that.hashCode
+                    && singleResultExpected == that.singleResultExpected
+                    && useFetchGroup == that.useFetchGroup
+                    && viewsGeneration == that.viewsGeneration
+                    && queryString.equals(that.queryString)
+                    && viewSignature.equals(that.viewSignature);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
     protected static class FetchGroupField {
         private final MetaClass metaClass;
         private FetchMode fetchMode;
@@ -68,11 +68,42 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
     protected EntityStates entityStates;
 
     @Inject
-    protected GlobalConfig globalConfig;
+    protected ConstraintQueryCache constraintQueryCache;
 
     @Override
     public boolean applyConstraints(Query query) {
-        QueryParser parser = QueryTransformerFactory.createParser(query.getQueryString());
+        String queryString = query.getQueryString();
+        String fingerprint = userSessionSource.getUserSession().getSharedSecurityDataFingerprint();
+
+        ConstraintQueryCache.Key key = null;
+        ConstraintQueryCache.Rewrite rewrite = null;
+        if (fingerprint != null) {
+            key = new ConstraintQueryCache.Key(fingerprint, queryString);
+            rewrite = constraintQueryCache.get(key);
+        }
+        if (rewrite == null) {
+            rewrite = rewriteQuery(queryString);
+            if (key != null) {
+                constraintQueryCache.put(key, rewrite);
+            }
+        }
+
+        if (!rewrite.isApplied())
+            return false;
+
+        query.setQueryString(rewrite.getQueryString());
+
+        for (String paramName : rewrite.getAddedParams()) {
+            setQueryParam(query, paramName);
+        }
+        return true;
+    }
+
+    /**
+     * Applies database READ constraints of the current session to the query.
+     */
+    protected ConstraintQueryCache.Rewrite rewriteQuery(String queryString) {
+        QueryParser parser = QueryTransformerFactory.createParser(queryString);
         String entityName = parser.getEntityName();
 
         List<ConstraintData> constraints = getConstraints(metadata.getClassNN(entityName), constraint ->
@@ -81,19 +112,14 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
                         || constraint.getOperationType() == ConstraintOperationType.ALL));
 
         if (constraints.isEmpty())
-            return false;
+            return ConstraintQueryCache.Rewrite.NONE;
 
-        QueryTransformer transformer = QueryTransformerFactory.createTransformer(query.getQueryString());
+        QueryTransformer transformer = QueryTransformerFactory.createTransformer(queryString);
 
         for (ConstraintData constraint : constraints) {
             processConstraint(transformer, constraint, entityName);
         }
-        query.setQueryString(transformer.getResult());
-
-        for (String paramName : transformer.getAddedParams()) {
-            setQueryParam(query, paramName);
-        }
-        return true;
+        return new ConstraintQueryCache.Rewrite(transformer.getResult(), new ArrayList<>(transformer.getAddedParams()));
     }
 
     @Override
@@ -130,16 +156,7 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
 
     @Override
     public boolean filterByConstraints(Collection<Entity> entities) {
-        boolean filtered = false;
-        for (Iterator<Entity> iterator = entities.iterator(); iterator.hasNext(); ) {
-            Entity entity = iterator.next();
-            if (!isPermittedInMemory(entity)) {
-                //we ignore situations when the collection is immutable
-                iterator.remove();
-                filtered = true;
-            }
-        }
-        return filtered;
+        return filterNotPermitted(entities, this::isInMemoryReadConstraint);
     }
 
     @Override
@@ -166,7 +183,9 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
     @Override
     public void calculateFilteredData(Collection<Entity> entities) {
         Set<EntityId> handled = new LinkedHashSet<>();
-        entities.forEach(entity -> calculateFilteredData(entity, handled, false));
+        List<Entity> tokenEntities = new ArrayList<>();
+        entities.forEach(entity -> calculateFilteredData(entity, handled, false, tokenEntities));
+        securityTokenManager.writeSecurityTokens(tokenEntities);
     }
 
     @Override
@@ -331,8 +350,20 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
         }
     }
 
-    @SuppressWarnings("unchecked")
     protected boolean calculateFilteredData(Entity entity, Set<EntityId> handled, boolean checkPermitted) {
+        List<Entity> tokenEntities = new ArrayList<>();
+        boolean filtered = calculateFilteredData(entity, handled, checkPermitted, tokenEntities);
+        securityTokenManager.writeSecurityTokens(tokenEntities);
+        return filtered;
+    }
+
+    /**
+     * Calculates filtered data of the entity graph and collects the entities which security tokens should be
+     * written, so the tokens can be written by a single {@link SecurityTokenManager#writeSecurityTokens} call.
+     */
+    @SuppressWarnings("unchecked")
+    protected boolean calculateFilteredData(Entity entity, Set<EntityId> handled, boolean checkPermitted,
+                                            List<Entity> tokenEntities) {
         if (referenceToEntitySupport.getReferenceId(entity) == null) {
             return false;
         }
@@ -353,7 +384,7 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
                     if (value instanceof Collection) {
                         Set filtered = new LinkedHashSet();
                         for (Entity item : (Collection<Entity>) value) {
-                            if (calculateFilteredData(item, handled, true)) {
+                            if (calculateFilteredData(item, handled, true, tokenEntities)) {
                                 filtered.add(referenceToEntitySupport.getReferenceId(item));
                             }
                         }
@@ -362,23 +393,26 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
                         }
                     } else if (value instanceof Entity) {
                         Entity valueEntity = (Entity) value;
-                        if (calculateFilteredData(valueEntity, handled, true)) {
+                        if (calculateFilteredData(valueEntity, handled, true, tokenEntities)) {
                             securityTokenManager.addFiltered(baseGenericIdEntity, property.getName(),
                                     referenceToEntitySupport.getReferenceId(valueEntity));
                         }
                     }
                 }
             }
-            securityTokenManager.writeSecurityToken(baseGenericIdEntity);
+            tokenEntities.add(baseGenericIdEntity);
         }
         return false;
     }
 
     protected boolean isPermittedInMemory(Entity entity) {
-        return isPermitted(entity, constraint ->
-                constraint.getCheckType().memory()
-                        && (constraint.getOperationType() == ConstraintOperationType.READ
-                        || constraint.getOperationType() == ConstraintOperationType.ALL));
+        return isPermitted(entity, this::isInMemoryReadConstraint);
+    }
+
+    protected boolean isInMemoryReadConstraint(ConstraintData constraint) {
+        return constraint.getCheckType().memory()
+                && (constraint.getOperationType() == ConstraintOperationType.READ
+                || constraint.getOperationType() == ConstraintOperationType.ALL);
     }
 
     protected static class EntityId {
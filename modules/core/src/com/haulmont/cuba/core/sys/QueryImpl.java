@@ -17,6 +17,7 @@
 package com.haulmont.cuba.core.sys;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.haulmont.bali.util.ReflectionHelper;
@@ -38,11 +39,13 @@ import com.haulmont.cuba.core.sys.persistence.PersistenceImplSupport;
 import org.eclipse.persistence.config.CascadePolicy;
 import org.eclipse.persistence.config.HintValues;
 import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.config.ResultSetType;
 import org.eclipse.persistence.internal.helper.CubaUtil;
 import org.eclipse.persistence.internal.jpa.EJBQueryImpl;
 import org.eclipse.persistence.jpa.JpaQuery;
 import org.eclipse.persistence.queries.DatabaseQuery;
 import org.eclipse.persistence.queries.ObjectLevelReadQuery;
+import org.eclipse.persistence.queries.ScrollableCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.config.BeanDefinition;
@@ -55,6 +58,8 @@ import javax.persistence.*;
 import java.util.*;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Implementation of {@link TypedQuery} interface based on EclipseLink.
@@ -81,6 +86,8 @@ public class QueryImpl<T> implements TypedQuery<T> {
     protected ServerConfig serverConfig;
     @Inject
     protected QueryHintsProcessor hintsProcessor;
+    @Inject
+    protected TransformedQueryCache transformedQueryCache;
 
     protected javax.persistence.EntityManager emDelegate;
     protected JpaQuery query;
@@ -236,7 +243,71 @@ public class QueryImpl<T> implements TypedQuery<T> {
     }
 
     protected String transformQueryString() {
-        String result = expandMacros(queryString);
+        String expandedQueryString = expandMacros(queryString);
+        if (!transformedQueryCache.isEnabled()) {
+            return transformQueryString(expandedQueryString);
+        }
+
+        TransformedQueryCache.Key key = createTransformedQueryKey(expandedQueryString);
+        TransformedQueryCache.Transformation transformation = transformedQueryCache.get(key);
+        if (transformation != null) {
+            applyCachedTransformation(transformation);
+            return transformation.getQueryString();
+        }
+
+        Set<Object> paramNames = params.stream()
+                .map(param -> param.name)
+                .collect(Collectors.toSet());
+
+        String result = transformQueryString(expandedQueryString);
+
+        for (Param param : params) {
+            paramNames.remove(param.name);
+        }
+        transformedQueryCache.put(key, new TransformedQueryCache.Transformation(result, paramNames));
+        return result;
+    }
+
+    protected TransformedQueryCache.Key createTransformedQueryKey(String expandedQueryString) {
+        Map<Object, TransformedQueryCache.ParamShape> paramShapes = new HashMap<>();
+        for (Param param : params) {
+            paramShapes.put(param.name, getParamShape(param.value));
+        }
+        return new TransformedQueryCache.Key(expandedQueryString, firstResult != null && firstResult > 0, paramShapes);
+    }
+
+    protected TransformedQueryCache.ParamShape getParamShape(Object value) {
+        if (value == null) {
+            return TransformedQueryCache.ParamShape.NULL;
+        }
+        if (value instanceof String && ((String) value).startsWith("(?i)")) {
+            return TransformedQueryCache.ParamShape.CASE_INSENSITIVE;
+        }
+        if (value instanceof Collection && ((Collection) value).isEmpty()) {
+            return TransformedQueryCache.ParamShape.EMPTY_COLLECTION;
+        }
+        return TransformedQueryCache.ParamShape.VALUE;
+    }
+
+    /**
+     * Makes the same changes in query parameters as {@link #transformQueryString(String)} would do.
+     */
+    protected void applyCachedTransformation(TransformedQueryCache.Transformation transformation) {
+        for (Iterator<Param> iterator = params.iterator(); iterator.hasNext(); ) {
+            Param param = iterator.next();
+            if (transformation.getRemovedParams().contains(param.name)) {
+                iterator.remove();
+            } else if (param.value instanceof String) {
+                String strValue = (String) param.value;
+                if (strValue.startsWith("(?i)")) {
+                    param.value = strValue.substring(4).toLowerCase();
+                }
+            }
+        }
+    }
+
+    protected String transformQueryString(String expandedQueryString) {
+        String result = expandedQueryString;
 
         boolean rebuildParser = false;
         QueryParser parser = queryTransformerFactory.parser(result);
@@ -407,11 +478,14 @@ public class QueryImpl<T> implements TypedQuery<T> {
         preExecute(query);
         @SuppressWarnings("unchecked")
         List<T> resultList = (List<T>) getResultFromCache(query, false, obj -> {
-            ((List) obj).stream().filter(item -> item instanceof Entity).forEach(item -> {
-                for (View view : views) {
-                    entityFetcher.fetch((Entity) item, view);
-                }
-            });
+            List<Entity> entities = new ArrayList<>();
+            for (Object item : (List) obj) {
+                if (item instanceof Entity)
+                    entities.add((Entity) item);
+            }
+            for (View view : views) {
+                entityFetcher.fetch(entities, view);
+            }
         });
         return resultList;
     }
@@ -469,6 +543,53 @@ public class QueryImpl<T> implements TypedQuery<T> {
         }
     }
 
+    @Override
+    public Stream<T> getResultStream(int fetchSize) {
+        if (log.isDebugEnabled())
+            log.debug(queryString.replaceAll("[\\t\\n\\x0B\\f\\r]", " "));
+
+        singleResultExpected = false;
+
+        JpaQuery<T> query = getQuery();
+        query.setHint(QueryHints.SCROLLABLE_CURSOR, HintValues.TRUE);
+        query.setHint(QueryHints.RESULT_SET_TYPE, ResultSetType.ForwardOnly);
+        query.setHint(QueryHints.JDBC_FETCH_SIZE, fetchSize);
+        preExecute(query);
+
+        ScrollableCursor cursor = (ScrollableCursor) query.getSingleResult();
+        Iterator<Object> rows = new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return cursor.next();
+            }
+        };
+        // rows are fetched by views in chunks, so references are loaded by one query per chunk instead of per row
+        Iterator<List<T>> chunks = Iterators.transform(Iterators.partition(rows, fetchSize), this::fetchChunk);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED), false)
+                .onClose(cursor::close)
+                .flatMap(List::stream);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<T> fetchChunk(List<Object> chunk) {
+        List<Entity> entities = new ArrayList<>(chunk.size());
+        for (Object item : chunk) {
+            if (item instanceof Entity)
+                entities.add((Entity) item);
+        }
+        if (!entities.isEmpty()) {
+            for (View view : views) {
+                entityFetcher.fetch(entities, view);
+            }
+        }
+        return (List<T>) chunk;
+    }
+
     @Override
     public int executeUpdate() {
         JpaQuery<T> jpaQuery = getQuery();
@@ -735,6 +856,7 @@ public class QueryImpl<T> implements TypedQuery<T> {
             String entityName = parser.getEntityName();
             useQueryCache = parser.isEntitySelect(entityName);
             QueryKey queryKey = null;
+            Map<String, Long> typeVersions = null;
             if (useQueryCache) {
                 queryKey = QueryKey.create(transformedQueryString, entityManager.isSoftDeletion(), singleResult, jpaQuery);
                 result = singleResult ? queryCacheMgr.getSingleResultFromCache(queryKey, views) :
@@ -742,12 +864,13 @@ public class QueryImpl<T> implements TypedQuery<T> {
                 if (result != null) {
                     return result;
                 }
+                typeVersions = queryCacheMgr.getTypeVersions(parser.getAllEntityNames());
             }
             try {
                 result = singleResult ? jpaQuery.getSingleResult() : jpaQuery.getResultList();
             } catch (NoResultException | NonUniqueResultException ex) {
                 if (useQueryCache && singleResult) {
-                    queryCacheMgr.putResultToCache(queryKey, null, entityName, parser.getAllEntityNames(), ex);
+                    queryCacheMgr.putResultToCache(queryKey, null, entityName, parser.getAllEntityNames(), ex, typeVersions);
                 }
                 throw ex;
             }
@@ -755,7 +878,7 @@ public class QueryImpl<T> implements TypedQuery<T> {
             if (useQueryCache) {
                 queryCacheMgr.putResultToCache(queryKey,
                         singleResult ? Collections.singletonList(result) : (List) result,
-                        entityName, parser.getAllEntityNames());
+                        entityName, parser.getAllEntityNames(), typeVersions);
             }
         } else {
             result = singleResult ? jpaQuery.getSingleResult() : jpaQuery.getResultList();
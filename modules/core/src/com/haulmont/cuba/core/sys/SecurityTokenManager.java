@@ -33,9 +33,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
 import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
@@ -68,45 +71,53 @@ public class SecurityTokenManager {
             .add(ENTITY_ID_KEY)
             .build();
 
+    /**
+     * The first byte of binary tokens. Tokens of previous versions contain JSON objects, so they start with '{'.
+     */
+    protected static final byte BINARY_FORMAT_VERSION = 1;
+
+    protected static final byte ID_NULL = 0;
+    protected static final byte ID_UUID = 1;
+    protected static final byte ID_LONG = 2;
+    protected static final byte ID_INTEGER = 3;
+    protected static final byte ID_STRING = 4;
+
+    protected static final int TOKEN_BUFFER_SIZE = 256;
+
+    protected final ThreadLocal<CipherHolder> ciphers = new ThreadLocal<>();
+
     /**
      * Encrypt filtered data and write the result to the security token
      */
     public void writeSecurityToken(Entity entity) {
-        SecurityState securityState = getOrCreateSecurityState(entity);
-        if (securityState != null) {
-            JSONObject jsonObject = new JSONObject();
-            Multimap<String, Object> filtered = getFilteredData(securityState);
-            if (filtered != null) {
-                Set<Map.Entry<String, Collection<Object>>> entries = filtered.asMap().entrySet();
-                String[] filteredAttributes = new String[entries.size()];
-                int i = 0;
-                for (Map.Entry<String, Collection<Object>> entry : entries) {
-                    jsonObject.put(entry.getKey(), entry.getValue());
-                    filteredAttributes[i++] = entry.getKey();
-                }
-                setFilteredAttributes(securityState, filteredAttributes);
-            }
-            if (!securityState.getReadonlyAttributes().isEmpty()) {
-                jsonObject.put(READ_ONLY_ATTRIBUTES_KEY, securityState.getReadonlyAttributes());
-            }
-            if (!securityState.getHiddenAttributes().isEmpty()) {
-                jsonObject.put(HIDDEN_ATTRIBUTES_KEY, securityState.getHiddenAttributes());
-            }
-            if (!securityState.getRequiredAttributes().isEmpty()) {
-                jsonObject.put(REQUIRED_ATTRIBUTES_KEY, securityState.getRequiredAttributes());
+        writeSecurityTokens(Collections.singletonList(entity));
+    }
+
+    /**
+     * Encrypt filtered data and write the result to the security tokens of the given entities.
+     * The cipher and the buffer are shared by all entities of the collection.
+     */
+    public void writeSecurityTokens(Collection<? extends Entity> entities) {
+        Cipher cipher = null;
+        ByteArrayOutputStream buffer = null;
+        for (Entity entity : entities) {
+            SecurityState securityState = getOrCreateSecurityState(entity);
+            if (securityState == null) {
+                continue;
             }
-            MetaClass metaClass = entity.getMetaClass();
-            jsonObject.put(ENTITY_NAME_KEY, metaClass.getName());
-            if (!metadata.getTools().hasCompositePrimaryKey(metaClass)) {
-                jsonObject.put(ENTITY_ID_KEY, getEntityId(entity));
+            if (cipher == null) {
+                cipher = getCipher(Cipher.ENCRYPT_MODE);
+                buffer = new ByteArrayOutputStream(TOKEN_BUFFER_SIZE);
+            } else {
+                buffer.reset();
             }
+            writeTokenData(entity, securityState, buffer);
 
-            String json = jsonObject.toString();
             byte[] encrypted;
-            Cipher cipher = getCipher(Cipher.ENCRYPT_MODE);
             try {
-                encrypted = cipher.doFinal(json.getBytes(StandardCharsets.UTF_8));
+                encrypted = cipher.doFinal(buffer.toByteArray());
             } catch (Exception e) {
+                resetCiphers();
                 throw new RuntimeException("An error occurred while generating security token", e);
             }
             setSecurityToken(securityState, encrypted);
@@ -117,70 +128,219 @@ public class SecurityTokenManager {
      * Decrypt security token and read filtered data
      */
     public void readSecurityToken(Entity entity) {
-        SecurityState securityState = getSecurityState(entity);
-        if (getSecurityToken(entity) == null) {
-            return;
+        readSecurityTokens(Collections.singletonList(entity));
+    }
+
+    /**
+     * Decrypt security tokens of the given entities and read filtered data.
+     * The cipher is shared by all entities of the collection.
+     */
+    public void readSecurityTokens(Collection<? extends Entity> entities) {
+        Cipher cipher = null;
+        for (Entity entity : entities) {
+            SecurityState securityState = getSecurityState(entity);
+            if (getSecurityToken(entity) == null) {
+                continue;
+            }
+            if (cipher == null) {
+                cipher = getCipher(Cipher.DECRYPT_MODE);
+            }
+            byte[] decrypted;
+            try {
+                decrypted = cipher.doFinal(getSecurityToken(securityState));
+            } catch (Exception e) {
+                resetCiphers();
+                throw new RuntimeException("An error occurred while reading security token", e);
+            }
+            Multimap<String, Object> filteredData = ArrayListMultimap.create();
+            BaseEntityInternalAccess.setFilteredData(securityState, filteredData);
+            try {
+                if (decrypted.length > 0 && decrypted[0] == BINARY_FORMAT_VERSION) {
+                    readBinaryTokenData(entity, securityState, filteredData, ByteBuffer.wrap(decrypted, 1, decrypted.length - 1));
+                } else {
+                    readJsonTokenData(entity, securityState, filteredData, new String(decrypted, StandardCharsets.UTF_8));
+                }
+            } catch (SecurityTokenException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("An error occurred while reading security token", e);
+            }
         }
-        Multimap<String, Object> filteredData = ArrayListMultimap.create();
-        BaseEntityInternalAccess.setFilteredData(securityState, filteredData);
-        Cipher cipher = getCipher(Cipher.DECRYPT_MODE);
-        try {
-            byte[] decrypted = cipher.doFinal(getSecurityToken(securityState));
-            String json = new String(decrypted, StandardCharsets.UTF_8);
-            JSONObject jsonObject = new JSONObject(json);
-            for (String key : jsonObject.keySet()) {
-                if (!SYSTEM_ATTRIBUTE_KEYS.contains(key)) {
-                    String elementName = String.valueOf(key);
-                    JSONArray jsonArray = jsonObject.getJSONArray(elementName);
-                    MetaProperty metaProperty = entity.getMetaClass().getPropertyNN(elementName);
-                    for (int i = 0; i < jsonArray.length(); i++) {
-                        Object id = jsonArray.get(i);
-                        filteredData.put(elementName, convertId(id, metaProperty.getRange().asClass(), true));
-                    }
+    }
+
+    /**
+     * Writes the security state in the binary format: the format version, the entity name and id, the dictionary
+     * of attribute names, the filtered ids by attributes and the readonly, hidden and required attributes.
+     * Attributes are referenced by their indexes in the dictionary.
+     */
+    protected void writeTokenData(Entity entity, SecurityState securityState, ByteArrayOutputStream out) {
+        Multimap<String, Object> filtered = getFilteredData(securityState);
+        Collection<String> readonlyAttributes = securityState.getReadonlyAttributes();
+        Collection<String> hiddenAttributes = securityState.getHiddenAttributes();
+        Collection<String> requiredAttributes = securityState.getRequiredAttributes();
+
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        if (filtered != null) {
+            Set<String> filteredAttributes = filtered.keySet();
+            addToDictionary(dictionary, filteredAttributes);
+            setFilteredAttributes(securityState, filteredAttributes.toArray(new String[0]));
+        }
+        addToDictionary(dictionary, readonlyAttributes);
+        addToDictionary(dictionary, hiddenAttributes);
+        addToDictionary(dictionary, requiredAttributes);
+
+        out.write(BINARY_FORMAT_VERSION);
+        MetaClass metaClass = entity.getMetaClass();
+        writeString(out, metaClass.getName());
+        writeId(out, metadata.getTools().hasCompositePrimaryKey(metaClass) ? null : getEntityId(entity));
+
+        writeVarInt(out, dictionary.size());
+        for (String attribute : dictionary.keySet()) {
+            writeString(out, attribute);
+        }
+
+        if (filtered != null) {
+            Map<String, Collection<Object>> filteredMap = filtered.asMap();
+            writeVarInt(out, filteredMap.size());
+            for (Map.Entry<String, Collection<Object>> entry : filteredMap.entrySet()) {
+                writeVarInt(out, dictionary.get(entry.getKey()));
+                writeVarInt(out, entry.getValue().size());
+                for (Object id : entry.getValue()) {
+                    writeId(out, id);
                 }
             }
-            if (jsonObject.has(READ_ONLY_ATTRIBUTES_KEY)) {
-                BaseEntityInternalAccess.setReadonlyAttributes(securityState, parseJsonArrayAsStrings(
-                        jsonObject.getJSONArray(READ_ONLY_ATTRIBUTES_KEY)));
+        } else {
+            writeVarInt(out, 0);
+        }
+        writeAttributeIndexes(out, dictionary, readonlyAttributes);
+        writeAttributeIndexes(out, dictionary, hiddenAttributes);
+        writeAttributeIndexes(out, dictionary, requiredAttributes);
+    }
+
+    protected void readBinaryTokenData(Entity entity, SecurityState securityState,
+                                       Multimap<String, Object> filteredData, ByteBuffer in) {
+        String entityName = readString(in);
+        Object tokenEntityId = readId(in);
+
+        String[] dictionary = new String[readVarInt(in)];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = readString(in);
+        }
+
+        int filteredCount = readVarInt(in);
+        for (int i = 0; i < filteredCount; i++) {
+            String attribute = dictionary[readVarInt(in)];
+            int idCount = readVarInt(in);
+            for (int j = 0; j < idCount; j++) {
+                filteredData.put(attribute, readId(in));
+            }
+        }
+        String[] readonlyAttributes = readAttributeIndexes(in, dictionary);
+        if (readonlyAttributes.length > 0) {
+            BaseEntityInternalAccess.setReadonlyAttributes(securityState, readonlyAttributes);
+        }
+        String[] hiddenAttributes = readAttributeIndexes(in, dictionary);
+        if (hiddenAttributes.length > 0) {
+            BaseEntityInternalAccess.setHiddenAttributes(securityState, hiddenAttributes);
+        }
+        String[] requiredAttributes = readAttributeIndexes(in, dictionary);
+        if (requiredAttributes.length > 0) {
+            BaseEntityInternalAccess.setRequiredAttributes(securityState, requiredAttributes);
+        }
+
+        MetaClass metaClass = entity.getMetaClass();
+        if (!metadata.getTools().hasCompositePrimaryKey(metaClass)
+                && !(entity instanceof EmbeddableEntity)) {
+            if (tokenEntityId == null) {
+                throw new SecurityTokenException("Invalid format for security token");
             }
-            if (jsonObject.has(HIDDEN_ATTRIBUTES_KEY)) {
-                BaseEntityInternalAccess.setHiddenAttributes(securityState, parseJsonArrayAsStrings(
-                        jsonObject.getJSONArray(HIDDEN_ATTRIBUTES_KEY)));
+            if (!Objects.equals(entityName, metaClass.getName())) {
+                throw new SecurityTokenException("Invalid format for security token: incorrect entity type");
             }
-            if (jsonObject.has(REQUIRED_ATTRIBUTES_KEY)) {
-                BaseEntityInternalAccess.setRequiredAttributes(securityState, parseJsonArrayAsStrings(
-                        jsonObject.getJSONArray(REQUIRED_ATTRIBUTES_KEY)));
+            Object entityId = getEntityId(entity);
+            if (entityId != null && !Objects.equals(entityId, tokenEntityId)) {
+                throw new SecurityTokenException("Invalid format for security token: incorrect entity id");
             }
-            MetaClass metaClass = entity.getMetaClass();
-            if (!metadata.getTools().hasCompositePrimaryKey(entity.getMetaClass())
-                    && !(entity instanceof EmbeddableEntity)) {
-                if (!jsonObject.has(ENTITY_ID_KEY) || !jsonObject.has(ENTITY_NAME_KEY)) {
-                    throw new SecurityTokenException("Invalid format for security token");
-                }
-                String entityName = jsonObject.getString(ENTITY_NAME_KEY);
-                if (!Objects.equals(entityName, metaClass.getName())) {
-                    throw new SecurityTokenException("Invalid format for security token: incorrect entity type");
-                }
-                Object jsonEntityId = jsonObject.get(ENTITY_ID_KEY);
-                if (jsonEntityId == null) {
-                    throw new SecurityTokenException("Invalid format for security token: incorrect entity id");
-                }
-                Object entityId = getEntityId(entity);
-                if (entityId != null && !Objects.equals(entityId, convertId(jsonEntityId, metaClass, false))) {
-                    throw new SecurityTokenException("Invalid format for security token: incorrect entity id");
+        }
+    }
+
+    /**
+     * Reads security tokens in the JSON format used by previous versions.
+     */
+    protected void readJsonTokenData(Entity entity, SecurityState securityState,
+                                     Multimap<String, Object> filteredData, String json) {
+        JSONObject jsonObject = new JSONObject(json);
+        for (String key : jsonObject.keySet()) {
+            if (!SYSTEM_ATTRIBUTE_KEYS.contains(key)) {
+                String elementName = String.valueOf(key);
+                JSONArray jsonArray = jsonObject.getJSONArray(elementName);
+                MetaProperty metaProperty = entity.getMetaClass().getPropertyNN(elementName);
+                for (int i = 0; i < jsonArray.length(); i++) {
+                    Object id = jsonArray.get(i);
+                    filteredData.put(elementName, convertId(id, metaProperty.getRange().asClass(), true));
                 }
             }
-        } catch (SecurityTokenException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new RuntimeException("An error occurred while reading security token", e);
+        }
+        if (jsonObject.has(READ_ONLY_ATTRIBUTES_KEY)) {
+            BaseEntityInternalAccess.setReadonlyAttributes(securityState, parseJsonArrayAsStrings(
+                    jsonObject.getJSONArray(READ_ONLY_ATTRIBUTES_KEY)));
+        }
+        if (jsonObject.has(HIDDEN_ATTRIBUTES_KEY)) {
+            BaseEntityInternalAccess.setHiddenAttributes(securityState, parseJsonArrayAsStrings(
+                    jsonObject.getJSONArray(HIDDEN_ATTRIBUTES_KEY)));
+        }
+        if (jsonObject.has(REQUIRED_ATTRIBUTES_KEY)) {
+            BaseEntityInternalAccess.setRequiredAttributes(securityState, parseJsonArrayAsStrings(
+                    jsonObject.getJSONArray(REQUIRED_ATTRIBUTES_KEY)));
+        }
+        MetaClass metaClass = entity.getMetaClass();
+        if (!metadata.getTools().hasCompositePrimaryKey(entity.getMetaClass())
+                && !(entity instanceof EmbeddableEntity)) {
+            if (!jsonObject.has(ENTITY_ID_KEY) || !jsonObject.has(ENTITY_NAME_KEY)) {
+                throw new SecurityTokenException("Invalid format for security token");
+            }
+            String entityName = jsonObject.getString(ENTITY_NAME_KEY);
+            if (!Objects.equals(entityName, metaClass.getName())) {
+                throw new SecurityTokenException("Invalid format for security token: incorrect entity type");
+            }
+            Object jsonEntityId = jsonObject.get(ENTITY_ID_KEY);
+            if (jsonEntityId == null) {
+                throw new SecurityTokenException("Invalid format for security token: incorrect entity id");
+            }
+            Object entityId = getEntityId(entity);
+            if (entityId != null && !Objects.equals(entityId, convertId(jsonEntityId, metaClass, false))) {
+                throw new SecurityTokenException("Invalid format for security token: incorrect entity id");
+            }
         }
     }
 
+    /**
+     * Returns the cipher of the current thread initialized with the encryption key for the given mode.
+     * Ciphers are reused by subsequent calls in the same thread until the key is changed.
+     */
     protected Cipher getCipher(int mode) {
+        String key = config.getKeyForSecurityTokenEncryption();
+        CipherHolder holder = ciphers.get();
+        if (holder == null || !Objects.equals(holder.key, key)) {
+            holder = new CipherHolder(key);
+            ciphers.set(holder);
+        }
+        Cipher cipher = mode == Cipher.ENCRYPT_MODE ? holder.encryptCipher : holder.decryptCipher;
+        if (cipher == null) {
+            cipher = createCipher(mode, key);
+            if (mode == Cipher.ENCRYPT_MODE) {
+                holder.encryptCipher = cipher;
+            } else {
+                holder.decryptCipher = cipher;
+            }
+        }
+        return cipher;
+    }
+
+    protected Cipher createCipher(int mode, String key) {
         try {
             Cipher cipher = Cipher.getInstance("AES");
-            byte[] encryptionKey = rightPad(substring(config.getKeyForSecurityTokenEncryption(), 0, 16), 16)
+            byte[] encryptionKey = rightPad(substring(key, 0, 16), 16)
                     .getBytes(StandardCharsets.UTF_8);
 
             SecretKeySpec sKeySpec = new SecretKeySpec(encryptionKey, "AES");
@@ -191,6 +351,140 @@ public class SecurityTokenManager {
         }
     }
 
+    /**
+     * Discards the ciphers of the current thread, e.g. if a cipher may be left in an inconsistent state
+     * after an error.
+     */
+    protected void resetCiphers() {
+        ciphers.remove();
+    }
+
+    protected void addToDictionary(Map<String, Integer> dictionary, Collection<String> attributes) {
+        for (String attribute : attributes) {
+            dictionary.putIfAbsent(attribute, dictionary.size());
+        }
+    }
+
+    protected void writeAttributeIndexes(ByteArrayOutputStream out, Map<String, Integer> dictionary,
+                                         Collection<String> attributes) {
+        writeVarInt(out, attributes.size());
+        for (String attribute : attributes) {
+            writeVarInt(out, dictionary.get(attribute));
+        }
+    }
+
+    protected String[] readAttributeIndexes(ByteBuffer in, String[] dictionary) {
+        String[] attributes = new String[readVarInt(in)];
+        for (int i = 0; i < attributes.length; i++) {
+            attributes[i] = dictionary[readVarInt(in)];
+        }
+        return attributes;
+    }
+
+    protected void writeId(ByteArrayOutputStream out, @Nullable Object id) {
+        if (id instanceof IdProxy) {
+            id = ((IdProxy) id).get();
+        }
+        if (id == null) {
+            out.write(ID_NULL);
+        } else if (id instanceof UUID) {
+            UUID uuid = (UUID) id;
+            out.write(ID_UUID);
+            writeLong(out, uuid.getMostSignificantBits());
+            writeLong(out, uuid.getLeastSignificantBits());
+        } else if (id instanceof Long) {
+            out.write(ID_LONG);
+            writeVarLong(out, zigZag((Long) id));
+        } else if (id instanceof Integer) {
+            out.write(ID_INTEGER);
+            writeVarLong(out, zigZag((Integer) id));
+        } else if (id instanceof String) {
+            out.write(ID_STRING);
+            writeString(out, (String) id);
+        } else {
+            throw new IllegalStateException(
+                    String.format("Unsupported primary key type: %s", id.getClass().getSimpleName()));
+        }
+    }
+
+    @Nullable
+    protected Object readId(ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+            case ID_NULL:
+                return null;
+            case ID_UUID:
+                return new UUID(in.getLong(), in.getLong());
+            case ID_LONG:
+                return unZigZag(readVarLong(in));
+            case ID_INTEGER:
+                return (int) unZigZag(readVarLong(in));
+            case ID_STRING:
+                return readString(in);
+            default:
+                throw new SecurityTokenException("Invalid format for security token: unknown id type");
+        }
+    }
+
+    protected void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    protected String readString(ByteBuffer in) {
+        int length = readVarInt(in);
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    protected void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    protected void writeVarInt(ByteArrayOutputStream out, int value) {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    protected void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    protected int readVarInt(ByteBuffer in) {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new SecurityTokenException("Invalid format for security token");
+        }
+        return (int) value;
+    }
+
+    protected long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SecurityTokenException("Invalid format for security token");
+    }
+
+    protected static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    protected static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
     protected String[] parseJsonArrayAsStrings(JSONArray array) {
         List<String> result = new ArrayList<>();
         for (int i = 0; i < array.length(); i++) {
@@ -266,4 +560,14 @@ public class SecurityTokenManager {
                     "=================================================================");
         }
     }
-}
\ No newline at end of file
+
+    protected static class CipherHolder {
+        protected final String key;
+        protected Cipher encryptCipher;
+        protected Cipher decryptCipher;
+
+        protected CipherHolder(String key) {
+            this.key = key;
+        }
+    }
+}
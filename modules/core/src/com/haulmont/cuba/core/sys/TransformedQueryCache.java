@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.haulmont.cuba.core.app.ServerConfig;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Caches results of JPQL transformations performed by {@link QueryImpl} before a query is passed to EclipseLink.
+ * <p>
+ * The result of the transformation depends only on the query string with expanded macros, on whether the query is
+ * paged and on the "shape" of parameter values: which of them are null, empty collections or case-insensitive
+ * strings. So repeated queries of the same shape reuse the transformed query string and the list of parameters
+ * to be removed instead of parsing and transforming the query again.
+ * <p>
+ * The cache size is determined by the {@code cuba.jpqlTransformedQueryCacheSize} app property, 0 disables caching.
+ */
+@Component(TransformedQueryCache.NAME)
+public class TransformedQueryCache {
+
+    public static final String NAME = "cuba_TransformedQueryCache";
+
+    @Inject
+    protected ServerConfig serverConfig;
+
+    protected Cache<Key, Transformation> cache;
+
+    protected long maxSize;
+
+    /**
+     * Kinds of parameter values which affect the query transformation.
+     */
+    public enum ParamShape {
+        NULL,
+        EMPTY_COLLECTION,
+        CASE_INSENSITIVE,
+        VALUE
+    }
+
+    public static class Key {
+        protected final String queryString;
+        protected final boolean paged;
+        protected final Map<Object, ParamShape> params;
+        protected final int hashCode;
+
+        public Key(String queryString, boolean paged, Map<Object, ParamShape> params) {
+            this.queryString = queryString;
+            this.paged = paged;
+            this.params = ImmutableMap.copyOf(params);
+            this.hashCode = Objects.hash(queryString, paged, this.params);
+        }
+
+        public String getQueryString() {
+            return queryString;
+        }
+
+        public boolean isPaged() {
+            return paged;
+        }
+
+        public Map<Object, ParamShape> getParams() {
+            return params;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return hashCode == key.hashCode
+                    && paged == key.paged
+                    && queryString.equals(key.queryString)
+                    && params.equals(key.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("queryString", queryString)
+                    .add("paged", paged)
+                    .add("params", params)
+                    .toString();
+        }
+    }
+
+    public static class Transformation {
+        protected final String queryString;
+        protected final Set<Object> removedParams;
+
+        public Transformation(String queryString, Set<Object> removedParams) {
+            this.queryString = queryString;
+            this.removedParams = ImmutableSet.copyOf(removedParams);
+        }
+
+        /**
+         * @return transformed query string
+         */
+        public String getQueryString() {
+            return queryString;
+        }
+
+        /**
+         * @return names of parameters which are eliminated from the transformed query
+         */
+        public Set<Object> getRemovedParams() {
+            return removedParams;
+        }
+    }
+
+    @PostConstruct
+    protected void init() {
+        maxSize = serverConfig.getJpqlTransformedQueryCacheSize();
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    @Nullable
+    public Transformation get(Key key) {
+        return isEnabled() ? cache.getIfPresent(key) : null;
+    }
+
+    public void put(Key key, Transformation transformation) {
+        if (isEnabled()) {
+            cache.put(key, transformation);
+        }
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+}
@@ -77,9 +77,17 @@ public interface QueryCache {
      * Returns the maximum number of entries the cache may contain.
      * As the cache size grows close to the maximum, the cache
      * evicts entries that are less likely to be used again.
+     * Returns 0 if the cache is limited by weight, see {@link #getMaxWeight()}.
      */
     long getMaxSize();
 
+    /**
+     * Returns the maximum total weight of cached results, or 0 if the cache is limited by the number of entries.
+     */
+    default long getMaxWeight() {
+        return 0;
+    }
+
     /**
      * Returns a view of the entries stored in this cache as a map. Modifications made to
      * the map doesn't affect the cache.
@@ -34,4 +34,21 @@ public interface QueryCacheConfig extends Config {
     @Property("cuba.queryCache.maxSize")
     @DefaultInt(100)
     int getQueryCacheMaxSize();
+
+    /**
+     * Maximum total weight of cached query results. The weight of a result is the number of identifiers in it
+     * plus one. If set to a positive value, it replaces the limit of the number of entries defined by
+     * {@link #getQueryCacheMaxSize()}. Set to 0 to limit the cache by the number of entries.
+     */
+    @Property("cuba.queryCache.maxWeight")
+    @DefaultInt(10000)
+    int getQueryCacheMaxWeight();
+
+    /**
+     * Interval in milliseconds during which names of changed entity types are collected before sending them to
+     * other cluster nodes in a single message. If set to 0, a message is sent on each change.
+     */
+    @Property("cuba.queryCache.invalidationBatchInterval")
+    @DefaultInt(100)
+    int getQueryCacheInvalidationBatchInterval();
 }
@@ -18,27 +18,53 @@ package com.haulmont.cuba.core.sys.entitycache;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetadataObject;
 import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Persistence;
 import com.haulmont.cuba.core.app.ClusterListenerAdapter;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ClusterMessageCodec;
+import com.haulmont.cuba.core.app.ClusterMessageType;
 import com.haulmont.cuba.core.entity.BaseGenericIdEntity;
 import com.haulmont.cuba.core.global.Metadata;
 import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.core.sys.events.AppContextStoppedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.persistence.MappedSuperclass;
 import javax.persistence.TypedQuery;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+/**
+ * Provides access to the {@link QueryCache} for queries and invalidates cached results when entities change.
+ * <p>
+ * Each entity type has a version counter which is incremented when instances of the type are changed. Versions of
+ * related types are captured before a query is executed and stored with its results, so results which may have
+ * been loaded concurrently with a change are never returned from the cache. Names of changed types are sent to
+ * the cluster in batches, at most once per {@code cuba.queryCache.invalidationBatchInterval} milliseconds, and
+ * handled on other nodes in the same way as local changes.
+ */
 @Component(QueryCacheManager.NAME)
 public class QueryCacheManager {
 
@@ -57,6 +83,13 @@ public class QueryCacheManager {
 
     protected static final Logger log = LoggerFactory.getLogger(QueryCacheManager.class);
 
+    protected ConcurrentMap<String, AtomicLong> typeVersions = new ConcurrentHashMap<>();
+
+    protected Set<String> pendingTypeNames = ConcurrentHashMap.newKeySet();
+    protected AtomicBoolean flushScheduled = new AtomicBoolean();
+    // created on first batched invalidation
+    protected volatile ScheduledExecutorService invalidationSender;
+
     @PostConstruct
     public void init() {
         clusterManager.addListener(InvalidateQueryCacheMsg.class, new ClusterListenerAdapter<InvalidateQueryCacheMsg>() {
@@ -67,10 +100,25 @@ public class QueryCacheManager {
                 } else if (message.queryKey != null) {
                     queryCache.invalidate(message.queryKey);
                 } else {
+                    incrementTypeVersions(message.typeNames);
                     queryCache.invalidate(message.typeNames);
                 }
             }
         });
+        clusterManager.registerCodec(new InvalidateQueryCacheMsgCodec());
+    }
+
+    @EventListener(AppContextStoppedEvent.class)
+    protected void applicationStopped() {
+        flushInvalidations();
+    }
+
+    @PreDestroy
+    protected void destroy() {
+        ScheduledExecutorService sender = invalidationSender;
+        if (sender != null) {
+            sender.shutdown();
+        }
     }
 
     /**
@@ -87,7 +135,7 @@ public class QueryCacheManager {
     public <T> List<T> getResultListFromCache(QueryKey queryKey, List<View> views) {
         log.debug("Looking for query in cache: {}", queryKey.printDescription());
         List<T> resultList = null;
-        QueryResult queryResult = queryCache.get(queryKey);
+        QueryResult queryResult = getActualResult(queryKey);
         if (queryResult != null) {
             MetaClass metaClass = metadata.getClassNN(queryResult.getType());
             String storeName = metadata.getTools().getStoreName(metaClass);
@@ -112,7 +160,7 @@ public class QueryCacheManager {
     @SuppressWarnings("unchecked")
     public <T> T getSingleResultFromCache(QueryKey queryKey, List<View> views) {
         log.debug("Looking for query in cache: {}", queryKey.printDescription());
-        QueryResult queryResult = queryCache.get(queryKey);
+        QueryResult queryResult = getActualResult(queryKey);
         if (queryResult != null) {
             MetaClass metaClass = metadata.getClassNN(queryResult.getType());
             if (!metadata.getTools().isCacheable(metaClass)) {
@@ -141,17 +189,30 @@ public class QueryCacheManager {
      * @param type         - result entity type (metaClass name)
      * @param relatedTypes - query dependent types (metaClass names). It's a list of entity types used in query
      */
-    @SuppressWarnings("unchecked")
     public void putResultToCache(QueryKey queryKey, List resultList, String type, Set<String> relatedTypes) {
+        putResultToCache(queryKey, resultList, type, relatedTypes, getTypeVersions(relatedTypes));
+    }
+
+    /**
+     * Put query results into query cache for specified query {@code queryKey}.
+     * Results are extracted as identifiers from {@code resultList}
+     *
+     * @param type         - result entity type (metaClass name)
+     * @param relatedTypes - query dependent types (metaClass names). It's a list of entity types used in query
+     * @param typeVersions - versions of related types obtained by {@link #getTypeVersions(Set)} before the query was executed
+     */
+    @SuppressWarnings("unchecked")
+    public void putResultToCache(QueryKey queryKey, List resultList, String type, Set<String> relatedTypes,
+                                 Map<String, Long> typeVersions) {
         QueryResult queryResult;
         if (resultList.size() > 0) {
             List idList = (List) resultList.stream()
                     .filter(item -> item instanceof BaseGenericIdEntity)
                     .map(item -> ((BaseGenericIdEntity) item).getId())
                     .collect(Collectors.toList());
-            queryResult = new QueryResult(idList, type, getDescendants(relatedTypes));
+            queryResult = new QueryResult(idList, type, getDescendants(relatedTypes), null, typeVersions);
         } else {
-            queryResult = new QueryResult(Collections.emptyList(), type, getDescendants(relatedTypes));
+            queryResult = new QueryResult(Collections.emptyList(), type, getDescendants(relatedTypes), null, typeVersions);
         }
         log.debug("Put results into cache for query: {}, relatedTypes: {}", queryKey.printDescription(), relatedTypes);
         queryCache.put(queryKey, queryResult);
@@ -165,13 +226,28 @@ public class QueryCacheManager {
      * @param relatedTypes - query dependent types (metaClass names). It's a list of entity types used in query
      * @param exception    - store exception in the query cache if {@link TypedQuery#getSingleResult()} throws exception
      */
-    @SuppressWarnings("unchecked")
     public <T> void putResultToCache(QueryKey queryKey, T result, String type, Set<String> relatedTypes, RuntimeException exception) {
+        putResultToCache(queryKey, result, type, relatedTypes, exception, getTypeVersions(relatedTypes));
+    }
+
+    /**
+     * Put query results into query cache for specified query {@code queryKey}.
+     * Results are extracted as identifiers from entity {@code result}
+     *
+     * @param type         - result entity type (metaClass name)
+     * @param relatedTypes - query dependent types (metaClass names). It's a list of entity types used in query
+     * @param exception    - store exception in the query cache if {@link TypedQuery#getSingleResult()} throws exception
+     * @param typeVersions - versions of related types obtained by {@link #getTypeVersions(Set)} before the query was executed
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void putResultToCache(QueryKey queryKey, T result, String type, Set<String> relatedTypes,
+                                     RuntimeException exception, Map<String, Long> typeVersions) {
         QueryResult queryResult;
         if (exception == null) {
-            queryResult = new QueryResult(Collections.singletonList(((BaseGenericIdEntity) result).getId()), type, relatedTypes);
+            queryResult = new QueryResult(Collections.singletonList(((BaseGenericIdEntity) result).getId()), type,
+                    relatedTypes, null, typeVersions);
         } else {
-            queryResult = new QueryResult(Collections.emptyList(), type, relatedTypes, exception);
+            queryResult = new QueryResult(Collections.emptyList(), type, relatedTypes, exception, typeVersions);
         }
         log.debug("Put results into cache for query: {}, relatedTypes: {}", queryKey.printDescription(), relatedTypes);
         queryCache.put(queryKey, queryResult);
@@ -196,11 +272,12 @@ public class QueryCacheManager {
      */
     public void invalidate(String typeName, boolean sendInCluster) {
         if (isEnabled()) {
+            incrementTypeVersions(Collections.singleton(typeName));
             queryCache.invalidate(typeName);
             if (sendInCluster) {
                 MetaClass metaClass = metadata.getClass(typeName);
                 if (metaClass != null && metadata.getTools().isCacheable(metaClass)) {
-                    clusterManager.send(new InvalidateQueryCacheMsg(Sets.newHashSet(typeName)));
+                    sendInvalidation(Sets.newHashSet(typeName));
                 }
             }
         }
@@ -214,6 +291,7 @@ public class QueryCacheManager {
     public void invalidate(Set<String> typeNames, boolean sendInCluster) {
         if (isEnabled()) {
             if (typeNames != null && typeNames.size() > 0) {
+                incrementTypeVersions(typeNames);
                 queryCache.invalidate(typeNames);
                 if (sendInCluster) {
                     boolean hasCacheable = typeNames.stream().anyMatch(typeName -> {
@@ -221,7 +299,7 @@ public class QueryCacheManager {
                         return metaClass != null && metadata.getTools().isCacheable(metaClass);
                     });
                     if (hasCacheable) {
-                        clusterManager.send(new InvalidateQueryCacheMsg(typeNames));
+                        sendInvalidation(typeNames);
                     }
                 }
             }
@@ -257,6 +335,96 @@ public class QueryCacheManager {
         }
     }
 
+    /**
+     * Returns current versions of the given types and their descendants. The versions must be obtained before
+     * executing a query and passed to {@code putResultToCache()} with the query results.
+     *
+     * @param typeNames metaClass names of entity types used in query
+     */
+    public Map<String, Long> getTypeVersions(Set<String> typeNames) {
+        Set<String> types = getDescendants(typeNames);
+        if (types == null || types.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Long> versions = new HashMap<>(types.size());
+        for (String type : types) {
+            AtomicLong version = typeVersions.get(type);
+            versions.put(type, version == null ? 0L : version.get());
+        }
+        return versions;
+    }
+
+    protected void incrementTypeVersions(Set<String> typeNames) {
+        for (String typeName : typeNames) {
+            typeVersions.computeIfAbsent(typeName, k -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns cached results for the query, unless related types have been changed after the results were loaded.
+     */
+    protected QueryResult getActualResult(QueryKey queryKey) {
+        QueryResult queryResult = queryCache.get(queryKey);
+        if (queryResult != null && queryResult.getTypeVersions() != null) {
+            for (Map.Entry<String, Long> entry : queryResult.getTypeVersions().entrySet()) {
+                AtomicLong version = typeVersions.get(entry.getKey());
+                if (version != null && version.get() != entry.getValue()) {
+                    log.debug("Query results in cache are stale: {}", queryKey.printDescription());
+                    return null;
+                }
+            }
+        }
+        return queryResult;
+    }
+
+    protected void sendInvalidation(Set<String> typeNames) {
+        if (!clusterManager.isStarted()) {
+            return;
+        }
+        long interval = queryCacheConfig.getQueryCacheInvalidationBatchInterval();
+        if (interval <= 0) {
+            clusterManager.send(new InvalidateQueryCacheMsg(typeNames));
+            return;
+        }
+        pendingTypeNames.addAll(typeNames);
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                getInvalidationSender().schedule(this::flushInvalidations, interval, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // the application is stopping
+                flushInvalidations();
+            }
+        }
+    }
+
+    protected ScheduledExecutorService getInvalidationSender() {
+        ScheduledExecutorService sender = invalidationSender;
+        if (sender == null) {
+            synchronized (this) {
+                sender = invalidationSender;
+                if (sender == null) {
+                    sender = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                            .setNameFormat("QueryCacheInvalidationSender-%d").setDaemon(true).build());
+                    invalidationSender = sender;
+                }
+            }
+        }
+        return sender;
+    }
+
+    protected void flushInvalidations() {
+        flushScheduled.set(false);
+        Set<String> typeNames = new HashSet<>();
+        for (Iterator<String> it = pendingTypeNames.iterator(); it.hasNext(); ) {
+            typeNames.add(it.next());
+            it.remove();
+        }
+        if (!typeNames.isEmpty()) {
+            log.debug("Sending query cache invalidation for types {}", typeNames);
+            clusterManager.send(new InvalidateQueryCacheMsg(typeNames));
+        }
+    }
+
     protected Set<String> getDescendants(Set<String> relatedTypes) {
         if (relatedTypes == null) return null;
         Set<String> newRelatedTypes = new HashSet<>();
@@ -292,4 +460,51 @@ public class QueryCacheManager {
             this.queryKey = queryKey;
         }
     }
+
+    /**
+     * Writes invalidations by type names and of the whole cache. Messages with a query key are sent using
+     * the standard serialization.
+     */
+    protected static class InvalidateQueryCacheMsgCodec implements ClusterMessageCodec<InvalidateQueryCacheMsg> {
+
+        @Override
+        public int getTypeId() {
+            return ClusterMessageType.INVALIDATE_QUERY_CACHE.getTypeId();
+        }
+
+        @Override
+        public Class<InvalidateQueryCacheMsg> getMessageClass() {
+            return InvalidateQueryCacheMsg.class;
+        }
+
+        @Override
+        public boolean supports(InvalidateQueryCacheMsg message) {
+            return message.queryKey == null;
+        }
+
+        @Override
+        public void write(InvalidateQueryCacheMsg message, DataOutput out) throws IOException {
+            out.writeBoolean(message.invalidateAll);
+            if (!message.invalidateAll) {
+                Set<String> typeNames = message.typeNames != null ? message.typeNames : Collections.emptySet();
+                out.writeInt(typeNames.size());
+                for (String typeName : typeNames) {
+                    out.writeUTF(typeName);
+                }
+            }
+        }
+
+        @Override
+        public InvalidateQueryCacheMsg read(DataInput in) throws IOException {
+            if (in.readBoolean()) {
+                return new InvalidateQueryCacheMsg(true);
+            }
+            int size = in.readInt();
+            Set<String> typeNames = new HashSet<>(size);
+            for (int i = 0; i < size; i++) {
+                typeNames.add(in.readUTF());
+            }
+            return new InvalidateQueryCacheMsg(typeNames);
+        }
+    }
 }
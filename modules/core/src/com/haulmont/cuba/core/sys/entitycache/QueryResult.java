@@ -16,8 +16,10 @@
 
 package com.haulmont.cuba.core.sys.entitycache;
 
+import javax.annotation.Nullable;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class QueryResult {
@@ -25,16 +27,23 @@ public class QueryResult {
     protected final String type;
     protected final Set<String> relatedTypes;
     protected final RuntimeException exception;
+    protected final Map<String, Long> typeVersions;
 
     public QueryResult(List result, String type, Set<String> relatedTypes) {
         this(result, type, relatedTypes, null);
     }
 
     public QueryResult(List result, String type, Set<String> relatedTypes, RuntimeException exception) {
+        this(result, type, relatedTypes, exception, null);
+    }
+
+    public QueryResult(List result, String type, Set<String> relatedTypes, RuntimeException exception,
+                       @Nullable Map<String, Long> typeVersions) {
         this.result = Collections.unmodifiableList(result);
         this.type = type;
         this.relatedTypes = relatedTypes;
         this.exception = exception;
+        this.typeVersions = typeVersions;
     }
 
     public List getResult() {
@@ -52,4 +61,14 @@ public class QueryResult {
     public RuntimeException getException() {
         return exception;
     }
+
+    /**
+     * @return versions of related types captured before the query was executed,
+     * or null if the result is not versioned
+     * @see QueryCacheManager#getTypeVersions(Set)
+     */
+    @Nullable
+    public Map<String, Long> getTypeVersions() {
+        return typeVersions;
+    }
 }
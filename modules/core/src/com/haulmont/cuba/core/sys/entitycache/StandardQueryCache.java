@@ -18,8 +18,10 @@ package com.haulmont.cuba.core.sys.entitycache;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -29,17 +31,27 @@ import javax.inject.Inject;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Standard implementation of the {@link QueryCache} based on Guava cache.
+ * <p>
+ * Cached queries are indexed by related types and by query identifiers. The indexes are maintained by the cache
+ * removal listener, so they contain only entries which are present in the cache, regardless of whether an entry is
+ * evicted or invalidated explicitly. Index entries are matched by the cached result instance, so a late
+ * notification about a removed result never drops the index entry of a newer result for the same key.
+ * <p>
+ * Invalidation does not use a global lock: the indexes are concurrent maps updated atomically per type.
+ */
 @Component(QueryCache.NAME)
 public class StandardQueryCache implements QueryCache {
 
     protected Cache<QueryKey, QueryResult> data;
-    protected ConcurrentMap<String, CopyOnWriteArrayList<QueryKey>> typeIndex = new ConcurrentHashMap<>();
-    protected ReadWriteLock lock = new ReentrantReadWriteLock();
+    protected ConcurrentMap<String, ConcurrentMap<QueryKey, QueryResult>> typeIndex = new ConcurrentHashMap<>();
+    protected ConcurrentMap<UUID, QueryKey> idIndex = new ConcurrentHashMap<>();
+
+    // limits in force, only one of them is positive
+    protected long maxSize;
+    protected long maxWeight;
 
     @Inject
     protected QueryCacheConfig queryCacheConfig;
@@ -48,7 +60,50 @@ public class StandardQueryCache implements QueryCache {
 
     @PostConstruct
     protected void init() {
-        data = CacheBuilder.newBuilder().maximumSize(queryCacheConfig.getQueryCacheMaxSize()).build();
+        data = createCache(queryCacheConfig.getQueryCacheMaxSize(), queryCacheConfig.getQueryCacheMaxWeight());
+    }
+
+    protected Cache<QueryKey, QueryResult> createCache(long maxSize, long maxWeight) {
+        CacheBuilder<QueryKey, QueryResult> builder = CacheBuilder.newBuilder()
+                .removalListener((RemovalListener<QueryKey, QueryResult>) this::onRemoval);
+        if (maxWeight > 0) {
+            builder.maximumWeight(maxWeight).weigher(this::weigh);
+            this.maxSize = 0;
+            this.maxWeight = maxWeight;
+        } else {
+            builder.maximumSize(maxSize);
+            this.maxSize = maxSize;
+            this.maxWeight = 0;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the weight of the cached result, which is proportional to the number of identifiers it holds.
+     */
+    protected int weigh(QueryKey queryKey, QueryResult queryResult) {
+        return 1 + queryResult.getResult().size();
+    }
+
+    protected void onRemoval(RemovalNotification<QueryKey, QueryResult> notification) {
+        QueryKey queryKey = notification.getKey();
+        QueryResult queryResult = notification.getValue();
+        if (queryKey == null || queryResult == null) {
+            return;
+        }
+
+        for (String type : queryResult.getRelatedTypes()) {
+            typeIndex.computeIfPresent(type, (t, keys) -> {
+                keys.remove(queryKey, queryResult);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+        if (notification.getCause() == RemovalCause.REPLACED) {
+            // the cache keeps the original key instance, so its identifier stays valid,
+            // the identifier of the replacing key is removed by put()
+            return;
+        }
+        idIndex.remove(queryKey.getId(), queryKey);
     }
 
     @Override
@@ -58,108 +113,67 @@ public class StandardQueryCache implements QueryCache {
 
     @Override
     public void put(QueryKey queryKey, QueryResult queryResult) {
-        Lock readLock = lock.readLock();
-        readLock.lock();
-        try {
-            data.put(queryKey, queryResult);
+        // drop the previous entry, so that the cache keeps the key with the identifier registered in the index
+        data.invalidate(queryKey);
 
-            for (String type : queryResult.getRelatedTypes()) {
-                CopyOnWriteArrayList<QueryKey> keys = typeIndex.get(type);
+        // index the entry before it becomes visible, so that its eviction always finds it in the indexes
+        idIndex.put(queryKey.getId(), queryKey);
+        for (String type : queryResult.getRelatedTypes()) {
+            typeIndex.compute(type, (t, keys) -> {
                 if (keys == null) {
-                    typeIndex.putIfAbsent(type, new CopyOnWriteArrayList<>());
-                    keys = typeIndex.get(type);
+                    keys = new ConcurrentHashMap<>();
                 }
-                keys.add(queryKey);
-            }
-        } finally {
-            readLock.unlock();
+                keys.put(queryKey, queryResult);
+                return keys;
+            });
+        }
+
+        QueryResult previous = data.asMap().put(queryKey, queryResult);
+        if (previous != null) {
+            // an equal key was put concurrently: the cache keeps that key instance and the removal listener
+            // unindexes the replaced result, so the identifier of this key would never be removed
+            idIndex.remove(queryKey.getId(), queryKey);
         }
     }
 
     @Override
     public QueryKey findQueryKeyById(UUID queryId) {
-        Set<QueryKey> keys = Sets.newHashSet(data.asMap().keySet());
-        for (QueryKey key : keys) {
-            if (Objects.equals(queryId, key.getId())) {
-                return key;
-            }
-        }
-        return null;
+        return idIndex.get(queryId);
     }
 
     @Override
     public void invalidate(QueryKey queryKey) {
-        Lock readLock = lock.readLock();
-        readLock.lock();
-        try {
-            log.debug("Invalidate query by key {}", queryKey.printDescription());
-            data.invalidate(queryKey);
-        } finally {
-            readLock.unlock();
-        }
+        log.debug("Invalidate query by key {}", queryKey.printDescription());
+        data.invalidate(queryKey);
     }
 
     @Override
     public void invalidate(String typeName) {
-        Lock readLock = lock.readLock();
-        readLock.lock();
-        try {
-            CopyOnWriteArrayList<QueryKey> keys = typeIndex.get(typeName);
-            if (keys == null) return;
-            log.debug("Invalidate cache for type {}", typeName);
-            Arrays.stream(keys.toArray()).forEach(it -> data.invalidate(it));
-        } finally {
-            readLock.unlock();
-        }
+        Map<QueryKey, QueryResult> keys = typeIndex.get(typeName);
+        if (keys == null) return;
+        log.debug("Invalidate cache for type {}", typeName);
+        data.invalidateAll(new ArrayList<>(keys.keySet()));
     }
 
     @Override
     public void invalidate(Set<String> typeNames) {
-        Lock readLock = lock.readLock();
-        readLock.lock();
-        try {
-            typeNames.forEach(typeName -> {
-                        CopyOnWriteArrayList<QueryKey> keys = typeIndex.get(typeName);
-                        if (keys == null) return;
-                        log.debug("Invalidate cache for type {}", typeName);
-                        Arrays.stream(keys.toArray()).forEach(it -> data.invalidate(it));
-                    }
-            );
-        } finally {
-            readLock.unlock();
-        }
+        typeNames.forEach(this::invalidate);
     }
 
     @Override
     public QueryKey invalidate(UUID queryId) {
-        Lock readLock = lock.readLock();
-        readLock.lock();
-        try {
-            Set<QueryKey> keys = Sets.newHashSet(data.asMap().keySet());
-            for (QueryKey key : keys) {
-                if (Objects.equals(queryId, key.getId())) {
-                    log.debug("Invalidate query by identifier {}", queryId);
-                    data.invalidate(key);
-                    return key;
-                }
-            }
-        } finally {
-            readLock.unlock();
+        QueryKey key = idIndex.get(queryId);
+        if (key != null) {
+            log.debug("Invalidate query by identifier {}", queryId);
+            data.invalidate(key);
         }
-        return null;
+        return key;
     }
 
     @Override
     public void invalidateAll() {
-        Lock writeLock = lock.writeLock();
-        writeLock.lock();
-        try {
-            log.debug("Invalidate all cache");
-            data.invalidateAll();
-            typeIndex.clear();
-        } finally {
-            writeLock.unlock();
-        }
+        log.debug("Invalidate all cache");
+        data.invalidateAll();
     }
 
     @Override
@@ -169,7 +183,12 @@ public class StandardQueryCache implements QueryCache {
 
     @Override
     public long getMaxSize() {
-        return queryCacheConfig.getQueryCacheMaxSize();
+        return maxSize;
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return maxWeight;
     }
 
     @Override
@@ -102,4 +102,12 @@ public interface DbmsFeatures {
     default boolean useOrderByForPaging() {
         return false;
     }
+
+    /**
+     * @return maximum number of parameters which can be bound to a single statement, used to split queries
+     * with many parameters, e.g. loading by a list of composite ids
+     */
+    default int getMaxQueryParameters() {
+        return 1000;
+    }
 }
@@ -77,4 +77,10 @@ public class MssqlDbmsFeatures implements DbmsFeatures {
     public boolean supportsLobSortingAndFiltering() {
         return true;
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getMaxQueryParameters() {
+        // SQL Server allows 2100 parameters per statement
+        return 2000;
+    }
+}
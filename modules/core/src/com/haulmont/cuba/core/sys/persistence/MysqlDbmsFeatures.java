@@ -81,4 +81,9 @@ public class MysqlDbmsFeatures implements DbmsFeatures {
     public boolean supportsLobSortingAndFiltering() {
         return true;
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getMaxQueryParameters() {
+        return 10000;
+    }
+}
@@ -82,6 +82,8 @@ public class PersistenceConfigProcessor {
             addProperties(puElem, properties);
         }
 
+        addBatchWritingProperties(properties);
+
         for (String name : AppContext.getPropertyNames()) {
             if (name.startsWith("eclipselink.")) {
                 properties.put(name, AppContext.getProperty(name));
@@ -162,6 +164,32 @@ public class PersistenceConfigProcessor {
         }
     }
 
+    /**
+     * Enables JDBC batch writing if {@code cuba.jdbcBatchSize} (or {@code cuba.jdbcBatchSize_<store>} for an
+     * additional data store) is set to a positive number. INSERT and UPDATE statements of the same shape issued
+     * on flush are then sent to the database in batches of the given size.
+     */
+    private void addBatchWritingProperties(Map<String, String> properties) {
+        String propName = "cuba.jdbcBatchSize";
+        if (!Stores.isMain(storeName))
+            propName = propName + "_" + storeName;
+
+        String value = StringUtils.trimToNull(AppContext.getProperty(propName));
+        if (value == null)
+            return;
+
+        int batchSize;
+        try {
+            batchSize = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid value of " + propName + ": " + value);
+        }
+        if (batchSize > 0) {
+            properties.put("eclipselink.jdbc.batch-writing", "JDBC");
+            properties.put("eclipselink.jdbc.batch-writing.size", String.valueOf(batchSize));
+        }
+    }
+
     private void postProcess(Document document) {
         String postProcessorClassName = AppContext.getProperty("cuba.persistenceXmlPostProcessor");
 
@@ -15,19 +15,26 @@
  */
 package com.haulmont.cuba.security.app;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.cuba.core.app.ClusterListener;
+import com.haulmont.cuba.core.app.ClusterListenerAdapter;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ClusterMessageCodec;
+import com.haulmont.cuba.core.app.ClusterMessageType;
 import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.global.Configuration;
 import com.haulmont.cuba.core.global.Metadata;
 import com.haulmont.cuba.core.global.TimeSource;
 import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.serialization.SerializationSupport;
 import com.haulmont.cuba.security.entity.SessionAction;
 import com.haulmont.cuba.security.entity.User;
 import com.haulmont.cuba.security.entity.UserSessionEntity;
 import com.haulmont.cuba.security.global.NoUserSessionException;
 import com.haulmont.cuba.security.global.UserSession;
+import com.haulmont.cuba.security.global.UserSessionSecurityData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -37,11 +44,21 @@ import javax.inject.Inject;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
  * User sessions distributed cache.
+ * <p>
+ * A session is sent to the cluster in full when it is created or its state is propagated, later only
+ * {@link UserSessionHeartbeatMsg}s with the "last used" timestamp are sent. Permissions and constraints are shared
+ * between sessions having equal ones and are identified in the cluster by the
+ * {@linkplain UserSessionSecurityData#getFingerprint() fingerprint}: they are sent only with the first session
+ * having a new fingerprint, and again after the cluster view changes, sending fails or some time passes.
+ * Received data is kept while any session references it. A node receiving a heartbeat of an unknown session
+ * or a session with unknown fingerprint requests the session from other nodes, and the nodes having the session
+ * send it only to the requesting node.
  */
 @Component(UserSessionsAPI.NAME)
 public class UserSessions implements UserSessionsAPI {
@@ -54,6 +71,8 @@ public class UserSessions implements UserSessionsAPI {
         public volatile long lastUsedTs; // set to 0 when propagating removal to cluster
         public volatile long lastSentTs;
 
+        protected transient boolean securityDataMissing;
+
         public UserSessionInfo(UserSession session, long now) {
             this.session = session;
             this.since = now;
@@ -61,6 +80,13 @@ public class UserSessions implements UserSessionsAPI {
             this.lastSentTs = now;
         }
 
+        public UserSessionInfo(UserSession session, long since, long lastUsedTs, long lastSentTs) {
+            this.session = session;
+            this.since = since;
+            this.lastUsedTs = lastUsedTs;
+            this.lastSentTs = lastSentTs;
+        }
+
         public UserSession getSession() {
             return session;
         }
@@ -84,10 +110,66 @@ public class UserSessions implements UserSessionsAPI {
         }
     }
 
+    /**
+     * Updates the "last used" timestamp of a session on other nodes, zero timestamp means the session is removed.
+     */
+    public static class UserSessionHeartbeatMsg implements Serializable {
+        private static final long serialVersionUID = -2183412733632937716L;
+
+        public final UUID sessionId;
+        public final long lastUsedTs;
+
+        public UserSessionHeartbeatMsg(UUID sessionId, long lastUsedTs) {
+            this.sessionId = sessionId;
+            this.lastUsedTs = lastUsedTs;
+        }
+
+        @Override
+        public String toString() {
+            return "UserSessionHeartbeatMsg{sessionId=" + sessionId + ", lastUsedTs=" + lastUsedTs + '}';
+        }
+    }
+
+    /**
+     * Asks nodes having the session to send it with permissions and constraints.
+     */
+    public static class RequestUserSessionMsg implements Serializable {
+        private static final long serialVersionUID = 7652305936611472135L;
+
+        public final UUID sessionId;
+
+        public RequestUserSessionMsg(UUID sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        @Override
+        public String toString() {
+            return "RequestUserSessionMsg{sessionId=" + sessionId + '}';
+        }
+    }
+
     private static final Logger log = LoggerFactory.getLogger(UserSessions.class);
 
+    protected static final int STATE_RESET_INTERVAL = 1000;
+
+    protected static final int SENT_SECURITY_DATA_TIMEOUT_MIN = 10;
+
     protected Map<UUID, UserSessionInfo> cache = new ConcurrentHashMap<>();
 
+    // security data is held by sessions, an entry lives while any session references it
+    protected Cache<String, UserSessionSecurityData> securityDataCache = CacheBuilder.newBuilder()
+            .weakValues()
+            .build();
+
+    // fingerprints of security data recently sent to all nodes, cleared when the cluster view changes
+    protected Cache<String, Boolean> sentFingerprints = CacheBuilder.newBuilder()
+            .expireAfterWrite(SENT_SECURITY_DATA_TIMEOUT_MIN, TimeUnit.MINUTES)
+            .build();
+
+    protected Cache<UUID, Boolean> requestedSessions = CacheBuilder.newBuilder()
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build();
+
     protected volatile int expirationTimeout = 1800;
 
     protected volatile int sendTimeout = 10;
@@ -151,8 +233,54 @@ public class UserSessions implements UserSessionsAPI {
                     public void setState(byte[] state) {
                         receiveClusterState(state);
                     }
+
+                    @Override
+                    public void writeState(OutputStream out) throws IOException {
+                        writeClusterState(out);
+                    }
+
+                    @Override
+                    public void readState(InputStream in) throws IOException {
+                        readClusterState(in);
+                    }
+
+                    @Override
+                    public void viewChanged() {
+                        clusterViewChanged();
+                    }
+
+                    @Override
+                    public void sent(UserSessionInfo message) {
+                        sessionSent(message);
+                    }
+
+                    @Override
+                    public void sendFailed(UserSessionInfo message) {
+                        sessionSendFailed(message);
+                    }
                 }
         );
+        this.clusterManager.addListener(UserSessionHeartbeatMsg.class,
+                new ClusterListenerAdapter<UserSessionHeartbeatMsg>() {
+                    @Override
+                    public void receive(UserSessionHeartbeatMsg message) {
+                        receiveHeartbeat(message);
+                    }
+                });
+        this.clusterManager.addListener(RequestUserSessionMsg.class,
+                new ClusterListenerAdapter<RequestUserSessionMsg>() {
+                    @Override
+                    public void receive(RequestUserSessionMsg message) {
+                        receiveSessionRequest(message);
+                    }
+                });
+        this.clusterManager.registerCodec(new UserSessionInfoCodec());
+        this.clusterManager.registerCodec(new UserSessionHeartbeatMsgCodec());
+        this.clusterManager.registerCodec(new RequestUserSessionMsgCodec());
+        // a newer info of the same session supersedes the queued one, removals are never coalesced to keep order
+        this.clusterManager.registerCoalescingKey(UserSessionInfo.class, usi -> usi.session.getId());
+        this.clusterManager.registerCoalescingKey(UserSessionHeartbeatMsg.class,
+                message -> message.lastUsedTs != 0 ? message.sessionId : null);
     }
 
     protected void receiveClusterMessage(UserSessionInfo message) {
@@ -160,7 +288,12 @@ public class UserSessions implements UserSessionsAPI {
         if (message.lastUsedTs == 0) {
             log.debug("Removing session due to cluster message: {}", message);
             removeSessionInfo(id);
+        } else if (message.securityDataMissing) {
+            log.debug("Security data of session {} is unknown", id);
+            requestSession(id);
         } else {
+            requestedSessions.invalidate(id);
+            shareSecurityData(message.session);
             UserSessionInfo usi = getSessionInfo(id);
             if (usi == null || usi.lastUsedTs < message.lastUsedTs) {
                 putSessionInfo(id, message);
@@ -168,6 +301,61 @@ public class UserSessions implements UserSessionsAPI {
         }
     }
 
+    protected void clusterViewChanged() {
+        // joined nodes have not received security data sent before
+        sentFingerprints.invalidateAll();
+    }
+
+    protected void sessionSent(UserSessionInfo message) {
+        // the security data has been sent with the session, unless its fingerprint had already been marked
+        sentFingerprints.asMap().putIfAbsent(message.session.getSecurityData().getFingerprint(), Boolean.TRUE);
+    }
+
+    protected void sessionSendFailed(UserSessionInfo message) {
+        sentFingerprints.invalidate(message.session.getSecurityData().getFingerprint());
+    }
+
+    protected void receiveHeartbeat(UserSessionHeartbeatMsg message) {
+        if (message.lastUsedTs == 0) {
+            log.debug("Removing session due to cluster message: {}", message);
+            removeSessionInfo(message.sessionId);
+            return;
+        }
+        UserSessionInfo usi = getSessionInfo(message.sessionId);
+        if (usi == null) {
+            requestSession(message.sessionId);
+        } else if (usi.lastUsedTs < message.lastUsedTs) {
+            usi.lastUsedTs = message.lastUsedTs;
+            putSessionInfo(message.sessionId, usi);
+        }
+    }
+
+    protected void receiveSessionRequest(RequestUserSessionMsg message) {
+        UserSessionInfo usi = getSessionInfo(message.sessionId);
+        if (usi != null && !usi.session.isSystem()) {
+            log.debug("Sending session requested by other node: {}", usi);
+            // make the codec include the security data
+            sentFingerprints.invalidate(usi.session.getSecurityData().getFingerprint());
+            clusterManager.reply(usi);
+        }
+    }
+
+    protected void requestSession(UUID id) {
+        if (requestedSessions.asMap().putIfAbsent(id, Boolean.TRUE) == null) {
+            log.debug("Requesting session {} from cluster", id);
+            clusterManager.send(new RequestUserSessionMsg(id));
+        }
+    }
+
+    /**
+     * Makes the session share permissions and constraints with other sessions having equal ones.
+     */
+    protected void shareSecurityData(UserSession session) {
+        UserSessionSecurityData data = session.getSecurityData();
+        UserSessionSecurityData shared = securityDataCache.asMap().putIfAbsent(data.getFingerprint(), data);
+        session.setSecurityData(shared != null ? shared : data);
+    }
+
     protected void receiveClusterState(byte[] state) {
         if (state == null || state.length == 0) {
             log.debug("Received empty user sessions cache");
@@ -188,6 +376,24 @@ public class UserSessions implements UserSessionsAPI {
         }
     }
 
+    /**
+     * Reads session infos one by one as they are written by {@link #writeClusterState(OutputStream)}.
+     */
+    protected void readClusterState(InputStream in) throws IOException {
+        ObjectInputStream ois = new ObjectInputStream(in);
+        int size = 0;
+        try {
+            while (ois.readBoolean()) {
+                UserSessionInfo usi = (UserSessionInfo) ois.readObject();
+                receiveClusterMessage(usi);
+                size++;
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Error reading user session info", e);
+        }
+        log.debug("Received user sessions cache: {} sessions. Cache now contains {} sessions", size, cache.size());
+    }
+
     protected byte[] sendClusterState() {
         List<UserSessionInfo> infoList = getSessionInfoStream().collect(Collectors.toList());
         if (infoList.isEmpty())
@@ -208,8 +414,29 @@ public class UserSessions implements UserSessionsAPI {
         return bytes;
     }
 
+    /**
+     * Writes session infos one by one, so the whole cache is never serialized in memory. The stream is reset
+     * periodically to release references to the written objects.
+     */
+    protected void writeClusterState(OutputStream out) throws IOException {
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        int size = 0;
+        Iterator<UserSessionInfo> iterator = getSessionInfoStream().iterator();
+        while (iterator.hasNext()) {
+            oos.writeBoolean(true);
+            oos.writeObject(iterator.next());
+            if (++size % STATE_RESET_INTERVAL == 0) {
+                oos.reset();
+            }
+        }
+        oos.writeBoolean(false);
+        oos.flush();
+        log.debug("Sent user sessions cache to cluster: {} sessions", size);
+    }
+
     @Override
     public void add(UserSession session) {
+        shareSecurityData(session);
         UserSessionInfo usi = new UserSessionInfo(session, timeSource.currentTimeMillis());
         putSessionInfo(session.getId(), usi);
         if (!session.isSystem()) {
@@ -226,8 +453,7 @@ public class UserSessions implements UserSessionsAPI {
         if (usi != null) {
             log.debug("Removed session: {}", usi);
             if (!session.isSystem()) {
-                usi.lastUsedTs = 0;
-                clusterManager.send(usi);
+                clusterManager.send(new UserSessionHeartbeatMsg(session.getId(), 0));
             }
         }
     }
@@ -292,7 +518,7 @@ public class UserSessions implements UserSessionsAPI {
                 if (propagate && !usi.session.isSystem()) {
                     if (now > (usi.lastSentTs + toMillis(sendTimeout))) {
                         usi.lastSentTs = now;
-                        clusterManager.send(usi);
+                        clusterManager.send(new UserSessionHeartbeatMsg(id, usi.lastUsedTs));
                     }
                 }
             }
@@ -371,8 +597,7 @@ public class UserSessions implements UserSessionsAPI {
         if (usi != null) {
             log.debug("Killed session: {}", usi);
 
-            usi.lastUsedTs = 0;
-            clusterManager.send(usi);
+            clusterManager.send(new UserSessionHeartbeatMsg(id, 0));
         }
     }
 
@@ -406,8 +631,7 @@ public class UserSessions implements UserSessionsAPI {
 
                     removeSessionInfo(usi.session.getId());
 
-                    usi.lastUsedTs = 0;
-                    clusterManager.send(usi);
+                    clusterManager.send(new UserSessionHeartbeatMsg(usi.session.getId(), 0));
                 });
     }
 
@@ -431,4 +655,130 @@ public class UserSessions implements UserSessionsAPI {
     protected long toMillis(int seconds) {
         return seconds * 1000L;
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes the session without permissions and constraints, they are written only if their fingerprint
+     * has not been sent yet. Sessions of custom classes are sent using the standard serialization.
+     */
+    protected class UserSessionInfoCodec implements ClusterMessageCodec<UserSessionInfo> {
+
+        @Override
+        public int getTypeId() {
+            return ClusterMessageType.USER_SESSION_INFO.getTypeId();
+        }
+
+        @Override
+        public Class<UserSessionInfo> getMessageClass() {
+            return UserSessionInfo.class;
+        }
+
+        @Override
+        public boolean supports(UserSessionInfo message) {
+            return message.session.getClass() == UserSession.class;
+        }
+
+        @Override
+        public void write(UserSessionInfo message, DataOutput out) throws IOException {
+            UserSessionSecurityData securityData = message.session.getSecurityData();
+            String fingerprint = securityData.getFingerprint();
+            out.writeLong(message.since);
+            out.writeLong(message.lastUsedTs);
+            out.writeLong(message.lastSentTs);
+            out.writeUTF(fingerprint);
+            // the fingerprint is marked as sent only after the message has been sent
+            boolean writeSecurityData = sentFingerprints.getIfPresent(fingerprint) == null;
+            out.writeBoolean(writeSecurityData);
+            if (writeSecurityData) {
+                writeBytes(SerializationSupport.serialize(securityData), out);
+            }
+            writeBytes(SerializationSupport.serialize(message.session.copyWithoutSecurityData()), out);
+        }
+
+        @Override
+        public UserSessionInfo read(DataInput in) throws IOException {
+            long since = in.readLong();
+            long lastUsedTs = in.readLong();
+            long lastSentTs = in.readLong();
+            String fingerprint = in.readUTF();
+            UserSessionSecurityData securityData;
+            if (in.readBoolean()) {
+                securityData = (UserSessionSecurityData) SerializationSupport.deserialize(readBytes(in));
+                UserSessionSecurityData cached = securityDataCache.asMap().putIfAbsent(fingerprint, securityData);
+                if (cached != null) {
+                    securityData = cached;
+                }
+            } else {
+                securityData = securityDataCache.getIfPresent(fingerprint);
+            }
+            UserSession session = (UserSession) SerializationSupport.deserialize(readBytes(in));
+            UserSessionInfo usi = new UserSessionInfo(session, since, lastUsedTs, lastSentTs);
+            if (securityData != null) {
+                session.setSecurityData(securityData);
+            } else {
+                usi.securityDataMissing = true;
+            }
+            return usi;
+        }
+
+        protected void writeBytes(byte[] bytes, DataOutput out) throws IOException {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        protected byte[] readBytes(DataInput in) throws IOException {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return bytes;
+        }
+    }
+
+    protected static class UserSessionHeartbeatMsgCodec implements ClusterMessageCodec<UserSessionHeartbeatMsg> {
+
+        @Override
+        public int getTypeId() {
+            return ClusterMessageType.USER_SESSION_HEARTBEAT.getTypeId();
+        }
+
+        @Override
+        public Class<UserSessionHeartbeatMsg> getMessageClass() {
+            return UserSessionHeartbeatMsg.class;
+        }
+
+        @Override
+        public void write(UserSessionHeartbeatMsg message, DataOutput out) throws IOException {
+            out.writeLong(message.sessionId.getMostSignificantBits());
+            out.writeLong(message.sessionId.getLeastSignificantBits());
+            out.writeLong(message.lastUsedTs);
+        }
+
+        @Override
+        public UserSessionHeartbeatMsg read(DataInput in) throws IOException {
+            UUID sessionId = new UUID(in.readLong(), in.readLong());
+            return new UserSessionHeartbeatMsg(sessionId, in.readLong());
+        }
+    }
+
+    protected static class RequestUserSessionMsgCodec implements ClusterMessageCodec<RequestUserSessionMsg> {
+
+        @Override
+        public int getTypeId() {
+            return ClusterMessageType.REQUEST_USER_SESSION.getTypeId();
+        }
+
+        @Override
+        public Class<RequestUserSessionMsg> getMessageClass() {
+            return RequestUserSessionMsg.class;
+        }
+
+        @Override
+        public void write(RequestUserSessionMsg message, DataOutput out) throws IOException {
+            out.writeLong(message.sessionId.getMostSignificantBits());
+            out.writeLong(message.sessionId.getLeastSignificantBits());
+        }
+
+        @Override
+        public RequestUserSessionMsg read(DataInput in) throws IOException {
+            return new RequestUserSessionMsg(new UUID(in.readLong(), in.readLong()));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.haulmont.cuba.batch_commit;
+
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.Server;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.CommitContext;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.testsupport.TestContainer;
+import com.haulmont.cuba.testsupport.TestContext;
+import com.haulmont.cuba.testsupport.TestDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.naming.NamingException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Commits a large number of entities with JDBC batch writing enabled by the {@code cuba.jdbcBatchSize} property
+ * and counts the statements sent to the database.
+ */
+public class BatchCommitTestClass {
+
+    private static final int BATCH_SIZE = 50;
+    private static final int ENTITIES_COUNT = 200;
+
+    private static final AtomicInteger batchedStatements = new AtomicInteger();
+    private static final AtomicInteger executedBatches = new AtomicInteger();
+
+    @ClassRule
+    public static TestContainer cont = new TestContainer() {
+        @Override
+        protected void initDataSources() {
+            try {
+                Class.forName(dbDriver);
+                TestDataSource ds = new StatementCountingDataSource(dbUrl, dbUser, dbPassword);
+                TestContext.getInstance().bind(AppContext.getProperty("cuba.dataSourceJndiName"), ds);
+            } catch (ClassNotFoundException | NamingException e) {
+                throw new RuntimeException("Error initializing datasource", e);
+            }
+        }
+    }.setAppPropertiesFiles(Arrays.asList(
+            "com/haulmont/cuba/app.properties",
+            "com/haulmont/cuba/testsupport/test-app.properties",
+            "com/haulmont/cuba/test-app.properties",
+            "com/haulmont/cuba/batch_commit/test-batchcommit-app.properties"));
+
+    private DataManager dataManager;
+
+    @Before
+    public void setUp() throws Exception {
+        dataManager = AppBeans.get(DataManager.class);
+        deleteServers();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        deleteServers();
+    }
+
+    @Test
+    public void testBatchCommit() {
+        resetCounters();
+        Set<Entity> committed = dataManager.commit(new CommitContext(createServers()));
+        assertEquals(ENTITIES_COUNT, committed.size());
+        assertBatched();
+
+        List<Server> servers = loadServers();
+        assertEquals(ENTITIES_COUNT, servers.size());
+
+        CommitContext commitContext = new CommitContext();
+        for (Server server : servers) {
+            server.setRunning(false);
+            commitContext.addInstanceToCommit(server);
+        }
+        resetCounters();
+        committed = dataManager.commit(commitContext);
+        assertEquals(ENTITIES_COUNT, committed.size());
+        assertBatched();
+
+        for (Server server : loadServers()) {
+            assertFalse(server.getRunning());
+        }
+    }
+
+    private void resetCounters() {
+        batchedStatements.set(0);
+        executedBatches.set(0);
+    }
+
+    private void assertBatched() {
+        assertTrue("Statements are not batched", batchedStatements.get() >= ENTITIES_COUNT);
+        assertTrue("Too many batches: " + executedBatches.get(),
+                executedBatches.get() >= ENTITIES_COUNT / BATCH_SIZE
+                        && executedBatches.get() <= ENTITIES_COUNT / BATCH_SIZE + 1);
+    }
+
+    private List<Entity> createServers() {
+        List<Entity> servers = new ArrayList<>(ENTITIES_COUNT);
+        for (int i = 0; i < ENTITIES_COUNT; i++) {
+            Server server = cont.metadata().create(Server.class);
+            server.setName("batchCommit" + i);
+            server.setRunning(true);
+            servers.add(server);
+        }
+        return servers;
+    }
+
+    private List<Server> loadServers() {
+        return dataManager.load(Server.class).query("select s from sys$Server s").list();
+    }
+
+    private void deleteServers() throws SQLException {
+        QueryRunner runner = new QueryRunner(cont.persistence().getDataSource());
+        runner.update("delete from SYS_SERVER");
+    }
+
+    /**
+     * Counts statements added to JDBC batches and executed batches on all connections.
+     */
+    private static class StatementCountingDataSource extends TestDataSource {
+
+        public StatementCountingDataSource(String connUrl, String user, String password) {
+            super(connUrl, user, password);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return wrap(Connection.class, super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return wrap(Connection.class, super.getConnection(username, password));
+        }
+
+        private static <T> T wrap(Class<T> type, T target) {
+            InvocationHandler handler = (proxy, method, args) -> {
+                if (method.getName().equals("addBatch")) {
+                    batchedStatements.incrementAndGet();
+                } else if (method.getName().equals("executeBatch")) {
+                    executedBatches.incrementAndGet();
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                if (result instanceof Statement && method.getReturnType().isInterface()) {
+                    //noinspection unchecked
+                    return wrap((Class<Object>) method.getReturnType(), result);
+                }
+                return result;
+            };
+            return type.cast(Proxy.newProxyInstance(BatchCommitTestClass.class.getClassLoader(), new Class[]{type}, handler));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core;
+
+import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.Server;
+import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.eclipse.persistence.internal.databaseaccess.DatabasePlatform;
+import org.eclipse.persistence.internal.jpa.EntityManagerFactoryDelegate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares committing of a large number of entities with and without JDBC batch writing.
+ * Runs in the {@code testPerformance} task only.
+ */
+public class BatchCommitBenchmark {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private static final int ENTITIES_COUNT = 2000;
+
+    private DataManager dataManager;
+    private DatabasePlatform platform;
+    private boolean usesBatchWriting;
+    private int maxBatchWritingSize;
+
+    @Before
+    public void setUp() throws Exception {
+        dataManager = AppBeans.get(DataManager.class);
+
+        try (Transaction tx = cont.persistence().createTransaction()) {
+            EntityManagerFactory emf = cont.entityManager().getDelegate().getEntityManagerFactory();
+            platform = ((EntityManagerFactoryDelegate) emf).getServerSession().getPlatform();
+            tx.commit();
+        }
+        usesBatchWriting = platform.usesBatchWriting();
+        maxBatchWritingSize = platform.getMaxBatchWritingSize();
+
+        deleteServers();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        platform.setUsesBatchWriting(usesBatchWriting);
+        platform.setMaxBatchWritingSize(maxBatchWritingSize);
+
+        deleteServers();
+    }
+
+    @Test
+    public void testBatchCommitThroughput() throws Exception {
+        setBatchWriting(0);
+        dataManager.commit(new CommitContext(createServers("warmUp")));
+        deleteServers();
+
+        long start = System.nanoTime();
+        dataManager.commit(new CommitContext(createServers("rowAtATime")));
+        long rowAtATimeTime = System.nanoTime() - start;
+        deleteServers();
+
+        setBatchWriting(100);
+        start = System.nanoTime();
+        dataManager.commit(new CommitContext(createServers("batched")));
+        long batchedTime = System.nanoTime() - start;
+
+        assertEquals(ENTITIES_COUNT, loadServers().size());
+
+        System.out.println(String.format("Commit of %d new entities: %d ms row-at-a-time (%d rows/s), %d ms batched (%d rows/s)",
+                ENTITIES_COUNT,
+                rowAtATimeTime / 1_000_000, ENTITIES_COUNT * 1_000_000_000L / rowAtATimeTime,
+                batchedTime / 1_000_000, ENTITIES_COUNT * 1_000_000_000L / batchedTime));
+    }
+
+    private void setBatchWriting(int batchSize) {
+        platform.setUsesBatchWriting(batchSize > 0);
+        if (batchSize > 0) {
+            platform.setMaxBatchWritingSize(batchSize);
+        }
+    }
+
+    private List<Entity> createServers(String prefix) {
+        List<Entity> servers = new ArrayList<>(ENTITIES_COUNT);
+        for (int i = 0; i < ENTITIES_COUNT; i++) {
+            Server server = cont.metadata().create(Server.class);
+            server.setName(prefix + i);
+            server.setRunning(true);
+            servers.add(server);
+        }
+        return servers;
+    }
+
+    private List<Server> loadServers() {
+        return dataManager.load(Server.class).query("select s from sys$Server s").list();
+    }
+
+    private void deleteServers() throws SQLException {
+        QueryRunner runner = new QueryRunner(cont.persistence().getDataSource());
+        runner.update("delete from SYS_SERVER");
+    }
+}
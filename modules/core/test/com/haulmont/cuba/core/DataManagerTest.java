@@ -17,12 +17,16 @@
 package com.haulmont.cuba.core;
 
 import com.haulmont.bali.db.QueryRunner;
+import com.haulmont.cuba.core.app.DataService;
 import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.KeyValueEntity;
 import com.haulmont.cuba.core.entity.Server;
 import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.security.entity.Group;
 import com.haulmont.cuba.security.entity.User;
 import com.haulmont.cuba.testsupport.TestContainer;
+import com.haulmont.cuba.testsupport.TestSupport;
 import org.apache.commons.lang3.time.DateUtils;
 import org.junit.Before;
 import org.junit.ClassRule;
@@ -30,6 +34,9 @@ import org.junit.Test;
 
 import javax.persistence.TemporalType;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -96,6 +103,51 @@ public class DataManagerTest {
         assertTrue(list.size() > 0);
     }
 
+    @Test
+    public void testLoadStream() {
+        for (int i = 0; i < 5; i++) {
+            Server server = new Server();
+            server.setName("server" + i);
+            server.setRunning(true);
+            dataManager.commit(server);
+        }
+
+        AppContext.setProperty("cuba.loadStreamFetchSize", "2");
+        try (Stream<Server> stream = dataManager.load(Server.class)
+                .query("select s from sys$Server s order by s.name")
+                .stream()) {
+            List<Server> list = stream.collect(Collectors.toList());
+            assertEquals(5, list.size());
+            for (int i = 0; i < 5; i++) {
+                Server server = list.get(i);
+                assertEquals("server" + i, server.getName());
+                assertTrue(PersistenceHelper.isDetached(server));
+            }
+        } finally {
+            AppContext.setProperty("cuba.loadStreamFetchSize", null);
+        }
+    }
+
+    @Test
+    public void testLoadStreamWithReferences() {
+        View view = new View(User.class)
+                .addProperty("login")
+                .addProperty("group", new View(Group.class).addProperty("name"));
+
+        AppContext.setProperty("cuba.loadStreamFetchSize", "1");
+        try (Stream<User> stream = dataManager.load(User.class)
+                .query("select u from sec$User u where u.login = 'admin'")
+                .view(view)
+                .stream()) {
+            List<User> list = stream.collect(Collectors.toList());
+            assertEquals(1, list.size());
+            assertTrue(PersistenceHelper.isLoaded(list.get(0), "group"));
+            assertEquals("Company", list.get(0).getGroup().getName());
+        } finally {
+            AppContext.setProperty("cuba.loadStreamFetchSize", null);
+        }
+    }
+
     @Test
     public void testLoadListById() {
         Server server = new Server();
@@ -287,6 +339,71 @@ public class DataManagerTest {
         assertNotNull(saved);
     }
 
+    @Test
+    public void testLoadListAsync() throws Exception {
+        Server server = new Server();
+        server.setName("localhost");
+        dataManager.commit(server);
+
+        LoadContext<Server> loadContext = LoadContext.create(Server.class)
+                .setQuery(LoadContext.createQuery("select s from sys$Server s where s.name = :name")
+                        .setParameter("name", "localhost"));
+
+        List<Server> list = dataManager.loadListAsync(loadContext).get();
+        assertEquals(1, list.size());
+        assertEquals(server, list.get(0));
+
+        list = dataManager.secure().loadListAsync(loadContext).get();
+        assertEquals(1, list.size());
+        assertTrue(loadContext.isAuthorizationRequired());
+    }
+
+    @Test
+    public void testExecuteBatch() throws Exception {
+        Server server = new Server();
+        server.setName("localhost");
+        dataManager.commit(server);
+
+        DataLoadBatch batch = new DataLoadBatch();
+        CompletableFuture<Server> loaded = batch.load(LoadContext.create(Server.class).setId(server.getId()));
+        CompletableFuture<List<Server>> list = batch.loadList(LoadContext.create(Server.class)
+                .setQuery(LoadContext.createQuery("select s from sys$Server s")));
+        CompletableFuture<Long> count = batch.getCount(LoadContext.create(Server.class)
+                .setQuery(LoadContext.createQuery("select s from sys$Server s")));
+        CompletableFuture<List<KeyValueEntity>> values = batch.loadValues(ValueLoadContext.create()
+                .setQuery(ValueLoadContext.createQuery("select s.name from sys$Server s"))
+                .addProperty("name"));
+        CompletableFuture<List<Server>> failed = batch.loadList(LoadContext.create(Server.class)
+                .setQuery(LoadContext.createQuery("select s.name from sys$Server s")));
+
+        dataManager.executeBatch(batch);
+
+        assertEquals(server, loaded.get());
+        assertEquals(1, list.get().size());
+        assertEquals(Long.valueOf(1), count.get());
+        assertEquals("localhost", values.get().get(0).getValue("name"));
+        assertTrue(failed.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testExecuteBatchByDataService() throws Exception {
+        Server server = new Server();
+        server.setName("localhost");
+        dataManager.commit(server);
+
+        DataLoadBatch batch = new DataLoadBatch();
+        batch.load(LoadContext.create(Server.class).setId(server.getId()));
+        batch.getCount(LoadContext.create(Server.class)
+                .setQuery(LoadContext.createQuery("select s from sys$Server s")));
+
+        // the batch is passed to the middleware serialized, as by a remote call
+        List<Object> results = AppBeans.get(DataService.class).executeBatch(TestSupport.reserialize(batch));
+
+        assertEquals(2, results.size());
+        assertEquals(server, results.get(0));
+        assertEquals(1L, results.get(1));
+    }
+
     public static class MyLoadContext<E extends Entity> extends LoadContext<E> {
 
         private String info;
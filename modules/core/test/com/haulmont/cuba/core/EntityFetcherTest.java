@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core;
+
+import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.EntityFetcher;
+import com.haulmont.cuba.security.entity.Group;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.testsupport.TestContainer;
+import com.haulmont.cuba.testsupport.TestSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class EntityFetcherTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private static final int USERS_COUNT = 5;
+
+    private EntityFetcher entityFetcher;
+    private DataManager dataManager;
+    private List<UUID> userIds = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        entityFetcher = AppBeans.get(EntityFetcher.NAME);
+        dataManager = AppBeans.get(DataManager.class);
+
+        try (Transaction tx = cont.persistence().createTransaction()) {
+            EntityManager em = cont.persistence().getEntityManager();
+            Group group = em.find(Group.class, TestSupport.COMPANY_GROUP_ID);
+            for (int i = 0; i < USERS_COUNT; i++) {
+                User user = cont.metadata().create(User.class);
+                user.setLogin("entityFetcherTest" + i + "-" + user.getId());
+                user.setGroup(group);
+                em.persist(user);
+                userIds.add(user.getId());
+            }
+            tx.commit();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cont.deleteRecord("SEC_USER", userIds.toArray());
+    }
+
+    @Test
+    public void testFetchCollectionReloadsDetachedReferences() {
+        List<User> users = loadUsers();
+        for (User user : users) {
+            assertFalse(PersistenceHelper.isLoaded(user.getGroup(), "createTs"));
+        }
+
+        View view = new View(User.class, false)
+                .addProperty("login")
+                .addProperty("group", new View(Group.class, false)
+                        .addProperty("name")
+                        .addProperty("createTs"));
+
+        try (Transaction tx = cont.persistence().createTransaction()) {
+            entityFetcher.fetch(users, view, true);
+
+            Group group = users.get(0).getGroup();
+            assertTrue(PersistenceHelper.isManaged(group));
+            assertTrue(PersistenceHelper.isLoaded(group, "createTs"));
+            for (User user : users) {
+                assertSame(group, user.getGroup());
+            }
+            tx.commit();
+        }
+    }
+
+    @Test
+    public void testFetchSingleInstance() {
+        User user = loadUsers().get(0);
+
+        View view = new View(User.class, false)
+                .addProperty("login")
+                .addProperty("group", new View(Group.class, false)
+                        .addProperty("createTs"));
+
+        try (Transaction tx = cont.persistence().createTransaction()) {
+            entityFetcher.fetch(user, view, true);
+
+            assertTrue(PersistenceHelper.isManaged(user.getGroup()));
+            assertTrue(PersistenceHelper.isLoaded(user.getGroup(), "createTs"));
+            tx.commit();
+        }
+    }
+
+    private List<User> loadUsers() {
+        View view = new View(User.class, false)
+                .addProperty("login")
+                .addProperty("group", cont.metadata().getViewRepository().getView(Group.class, View.MINIMAL));
+        return dataManager.load(User.class)
+                .query("select u from sec$User u where u.id in :ids order by u.login")
+                .parameter("ids", userIds)
+                .view(view)
+                .list();
+    }
+}
@@ -216,6 +216,35 @@ public class NonEntityQueryTest {
         assertEquals(Long.valueOf(2), e.getValue("count"));
     }
 
+    @Test
+    public void testValueTable() {
+        ValueLoadContext context = ValueLoadContext.create()
+                .setQuery(ValueLoadContext.createQuery("select u.id, u.login, u.version from sec$User u where u.id = :id1 or u.id = :id2 order by u.login")
+                        .setParameter("id1", TestSupport.ADMIN_USER_ID)
+                        .setParameter("id2", TestSupport.ANONYMOUS_USER_ID))
+                .addProperty("userId").addProperty("login").addProperty("version");
+        context.setIdName("userId");
+
+        ValueTable table = dataManager.loadValueTable(context);
+
+        assertEquals(2, table.size());
+        assertEquals(1, table.getColumnIndex("login"));
+        assertEquals(TestSupport.ADMIN_USER_ID, table.getValue(0, "userId"));
+        assertEquals("anonymous", table.getValue(1, 1));
+        assertTrue(table.getColumn(2) instanceof int[]);
+        assertNull(table.getValue(0, "unknown"));
+
+        List<KeyValueEntity> rows = table.getRows();
+        assertEquals(2, rows.size());
+        assertSame(rows.get(1), table.getRows().get(1));
+        assertEquals(TestSupport.ANONYMOUS_USER_ID, rows.get(1).getId());
+        assertEquals("admin", rows.get(0).getValue("login"));
+
+        rows.get(0).setValue("login", "changed");
+        assertEquals("changed", rows.get(0).getValue("login"));
+        assertEquals("admin", table.getValue(0, "login"));
+    }
+
     @Test
     public void testIdentificationVariable() {
         ValueLoadContext context = ValueLoadContext.create();
@@ -263,6 +292,11 @@ public class NonEntityQueryTest {
             KeyValueEntity e = list.get(0);
             assertNull(e.getValue("name"));
 
+            ValueTable table = dataManager.secure().loadValueTable(context);
+            assertEquals(1, table.size());
+            assertNull(table.getColumn(0));
+            assertNull(table.getValue(0, "name"));
+
             context = ValueLoadContext.create();
             context.setQueryString("select count(s.id) from sys$Server s where s.name = 'someServer'");
             context.addProperty("count");
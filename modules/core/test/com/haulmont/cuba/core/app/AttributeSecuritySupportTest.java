@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.cuba.core.app.events.SetupAttributeAccessEvent;
+import com.haulmont.cuba.core.entity.BaseEntityInternalAccess;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.SecurityTokenManager;
+import com.haulmont.cuba.security.entity.Group;
+import com.haulmont.cuba.security.entity.Role;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.security.entity.UserRole;
+import com.haulmont.cuba.testmodel.selfinherited.ChildEntity;
+import com.haulmont.cuba.testmodel.selfinherited.RootEntity;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class AttributeSecuritySupportTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private TestAttributeSecuritySupport attributeSecuritySupport;
+    private CountingSecurityTokenManager securityTokenManager;
+
+    @Before
+    public void setUp() throws Exception {
+        AutowireCapableBeanFactory beanFactory = AppContext.getApplicationContext().getAutowireCapableBeanFactory();
+        securityTokenManager = beanFactory.createBean(CountingSecurityTokenManager.class);
+        attributeSecuritySupport = beanFactory.createBean(TestAttributeSecuritySupport.class);
+        attributeSecuritySupport.securityTokenManager = securityTokenManager;
+    }
+
+    @Test
+    public void testNestedReferencesAndCollections() {
+        TestHandler groupHandler = attributeSecuritySupport.register(new TestHandler(Group.class));
+        TestHandler roleHandler = attributeSecuritySupport.register(new TestHandler(Role.class));
+
+        Group group = createGroup();
+        Role role1 = createRole("role1");
+        Role role2 = createRole("role2");
+        User user = cont.metadata().create(User.class);
+        user.setGroup(group);
+        user.setUserRoles(new ArrayList<>(Arrays.asList(
+                createUserRole(user, role1), createUserRole(user, role1), createUserRole(user, role2))));
+
+        View view = new View(User.class)
+                .addProperty("login")
+                .addProperty("group", new View(Group.class).addProperty("name"))
+                .addProperty("userRoles", new View(UserRole.class)
+                        .addProperty("role", new View(Role.class).addProperty("name")));
+
+        attributeSecuritySupport.onLoad(Collections.singletonList(user), view);
+
+        assertEquals(Collections.singletonList(group), groupHandler.handled);
+        assertEquals(Arrays.asList(role1, role2), roleHandler.handled);
+
+        assertHandled(group, role1, role2);
+        assertNotHandled(user);
+        assertNotHandled(user.getUserRoles().toArray(new Entity[0]));
+
+        assertEquals(1, securityTokenManager.invocations);
+        assertEquals(3, securityTokenManager.entities);
+    }
+
+    @Test
+    public void testInstancesWithEqualIds() {
+        TestHandler roleHandler = attributeSecuritySupport.register(new TestHandler(Role.class));
+
+        Role role = createRole("role");
+        Role roleCopy = cont.metadata().create(Role.class);
+        roleCopy.setId(role.getId());
+        roleCopy.setName(role.getName());
+
+        attributeSecuritySupport.onLoad(Arrays.asList(role, roleCopy), new View(Role.class).addProperty("name"));
+
+        assertEquals(2, roleHandler.handled.size());
+        assertSame(role, roleHandler.handled.get(0));
+        assertSame(roleCopy, roleHandler.handled.get(1));
+        assertHandled(role, roleCopy);
+
+        assertEquals(1, securityTokenManager.invocations);
+        assertEquals(2, securityTokenManager.entities);
+    }
+
+    @Test
+    public void testDescendantType() {
+        TestHandler childHandler = attributeSecuritySupport.register(new TestHandler(ChildEntity.class));
+
+        RootEntity root = cont.metadata().create(RootEntity.class);
+        ChildEntity child = cont.metadata().create(ChildEntity.class);
+
+        // the view of the base type is planned because its descendant has a handler
+        attributeSecuritySupport.onLoad(Arrays.asList(root, child), new View(RootEntity.class).addProperty("description"));
+
+        assertEquals(Collections.singletonList(child), childHandler.handled);
+        assertHandled(child);
+        assertNotHandled(root);
+
+        assertEquals(1, securityTokenManager.invocations);
+        assertEquals(1, securityTokenManager.entities);
+    }
+
+    @Test
+    public void testCyclicView() {
+        TestHandler roleHandler = attributeSecuritySupport.register(new TestHandler(Role.class));
+
+        Role role1 = createRole("role1");
+        Role role2 = createRole("role2");
+        User user1 = cont.metadata().create(User.class);
+        User user2 = cont.metadata().create(User.class);
+        user2.setUserRoles(new ArrayList<>(Collections.singletonList(createUserRole(user2, role2))));
+        // the second user is reachable only through the back reference of the first user's role link
+        UserRole userRole = createUserRole(user2, role1);
+        user1.setUserRoles(new ArrayList<>(Collections.singletonList(userRole)));
+
+        View userView = new View(User.class).addProperty("login");
+        View userRoleView = new View(UserRole.class)
+                .addProperty("user", userView)
+                .addProperty("role", new View(Role.class).addProperty("name"));
+        userView.addProperty("userRoles", userRoleView);
+
+        attributeSecuritySupport.onLoad(Collections.singletonList(user1), userView);
+
+        // the back reference is traversed before the role of the link
+        assertEquals(Arrays.asList(role2, role1), roleHandler.handled);
+        assertHandled(role1, role2);
+        assertNotHandled(user1, user2, userRole);
+    }
+
+    @Test
+    public void testTypesWithoutHandlers() {
+        TestHandler roleHandler = attributeSecuritySupport.register(new TestHandler(Role.class));
+
+        Group group = createGroup();
+        User user = cont.metadata().create(User.class);
+        user.setGroup(group);
+
+        View view = new View(User.class)
+                .addProperty("login")
+                .addProperty("group", new View(Group.class).addProperty("name"));
+
+        attributeSecuritySupport.onLoad(Collections.singletonList(user), view);
+
+        assertTrue(roleHandler.handled.isEmpty());
+        assertNotHandled(user, group);
+        assertEquals(0, securityTokenManager.invocations);
+    }
+
+    private Group createGroup() {
+        Group group = cont.metadata().create(Group.class);
+        group.setName("group");
+        return group;
+    }
+
+    private Role createRole(String name) {
+        Role role = cont.metadata().create(Role.class);
+        role.setName(name);
+        return role;
+    }
+
+    private UserRole createUserRole(User user, Role role) {
+        UserRole userRole = cont.metadata().create(UserRole.class);
+        userRole.setUser(user);
+        userRole.setRole(role);
+        return userRole;
+    }
+
+    private void assertHandled(Entity... entities) {
+        for (Entity entity : entities) {
+            assertNotNull(BaseEntityInternalAccess.getSecurityToken(entity));
+            assertEquals(Collections.singletonList(TestHandler.READ_ONLY_ATTRIBUTE),
+                    new ArrayList<>(BaseEntityInternalAccess.getSecurityState(entity).getReadonlyAttributes()));
+        }
+    }
+
+    private void assertNotHandled(Entity... entities) {
+        for (Entity entity : entities) {
+            assertNull(BaseEntityInternalAccess.getSecurityState(entity));
+        }
+    }
+
+    public static class TestAttributeSecuritySupport extends AttributeSecuritySupport {
+
+        private final List<HandlerEntry> handlers = new ArrayList<>();
+
+        public TestHandler register(TestHandler handler) {
+            handlers.add(new HandlerEntry("test_" + handler.entityClass.getSimpleName(), handler));
+            handlersByMetaClass.clear();
+            return handler;
+        }
+
+        @Override
+        protected List<HandlerEntry> getAllHandlers() {
+            return handlers;
+        }
+    }
+
+    public static class CountingSecurityTokenManager extends SecurityTokenManager {
+
+        private int invocations;
+        private int entities;
+
+        @Override
+        public void writeSecurityTokens(Collection<? extends Entity> entities) {
+            invocations++;
+            this.entities += entities.size();
+            super.writeSecurityTokens(entities);
+        }
+    }
+
+    private static class TestHandler implements SetupAttributeAccessHandler<Entity> {
+
+        private static final String READ_ONLY_ATTRIBUTE = "createdBy";
+
+        private final Class<?> entityClass;
+        private final List<Entity> handled = new ArrayList<>();
+
+        private TestHandler(Class<?> entityClass) {
+            this.entityClass = entityClass;
+        }
+
+        @Override
+        public void setupAccess(SetupAttributeAccessEvent<Entity> event) {
+            handled.add(event.getEntity());
+            event.addReadOnly(READ_ONLY_ATTRIBUTE);
+        }
+
+        @Override
+        public boolean supports(Class clazz) {
+            return entityClass.isAssignableFrom(clazz);
+        }
+    }
+}
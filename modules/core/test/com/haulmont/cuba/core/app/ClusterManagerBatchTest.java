@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.jgroups.Message;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ClusterManagerBatchTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private ClusterManager clusterManager;
+    private List<TestMessage> received = new ArrayList<>();
+    private ClusterListener<TestMessage> listener = new ClusterListenerAdapter<TestMessage>() {
+        @Override
+        public void receive(TestMessage message) {
+            received.add(message);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        clusterManager = AppBeans.get(ClusterManagerAPI.NAME);
+        clusterManager.addListener(TestMessage.class, listener);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        clusterManager.removeListener(TestMessage.class, listener);
+    }
+
+    @Test
+    public void testReceiveBatch() throws Exception {
+        List<ClusterManager.EncodedMessage> batch = new ArrayList<>();
+        for (String value : Arrays.asList("a", "b", "c")) {
+            TestMessage message = new TestMessage(value, value);
+            batch.add(new ClusterManager.EncodedMessage(message, clusterManager.encode(message), 0));
+        }
+        byte[] bytes = clusterManager.encodeBatch(batch);
+
+        clusterManager.new ClusterReceiver().receive(new Message(null, null, bytes));
+
+        assertEquals(3, received.size());
+        assertEquals("a", received.get(0).value);
+        assertEquals("b", received.get(1).value);
+        assertEquals("c", received.get(2).value);
+        assertEquals(3, clusterManager.getReceivedMessages(TestMessage.class.getName()));
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        clusterManager.registerCoalescingKey(TestMessage.class, message -> message.key);
+        clusterManager.queueLock.lock();
+        try {
+            clusterManager.senderStopped = false;
+        } finally {
+            clusterManager.queueLock.unlock();
+        }
+        try {
+            long coalesced = clusterManager.getCoalescedMessages();
+
+            assertTrue(clusterManager.enqueue(new TestMessage("1", "k1")));
+            assertTrue(clusterManager.enqueue(new TestMessage("2", "k2")));
+            assertTrue(clusterManager.enqueue(new TestMessage("3", "k1")));
+            assertTrue(clusterManager.enqueue(new TestMessage("4", null)));
+            assertTrue(clusterManager.enqueue(new TestMessage("5", null)));
+
+            assertEquals(4, clusterManager.getMessagesCount());
+            assertEquals(coalesced + 1, clusterManager.getCoalescedMessages());
+
+            List<Serializable> messages = clusterManager.takeQueuedMessages();
+            assertEquals(4, messages.size());
+            // the superseded message is dropped and the newer one keeps its place in the sending order
+            assertEquals("2", ((TestMessage) messages.get(0)).value);
+            assertEquals("3", ((TestMessage) messages.get(1)).value);
+            assertEquals("4", ((TestMessage) messages.get(2)).value);
+            assertEquals("5", ((TestMessage) messages.get(3)).value);
+            assertEquals(0, clusterManager.getMessagesCount());
+
+            // the key is released when the message is taken from the queue
+            assertTrue(clusterManager.enqueue(new TestMessage("6", "k1")));
+            assertEquals(1, clusterManager.getMessagesCount());
+            clusterManager.takeQueuedMessages();
+        } finally {
+            clusterManager.coalescingKeyFunctions.remove(TestMessage.class);
+            clusterManager.queueLock.lock();
+            try {
+                clusterManager.senderStopped = true;
+            } finally {
+                clusterManager.queueLock.unlock();
+            }
+        }
+    }
+
+    @Test
+    public void testBatchingDisabled() throws Exception {
+        List<TestMessage> messages = Arrays.asList(new TestMessage("a", null), new TestMessage("b", null));
+        List<byte[]> sent = new ArrayList<>();
+        ClusterManager recordingManager = new ClusterManager() {
+            @Override
+            protected void sendBatch(List<EncodedMessage> batch) {
+                try {
+                    sent.add(encodeBatch(batch));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        recordingManager.clusterConfig = clusterManager.clusterConfig;
+        recordingManager.codecsByClass = clusterManager.codecsByClass;
+
+        recordingManager.sendBatches(new ArrayList<>(messages));
+        assertEquals(2, sent.size());
+        for (byte[] bytes : sent) {
+            assertFalse((bytes[0] & 0xFF) == ClusterManager.BATCH_MAGIC >> 8
+                    && (bytes[1] & 0xFF) == (ClusterManager.BATCH_MAGIC & 0xFF));
+        }
+
+        sent.clear();
+        AppContext.setProperty("cuba.cluster.messageBatchingEnabled", "true");
+        try {
+            recordingManager.sendBatches(new ArrayList<>(messages));
+        } finally {
+            AppContext.setProperty("cuba.cluster.messageBatchingEnabled", null);
+        }
+        assertEquals(1, sent.size());
+        clusterManager.new ClusterReceiver().receive(new Message(null, null, sent.get(0)));
+        assertEquals(2, received.size());
+    }
+
+    public static class TestMessage implements Serializable {
+        private static final long serialVersionUID = 4137508260383410513L;
+
+        public final String value;
+        public final String key;
+
+        public TestMessage(String value, String key) {
+            this.value = value;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.haulmont.cuba.core.app.scheduling.SchedulingServiceBean.SetSchedulingActiveMsg;
+import com.haulmont.cuba.core.app.scheduling.SchedulingServiceBean.SetSchedulingActiveMsgCodec;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.LockInfo;
+import com.haulmont.cuba.core.global.Metadata;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ClusterMessageCodecTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private ClusterManager clusterManager;
+
+    @Before
+    public void setUp() throws Exception {
+        // ensure the beans registering platform codecs are created
+        AppBeans.get(LockManagerAPI.NAME);
+        AppBeans.get(SchedulingService.NAME);
+        clusterManager = AppBeans.get(ClusterManagerAPI.NAME);
+        AppContext.setProperty("cuba.cluster.messageCodecsEnabled", "true");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        AppContext.setProperty("cuba.cluster.messageCodecsEnabled", null);
+    }
+
+    @Test
+    public void testCodecRoundTrip() throws Exception {
+        byte[] bytes = clusterManager.encode(new SetSchedulingActiveMsg(true));
+        assertEquals(5, bytes.length);
+
+        Serializable message = clusterManager.decode(bytes);
+        assertTrue(message instanceof SetSchedulingActiveMsg);
+        assertTrue(((SetSchedulingActiveMsg) message).active);
+
+        message = clusterManager.decode(clusterManager.encode(new SetSchedulingActiveMsg(false)));
+        assertFalse(((SetSchedulingActiveMsg) message).active);
+    }
+
+    @Test
+    public void testCodecsDisabled() throws Exception {
+        byte[] encoded = clusterManager.encode(new SetSchedulingActiveMsg(true));
+
+        AppContext.setProperty("cuba.cluster.messageCodecsEnabled", null);
+        byte[] serialized = clusterManager.encode(new SetSchedulingActiveMsg(true));
+        assertTrue(serialized.length > encoded.length);
+        assertTrue(((SetSchedulingActiveMsg) clusterManager.decode(serialized)).active);
+
+        // messages encoded by other nodes are received anyway
+        assertTrue(((SetSchedulingActiveMsg) clusterManager.decode(encoded)).active);
+    }
+
+    @Test
+    public void testUnsupportedMessageFallsBackToSerialization() throws Exception {
+        LockInfo unlock = new LockInfo(null, "sys$Folder", "1");
+        byte[] unlockBytes = clusterManager.encode(unlock);
+
+        LockInfo decoded = (LockInfo) clusterManager.decode(unlockBytes);
+        assertNull(decoded.getUser());
+        assertEquals("sys$Folder", decoded.getEntityName());
+        assertEquals("1", decoded.getEntityId());
+
+        User user = AppBeans.get(Metadata.class).create(User.class);
+        user.setLogin("test");
+        LockInfo lock = new LockInfo(user, "sys$Folder", null);
+        byte[] lockBytes = clusterManager.encode(lock);
+        assertTrue(lockBytes.length > unlockBytes.length);
+
+        decoded = (LockInfo) clusterManager.decode(lockBytes);
+        assertEquals("test", decoded.getUser().getLogin());
+        assertEquals("sys$Folder", decoded.getEntityName());
+        assertNull(decoded.getEntityId());
+    }
+
+    @Test
+    public void testDuplicateRegistration() {
+        try {
+            clusterManager.registerCodec(new SetSchedulingActiveMsgCodec());
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testPlatformTypeIds() {
+        Set<Integer> typeIds = new HashSet<>();
+        for (ClusterMessageType type : ClusterMessageType.values()) {
+            assertTrue(typeIds.add(type.getTypeId()));
+            assertTrue(type.getTypeId() <= ClusterMessageType.MAX_PLATFORM_TYPE_ID);
+        }
+        assertEquals(ClusterMessageType.SET_SCHEDULING_ACTIVE.getTypeId(), new SetSchedulingActiveMsgCodec().getTypeId());
+    }
+
+    @Test
+    public void testMessagesStat() {
+        String stat = clusterManager.printMessagesStat();
+        assertTrue(stat.contains("Class: " + SetSchedulingActiveMsg.class.getName() + "; codec: "
+                + ClusterMessageType.SET_SCHEDULING_ACTIVE.getTypeId() + ";"));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.global;
+
+import com.haulmont.cuba.core.sys.AbstractViewRepository;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares memory allocated by {@link ViewRepository#getView(Class, String)} with a deep copy of the view,
+ * which the repository made on each call before. Runs in the {@code testPerformance} task only.
+ */
+public class ViewRepositoryBenchmark {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private static final int ITERATIONS = 10000;
+
+    private ViewRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = cont.metadata().getViewRepository();
+
+        InputStream stream = ViewRepositoryTest.class.getResourceAsStream("test.view.xml");
+        ((AbstractViewRepository) repository).deployViews(stream);
+    }
+
+    @Test
+    public void testGetViewAllocation() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+
+        long threadId = Thread.currentThread().getId();
+        View sealedView = View.copy(repository.getView(User.class, "test")).seal();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertNotNull(View.copy(sealedView));
+        }
+        long start = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertNotNull(View.copy(sealedView));
+        }
+        long copyBytes = threadMXBean.getThreadAllocatedBytes(threadId) - start;
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertNotNull(repository.getView(User.class, "test"));
+        }
+        start = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertNotNull(repository.getView(User.class, "test"));
+        }
+        long getViewBytes = threadMXBean.getThreadAllocatedBytes(threadId) - start;
+
+        System.out.println(String.format("Allocated per view: %d bytes with deep copy, %d bytes with getView",
+                copyBytes / ITERATIONS, getViewBytes / ITERATIONS));
+        assertTrue(getViewBytes < copyBytes);
+    }
+}
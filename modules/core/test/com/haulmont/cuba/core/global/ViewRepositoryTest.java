@@ -26,9 +26,7 @@ import org.junit.Test;
 import java.io.InputStream;
 import java.util.Collection;
 
-import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertNull;
+import static org.junit.Assert.*;
 
 public class ViewRepositoryTest {
 
@@ -114,4 +112,43 @@ public class ViewRepositoryTest {
 
         assertNotNull(groupView.getProperty("constraints").getView());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCopyOnWrite() {
+        View view = repository.getView(User.class, "test");
+        assertFalse(view.isSealed());
+
+        View userRolesView = view.getProperty("userRoles").getView();
+        assertFalse(userRolesView.isSealed());
+        assertSame(userRolesView, view.getProperty("userRoles").getView());
+
+        userRolesView.addProperty("createTs");
+        userRolesView.getProperty("role").getView().addProperty("description");
+        view.addProperty("email").setLoadPartialEntities(true);
+        assertNotNull(view.getProperty("email"));
+        assertNotNull(view.getProperty("userRoles").getView().getProperty("createTs"));
+
+        View sameView = repository.getView(User.class, "test");
+        assertNull(sameView.getProperty("email"));
+        assertFalse(sameView.loadPartialEntities());
+        View sameUserRolesView = sameView.getProperty("userRoles").getView();
+        assertNotSame(userRolesView, sameUserRolesView);
+        assertNull(sameUserRolesView.getProperty("createTs"));
+        assertNull(sameUserRolesView.getProperty("role").getView().getProperty("description"));
+
+        assertNotEquals(view.getStructureSignature(), sameView.getStructureSignature());
+        assertEquals(View.copy(sameView).getStructureSignature(), sameView.getStructureSignature());
+    }
+
+    @Test
+    public void testModifyNestedViewsWhileIterating() {
+        View view = repository.getView(User.class, "test");
+        for (ViewProperty property : view.getProperties()) {
+            if (property.getView() != null) {
+                property.getView().addProperty("createTs");
+            }
+        }
+        assertNotNull(view.getProperty("userRoles").getView().getProperty("createTs"));
+        assertNull(repository.getView(User.class, "test").getProperty("userRoles").getView().getProperty("createTs"));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.FetchMode;
+import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.core.global.ViewRepository;
+import com.haulmont.cuba.core.global.ViewRepositoryChangedEvent;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FetchGroupManagerCacheTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private static final String QUERY = "select u from sec$User u where u.id = :id";
+
+    private FetchGroupManager fetchGroupManager;
+    private ViewRepository viewRepository;
+
+    @Before
+    public void setUp() throws Exception {
+        fetchGroupManager = AppBeans.get(FetchGroupManager.NAME);
+        viewRepository = AppBeans.get(ViewRepository.NAME);
+    }
+
+    @Test
+    public void testSameViewStructureReusesDescription() {
+        View view = viewRepository.getView(User.class, "user.edit");
+        FetchGroupDescription description = fetchGroupManager.calculateFetchGroup(QUERY, view, true, true);
+        assertTrue(description.isFrozen());
+
+        // getView() returns a new copy each time, but the structure is the same
+        View sameView = viewRepository.getView(User.class, "user.edit");
+        assertSame(description, fetchGroupManager.calculateFetchGroup(QUERY, sameView, true, true));
+
+        assertNotSame(description, fetchGroupManager.calculateFetchGroup(QUERY, sameView, false, true));
+        assertNotSame(description, fetchGroupManager.calculateFetchGroup(QUERY, sameView, true, false));
+
+        View otherView = new View(User.class).addProperty("login").addProperty("name");
+        FetchGroupDescription otherDescription = fetchGroupManager.calculateFetchGroup(QUERY, otherView, true, true);
+        assertNotSame(description, otherDescription);
+        assertNotEquals(description.getAttributes(), otherDescription.getAttributes());
+    }
+
+    @Test
+    public void testViewSignatureIsSharedWithRepository() {
+        View view = viewRepository.getView(User.class, "user.edit");
+        View sameView = viewRepository.getView(User.class, "user.edit");
+        assertSame(view.getStructureSignature(), sameView.getStructureSignature());
+        assertSame(view.getStructureSignature(), View.copyOnWrite(view).getStructureSignature());
+
+        sameView.addProperty("login", null, FetchMode.JOIN);
+        assertNotEquals(view.getStructureSignature(), sameView.getStructureSignature());
+        assertEquals(View.copy(view).getStructureSignature(), view.getStructureSignature());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCachedDescriptionIsImmutable() {
+        View view = viewRepository.getView(User.class, View.LOCAL);
+        FetchGroupDescription description = fetchGroupManager.calculateFetchGroup(QUERY, view, true, true);
+        description.addAttribute("password");
+    }
+
+    @Test
+    public void testViewRepositoryChangeInvalidatesCache() {
+        View view = viewRepository.getView(User.class, "user.edit");
+        FetchGroupDescription description = fetchGroupManager.calculateFetchGroup(QUERY, view, true, true);
+
+        fetchGroupManager.onViewRepositoryChanged(new ViewRepositoryChangedEvent(viewRepository));
+
+        FetchGroupDescription newDescription = fetchGroupManager.calculateFetchGroup(QUERY, view, true, true);
+        assertNotSame(description, newDescription);
+        assertEquals(description.getAttributes(), newDescription.getAttributes());
+        assertEquals(description.getHints(), newDescription.getHints());
+    }
+}
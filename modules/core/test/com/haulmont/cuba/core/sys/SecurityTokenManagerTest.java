@@ -18,14 +18,20 @@
 package com.haulmont.cuba.core.sys;
 
 import com.haulmont.cuba.core.entity.BaseEntityInternalAccess;
+import com.haulmont.cuba.core.entity.SecurityState;
 import com.haulmont.cuba.core.global.AppBeans;
 import com.haulmont.cuba.security.entity.User;
 import com.haulmont.cuba.testsupport.TestContainer;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.ClassRule;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import javax.crypto.Cipher;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
@@ -58,4 +64,67 @@ public class SecurityTokenManagerTest {
         Assert.assertEquals(id3, userRoles.get(2));
         Assert.assertEquals(id4, userRoles.get(3));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBinarySecurityToken() throws Exception {
+        SecurityTokenManager securityTokenManager = AppBeans.get(SecurityTokenManager.class);
+        User user1 = new User();
+        User user2 = new User();
+        UUID id1 = UUID.randomUUID();
+        UUID id2 = UUID.randomUUID();
+        securityTokenManager.addFiltered(user1, "userRoles", id1);
+        securityTokenManager.addFiltered(user1, "userRoles", id2);
+        securityTokenManager.addFiltered(user2, "group", id1);
+        SecurityState securityState = BaseEntityInternalAccess.getOrCreateSecurityState(user2);
+        BaseEntityInternalAccess.setReadonlyAttributes(securityState, new String[]{"login", "group"});
+        BaseEntityInternalAccess.setHiddenAttributes(securityState, new String[]{"password"});
+
+        securityTokenManager.writeSecurityTokens(Arrays.asList(user1, user2));
+        BaseEntityInternalAccess.setFilteredData(BaseEntityInternalAccess.getSecurityState(user1), null);
+        BaseEntityInternalAccess.setReadonlyAttributes(securityState, null);
+        BaseEntityInternalAccess.setHiddenAttributes(securityState, null);
+        securityTokenManager.readSecurityTokens(Arrays.asList(user1, user2));
+
+        Assert.assertEquals(Arrays.asList(id1, id2), BaseEntityInternalAccess.getFilteredData(user1).get("userRoles"));
+        Assert.assertEquals(Arrays.asList(id1), BaseEntityInternalAccess.getFilteredData(user2).get("group"));
+        Assert.assertEquals(Arrays.asList("login", "group"), securityState.getReadonlyAttributes());
+        Assert.assertEquals(Arrays.asList("password"), securityState.getHiddenAttributes());
+        Assert.assertTrue(securityState.getRequiredAttributes().isEmpty());
+    }
+
+    @Test(expected = SecurityTokenException.class)
+    public void testBinarySecurityTokenOfAnotherEntity() throws Exception {
+        SecurityTokenManager securityTokenManager = AppBeans.get(SecurityTokenManager.class);
+        User user1 = new User();
+        User user2 = new User();
+        securityTokenManager.addFiltered(user1, "userRoles", UUID.randomUUID());
+        securityTokenManager.writeSecurityToken(user1);
+
+        BaseEntityInternalAccess.setSecurityToken(BaseEntityInternalAccess.getOrCreateSecurityState(user2),
+                BaseEntityInternalAccess.getSecurityToken(user1));
+        securityTokenManager.readSecurityToken(user2);
+    }
+
+    @Test
+    public void testJsonSecurityToken() throws Exception {
+        SecurityTokenManager securityTokenManager = AppBeans.get(SecurityTokenManager.class);
+        User user = new User();
+        UUID id1 = UUID.randomUUID();
+        UUID id2 = UUID.randomUUID();
+
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("userRoles", new JSONArray(Arrays.asList(id1.toString(), id2.toString())));
+        jsonObject.put(SecurityTokenManager.READ_ONLY_ATTRIBUTES_KEY, Arrays.asList("login"));
+        jsonObject.put(SecurityTokenManager.ENTITY_NAME_KEY, user.getMetaClass().getName());
+        jsonObject.put(SecurityTokenManager.ENTITY_ID_KEY, user.getId().toString());
+        byte[] token = securityTokenManager.getCipher(Cipher.ENCRYPT_MODE)
+                .doFinal(jsonObject.toString().getBytes(StandardCharsets.UTF_8));
+        SecurityState securityState = BaseEntityInternalAccess.getOrCreateSecurityState(user);
+        BaseEntityInternalAccess.setSecurityToken(securityState, token);
+
+        securityTokenManager.readSecurityToken(user);
+
+        Assert.assertEquals(Arrays.asList(id1, id2), BaseEntityInternalAccess.getFilteredData(user).get("userRoles"));
+        Assert.assertEquals(Arrays.asList("login"), securityState.getReadonlyAttributes());
+    }
+}
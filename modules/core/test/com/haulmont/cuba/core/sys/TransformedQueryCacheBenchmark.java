@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.haulmont.cuba.core.EntityManager;
+import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures JPQL transformation with and without {@link TransformedQueryCache}.
+ * Runs in the {@code testPerformance} task only.
+ */
+public class TransformedQueryCacheBenchmark {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int ITERATIONS = 20000;
+
+    private TransformedQueryCache transformedQueryCache;
+
+    @Before
+    public void setUp() throws Exception {
+        transformedQueryCache = AppBeans.get(TransformedQueryCache.NAME);
+        transformedQueryCache.invalidateAll();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        transformedQueryCache.invalidateAll();
+    }
+
+    @Test
+    public void testTransformationOverhead() {
+        String queryString = "select u from sec$User u where u.login like :login and u.group.id = :groupId " +
+                "and u.active = true order by u.name";
+
+        try (Transaction tx = cont.persistence().createTransaction()) {
+            EntityManager em = cont.persistence().getEntityManager();
+            QueryImpl<User> query = (QueryImpl<User>) em.createQuery(queryString, User.class);
+            query.setParameter("login", "adm%");
+            query.setParameter("groupId", UUID.fromString("0fa2b1a5-1d68-4d69-9fbd-dff348347f93"));
+            query.setFirstResult(10);
+
+            long maxSize = transformedQueryCache.maxSize;
+            long uncachedTime;
+            try {
+                transformedQueryCache.maxSize = 0;
+                measureTransformation(query, WARMUP_ITERATIONS);
+                uncachedTime = measureTransformation(query, ITERATIONS);
+            } finally {
+                transformedQueryCache.maxSize = maxSize;
+            }
+            measureTransformation(query, WARMUP_ITERATIONS);
+            long cachedTime = measureTransformation(query, ITERATIONS);
+
+            System.out.println(String.format("JPQL transformation of %d queries: %d ms without cache, %d ms with cache",
+                    ITERATIONS, uncachedTime / 1_000_000, cachedTime / 1_000_000));
+
+            tx.commit();
+        }
+    }
+
+    private long measureTransformation(QueryImpl<User> query, int iterations) {
+        String expected = query.transformQueryString();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            assertEquals(expected, query.transformQueryString());
+        }
+        return System.nanoTime() - start;
+    }
+}
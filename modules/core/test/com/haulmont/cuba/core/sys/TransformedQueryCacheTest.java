@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.google.common.cache.CacheStats;
+import com.haulmont.cuba.core.EntityManager;
+import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.TypedQuery;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class TransformedQueryCacheTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private static final UUID ADMIN_ID = UUID.fromString("60885987-1b61-4247-94c7-dff348347f93");
+
+    private TransformedQueryCache transformedQueryCache;
+
+    private CacheStats initialStats;
+
+    @Before
+    public void setUp() throws Exception {
+        transformedQueryCache = AppBeans.get(TransformedQueryCache.NAME);
+        transformedQueryCache.invalidateAll();
+        initialStats = transformedQueryCache.getStats();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        transformedQueryCache.invalidateAll();
+    }
+
+    @Test
+    public void testSameShapeReusesTransformation() {
+        String queryString = "select u from sec$User u where u.login like :login and u.id not in :ids";
+        for (int i = 0; i < 2; i++) {
+            try (Transaction tx = cont.persistence().createTransaction()) {
+                EntityManager em = cont.persistence().getEntityManager();
+                TypedQuery<User> query = em.createQuery(queryString, User.class);
+                query.setParameter("login", "(?i)ADM%");
+                query.setParameter("ids", Collections.emptyList());
+                List<User> list = query.getResultList();
+
+                assertEquals(1, list.size());
+                assertEquals(ADMIN_ID, list.get(0).getId());
+                tx.commit();
+            }
+        }
+        assertEquals(1, transformedQueryCache.size());
+        assertEquals(1, stats().hitCount());
+    }
+
+    @Test
+    public void testDifferentShapeIsTransformedSeparately() {
+        String queryString = "select u from sec$User u where u.id in :ids";
+        try (Transaction tx = cont.persistence().createTransaction()) {
+            EntityManager em = cont.persistence().getEntityManager();
+
+            TypedQuery<User> query = em.createQuery(queryString, User.class);
+            query.setParameter("ids", Collections.singletonList(ADMIN_ID));
+            assertEquals(1, query.getResultList().size());
+
+            query = em.createQuery(queryString, User.class);
+            query.setParameter("ids", Collections.emptyList());
+            assertTrue(query.getResultList().isEmpty());
+
+            query = em.createQuery(queryString, User.class);
+            query.setParameter("ids", Collections.singletonList(ADMIN_ID));
+            assertEquals(1, query.getResultList().size());
+
+            tx.commit();
+        }
+        assertEquals(2, transformedQueryCache.size());
+        assertEquals(1, stats().hitCount());
+    }
+
+    @Test
+    public void testRepeatedTransformationIsTakenFromCache() {
+        String queryString = "select u from sec$User u where u.login like :login and u.group.id = :groupId " +
+                "and u.active = true order by u.name";
+
+        try (Transaction tx = cont.persistence().createTransaction()) {
+            EntityManager em = cont.persistence().getEntityManager();
+            QueryImpl<User> query = (QueryImpl<User>) em.createQuery(queryString, User.class);
+            query.setParameter("login", "adm%");
+            query.setParameter("groupId", UUID.fromString("0fa2b1a5-1d68-4d69-9fbd-dff348347f93"));
+            query.setFirstResult(10);
+
+            String transformed = query.transformQueryString();
+            assertEquals(0, stats().hitCount());
+            assertEquals(1, stats().missCount());
+
+            for (int i = 0; i < 10; i++) {
+                assertSame(transformed, query.transformQueryString());
+            }
+            assertEquals(1, transformedQueryCache.size());
+            assertEquals(10, stats().hitCount());
+            assertEquals(1, stats().missCount());
+
+            tx.commit();
+        }
+    }
+
+    private CacheStats stats() {
+        return transformedQueryCache.getStats().minus(initialStats);
+    }
+}
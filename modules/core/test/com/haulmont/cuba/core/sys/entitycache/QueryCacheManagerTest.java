@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.entitycache;
+
+import com.google.common.collect.ImmutableSet;
+import com.haulmont.cuba.core.app.ClusterListener;
+import com.haulmont.cuba.core.app.ClusterManager;
+import com.haulmont.cuba.core.sys.entitycache.QueryCacheManager.InvalidateQueryCacheMsg;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class QueryCacheManagerTest {
+
+    private QueryCacheManager queryCacheManager;
+    private TestClusterManager clusterManager;
+    private StandardQueryCache queryCache;
+    private int invalidationBatchInterval;
+
+    @Before
+    public void setUp() throws Exception {
+        queryCache = new StandardQueryCache();
+        queryCache.data = queryCache.createCache(100, 0);
+
+        clusterManager = new TestClusterManager();
+
+        queryCacheManager = new QueryCacheManager();
+        queryCacheManager.queryCache = queryCache;
+        queryCacheManager.clusterManager = clusterManager;
+        queryCacheManager.queryCacheConfig = new TestQueryCacheConfig();
+        queryCacheManager.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queryCacheManager.destroy();
+    }
+
+    @Test
+    public void testInvalidationsAreSentInBatch() throws Exception {
+        invalidationBatchInterval = 200;
+        clusterManager.expectedMessages = new CountDownLatch(1);
+
+        queryCacheManager.sendInvalidation(Collections.singleton("sec$User"));
+        queryCacheManager.sendInvalidation(ImmutableSet.of("sec$User", "sec$Group"));
+
+        assertTrue(clusterManager.expectedMessages.await(10, TimeUnit.SECONDS));
+        assertEquals(1, clusterManager.sent.size());
+        InvalidateQueryCacheMsg message = (InvalidateQueryCacheMsg) clusterManager.sent.get(0);
+        assertEquals(ImmutableSet.of("sec$User", "sec$Group"), message.typeNames);
+
+        // the next change starts a new batch
+        clusterManager.expectedMessages = new CountDownLatch(1);
+        queryCacheManager.sendInvalidation(Collections.singleton("sec$Role"));
+
+        assertTrue(clusterManager.expectedMessages.await(10, TimeUnit.SECONDS));
+        assertEquals(2, clusterManager.sent.size());
+        assertEquals(Collections.singleton("sec$Role"), ((InvalidateQueryCacheMsg) clusterManager.sent.get(1)).typeNames);
+    }
+
+    @Test
+    public void testInvalidationsAreSentImmediatelyWithoutInterval() {
+        invalidationBatchInterval = 0;
+
+        queryCacheManager.sendInvalidation(Collections.singleton("sec$User"));
+        queryCacheManager.sendInvalidation(Collections.singleton("sec$Group"));
+
+        assertEquals(2, clusterManager.sent.size());
+        assertNull(queryCacheManager.invalidationSender);
+    }
+
+    @Test
+    public void testNoInvalidationsWithoutCluster() {
+        invalidationBatchInterval = 200;
+        clusterManager.started = false;
+
+        queryCacheManager.sendInvalidation(Collections.singleton("sec$User"));
+
+        assertTrue(queryCacheManager.pendingTypeNames.isEmpty());
+        assertNull(queryCacheManager.invalidationSender);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRemoteInvalidation() {
+        QueryKey userKey = new QueryKey("select u from sec$User u", 0, 0, true, false, null, null);
+        QueryKey groupKey = new QueryKey("select g from sec$Group g", 0, 0, true, false, null, null);
+        queryCache.put(userKey, new QueryResult(Collections.emptyList(), "sec$User",
+                Collections.singleton("sec$User"), null, Collections.singletonMap("sec$User", 0L)));
+        queryCache.put(groupKey, new QueryResult(Collections.emptyList(), "sec$Group",
+                Collections.singleton("sec$Group"), null, Collections.singletonMap("sec$Group", 0L)));
+
+        clusterManager.listener.receive(new InvalidateQueryCacheMsg(Collections.singleton("sec$User")));
+
+        assertEquals(1L, queryCacheManager.typeVersions.get("sec$User").get());
+        assertNull(queryCacheManager.typeVersions.get("sec$Group"));
+        assertNull(queryCacheManager.getActualResult(userKey));
+        assertNull(queryCache.get(userKey));
+        assertFalse(queryCache.typeIndex.containsKey("sec$User"));
+        assertNotNull(queryCacheManager.getActualResult(groupKey));
+        assertTrue(clusterManager.sent.isEmpty());
+    }
+
+    private static class TestClusterManager extends ClusterManager {
+
+        private final List<Serializable> sent = new CopyOnWriteArrayList<>();
+        private volatile CountDownLatch expectedMessages = new CountDownLatch(0);
+        private volatile boolean started = true;
+        private ClusterListener listener;
+
+        @Override
+        public void send(Serializable message) {
+            sent.add(message);
+            expectedMessages.countDown();
+        }
+
+        @Override
+        public boolean isStarted() {
+            return started;
+        }
+
+        @Override
+        public synchronized void addListener(Class messageClass, ClusterListener listener) {
+            this.listener = listener;
+        }
+    }
+
+    private class TestQueryCacheConfig implements QueryCacheConfig {
+
+        @Override
+        public boolean getQueryCacheEnabled() {
+            return true;
+        }
+
+        @Override
+        public int getQueryCacheMaxSize() {
+            return 100;
+        }
+
+        @Override
+        public int getQueryCacheMaxWeight() {
+            return 0;
+        }
+
+        @Override
+        public int getQueryCacheInvalidationBatchInterval() {
+            return invalidationBatchInterval;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.entitycache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.ForwardingCache;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class StandardQueryCacheTest {
+
+    private StandardQueryCache queryCache;
+
+    @Before
+    public void setUp() throws Exception {
+        queryCache = new StandardQueryCache();
+        queryCache.data = queryCache.createCache(0, 100);
+    }
+
+    @Test
+    public void testInvalidateByType() {
+        QueryKey userKey = createKey("select u from sec$User u");
+        QueryKey groupKey = createKey("select g from sec$Group g");
+        queryCache.put(userKey, createResult(3, "sec$User", "sec$Group"));
+        queryCache.put(groupKey, createResult(1, "sec$Group"));
+
+        queryCache.invalidate("sec$User");
+        assertNull(queryCache.get(userKey));
+        assertNotNull(queryCache.get(groupKey));
+        assertFalse(queryCache.typeIndex.containsKey("sec$User"));
+        assertEquals(1, queryCache.typeIndex.get("sec$Group").size());
+
+        queryCache.invalidate(Collections.singleton("sec$Group"));
+        assertEquals(0, queryCache.size());
+        assertTrue(queryCache.typeIndex.isEmpty());
+        assertTrue(queryCache.idIndex.isEmpty());
+    }
+
+    @Test
+    public void testInvalidateById() {
+        QueryKey key = createKey("select u from sec$User u");
+        queryCache.put(key, createResult(1, "sec$User"));
+
+        assertSame(key, queryCache.findQueryKeyById(key.getId()));
+        assertSame(key, queryCache.invalidate(key.getId()));
+        assertNull(queryCache.get(key));
+        assertNull(queryCache.findQueryKeyById(key.getId()));
+        assertNull(queryCache.invalidate(key.getId()));
+        assertTrue(queryCache.typeIndex.isEmpty());
+    }
+
+    @Test
+    public void testPutSameQueryAgain() {
+        QueryKey key = createKey("select u from sec$User u");
+        QueryKey sameKey = createKey("select u from sec$User u");
+        queryCache.put(key, createResult(1, "sec$User"));
+        QueryResult result = createResult(2, "sec$User");
+        queryCache.put(sameKey, result);
+
+        assertSame(result, queryCache.get(key));
+        assertSame(sameKey, queryCache.findQueryKeyById(sameKey.getId()));
+        assertNull(queryCache.findQueryKeyById(key.getId()));
+        assertEquals(1, queryCache.idIndex.size());
+        assertSame(result, queryCache.typeIndex.get("sec$User").get(key));
+    }
+
+    @Test
+    public void testConcurrentPutOfEqualKeys() {
+        QueryKey key = createKey("select u from sec$User u");
+        QueryKey sameKey = createKey("select u from sec$User u");
+        QueryResult firstResult = createResult(1, "sec$User");
+        QueryResult secondResult = createResult(2, "sec$User");
+
+        // the first put runs completely after the second one has dropped the previous entry
+        Cache<QueryKey, QueryResult> cache = queryCache.createCache(0, 100);
+        queryCache.data = new ForwardingCache.SimpleForwardingCache<QueryKey, QueryResult>(cache) {
+            private boolean raced;
+
+            @Override
+            public void invalidate(Object k) {
+                super.invalidate(k);
+                if (!raced) {
+                    raced = true;
+                    queryCache.put(key, firstResult);
+                }
+            }
+        };
+        queryCache.put(sameKey, secondResult);
+
+        assertSame(secondResult, queryCache.get(key));
+        assertSame(key, queryCache.findQueryKeyById(key.getId()));
+        assertNull(queryCache.findQueryKeyById(sameKey.getId()));
+        assertEquals(1, queryCache.idIndex.size());
+        assertSame(secondResult, queryCache.typeIndex.get("sec$User").get(key));
+
+        queryCache.invalidateAll();
+        assertTrue(queryCache.typeIndex.isEmpty());
+        assertTrue(queryCache.idIndex.isEmpty());
+    }
+
+    @Test
+    public void testEvictionByWeightPrunesIndexes() {
+        List<QueryKey> keys = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            QueryKey key = createKey("select u from sec$User u where u.name = '" + i + "'");
+            keys.add(key);
+            queryCache.put(key, createResult(9, "sec$User"));
+        }
+        // each entry weighs 10, so no more than 10 entries fit into the cache
+        assertTrue(queryCache.size() <= 10);
+        assertEquals(queryCache.size(), queryCache.idIndex.size());
+        assertEquals(queryCache.size(), queryCache.typeIndex.get("sec$User").size());
+
+        queryCache.invalidateAll();
+        assertEquals(0, queryCache.size());
+        assertTrue(queryCache.typeIndex.isEmpty());
+        assertTrue(queryCache.idIndex.isEmpty());
+        for (QueryKey key : keys) {
+            assertNull(queryCache.get(key));
+        }
+    }
+
+    @Test
+    public void testReportedLimit() {
+        assertEquals(0, queryCache.getMaxSize());
+        assertEquals(100, queryCache.getMaxWeight());
+
+        queryCache.data = queryCache.createCache(50, 0);
+        assertEquals(50, queryCache.getMaxSize());
+        assertEquals(0, queryCache.getMaxWeight());
+    }
+
+    private QueryKey createKey(String queryString) {
+        return new QueryKey(queryString, 0, 0, true, false, null, null);
+    }
+
+    private QueryResult createResult(int size, String type, String... relatedTypes) {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            ids.add(UUID.randomUUID());
+        }
+        return new QueryResult(ids, type, ImmutableSet.<String>builder().add(type).add(relatedTypes).build());
+    }
+}
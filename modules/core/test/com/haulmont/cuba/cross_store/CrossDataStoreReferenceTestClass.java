@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cross_store;
+
+import com.haulmont.cuba.core.app.ConfigStorageAPI;
+import com.haulmont.cuba.core.app.StoreFactory;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.DataManager;
+import com.haulmont.cuba.core.global.LoadContext;
+import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.testmodel.cross_store.CrossStoreCustomer;
+import com.haulmont.cuba.testmodel.cross_store.CrossStoreOrder;
+import com.haulmont.cuba.testmodel.cross_store.CrossStoreProduct;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Loads entities referencing entities of two other data stores with sequential and parallel loading of references.
+ */
+public class CrossDataStoreReferenceTestClass {
+
+    private static final int ORDERS_COUNT = 5;
+
+    @ClassRule
+    public static TestContainer cont = new TestContainer()
+            .setSpringConfig("com/haulmont/cuba/cross_store/test-crossstore-spring.xml")
+            .setAppPropertiesFiles(Arrays.asList(
+                    "com/haulmont/cuba/app.properties",
+                    "com/haulmont/cuba/testsupport/test-app.properties",
+                    "com/haulmont/cuba/test-app.properties",
+                    "com/haulmont/cuba/cross_store/test-crossstore-app.properties"));
+
+    private DataManager dataManager;
+    private ConfigStorageAPI configStorage;
+
+    private TestInMemoryStore ordersStore;
+    private TestInMemoryStore customersStore;
+    private TestInMemoryStore productsStore;
+
+    private List<CrossStoreCustomer> customers = new ArrayList<>();
+    private List<CrossStoreProduct> products = new ArrayList<>();
+
+    private View orderView;
+
+    @Before
+    public void setUp() throws Exception {
+        dataManager = AppBeans.get(DataManager.class);
+        configStorage = AppBeans.get(ConfigStorageAPI.class);
+
+        StoreFactory storeFactory = AppBeans.get(StoreFactory.class);
+        ordersStore = (TestInMemoryStore) storeFactory.get("ordersStore");
+        customersStore = (TestInMemoryStore) storeFactory.get("customersStore");
+        productsStore = (TestInMemoryStore) storeFactory.get("productsStore");
+
+        for (int i = 0; i < ORDERS_COUNT; i++) {
+            CrossStoreCustomer customer = cont.metadata().create(CrossStoreCustomer.class);
+            customer.setName("customer" + i);
+            customersStore.put(customer);
+            customers.add(customer);
+
+            CrossStoreProduct product = cont.metadata().create(CrossStoreProduct.class);
+            product.setName("product" + i);
+            productsStore.put(product);
+            products.add(product);
+
+            CrossStoreOrder order = cont.metadata().create(CrossStoreOrder.class);
+            order.setNumber("order" + i);
+            order.setCustomerId(customer.getId());
+            order.setProductId(product.getId());
+            ordersStore.put(order);
+        }
+
+        orderView = new View(CrossStoreOrder.class)
+                .addProperty("number")
+                .addProperty("customerId")
+                .addProperty("customer", new View(CrossStoreCustomer.class).addProperty("name"))
+                .addProperty("productId")
+                .addProperty("product", new View(CrossStoreProduct.class).addProperty("name"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        configStorage.setDbProperty("cuba.crossDataStoreReferenceLoadingParallel", "false");
+
+        ordersStore.clear();
+        customersStore.clear();
+        productsStore.clear();
+    }
+
+    @Test
+    public void testSequentialLoading() {
+        configStorage.setDbProperty("cuba.crossDataStoreReferenceLoadingParallel", "false");
+
+        checkReferences(loadOrders());
+
+        assertLoadedIn(customersStore, Thread.currentThread());
+        assertLoadedIn(productsStore, Thread.currentThread());
+    }
+
+    @Test
+    public void testParallelLoading() {
+        configStorage.setDbProperty("cuba.crossDataStoreReferenceLoadingParallel", "true");
+
+        checkReferences(loadOrders());
+
+        assertLoadedInPool(customersStore);
+        assertLoadedInPool(productsStore);
+    }
+
+    @Test
+    public void testParallelLoadingInTransaction() {
+        configStorage.setDbProperty("cuba.crossDataStoreReferenceLoadingParallel", "true");
+
+        checkReferences(dataManager.loadList(LoadContext.create(CrossStoreOrder.class)
+                .setQuery(LoadContext.createQuery("select e from test$CrossStoreOrder e"))
+                .setView(orderView)
+                .setJoinTransaction(true)));
+
+        // the transaction of the calling thread cannot be shared with other threads
+        assertLoadedIn(customersStore, Thread.currentThread());
+        assertLoadedIn(productsStore, Thread.currentThread());
+    }
+
+    private List<CrossStoreOrder> loadOrders() {
+        return dataManager.loadList(LoadContext.create(CrossStoreOrder.class)
+                .setQuery(LoadContext.createQuery("select e from test$CrossStoreOrder e"))
+                .setView(orderView)
+                .setJoinTransaction(false));
+    }
+
+    private void checkReferences(List<CrossStoreOrder> orders) {
+        assertEquals(ORDERS_COUNT, orders.size());
+        for (CrossStoreOrder order : orders) {
+            assertNotNull(order.getCustomer());
+            assertEquals(order.getCustomerId(), order.getCustomer().getId());
+            assertTrue(customers.contains(order.getCustomer()));
+
+            assertNotNull(order.getProduct());
+            assertEquals(order.getProductId(), order.getProduct().getId());
+            assertTrue(products.contains(order.getProduct()));
+        }
+    }
+
+    private void assertLoadedIn(TestInMemoryStore store, Thread thread) {
+        assertFalse(store.getLoadThreads().isEmpty());
+        for (Thread loadThread : store.getLoadThreads()) {
+            assertSame(thread, loadThread);
+        }
+    }
+
+    private void assertLoadedInPool(TestInMemoryStore store) {
+        assertFalse(store.getLoadThreads().isEmpty());
+        for (Thread loadThread : store.getLoadThreads()) {
+            assertNotSame(Thread.currentThread(), loadThread);
+            assertTrue(loadThread.getName().startsWith("DataLoader-"));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.cross_store;
+
+import com.haulmont.cuba.core.app.DataStore;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.KeyValueEntity;
+import com.haulmont.cuba.core.global.CommitContext;
+import com.haulmont.cuba.core.global.LoadContext;
+import com.haulmont.cuba.core.global.ValueLoadContext;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Data store keeping entities in memory. Supports loading by id and by the {@code idList} query parameter, and
+ * records the threads in which loads are executed.
+ */
+public class TestInMemoryStore implements DataStore {
+
+    private final String storeName;
+
+    private final Map<Object, Entity> entities = new ConcurrentHashMap<>();
+
+    private final List<Thread> loadThreads = new CopyOnWriteArrayList<>();
+
+    public TestInMemoryStore(String storeName) {
+        this.storeName = storeName;
+    }
+
+    public String getStoreName() {
+        return storeName;
+    }
+
+    public void put(Entity entity) {
+        entities.put(entity.getId(), entity);
+    }
+
+    public void clear() {
+        entities.clear();
+        loadThreads.clear();
+    }
+
+    public List<Thread> getLoadThreads() {
+        return loadThreads;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public <E extends Entity> E load(LoadContext<E> context) {
+        loadThreads.add(Thread.currentThread());
+        return (E) entities.get(context.getId());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <E extends Entity> List<E> loadList(LoadContext<E> context) {
+        loadThreads.add(Thread.currentThread());
+        Collection<?> idList = context.getQuery() != null ?
+                (Collection<?>) context.getQuery().getParameters().get("idList") : null;
+        return entities.values().stream()
+                .filter(entity -> idList == null || idList.contains(entity.getId()))
+                .map(entity -> (E) entity)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long getCount(LoadContext<? extends Entity> context) {
+        return loadList(context).size();
+    }
+
+    @Override
+    public Set<Entity> commit(CommitContext context) {
+        Set<Entity> set = new HashSet<>();
+        for (Entity entity : context.getCommitInstances()) {
+            put(entity);
+            set.add(entity);
+        }
+        for (Entity entity : context.getRemoveInstances()) {
+            entities.remove(entity.getId());
+            set.add(entity);
+        }
+        return set;
+    }
+
+    @Override
+    public List<KeyValueEntity> loadValues(ValueLoadContext context) {
+        return Collections.emptyList();
+    }
+}
@@ -30,6 +30,9 @@ import com.haulmont.cuba.core.global.View;
 import com.haulmont.cuba.core.jmx.QueryCacheSupportMBean;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.entitycache.QueryCache;
+import com.haulmont.cuba.core.sys.entitycache.QueryCacheManager;
+import com.haulmont.cuba.core.sys.entitycache.QueryKey;
+import com.haulmont.cuba.core.sys.entitycache.QueryResult;
 import com.haulmont.cuba.security.entity.*;
 import com.haulmont.cuba.testsupport.TestAppender;
 import com.haulmont.cuba.testsupport.TestContainer;
@@ -47,6 +50,7 @@ import javax.persistence.LockModeType;
 import javax.persistence.NoResultException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 import static com.haulmont.cuba.testsupport.TestSupport.assertFail;
@@ -574,6 +578,27 @@ public class QueryCacheTestClass {
         assertEquals(1, appender.filterMessages(m -> m.contains("> SELECT")).count());
     }
 
+    @Test
+    public void testStaleData_resultLoadedBeforeChange() throws Exception {
+        appender.clearMessages();
+
+        getResultListUserByLoginNamed(user, true, null, null);
+        assertEquals(1, queryCache.size());
+        Map.Entry<QueryKey, QueryResult> entry = queryCache.asMap().entrySet().iterator().next();
+
+        QueryCacheManager queryCacheManager = AppBeans.get(QueryCacheManager.NAME);
+        queryCacheManager.invalidate(User.class, false);
+        assertEquals(0, queryCache.size());
+
+        // results of a query executed concurrently with the change are put into the cache after it
+        queryCache.put(entry.getKey(), entry.getValue());
+        appender.clearMessages();
+
+        getResultListUserByLoginNamed(user, true, null, null);
+        assertEquals(1, appender.filterMessages(m -> m.contains("> SELECT")).count());
+        assertEquals(1, queryCache.size());
+    }
+
     @Test
     public void testStaleData_UpdateDependentEntity() throws Exception {
         appender.clearMessages();
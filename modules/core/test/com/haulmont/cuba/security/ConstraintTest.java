@@ -17,9 +17,12 @@
 package com.haulmont.cuba.security;
 
 import com.haulmont.cuba.core.EntityManager;
+import com.haulmont.cuba.core.PersistenceSecurity;
+import com.haulmont.cuba.core.Query;
 import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.entity.Server;
 import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.core.sys.ConstraintQueryCache;
 import com.haulmont.cuba.security.auth.AuthenticationManager;
 import com.haulmont.cuba.security.auth.Credentials;
 import com.haulmont.cuba.security.auth.LoginPasswordCredentials;
@@ -194,4 +197,57 @@ public class ConstraintTest {
             ((TestUserSessionSource) uss).setUserSession(savedUserSession);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCachedConstraintQuery() throws LoginException {
+        AuthenticationManager lw = AppBeans.get(AuthenticationManager.NAME);
+        Credentials credentials = new LoginPasswordCredentials(USER_LOGIN, USER_PASSW, Locale.getDefault());
+        UserSession userSession = lw.login(credentials).getSession();
+        assertNotNull(userSession.getSharedSecurityDataFingerprint());
+
+        PersistenceSecurity persistenceSecurity = AppBeans.get(PersistenceSecurity.NAME);
+        ConstraintQueryCache constraintQueryCache = AppBeans.get(ConstraintQueryCache.NAME);
+        String queryString = "select s from sys$Server s";
+        ConstraintQueryCache.Key key = new ConstraintQueryCache.Key(userSession.getSharedSecurityDataFingerprint(),
+                queryString);
+
+        UserSessionSource uss = AppBeans.get(UserSessionSource.class);
+        UserSession savedUserSession = uss.getUserSession();
+        ((TestUserSessionSource) uss).setUserSession(userSession);
+        try (Transaction tx = cont.persistence().createTransaction()) {
+            EntityManager em = cont.persistence().getEntityManager();
+
+            Query query = em.createQuery(queryString);
+            assertTrue(persistenceSecurity.applyConstraints(query));
+            String constrainedQueryString = query.getQueryString();
+            assertTrue(constrainedQueryString.contains("s.running = true"));
+            assertNotNull(constraintQueryCache.get(key));
+
+            query = em.createQuery(queryString);
+            assertTrue(persistenceSecurity.applyConstraints(query));
+            assertEquals(constrainedQueryString, query.getQueryString());
+
+            Constraint constraint = em.find(Constraint.class, serverConstraintId);
+            constraint.setWhereClause("{E}.name = 'otherhost'");
+            tx.commit();
+        } finally {
+            ((TestUserSessionSource) uss).setUserSession(savedUserSession);
+        }
+
+        // new sessions get the edited constraint and a different fingerprint
+        UserSession newUserSession = lw.login(credentials).getSession();
+        assertNotEquals(userSession.getSharedSecurityDataFingerprint(), newUserSession.getSharedSecurityDataFingerprint());
+
+        ((TestUserSessionSource) uss).setUserSession(newUserSession);
+        try (Transaction tx = cont.persistence().createTransaction()) {
+            EntityManager em = cont.persistence().getEntityManager();
+
+            Query query = em.createQuery(queryString);
+            assertTrue(persistenceSecurity.applyConstraints(query));
+            assertTrue(query.getQueryString().contains("otherhost"));
+            tx.commit();
+        } finally {
+            ((TestUserSessionSource) uss).setUserSession(savedUserSession);
+        }
+    }
+}
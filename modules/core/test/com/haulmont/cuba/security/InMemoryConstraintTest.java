@@ -17,7 +17,9 @@
 package com.haulmont.cuba.security;
 
 import com.haulmont.cuba.core.EntityManager;
+import com.haulmont.cuba.core.PersistenceSecurity;
 import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.security.auth.AuthenticationManager;
 import com.haulmont.cuba.security.auth.Credentials;
@@ -33,11 +35,11 @@ import org.junit.ClassRule;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.*;
 
 public class InMemoryConstraintTest {
 
@@ -357,7 +359,28 @@ public class InMemoryConstraintTest {
         }
     }
 
-
+    @Test
+    public void testFilterByConstraintsInSeveralSessions() throws LoginException {
+        AuthenticationManager lw = AppBeans.get(AuthenticationManager.NAME);
+        PersistenceSecurity persistenceSecurity = AppBeans.get(PersistenceSecurity.NAME);
+        UserSessionSource uss = AppBeans.get(UserSessionSource.class);
+        UserSession savedUserSession = uss.getUserSession();
+        try {
+            for (int i = 0; i < 2; i++) {
+                Credentials credentials = new LoginPasswordCredentials("constraintUser1", PASSWORD, Locale.getDefault());
+                UserSession userSession = lw.login(credentials).getSession();
+                ((TestUserSessionSource) uss).setUserSession(userSession);
+
+                List<Entity> users = new ArrayList<>(Arrays.asList(usersList.get(0), usersList.get(2), usersList.get(29)));
+                assertTrue(persistenceSecurity.filterByConstraints(users));
+                assertEquals(Arrays.asList(usersList.get(2), usersList.get(29)), users);
+                assertTrue(persistenceSecurity.filterByConstraints((Entity) usersList.get(0)));
+                assertFalse(persistenceSecurity.filterByConstraints((Entity) usersList.get(2)));
+            }
+        } finally {
+            ((TestUserSessionSource) uss).setUserSession(savedUserSession);
+        }
+    }
 
     @After
     public void tearDown() throws Exception {
@@ -16,10 +16,13 @@
  */
 package com.haulmont.cuba.security;
 
+import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Query;
 import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.entity.Server;
 import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.Metadata;
 import com.haulmont.cuba.core.global.PasswordEncryption;
 import com.haulmont.cuba.security.auth.AuthenticationManager;
 import com.haulmont.cuba.security.auth.Credentials;
@@ -33,6 +36,7 @@ import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.Locale;
 import java.util.UUID;
 
@@ -178,6 +182,55 @@ public class PermissionTest {
         assertFalse(permitted); // READ/WRITE access denied
     }
 
+    @Test
+    public void testEntityPermissions() {
+        MetaClass serverMetaClass = AppBeans.get(Metadata.class).getClassNN(Server.class);
+
+        Role role = new Role();
+        role.setType(RoleType.READONLY);
+        UserSession userSession = new UserSession(UUID.randomUUID(), new User(), Collections.singletonList(role),
+                Locale.getDefault(), false);
+        userSession.addPermission(PermissionType.ENTITY_ATTR, PERM_TARGET_ATTR, null, 1);
+        userSession.addPermission(PermissionType.ENTITY_OP, "sys$Server:update", null, 1);
+
+        assertTrue(userSession.isEntityOpPermitted(serverMetaClass, EntityOp.READ));
+        assertFalse(userSession.isEntityOpPermitted(serverMetaClass, EntityOp.CREATE));
+        assertTrue(userSession.isEntityOpPermitted(serverMetaClass, EntityOp.UPDATE));
+        assertFalse(userSession.isPermitted(PermissionType.ENTITY_OP, "sys$Server:delete"));
+
+        assertTrue(userSession.isEntityAttrPermitted(serverMetaClass, "address", EntityAttrAccess.VIEW));
+        assertFalse(userSession.isEntityAttrPermitted(serverMetaClass, "address", EntityAttrAccess.MODIFY));
+        assertTrue(userSession.isEntityAttrPermitted(serverMetaClass, "name", EntityAttrAccess.MODIFY));
+
+        userSession.addPermission(PermissionType.ENTITY_ATTR, PERM_TARGET_ATTR, null, 2);
+        assertTrue(userSession.isEntityAttrPermitted(serverMetaClass, "address", EntityAttrAccess.MODIFY));
+
+        userSession.removePermission(PermissionType.ENTITY_OP, "sys$Server:update");
+        assertFalse(userSession.isEntityOpPermitted(serverMetaClass, EntityOp.UPDATE));
+    }
+
+    @Test
+    public void testSharedPermissionMatrix() {
+        Role role = new Role();
+        role.setType(RoleType.DENYING);
+        UserSession userSession1 = new UserSession(UUID.randomUUID(), new User(), Collections.singletonList(role),
+                Locale.getDefault(), false);
+        userSession1.addPermission(PermissionType.SCREEN, PERM_TARGET_SCREEN, null, 1);
+        UserSession userSession2 = new UserSession(UUID.randomUUID(), new User(), Collections.singletonList(role),
+                Locale.getDefault(), false);
+        userSession2.setSecurityData(userSession1.getSecurityData());
+        userSession1.setSecurityData(userSession2.getSecurityData());
+
+        assertSame(userSession1.getPermissionMatrix(), userSession2.getPermissionMatrix());
+        assertTrue(userSession2.isScreenPermitted(PERM_TARGET_SCREEN));
+        assertFalse(userSession2.isScreenPermitted("sec$User.browse"));
+
+        userSession2.addPermission(PermissionType.SCREEN, "sec$User.browse", null, 1);
+        assertNotSame(userSession1.getPermissionMatrix(), userSession2.getPermissionMatrix());
+        assertTrue(userSession2.isScreenPermitted("sec$User.browse"));
+        assertFalse(userSession1.isScreenPermitted("sec$User.browse"));
+    }
+
     @Test
     public void testNullPermissionsOnUser() throws LoginException {
         AuthenticationManager lw = AppBeans.get(AuthenticationManager.NAME);
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.security.app;
+
+import com.haulmont.cuba.core.app.ClusterManager;
+import com.haulmont.cuba.security.entity.PermissionType;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.security.global.UserSession;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class UserSessionsReplicationTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    @Test
+    public void testSecurityDataSentOnce() throws Exception {
+        UserSessions sender = new UserSessions();
+        UserSessions receiver = new UserSessions();
+
+        long now = System.currentTimeMillis();
+        UserSession session1 = createSession();
+        UserSession session2 = createSession();
+
+        byte[] bytes1 = send(sender, new UserSessions.UserSessionInfo(session1, now));
+        byte[] bytes2 = send(sender, new UserSessions.UserSessionInfo(session2, now));
+        assertTrue(bytes2.length < bytes1.length);
+
+        UserSessions.UserSessionInfo usi1 = read(receiver, bytes1);
+        UserSessions.UserSessionInfo usi2 = read(receiver, bytes2);
+        assertFalse(usi1.securityDataMissing);
+        assertFalse(usi2.securityDataMissing);
+        assertEquals(session2.getId(), usi2.session.getId());
+        assertEquals(now, usi2.lastUsedTs);
+        assertSame(usi1.session.getSecurityData(), usi2.session.getSecurityData());
+        assertEquals(Integer.valueOf(1), usi2.session.getPermissionValue(PermissionType.SCREEN, "screen1"));
+
+        // a node which has not received the security data can't restore the session
+        UserSessions.UserSessionInfo usi3 = read(new UserSessions(), bytes2);
+        assertTrue(usi3.securityDataMissing);
+    }
+
+    @Test
+    public void testSecurityDataResentWhenReceiverMissesIt() throws Exception {
+        UserSessions sender = new UserSessions();
+        long now = System.currentTimeMillis();
+        UserSessions.UserSessionInfo usi1 = new UserSessions.UserSessionInfo(createSession(), now);
+        UserSessions.UserSessionInfo usi2 = new UserSessions.UserSessionInfo(createSession(), now);
+
+        // the message carrying the security data is not delivered
+        write(sender, usi1);
+        sender.sessionSendFailed(usi1);
+
+        UserSessions receiver = new UserSessions();
+        UserSessions.UserSessionInfo received = read(receiver, send(sender, usi2));
+        assertFalse(received.securityDataMissing);
+        assertEquals(Integer.valueOf(1), received.session.getPermissionValue(PermissionType.SCREEN, "screen1"));
+
+        // a node joining after the security data has been sent misses it
+        UserSessions joined = new UserSessions();
+        assertTrue(read(joined, write(sender, usi2)).securityDataMissing);
+
+        sender.clusterViewChanged();
+        received = read(joined, write(sender, usi2));
+        assertFalse(received.securityDataMissing);
+        assertEquals(Integer.valueOf(1), received.session.getPermissionValue(PermissionType.SCREEN, "screen1"));
+    }
+
+    @Test
+    public void testSecurityDataMarkedAfterSending() throws Exception {
+        UserSessions sender = new UserSessions();
+        long now = System.currentTimeMillis();
+        UserSessions.UserSessionInfo usi1 = new UserSessions.UserSessionInfo(createSession(), now);
+        UserSessions.UserSessionInfo usi2 = new UserSessions.UserSessionInfo(createSession(), now);
+
+        // both messages are encoded before the first one is sent
+        byte[] bytes1 = write(sender, usi1);
+        byte[] bytes2 = write(sender, usi2);
+        assertFalse(read(new UserSessions(), bytes1).securityDataMissing);
+        assertFalse(read(new UserSessions(), bytes2).securityDataMissing);
+
+        sender.sessionSent(usi1);
+        assertTrue(read(new UserSessions(), write(sender, usi2)).securityDataMissing);
+    }
+
+    @Test
+    public void testSessionRequestAnsweredToRequester() throws Exception {
+        List<Serializable> broadcasts = new ArrayList<>();
+        List<Serializable> replies = new ArrayList<>();
+        UserSessions userSessions = new UserSessions();
+        userSessions.setClusterManager(new ClusterManager() {
+            @Override
+            public void send(Serializable message) {
+                broadcasts.add(message);
+            }
+
+            @Override
+            public void reply(Serializable message) {
+                replies.add(message);
+            }
+        });
+
+        UserSessions.UserSessionInfo usi = new UserSessions.UserSessionInfo(createSession(), System.currentTimeMillis());
+        userSessions.receiveClusterMessage(usi);
+        broadcasts.clear();
+
+        userSessions.receiveSessionRequest(new UserSessions.RequestUserSessionMsg(usi.session.getId()));
+        assertEquals(Collections.singletonList(usi), replies);
+        assertTrue(broadcasts.isEmpty());
+
+        // the reply has not been sent to all nodes, so the next broadcast includes the security data
+        assertFalse(read(new UserSessions(), write(userSessions, usi)).securityDataMissing);
+    }
+
+    @Test
+    public void testSharedSecurityDataCopiedOnWrite() throws Exception {
+        UserSessions userSessions = new UserSessions();
+        UserSession session1 = createSession();
+        UserSession session2 = createSession();
+        userSessions.shareSecurityData(session1);
+        userSessions.shareSecurityData(session2);
+        assertSame(session1.getSecurityData(), session2.getSecurityData());
+
+        session2.addPermission(PermissionType.SCREEN, "screen2", null, 1);
+
+        assertNotSame(session1.getSecurityData(), session2.getSecurityData());
+        assertNull(session1.getPermissionValue(PermissionType.SCREEN, "screen2"));
+        assertEquals(Integer.valueOf(1), session2.getPermissionValue(PermissionType.SCREEN, "screen2"));
+        assertNotEquals(session1.getSecurityData().getFingerprint(), session2.getSecurityData().getFingerprint());
+    }
+
+    private UserSession createSession() {
+        User user = new User();
+        user.setLogin("replicationTest");
+        UserSession session = new UserSession(UUID.randomUUID(), user, Collections.emptyList(), Locale.ENGLISH, false);
+        session.addPermission(PermissionType.SCREEN, "screen1", null, 1);
+        return session;
+    }
+
+    private byte[] send(UserSessions userSessions, UserSessions.UserSessionInfo usi) throws IOException {
+        byte[] bytes = write(userSessions, usi);
+        userSessions.sessionSent(usi);
+        return bytes;
+    }
+
+    private byte[] write(UserSessions userSessions, UserSessions.UserSessionInfo usi) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        userSessions.new UserSessionInfoCodec().write(usi, new DataOutputStream(bos));
+        return bos.toByteArray();
+    }
+
+    private UserSessions.UserSessionInfo read(UserSessions userSessions, byte[] bytes) throws IOException {
+        return userSessions.new UserSessionInfoCodec().read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.security.app;
+
+import com.haulmont.cuba.core.app.ClusterConfig;
+import com.haulmont.cuba.core.app.ClusterManager;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.Configuration;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.security.global.UserSession;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.jgroups.JChannel;
+import org.jgroups.Receiver;
+import org.jgroups.protocols.FRAG2;
+import org.jgroups.protocols.SHARED_LOOPBACK;
+import org.jgroups.protocols.SHARED_LOOPBACK_PING;
+import org.jgroups.protocols.UNICAST3;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.protocols.pbcast.STABLE;
+import org.jgroups.protocols.pbcast.STATE;
+import org.jgroups.stack.ProtocolStack;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Transfers a state of user sessions split into many chunks between two nodes connected by an in-process JGroups stack.
+ */
+public class UserSessionsStateTransferTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private static final int SESSIONS_COUNT = 1000;
+
+    private static final int STATE_CHUNK_SIZE = 1024;
+
+    private JChannel donorChannel;
+    private JChannel joinerChannel;
+
+    @Before
+    public void setUp() throws Exception {
+        AppContext.setProperty("cuba.cluster.stateChunkSize", String.valueOf(STATE_CHUNK_SIZE));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        AppContext.setProperty("cuba.cluster.stateChunkSize", null);
+        if (joinerChannel != null) {
+            joinerChannel.close();
+        }
+        if (donorChannel != null) {
+            donorChannel.close();
+        }
+    }
+
+    @Test
+    public void testLargeState() throws Exception {
+        ClusterConfig clusterConfig = AppBeans.get(Configuration.class).getConfig(ClusterConfig.class);
+        String clusterName = "stateTransferTest-" + UUID.randomUUID();
+
+        TestNode donor = new TestNode(clusterConfig);
+        UserSessions donorSessions = new UserSessions();
+        donorSessions.setClusterManager(donor);
+
+        User user = new User();
+        user.setLogin("stateTransferTest");
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < SESSIONS_COUNT; i++) {
+            UserSession session = new UserSession(UUID.randomUUID(), user, Collections.emptyList(), Locale.ENGLISH, false);
+            session.setAttribute("index", i);
+            donorSessions.receiveClusterMessage(new UserSessions.UserSessionInfo(session, now));
+        }
+        assertEquals(SESSIONS_COUNT, donorSessions.cache.size());
+
+        donorChannel = createChannel(donor.receiver());
+        donorChannel.connect(clusterName);
+
+        TestNode joiner = new TestNode(clusterConfig);
+        UserSessions joinerSessions = new UserSessions();
+        joinerSessions.setClusterManager(joiner);
+
+        joinerChannel = createChannel(joiner.receiver());
+        joinerChannel.connect(clusterName);
+        joinerChannel.getState(null, 60000);
+
+        assertEquals(SESSIONS_COUNT, joinerSessions.cache.size());
+        for (UserSessions.UserSessionInfo donorInfo : donorSessions.cache.values()) {
+            UserSessions.UserSessionInfo joinerInfo = joinerSessions.cache.get(donorInfo.session.getId());
+            assertNotNull(joinerInfo);
+            assertEquals(donorInfo.lastUsedTs, joinerInfo.lastUsedTs);
+            assertEquals(donorInfo.session.<Integer>getAttribute("index"), joinerInfo.session.getAttribute("index"));
+            assertEquals("stateTransferTest", joinerInfo.session.getUser().getLogin());
+        }
+    }
+
+    private JChannel createChannel(Receiver receiver) throws Exception {
+        JChannel channel = new JChannel(false);
+        ProtocolStack stack = new ProtocolStack();
+        channel.setProtocolStack(stack);
+        stack.addProtocol(new SHARED_LOOPBACK())
+                .addProtocol(new SHARED_LOOPBACK_PING())
+                .addProtocol(new NAKACK2())
+                .addProtocol(new UNICAST3())
+                .addProtocol(new STABLE())
+                .addProtocol(new GMS())
+                .addProtocol(new FRAG2())
+                .addProtocol(new STATE());
+        stack.init();
+        channel.setDiscardOwnMessages(true);
+        channel.setReceiver(receiver);
+        return channel;
+    }
+
+    private static class TestNode extends ClusterManager {
+
+        TestNode(ClusterConfig clusterConfig) {
+            this.clusterConfig = clusterConfig;
+        }
+
+        Receiver receiver() {
+            return createReceiver();
+        }
+    }
+}
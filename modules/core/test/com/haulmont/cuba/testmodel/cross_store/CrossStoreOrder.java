@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.testmodel.cross_store;
+
+import com.haulmont.chile.core.annotations.MetaClass;
+import com.haulmont.chile.core.annotations.MetaProperty;
+import com.haulmont.cuba.core.entity.BaseUuidEntity;
+
+import java.util.UUID;
+
+@MetaClass(name = "test$CrossStoreOrder")
+public class CrossStoreOrder extends BaseUuidEntity {
+
+    private static final long serialVersionUID = 6920318553104968447L;
+
+    @MetaProperty
+    private String number;
+
+    @MetaProperty
+    private UUID customerId;
+
+    @MetaProperty(related = "customerId")
+    private CrossStoreCustomer customer;
+
+    @MetaProperty
+    private UUID productId;
+
+    @MetaProperty(related = "productId")
+    private CrossStoreProduct product;
+
+    public String getNumber() {
+        return number;
+    }
+
+    public void setNumber(String number) {
+        this.number = number;
+    }
+
+    public UUID getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(UUID customerId) {
+        this.customerId = customerId;
+    }
+
+    public CrossStoreCustomer getCustomer() {
+        return customer;
+    }
+
+    public void setCustomer(CrossStoreCustomer customer) {
+        this.customer = customer;
+    }
+
+    public UUID getProductId() {
+        return productId;
+    }
+
+    public void setProductId(UUID productId) {
+        this.productId = productId;
+    }
+
+    public CrossStoreProduct getProduct() {
+        return product;
+    }
+
+    public void setProduct(CrossStoreProduct product) {
+        this.product = product;
+    }
+}
@@ -17,6 +17,8 @@
 package spec.cuba.core.data_manager
 
 
+import com.haulmont.cuba.core.app.JpqlQueryBuilder
+import com.haulmont.cuba.core.entity.Entity
 import com.haulmont.cuba.core.entity.contracts.Id
 import com.haulmont.cuba.core.global.*
 import com.haulmont.cuba.core.sys.AppContext
@@ -362,4 +364,39 @@ class DataManagerTest extends Specification {
         sql.execute("delete from TEST_COMPOSITE_KEY where TENANT = $id1.tenant and ENTITY_ID = $id1.entityId")
         sql.execute("delete from TEST_COMPOSITE_KEY where TENANT = $id2.tenant and ENTITY_ID = $id2.entityId")
     }
+
+    def "load by collection of composite ids in a single query"() {
+
+        def ids = (1..5).collect { new EntityKey(tenant: it % 2, entityId: it) }
+        def entities = ids.collect { new CompositeKeyEntity(id: it, name: "e${it.entityId}") }
+        dataManager.commit(entities as Entity[])
+
+        when:
+
+        JpqlQueryBuilder queryBuilder = AppBeans.get(JpqlQueryBuilder)
+        queryBuilder.setEntityName('test$CompositeKeyEntity').setIds(ids)
+        String query = queryBuilder.getResultQueryString()
+
+        then:
+
+        query.contains('e.id.tenant = :entityIds_4_')
+        query.contains('e.id.entityId = :entityIds_4_')
+        queryBuilder.getResultParameters().size() == 10
+
+        when:
+
+        def loadContext = LoadContext.create(CompositeKeyEntity).setIds(ids.reverse())
+        def list = dataManager.loadList(loadContext)
+
+        then:
+
+        list == entities.reverse()
+
+        cleanup:
+
+        Sql sql = new Sql(cont.persistence().getDataSource())
+        ids.each {
+            sql.execute("delete from TEST_COMPOSITE_KEY where TENANT = $it.tenant and ENTITY_ID = $it.entityId")
+        }
+    }
 }
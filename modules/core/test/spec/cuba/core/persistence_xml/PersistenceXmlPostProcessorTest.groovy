@@ -97,4 +97,56 @@ class PersistenceXmlPostProcessorTest extends Specification {
 
         AppContext.setProperty('cuba.persistenceXmlPostProcessor', null)
     }
+
+    def "batch writing is enabled by cuba.jdbcBatchSize"() {
+        AppContext.setProperty('cuba.jdbcBatchSize', '50')
+
+        when:
+
+        persistenceConfigProcessor.create()
+
+        then:
+
+        def xml = new XmlSlurper().parse(new File("$workDir/persistence.xml"))
+        def properties = xml.'persistence-unit'.'properties'.'property'
+        properties.find { it -> it.@name == 'eclipselink.jdbc.batch-writing' && it.@value == 'JDBC' }
+        properties.find { it -> it.@name == 'eclipselink.jdbc.batch-writing.size' && it.@value == '50' }
+
+        cleanup:
+
+        AppContext.setProperty('cuba.jdbcBatchSize', null)
+    }
+
+    def "batch writing of an additional store is enabled by cuba.jdbcBatchSize_<store>"() {
+        AppContext.setProperty('cuba.dbmsType_batchStore', 'hsql')
+        AppContext.setProperty('cuba.jdbcBatchSize_batchStore', '20')
+        persistenceConfigProcessor.setStorageName('batchStore')
+
+        when:
+
+        persistenceConfigProcessor.create()
+
+        then:
+
+        def xml = new XmlSlurper().parse(new File("$workDir/persistence.xml"))
+        def properties = xml.'persistence-unit'.'properties'.'property'
+        properties.find { it -> it.@name == 'eclipselink.jdbc.batch-writing.size' && it.@value == '20' }
+
+        cleanup:
+
+        AppContext.setProperty('cuba.dbmsType_batchStore', null)
+        AppContext.setProperty('cuba.jdbcBatchSize_batchStore', null)
+    }
+
+    def "batch writing is disabled by default"() {
+
+        when:
+
+        persistenceConfigProcessor.create()
+
+        then:
+
+        def xml = new XmlSlurper().parse(new File("$workDir/persistence.xml"))
+        !xml.'persistence-unit'.'properties'.'property'.find { it -> it.@name == 'eclipselink.jdbc.batch-writing' }
+    }
 }
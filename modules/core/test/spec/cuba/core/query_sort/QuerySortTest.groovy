@@ -177,4 +177,82 @@ class QuerySortTest extends Specification {
 
         queryBuilder.getResultQueryString() == 'select e from sys$EntitySnapshot e left join e.author e_author order by e.snapshotDate desc, e_author.login desc, e_author.name desc'
     }
+
+    def "keyset pagination"() {
+
+        JpqlQueryBuilder queryBuilder
+        UUID id = UUID.randomUUID()
+
+        when: "first page"
+
+        queryBuilder = AppBeans.get(JpqlQueryBuilder)
+        queryBuilder.setQueryString('select u from sec$User u')
+                .setQueryParameters([:])
+                .setSort(Sort.by('login'))
+                .setKeysetValues([])
+                .setEntityName('sec$User')
+
+        then:
+
+        queryBuilder.getResultQueryString() == 'select u from sec$User u order by u.login, u.id'
+
+        when: "next page"
+
+        queryBuilder = AppBeans.get(JpqlQueryBuilder)
+        queryBuilder.setQueryString('select u from sec$User u')
+                .setQueryParameters([:])
+                .setSort(Sort.by('login'))
+                .setKeysetValues(['admin', id])
+                .setEntityName('sec$User')
+        String query = queryBuilder.getResultQueryString().replaceAll('\\s', '')
+
+        then:
+
+        query.contains('u.login>:_keyset0')
+        query.contains('u.login=:_keyset0andu.id>:_keyset1')
+        query.endsWith('orderbyu.login,u.id')
+        queryBuilder.getResultParameters() == [_keyset0: 'admin', _keyset1: id]
+
+        when: "next page desc"
+
+        queryBuilder = AppBeans.get(JpqlQueryBuilder)
+        queryBuilder.setQueryString('select u from sec$User u')
+                .setQueryParameters([:])
+                .setSort(Sort.by(Sort.Direction.DESC, 'login'))
+                .setKeysetValues(['admin', id])
+                .setEntityName('sec$User')
+        query = queryBuilder.getResultQueryString().replaceAll('\\s', '')
+
+        then:
+
+        query.contains('u.login<:_keyset0')
+        query.contains('u.login=:_keyset0andu.id<:_keyset1')
+        query.endsWith('orderbyu.logindesc,u.iddesc')
+
+        when: "by reference property"
+
+        queryBuilder = AppBeans.get(JpqlQueryBuilder)
+        queryBuilder.setQueryString('select u from sec$User u')
+                .setQueryParameters([:])
+                .setSort(Sort.by('group'))
+                .setKeysetValues([])
+                .setEntityName('sec$User').getResultQueryString()
+
+        then:
+
+        thrown(UnsupportedOperationException)
+
+        when: "by optional property"
+
+        queryBuilder = AppBeans.get(JpqlQueryBuilder)
+        queryBuilder.setQueryString('select u from sec$User u')
+                .setQueryParameters([:])
+                .setSort(Sort.by('name'))
+                .setKeysetValues([])
+                .setEntityName('sec$User').getResultQueryString()
+
+        then:
+
+        thrown(UnsupportedOperationException)
+    }
 }
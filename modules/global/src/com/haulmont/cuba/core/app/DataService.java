@@ -19,8 +19,10 @@ package com.haulmont.cuba.core.app;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.entity.KeyValueEntity;
 import com.haulmont.cuba.core.global.CommitContext;
+import com.haulmont.cuba.core.global.DataLoadBatch;
 import com.haulmont.cuba.core.global.LoadContext;
 import com.haulmont.cuba.core.global.ValueLoadContext;
+import com.haulmont.cuba.core.global.ValueTable;
 
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nullable;
@@ -74,4 +76,15 @@ public interface DataService {
 
     @CheckReturnValue
     List<KeyValueEntity> loadValues(ValueLoadContext context);
+
+    @CheckReturnValue
+    ValueTable loadValueTable(ValueLoadContext context);
+
+    /**
+     * Executes load operations of the batch, operations targeting different data stores are executed concurrently.
+     * @param batch     load operations
+     * @return          results of the operations in the order of adding
+     * @see com.haulmont.cuba.core.global.DataManager#executeBatch(DataLoadBatch)
+     */
+    List<Object> executeBatch(DataLoadBatch batch);
 }
\ No newline at end of file
@@ -109,7 +109,7 @@ public class KeyValueEntity
         if (idName == null)
             return uuid;
         else
-            return properties.get(idName);
+            return getValue(idName);
     }
 
     public void setId(Object id) {
@@ -145,7 +145,7 @@ public class KeyValueEntity
     public String toString() {
         Object id = null;
         if (idName != null)
-            id = properties.get(idName);
+            id = getValue(idName);
         if (id == null)
             id = "?(" + uuid + ")";
         return "sys$KeyValueEntity-" + id;
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.global;
+
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.KeyValueEntity;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Group of load operations executed by {@link DataManager#executeBatch(DataLoadBatch)}.
+ * <p>On the middleware, operations targeting different data stores are executed concurrently, operations targeting
+ * the same data store are executed sequentially in the order of adding. On the client tier, the batch is sent to the
+ * middleware in a single call and executed there.
+ * <p>Usage example:
+ * <pre>
+ *     DataLoadBatch batch = new DataLoadBatch();
+ *     CompletableFuture&lt;List&lt;Customer&gt;&gt; customers = batch.loadList(customersContext);
+ *     CompletableFuture&lt;List&lt;KeyValueEntity&gt;&gt; totals = batch.loadValues(totalsContext);
+ *     dataManager.executeBatch(batch);
+ *     List&lt;Customer&gt; list = customers.join();
+ * </pre>
+ */
+public class DataLoadBatch implements Serializable {
+
+    private static final long serialVersionUID = -3546315869305725813L;
+
+    protected final List<Item<?>> items = new ArrayList<>();
+
+    /**
+     * Adds loading of a list of entities.
+     *
+     * @return future completed when the batch is executed
+     * @see DataManager#loadList(LoadContext)
+     */
+    public <E extends Entity> CompletableFuture<List<E>> loadList(LoadContext<E> context) {
+        return add(context, Operation.LOAD_LIST);
+    }
+
+    /**
+     * Adds loading of a single entity.
+     *
+     * @return future completed with the loaded entity or null when the batch is executed
+     * @see DataManager#load(LoadContext)
+     */
+    public <E extends Entity> CompletableFuture<E> load(LoadContext<E> context) {
+        return add(context, Operation.LOAD);
+    }
+
+    /**
+     * Adds calculation of the number of entities.
+     *
+     * @return future completed when the batch is executed
+     * @see DataManager#getCount(LoadContext)
+     */
+    public CompletableFuture<Long> getCount(LoadContext<? extends Entity> context) {
+        return add(context, Operation.GET_COUNT);
+    }
+
+    /**
+     * Adds loading of key-value pairs.
+     *
+     * @return future completed when the batch is executed
+     * @see DataManager#loadValues(ValueLoadContext)
+     */
+    public CompletableFuture<List<KeyValueEntity>> loadValues(ValueLoadContext context) {
+        return add(context, Operation.LOAD_VALUES);
+    }
+
+    /**
+     * @return operations of the batch in the order of adding
+     */
+    public List<Item<?>> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    protected <T> CompletableFuture<T> add(DataLoadContext context, Operation operation) {
+        Item<T> item = new Item<>(context, operation);
+        items.add(item);
+        return item.getResult();
+    }
+
+    /**
+     * Type of a load operation, corresponds to a {@link DataManager} method.
+     */
+    public enum Operation {
+        LOAD {
+            @Override
+            protected Object execute(DataManager dataManager, DataLoadContext context) {
+                return dataManager.load((LoadContext<?>) context);
+            }
+        },
+        LOAD_LIST {
+            @Override
+            protected Object execute(DataManager dataManager, DataLoadContext context) {
+                return dataManager.loadList((LoadContext<?>) context);
+            }
+        },
+        GET_COUNT {
+            @Override
+            protected Object execute(DataManager dataManager, DataLoadContext context) {
+                return dataManager.getCount((LoadContext<?>) context);
+            }
+        },
+        LOAD_VALUES {
+            @Override
+            protected Object execute(DataManager dataManager, DataLoadContext context) {
+                return dataManager.loadValues((ValueLoadContext) context);
+            }
+        };
+
+        protected abstract Object execute(DataManager dataManager, DataLoadContext context);
+    }
+
+    /**
+     * Load operation of the batch. The result future is not serialized, a deserialized item gets a new one.
+     */
+    public static class Item<T> implements Serializable {
+
+        private static final long serialVersionUID = 2293401687358937206L;
+
+        protected final DataLoadContext context;
+        protected final Operation operation;
+        protected transient CompletableFuture<T> result = new CompletableFuture<>();
+
+        protected Item(DataLoadContext context, Operation operation) {
+            this.context = context;
+            this.operation = operation;
+        }
+
+        /**
+         * @return {@link LoadContext} or {@link ValueLoadContext} of the operation
+         */
+        public DataLoadContext getContext() {
+            return context;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public CompletableFuture<T> getResult() {
+            return result;
+        }
+
+        /**
+         * Executes the operation by the given DataManager and completes the result future.
+         */
+        @SuppressWarnings("unchecked")
+        public void execute(DataManager dataManager) {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                result.complete((T) operation.execute(dataManager, context));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            result = new CompletableFuture<>();
+        }
+    }
+}
@@ -26,6 +26,8 @@ import com.haulmont.cuba.core.entity.contracts.Id;
 import javax.annotation.CheckReturnValue;
 import javax.annotation.Nullable;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Central interface to provide CRUD functionality. Can be used on both middle and client tiers.
@@ -62,6 +64,25 @@ public interface DataManager {
     @CheckReturnValue
     <E extends Entity> List<E> loadList(LoadContext<E> context);
 
+    /**
+     * Loads collection of entity instances as a stream.
+     * <p>On the middleware, instances are read from a database cursor and detached by chunks, so a large result set
+     * does not have to fit into memory. The stream holds a database connection and must be consumed in the calling
+     * thread and closed, for example:
+     * <pre>
+     * try (Stream&lt;Customer&gt; customers = dataManager.load(Customer.class).query("...").stream()) {
+     *     customers.forEach(this::export);
+     * }
+     * </pre>
+     * <p>On the client tier, the whole list is loaded by {@link #loadList(LoadContext)}.</p>
+     * @param context   {@link LoadContext} object, defining what and how to load
+     * @return          a stream of detached instances
+     */
+    @CheckReturnValue
+    default <E extends Entity> Stream<E> loadStream(LoadContext<E> context) {
+        return loadList(context).stream();
+    }
+
     /**
      * Returns the number of entity instances for the given query passed in the {@link LoadContext}.
      * @param context   defines the query
@@ -166,6 +187,51 @@ public interface DataManager {
     @CheckReturnValue
     List<KeyValueEntity> loadValues(ValueLoadContext context);
 
+    /**
+     * Loads key-value pairs into a table storing values by columns. Requires much less memory than
+     * {@link #loadValues(ValueLoadContext)} for large results, see {@link ValueTable}.
+     * @param context   defines a query for scalar values and a list of keys for the table columns
+     * @return table of values
+     */
+    @CheckReturnValue
+    default ValueTable loadValueTable(ValueLoadContext context) {
+        return ValueTable.of(context.getProperties(), context.getIdName(), loadValues(context));
+    }
+
+    /**
+     * Loads collection of entity instances asynchronously.
+     * <p>The middleware implementation loads data in a separate thread of a bounded pool with the security context
+     * of the calling thread. The default implementation loads data synchronously and returns a completed future,
+     * use {@link #executeBatch(DataLoadBatch)} to load data from several data stores concurrently on the client tier.
+     * @param context   {@link LoadContext} object, defining what and how to load
+     * @return future completed with a list of detached instances, or empty list if nothing found
+     */
+    @CheckReturnValue
+    default <E extends Entity> CompletableFuture<List<E>> loadListAsync(LoadContext<E> context) {
+        CompletableFuture<List<E>> future = new CompletableFuture<>();
+        try {
+            future.complete(loadList(context));
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Executes load operations of the batch and completes their futures.
+     * <p>The middleware implementation executes operations targeting different data stores concurrently and
+     * returns when all operations are completed. Operations of the first data store and of data stores having
+     * operations that join the current transaction are executed in the calling thread. The client implementation
+     * sends the batch to the middleware in a single call. The default implementation executes operations
+     * sequentially.
+     * @param batch     load operations
+     */
+    default void executeBatch(DataLoadBatch batch) {
+        for (DataLoadBatch.Item<?> item : batch.getItems()) {
+            item.execute(this);
+        }
+    }
+
     /**
      * By default, DataManager does not apply security restrictions on entity operations and attributes, only row-level
      * constraints take effect.
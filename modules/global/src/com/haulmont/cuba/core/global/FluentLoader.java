@@ -24,6 +24,7 @@ import com.haulmont.cuba.core.global.queryconditions.Condition;
 import javax.annotation.CheckReturnValue;
 import javax.persistence.TemporalType;
 import java.util.*;
+import java.util.stream.Stream;
 
 public class FluentLoader<E extends Entity<K>, K> {
 
@@ -80,6 +81,15 @@ public class FluentLoader<E extends Entity<K>, K> {
         return dataManager.loadList(loadContext);
     }
 
+    /**
+     * Loads entities as a stream, see {@link DataManager#loadStream(LoadContext)}. The stream must be closed.
+     */
+    @CheckReturnValue
+    public Stream<E> stream() {
+        LoadContext<E> loadContext = createLoadContext();
+        return dataManager.loadStream(loadContext);
+    }
+
     /**
      * Loads a single instance and wraps it in Optional.
      */
@@ -342,6 +352,14 @@ public class FluentLoader<E extends Entity<K>, K> {
             return loader.dataManager.loadList(loadContext);
         }
 
+        /**
+         * Loads entities as a stream, see {@link DataManager#loadStream(LoadContext)}. The stream must be closed.
+         */
+        public Stream<E> stream() {
+            LoadContext<E> loadContext = createLoadContext();
+            return loader.dataManager.loadStream(loadContext);
+        }
+
         /**
          * Loads a single instance and wraps it in Optional.
          */
@@ -47,6 +47,14 @@ public class FluentValuesLoader extends AbstractFluentValueLoader {
         return dataManager.loadValues(loadContext);
     }
 
+    /**
+     * Loads values into a table storing them by columns, see {@link DataManager#loadValueTable(ValueLoadContext)}.
+     */
+    public ValueTable table() {
+        ValueLoadContext loadContext = createLoadContext();
+        return dataManager.loadValueTable(loadContext);
+    }
+
     /**
      * Loads a single instance and wraps it in Optional.
      */
@@ -175,6 +175,20 @@ public interface GlobalConfig extends Config {
     @DefaultInt(100)
     int getNumberIdCacheSize();
 
+    /**
+     * @return maximum number of parsed JPQL query trees kept in memory, 0 disables the cache
+     */
+    @Property("cuba.jpqlParsedQueryCacheSize")
+    @DefaultInt(1000)
+    int getJpqlParsedQueryCacheSize();
+
+    /**
+     * @return maximum number of compiled in-memory constraint predicates kept in memory, 0 disables the cache
+     */
+    @Property("cuba.constraintPredicateCacheSize")
+    @DefaultInt(1000)
+    int getConstraintPredicateCacheSize();
+
     @Property("cuba.anonymousSessionId")
     @Factory(factory = UuidTypeFactory.class)
     UUID getAnonymousSessionId();
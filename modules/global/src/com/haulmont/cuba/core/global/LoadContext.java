@@ -357,6 +357,7 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
         private boolean cacheable;
         private Condition condition;
         private Sort sort;
+        private List<Object> keysetValues;
 
         /**
          * @param queryString JPQL query string. Only named parameters are supported.
@@ -489,6 +490,52 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
             return this;
         }
 
+        /**
+         * @return values of the sort properties and id of the instance after which the results start,
+         * or null if keyset pagination is not used
+         */
+        @Nullable
+        public List<Object> getKeysetValues() {
+            return keysetValues;
+        }
+
+        /**
+         * Enables keyset pagination: the query returns instances following the instance with the given key
+         * in the sort order. Unlike {@link #setFirstResult(int)}, the database does not read and skip the previous
+         * rows, so a deep page is loaded as fast as the first one.
+         * <p>
+         * The key consists of the values of the {@linkplain #setSort(Sort) sort} properties and the entity id,
+         * which is added to the sort to make the order unique. Sort properties must be persistent mandatory
+         * attributes of simple types, because the restriction cannot compare NULL values. An empty list means the first page: no instances are skipped, but the results
+         * are sorted in the same way.
+         *
+         * @param keysetValues values of the sort properties and id of the last instance of the previous page,
+         *                     null to disable keyset pagination
+         * @return this query instance for chaining
+         */
+        public Query setKeysetValues(@Nullable List<?> keysetValues) {
+            this.keysetValues = keysetValues == null ? null : new ArrayList<>(keysetValues);
+            return this;
+        }
+
+        /**
+         * Enables keyset pagination starting after the given instance, see {@link #setKeysetValues(List)}.
+         * The sort must be set before invoking this method.
+         *
+         * @param entity the last instance of the previous page
+         * @return this query instance for chaining
+         */
+        public Query setKeysetAfter(Entity entity) {
+            List<Object> values = new ArrayList<>();
+            if (sort != null) {
+                for (Sort.Order order : sort.getOrders()) {
+                    values.add(entity.getValueEx(order.getProperty()));
+                }
+            }
+            values.add(entity.getId());
+            return setKeysetValues(values);
+        }
+
         /**
          * Indicates that the query results should be cached.
          * @return the same query instance
@@ -533,6 +580,7 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
             query.cacheable = cacheable;
             query.condition = condition == null ? null : condition.copy();
             query.sort = sort;
+            query.keysetValues = keysetValues;
             return query;
         }
 
@@ -546,6 +594,7 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
             if (firstResult != query.firstResult) return false;
             if (maxResults != query.maxResults) return false;
             if (!parameters.equals(query.parameters)) return false;
+            if (!Objects.equals(keysetValues, query.keysetValues)) return false;
             return queryString.equals(query.queryString);
         }
 
@@ -555,6 +604,7 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
             result = 31 * result + queryString.hashCode();
             result = 31 * result + firstResult;
             result = 31 * result + maxResults;
+            result = 31 * result + Objects.hashCode(keysetValues);
             return result;
         }
 
@@ -564,6 +614,7 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
                     "queryString='" + queryString + '\'' +
                     ", firstResult=" + firstResult +
                     ", maxResults=" + maxResults +
+                    (keysetValues == null ? "" : ", keysetValues=" + keysetValues) +
                     '}';
         }
     }
@@ -18,6 +18,7 @@
 package com.haulmont.cuba.core.global;
 
 import groovy.lang.Binding;
+import groovy.lang.Script;
 
 import javax.annotation.Nullable;
 import java.util.Map;
@@ -61,6 +62,15 @@ public interface Scripting {
      */
     <T> T evaluateGroovy(String text, Map<String, Object> context);
 
+    /**
+     * Compiles Groovy expression to a script class without caching it.
+     * <p>Instances of the class can be created by {@link org.codehaus.groovy.runtime.InvokerHelper#createScript}
+     * and run repeatedly with the same binding, which is faster than evaluating the expression text each time.</p>
+     * @param text      expression text
+     * @return          compiled script class
+     */
+    Class<? extends Script> compileGroovy(String text);
+
     /**
      * Runs Groovy script.
      * The script must be located as file under <em>conf</em> directory, or as a classpath resource.
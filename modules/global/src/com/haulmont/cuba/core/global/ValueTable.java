@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.global;
+
+import com.google.common.base.Preconditions;
+import com.haulmont.cuba.core.entity.KeyValueEntity;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Result of {@link DataManager#loadValueTable(ValueLoadContext)}: values loaded by a query stored by columns.
+ * <p>Each column is an array of primitives if all its values are non-null numbers or booleans of the same type,
+ * otherwise it is an array of objects. Keys are mapped to column indexes once for the whole table, so a table
+ * requires much less memory than a list of {@link KeyValueEntity} instances containing the same values.
+ * <p>Use {@link #getRows()} to work with the table as with a list of KeyValueEntity instances.
+ */
+public class ValueTable implements Serializable {
+
+    private static final long serialVersionUID = -2178104869612343427L;
+
+    protected final List<String> keys;
+    protected final Map<String, Integer> keyIndexes;
+    protected final String idName;
+    protected final int size;
+    protected final Object[] columns;
+
+    protected transient KeyValueEntity[] rows;
+
+    protected ValueTable(List<String> keys, @Nullable String idName, int size, Object[] columns) {
+        this.keys = Collections.unmodifiableList(keys);
+        this.idName = idName;
+        this.size = size;
+        this.columns = columns;
+        this.keyIndexes = new HashMap<>(keys.size() * 2);
+        for (int i = 0; i < keys.size(); i++) {
+            keyIndexes.putIfAbsent(keys.get(i), i);
+        }
+    }
+
+    /**
+     * Creates a table containing values of the given KeyValueEntity instances.
+     *
+     * @param keys     keys of the table columns
+     * @param idName   name of the property that represents an identifier of rows
+     * @param entities rows of the table
+     */
+    public static ValueTable of(List<String> keys, @Nullable String idName, List<KeyValueEntity> entities) {
+        Builder builder = new Builder(keys, idName, entities.size());
+        for (KeyValueEntity entity : entities) {
+            Object[] row = new Object[keys.size()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = entity.getValue(keys.get(i));
+            }
+            builder.addRow(row);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return keys of the table columns in the order of the query "select" clause
+     */
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return name of the property that represents an identifier of rows, if set in the load context
+     */
+    @Nullable
+    public String getIdName() {
+        return idName;
+    }
+
+    /**
+     * @return number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return index of the column with the given key or -1 if the table doesn't contain such column
+     */
+    public int getColumnIndex(String key) {
+        Integer index = keyIndexes.get(key);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Returns an array containing values of the column. The array is not copied and must not be modified.
+     *
+     * @param column column index
+     * @return {@code long[]}, {@code int[]}, {@code double[]}, {@code boolean[]} or {@code Object[]} array
+     * of {@link #size()} length, or null if the values of the column are not permitted to the current user
+     */
+    @Nullable
+    public Object getColumn(int column) {
+        return columns[column];
+    }
+
+    /**
+     * @param row    row index
+     * @param column column index
+     * @return value of the cell
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    public <T> T getValue(int row, int column) {
+        Preconditions.checkElementIndex(row, size);
+        Object values = columns[column];
+        if (values == null) {
+            return null;
+        } else if (values instanceof long[]) {
+            return (T) Long.valueOf(((long[]) values)[row]);
+        } else if (values instanceof int[]) {
+            return (T) Integer.valueOf(((int[]) values)[row]);
+        } else if (values instanceof double[]) {
+            return (T) Double.valueOf(((double[]) values)[row]);
+        } else if (values instanceof boolean[]) {
+            return (T) Boolean.valueOf(((boolean[]) values)[row]);
+        } else {
+            return (T) ((Object[]) values)[row];
+        }
+    }
+
+    /**
+     * @param row row index
+     * @param key key of the column
+     * @return value of the cell or null if the table doesn't contain the column
+     */
+    @Nullable
+    public <T> T getValue(int row, String key) {
+        Integer column = keyIndexes.get(key);
+        if (column == null) {
+            Preconditions.checkElementIndex(row, size);
+            return null;
+        }
+        return getValue(row, column);
+    }
+
+    /**
+     * Returns rows of the table as KeyValueEntity instances. An instance is created on first access to the row and
+     * reads values from the table. Values set to the instance are kept in the instance and don't change the table.
+     */
+    public List<KeyValueEntity> getRows() {
+        if (rows == null) {
+            rows = new KeyValueEntity[size];
+        }
+        return new RowList();
+    }
+
+    @Override
+    public String toString() {
+        return "ValueTable{keys=" + keys + ", size=" + size + "}";
+    }
+
+    protected class RowList extends AbstractList<KeyValueEntity> implements RandomAccess {
+
+        @Override
+        public KeyValueEntity get(int index) {
+            Preconditions.checkElementIndex(index, size);
+            KeyValueEntity entity = rows[index];
+            if (entity == null) {
+                entity = new RowView(ValueTable.this, index);
+                rows[index] = entity;
+            }
+            return entity;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * KeyValueEntity reading values from a row of the table.
+     */
+    public static class RowView extends KeyValueEntity {
+
+        private static final long serialVersionUID = 4620851937264014385L;
+
+        protected final ValueTable table;
+        protected final int row;
+
+        protected RowView(ValueTable table, int row) {
+            this.table = table;
+            this.row = row;
+            this.idName = table.getIdName();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> T getValue(String name) {
+            if (properties.containsKey(name)) {
+                return (T) properties.get(name);
+            }
+            return table.getValue(row, name);
+        }
+    }
+
+    /**
+     * Collects rows of a query result into a table.
+     */
+    public static class Builder {
+
+        protected final List<String> keys;
+        protected final String idName;
+        protected final Object[][] columns;
+        protected int size;
+
+        /**
+         * @param keys         keys of the table columns
+         * @param idName       name of the property that represents an identifier of rows
+         * @param expectedSize expected number of rows
+         */
+        public Builder(List<String> keys, @Nullable String idName, int expectedSize) {
+            this.keys = new ArrayList<>(keys);
+            this.idName = idName;
+            this.columns = new Object[keys.size()][];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = new Object[Math.max(expectedSize, 0)];
+            }
+        }
+
+        /**
+         * Excludes values of the column from the table, the table returns null for all its cells.
+         */
+        public Builder maskColumn(int column) {
+            columns[column] = null;
+            return this;
+        }
+
+        /**
+         * Adds a row of a query result.
+         *
+         * @param item an array of values if the query selects several values, or a single value
+         */
+        public Builder addRow(@Nullable Object item) {
+            ensureCapacity(size + 1);
+            if (item instanceof Object[]) {
+                Object[] row = (Object[]) item;
+                int length = Math.min(row.length, columns.length);
+                for (int i = 0; i < length; i++) {
+                    if (columns[i] != null) {
+                        columns[i][size] = row[i];
+                    }
+                }
+            } else if (columns.length > 0 && columns[0] != null) {
+                columns[0][size] = item;
+            }
+            size++;
+            return this;
+        }
+
+        public ValueTable build() {
+            Object[] result = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] != null) {
+                    result[i] = compact(columns[i]);
+                }
+            }
+            return new ValueTable(keys, idName, size, result);
+        }
+
+        protected void ensureCapacity(int capacity) {
+            for (int i = 0; i < columns.length; i++) {
+                Object[] values = columns[i];
+                if (values != null && values.length < capacity) {
+                    columns[i] = Arrays.copyOf(values, Math.max(capacity, values.length + (values.length >> 1)));
+                }
+            }
+        }
+
+        protected Object compact(Object[] values) {
+            Class<?> type = size > 0 && values[0] != null ? values[0].getClass() : null;
+            for (int i = 1; i < size && type != null; i++) {
+                if (values[i] == null || values[i].getClass() != type) {
+                    type = null;
+                }
+            }
+            if (type == Long.class) {
+                long[] result = new long[size];
+                for (int i = 0; i < size; i++) {
+                    result[i] = (Long) values[i];
+                }
+                return result;
+            } else if (type == Integer.class) {
+                int[] result = new int[size];
+                for (int i = 0; i < size; i++) {
+                    result[i] = (Integer) values[i];
+                }
+                return result;
+            } else if (type == Double.class) {
+                double[] result = new double[size];
+                for (int i = 0; i < size; i++) {
+                    result[i] = (Double) values[i];
+                }
+                return result;
+            } else if (type == Boolean.class) {
+                boolean[] result = new boolean[size];
+                for (int i = 0; i < size; i++) {
+                    result[i] = (Boolean) values[i];
+                }
+                return result;
+            }
+            return values.length == size ? values : Arrays.copyOf(values, size);
+        }
+    }
+}
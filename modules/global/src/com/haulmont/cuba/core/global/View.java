@@ -104,6 +104,13 @@ public class View implements Serializable {
 
     private boolean loadPartialEntities;
 
+    private transient boolean sealed;
+
+    private transient boolean propertiesShared;
+
+    // structure signature computed once for sealed views and views sharing their properties
+    private transient volatile String signature;
+
     public View(Class<? extends Entity> entityClass) {
         this(entityClass, "", true);
     }
@@ -166,13 +173,19 @@ public class View implements Serializable {
                 View sourcePropertyView = sourceProperty.getView();
 
                 if (sourcePropertyView != null && isNotEmpty(sourcePropertyView.getProperties())) {
-
-                    Map<String, ViewProperty> thisViewProperties = thisProperties.get(sourcePropertyName).getView().properties;
-                    putProperties(thisViewProperties, sourcePropertyView.getProperties());
+                    View thisPropertyView = thisProperties.get(sourcePropertyName).getView();
+                    thisPropertyView.checkMutable();
+                    putProperties(thisPropertyView.properties, sourcePropertyView.getProperties());
                 }
 
             } else {
-                thisProperties.put(sourceProperty.getName(), sourceProperty);
+                View sourcePropertyView = sourceProperty.getView();
+                if (sourcePropertyView != null && sourcePropertyView.isSealed()) {
+                    // keep the property modifiable when the source view is sealed
+                    sourceProperty = new ViewProperty(sourcePropertyName, copyOnWrite(sourcePropertyView),
+                            sourceProperty.getFetchMode());
+                }
+                thisProperties.put(sourcePropertyName, sourceProperty);
             }
         }
     }
@@ -193,6 +206,115 @@ public class View implements Serializable {
         return copy;
     }
 
+    /**
+     * Creates a view which shares properties with the given sealed view until it is modified. Nested views are
+     * exposed as copy-on-write views as well, created when the properties of the returned view are accessed, so
+     * any part of the returned graph can be modified without affecting the source.
+     *
+     * @param view sealed view or a view returned by this method
+     * @return new view instance, or a deep copy if the source view neither is sealed nor shares properties
+     * with a sealed view
+     * @see #seal()
+     */
+    public static View copyOnWrite(@Nullable View view) {
+        if (view == null) {
+            return null;
+        }
+        if (!view.sealed && !view.propertiesShared) {
+            return copy(view);
+        }
+
+        View copy = new View(new ViewParams().entityClass(view.entityClass).name(view.name));
+        copy.properties = view.properties;
+        copy.propertiesShared = true;
+        copy.loadPartialEntities = view.loadPartialEntities;
+        copy.signature = view.getStructureSignature();
+        return copy;
+    }
+
+    /**
+     * Makes this view and all nested views immutable, so they can be shared between threads and callers.
+     * Any attempt to modify a sealed view throws {@link IllegalStateException}, use {@link #copy(View)} or
+     * {@link #copyOnWrite(View)} to obtain a modifiable view.
+     *
+     * @return this view instance for chaining
+     */
+    public View seal() {
+        if (!sealed) {
+            sealed = true;
+            for (ViewProperty property : properties.values()) {
+                if (property.getView() != null) {
+                    property.getView().seal();
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return true if the view is immutable
+     * @see #seal()
+     */
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    protected void checkMutable() {
+        if (sealed) {
+            throw new IllegalStateException(String.format("View %s is sealed and cannot be modified, " +
+                    "use View.copy() to modify it", this));
+        }
+        copySharedProperties();
+    }
+
+    /**
+     * Replaces properties shared with a sealed view by own ones referencing copy-on-write nested views.
+     */
+    private void copySharedProperties() {
+        if (propertiesShared) {
+            Map<String, ViewProperty> ownProperties = new LinkedHashMap<>(properties.size() * 4 / 3 + 1);
+            for (ViewProperty property : properties.values()) {
+                View propertyView = property.getView();
+                ownProperties.put(property.getName(), propertyView == null ? property :
+                        new ViewProperty(property.getName(), copyOnWrite(propertyView), property.getFetchMode()));
+            }
+            properties = ownProperties;
+            propertiesShared = false;
+            // nested views can be modified from now on, so the signature is built on each call
+            signature = null;
+        }
+    }
+
+    /**
+     * INTERNAL.
+     * Returns a string describing the structure of the view: the entity class and the names, fetch modes and
+     * nested views of properties. Views having equal signatures are loaded by the same fetch group.
+     * <p>The signature is computed once for a sealed view and for views sharing properties with it, see
+     * {@link #copyOnWrite(View)}, otherwise it is built on each call from the signatures of nested views.
+     */
+    public String getStructureSignature() {
+        String result = signature;
+        if (result == null) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(entityClass.getName()).append('{');
+            for (ViewProperty property : properties.values()) {
+                sb.append(property.getName());
+                if (property.getFetchMode() != FetchMode.AUTO) {
+                    sb.append(':').append(property.getFetchMode());
+                }
+                if (property.getView() != null) {
+                    sb.append(property.getView().getStructureSignature());
+                }
+                sb.append(',');
+            }
+            result = sb.append('}').toString();
+            if (sealed || propertiesShared) {
+                signature = result;
+            }
+        }
+        return result;
+    }
+
     /**
      * @return entity class this view belongs to
      */
@@ -211,6 +333,10 @@ public class View implements Serializable {
      * @return collection of properties
      */
     public Collection<ViewProperty> getProperties() {
+        if (sealed) {
+            return Collections.unmodifiableCollection(properties.values());
+        }
+        copySharedProperties();
         return properties.values();
     }
 
@@ -222,12 +348,14 @@ public class View implements Serializable {
      * @return      this view instance for chaining
      */
     public View addProperty(String name, @Nullable View view, FetchMode fetchMode) {
+        checkMutable();
         properties.put(name, new ViewProperty(name, view, fetchMode));
         return this;
     }
 
     @Deprecated
     public View addProperty(String name, @Nullable View view, boolean lazy) {
+        checkMutable();
         properties.put(name, new ViewProperty(name, view, lazy));
         return this;
     }
@@ -239,6 +367,7 @@ public class View implements Serializable {
      * @return      this view instance for chaining
      */
     public View addProperty(String name, View view) {
+        checkMutable();
         properties.put(name, new ViewProperty(name, view));
         return this;
     }
@@ -249,6 +378,7 @@ public class View implements Serializable {
      * @return      this view instance for chaining
      */
     public View addProperty(String name) {
+        checkMutable();
         properties.put(name, new ViewProperty(name, null));
         return this;
     }
@@ -282,7 +412,12 @@ public class View implements Serializable {
      */
     @Nullable
     public ViewProperty getProperty(String name) {
-        return properties.get(name);
+        ViewProperty property = properties.get(name);
+        if (propertiesShared && property != null && property.getView() != null) {
+            copySharedProperties();
+            property = properties.get(name);
+        }
+        return property;
     }
 
     /**
@@ -312,6 +447,9 @@ public class View implements Serializable {
      * @return this view instance for chaining
      */
     public View setLoadPartialEntities(boolean loadPartialEntities) {
+        if (sealed) {
+            checkMutable();
+        }
         this.loadPartialEntities = loadPartialEntities;
         return this;
     }
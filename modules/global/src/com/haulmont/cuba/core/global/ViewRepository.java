@@ -26,6 +26,7 @@ import java.util.Collection;
 /**
  * Represents a repository of {@link View} objects, accessible by names.
  * <br>Repository contains all views defined in XML and deployed at runtime.
+ * <br>Returned views, including their nested views, can be modified without affecting the repository.
  */
 public interface ViewRepository {
 
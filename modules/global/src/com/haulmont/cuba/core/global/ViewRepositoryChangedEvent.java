@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.global;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Event published when views are deployed to the {@link ViewRepository} or the repository is reset.
+ * <p>
+ * Beans caching information calculated from views should discard it on this event.
+ */
+public class ViewRepositoryChangedEvent extends ApplicationEvent {
+
+    /**
+     * @param source view repository which views have been changed
+     */
+    public ViewRepositoryChangedEvent(ViewRepository source) {
+        super(source);
+    }
+
+    @Override
+    public ViewRepository getSource() {
+        return (ViewRepository) super.getSource();
+    }
+}
@@ -66,12 +66,21 @@ public class AbstractViewRepository implements ViewRepository {
 
     protected Map<MetaClass, Map<String, View>> storage = new ConcurrentHashMap<>();
 
+    /**
+     * Sealed copies of views from the {@link #storage} returned to callers. Read without locking after
+     * initialization and cleared when the storage is changed.
+     */
+    protected Map<MetaClass, Map<String, View>> sealedStorage = new ConcurrentHashMap<>();
+
     @Inject
     protected Metadata metadata;
 
     @Inject
     protected Resources resources;
 
+    @Inject
+    protected Events events;
+
     protected volatile boolean initialized;
 
     protected ReadWriteLock lock = new ReentrantReadWriteLock();
@@ -97,6 +106,7 @@ public class AbstractViewRepository implements ViewRepository {
         StopWatch initTiming = new Slf4JStopWatch("ViewRepository.init." + getClass().getSimpleName());
 
         storage.clear();
+        sealedStorage.clear();
         readFileNames.clear();
 
         String configName = AppContext.getProperty("cuba.viewsConfig");
@@ -180,6 +190,13 @@ public class AbstractViewRepository implements ViewRepository {
 
     public void reset() {
         initialized = false;
+        fireViewRepositoryChanged();
+    }
+
+    protected void fireViewRepositoryChanged() {
+        if (events != null) {
+            events.publish(new ViewRepositoryChangedEvent(this));
+        }
     }
 
     /**
@@ -215,6 +232,9 @@ public class AbstractViewRepository implements ViewRepository {
 
     /**
      * Searches for a View for an entity
+     * <p>
+     * The returned view shares its properties and nested views with the repository and copies them only when
+     * accessed or modified, see {@link View#copyOnWrite(View)}.
      *
      * @param metaClass entity class
      * @param name      view name
@@ -231,12 +251,37 @@ public class AbstractViewRepository implements ViewRepository {
             return null;
         }
 
+        return View.copyOnWrite(findSealedView(metaClass, name));
+    }
+
+    /**
+     * Searches for a sealed View for an entity. After initialization, views which have been requested before
+     * are returned without locking.
+     *
+     * @param metaClass entity class
+     * @param name      view name
+     * @return sealed view instance or null if no view found
+     */
+    @Nullable
+    protected View findSealedView(MetaClass metaClass, String name) {
+        if (initialized) {
+            Map<String, View> views = sealedStorage.get(metaClass);
+            View view = views == null ? null : views.get(name);
+            if (view != null) {
+                return view;
+            }
+        }
+
         lock.readLock().lock();
         try {
             checkInitialized();
 
             View view = retrieveView(metaClass, name, new HashSet<>());
-            return copyView(view);
+            if (view == null) {
+                return null;
+            }
+            return sealedStorage.computeIfAbsent(metaClass, k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(name, k -> copyView(view).seal());
         } finally {
             lock.readLock().unlock();
         }
@@ -375,18 +420,26 @@ public class AbstractViewRepository implements ViewRepository {
             lock.readLock().unlock();
         }
 
-        Element rootElem = DocumentHelper.createDocument().addElement("views");
-
         lock.writeLock().lock();
         try {
-            addFile(rootElem, resourceUrl);
-
-            for (Element viewElem : Dom4j.elements(rootElem, "view")) {
-                deployView(rootElem, viewElem, new HashSet<>());
-            }
+            deployViewsFile(resourceUrl);
         } finally {
+            sealedStorage.clear();
             lock.writeLock().unlock();
         }
+        fireViewRepositoryChanged();
+    }
+
+    /**
+     * Deploys views from the given file and its includes. Must be invoked under the write lock.
+     */
+    protected void deployViewsFile(String resourceUrl) {
+        Element rootElem = DocumentHelper.createDocument().addElement("views");
+        addFile(rootElem, resourceUrl);
+
+        for (Element viewElem : Dom4j.elements(rootElem, "view")) {
+            deployView(rootElem, viewElem, new HashSet<>());
+        }
     }
 
     public void deployViews(InputStream xml) {
@@ -410,15 +463,22 @@ public class AbstractViewRepository implements ViewRepository {
         }
         Element rootElem = doc.getRootElement();
 
-        for (Element includeElem : Dom4j.elements(rootElem, "include")) {
-            String file = includeElem.attributeValue("file");
-            if (!StringUtils.isBlank(file))
-                deployViews(file);
-        }
+        lock.writeLock().lock();
+        try {
+            for (Element includeElem : Dom4j.elements(rootElem, "include")) {
+                String file = includeElem.attributeValue("file");
+                if (!StringUtils.isBlank(file))
+                    deployViewsFile(file);
+            }
 
-        for (Element viewElem : Dom4j.elements(rootElem, "view")) {
-            deployView(rootElem, viewElem);
+            for (Element viewElem : Dom4j.elements(rootElem, "view")) {
+                deployView(rootElem, viewElem, new HashSet<>());
+            }
+        } finally {
+            sealedStorage.clear();
+            lock.writeLock().unlock();
         }
+        fireViewRepositoryChanged();
     }
 
     protected View retrieveView(MetaClass metaClass, String name, Set<ViewInfo> visited) {
@@ -431,12 +491,16 @@ public class AbstractViewRepository implements ViewRepository {
     }
 
     public View deployView(Element rootElem, Element viewElem) {
+        View view;
         lock.writeLock().lock();
         try {
-            return deployView(rootElem, viewElem, new HashSet<>());
+            view = deployView(rootElem, viewElem, new HashSet<>());
         } finally {
+            sealedStorage.clear();
             lock.writeLock().unlock();
         }
+        fireViewRepositoryChanged();
+        return view;
     }
 
     protected View deployView(Element rootElem, Element viewElem, Set<ViewInfo> visited) {
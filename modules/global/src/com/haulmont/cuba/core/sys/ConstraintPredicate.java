@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.haulmont.cuba.core.entity.Entity;
+import groovy.lang.Binding;
+import groovy.lang.Script;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * INTERNAL.
+ * Groovy scripts of in-memory constraints compiled to script classes. An entity is permitted if no script
+ * returns {@code false}.
+ * <p>Instances are immutable and thread-safe, so they are shared by all sessions having the same constraints.
+ * Entities are checked by an {@link Evaluator} which is created for a single thread, e.g. to check a collection
+ * of loaded entities.
+ */
+public class ConstraintPredicate {
+
+    private static final Logger log = LoggerFactory.getLogger(ConstraintPredicate.class);
+
+    public static final String ENTITY_VARIABLE = "__entity__";
+
+    public static final ConstraintPredicate EMPTY = new ConstraintPredicate(null, null);
+
+    protected final List<String> scripts;
+    protected final List<Class<? extends Script>> scriptClasses;
+
+    /**
+     * @param scripts       constraint scripts
+     * @param scriptClasses classes compiled from the scripts with {@code {E}} replaced by {@link #ENTITY_VARIABLE},
+     *                      null elements stand for scripts which cannot be compiled and filter out all entities
+     */
+    public ConstraintPredicate(List<String> scripts, List<Class<? extends Script>> scriptClasses) {
+        this.scripts = scripts;
+        this.scriptClasses = scriptClasses;
+    }
+
+    public boolean isEmpty() {
+        return scriptClasses == null || scriptClasses.isEmpty();
+    }
+
+    /**
+     * Creates an evaluator running the scripts with the given binding. The evaluator must not be used by several
+     * threads simultaneously.
+     *
+     * @param binding binding containing all constraint variables except the entity
+     */
+    public Evaluator evaluator(Binding binding) {
+        return new Evaluator(binding);
+    }
+
+    public class Evaluator {
+
+        protected final Binding binding;
+        protected final Script[] scriptInstances;
+
+        protected Evaluator(Binding binding) {
+            this.binding = binding;
+            if (isEmpty()) {
+                scriptInstances = new Script[0];
+            } else {
+                scriptInstances = new Script[scriptClasses.size()];
+                for (int i = 0; i < scriptInstances.length; i++) {
+                    Class<? extends Script> scriptClass = scriptClasses.get(i);
+                    scriptInstances[i] = scriptClass != null ? InvokerHelper.createScript(scriptClass, binding) : null;
+                }
+            }
+        }
+
+        /**
+         * @return false if any script returns {@code false} for the entity or fails
+         */
+        public boolean test(Entity entity) {
+            if (scriptInstances.length == 0) {
+                return true;
+            }
+            binding.setVariable(ENTITY_VARIABLE, entity);
+            try {
+                for (int i = 0; i < scriptInstances.length; i++) {
+                    if (scriptInstances[i] == null) {
+                        log.trace("Entity is filtered out by a security constraint which cannot be compiled. " +
+                                "Entity class [{}]. Entity [{}].", entity.getMetaClass().getName(), entity.getId());
+                        return false;
+                    }
+                    try {
+                        Object result = scriptInstances[i].run();
+                        if (Boolean.FALSE.equals(result)) {
+                            log.trace("Entity does not match security constraint. Entity class [{}]. Entity [{}]. " +
+                                    "Constraint [{}].", entity.getMetaClass().getName(), entity.getId(), scripts.get(i));
+                            return false;
+                        }
+                    } catch (Exception e) {
+                        log.error("An error occurred while applying constraint's Groovy script. The entity has been " +
+                                "filtered out. Entity class [{}]. Entity [{}].", entity.getMetaClass().getName(),
+                                entity.getId(), e);
+                        return false;
+                    }
+                }
+                return true;
+            } finally {
+                binding.setVariable(ENTITY_VARIABLE, null);
+            }
+        }
+    }
+}
@@ -17,6 +17,8 @@
 
 package com.haulmont.cuba.core.sys;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.haulmont.chile.core.datatypes.Datatype;
 import com.haulmont.chile.core.datatypes.Datatypes;
 import com.haulmont.chile.core.datatypes.impl.EnumClass;
@@ -30,15 +32,19 @@ import com.haulmont.cuba.security.entity.EntityOp;
 import com.haulmont.cuba.security.entity.PermissionType;
 import com.haulmont.cuba.security.global.ConstraintData;
 import com.haulmont.cuba.security.global.UserSession;
+import groovy.lang.Binding;
+import groovy.lang.Script;
 import org.apache.commons.lang3.StringUtils;
 import org.codehaus.groovy.runtime.MethodClosure;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -65,6 +71,19 @@ public class SecurityImpl implements Security {
     @Inject
     protected Scripting scripting;
 
+    @Inject
+    protected GlobalConfig globalConfig;
+
+    // compiled in-memory constraints by their scripts, shared by all sessions
+    protected Cache<List<String>, ConstraintPredicate> constraintPredicates;
+
+    @PostConstruct
+    protected void initConstraintPredicates() {
+        constraintPredicates = CacheBuilder.newBuilder()
+                .maximumSize(globalConfig.getConstraintPredicateCacheSize())
+                .build();
+    }
+
     @Override
     public boolean isScreenPermitted(String windowAlias) {
         return userSessionSource.getUserSession().isScreenPermitted(windowAlias);
@@ -206,43 +225,92 @@ public class SecurityImpl implements Security {
     }
 
     protected boolean isPermitted(Entity entity, Predicate<ConstraintData> predicate) {
-        List<ConstraintData> constraints = getConstraints(entity.getMetaClass(), predicate);
-        for (ConstraintData constraint : constraints) {
-            if (!isPermitted(entity, constraint)) {
-                return false;
+        ConstraintPredicate constraintPredicate = getConstraintPredicate(entity.getMetaClass(), predicate);
+        return constraintPredicate.isEmpty()
+                || constraintPredicate.evaluator(new Binding(createGroovyConstraintsContext())).test(entity);
+    }
+
+    /**
+     * Removes entities not permitted by in-memory constraints matching the predicate. The constraints are evaluated
+     * for all entities of the same class by the same script instances and binding.
+     *
+     * @return true if some entities have been removed
+     */
+    protected boolean filterNotPermitted(Collection<? extends Entity> entities, Predicate<ConstraintData> predicate) {
+        Map<MetaClass, ConstraintPredicate.Evaluator> evaluators = new HashMap<>();
+        Binding binding = null;
+        boolean filtered = false;
+        for (Iterator<? extends Entity> iterator = entities.iterator(); iterator.hasNext(); ) {
+            Entity entity = iterator.next();
+            ConstraintPredicate.Evaluator evaluator = evaluators.get(entity.getMetaClass());
+            if (evaluator == null) {
+                ConstraintPredicate constraintPredicate = getConstraintPredicate(entity.getMetaClass(), predicate);
+                if (binding == null && !constraintPredicate.isEmpty()) {
+                    binding = new Binding(createGroovyConstraintsContext());
+                }
+                evaluator = constraintPredicate.evaluator(binding);
+                evaluators.put(entity.getMetaClass(), evaluator);
+            }
+            if (!evaluator.test(entity)) {
+                //we ignore situations when the collection is immutable
+                iterator.remove();
+                filtered = true;
             }
         }
-        return true;
+        return filtered;
     }
 
-    protected boolean isPermitted(Entity entity, ConstraintData constraint) {
-        String metaClassName = entity.getMetaClass().getName();
-        String groovyScript = constraint.getGroovyScript();
-        if (constraint.getCheckType().memory() && StringUtils.isNotBlank(groovyScript)) {
+    /**
+     * Returns in-memory constraints of the current session matching the predicate compiled to a predicate object.
+     * Compiled predicates are cached by the constraint scripts, so sessions having the same constraints share them.
+     */
+    protected ConstraintPredicate getConstraintPredicate(MetaClass metaClass, Predicate<ConstraintData> predicate) {
+        List<String> scripts = getConstraints(metaClass, predicate).stream()
+                .filter(constraint -> constraint.getCheckType().memory())
+                .map(ConstraintData::getGroovyScript)
+                .filter(StringUtils::isNotBlank)
+                .collect(Collectors.toList());
+        if (scripts.isEmpty()) {
+            return ConstraintPredicate.EMPTY;
+        }
+        try {
+            return constraintPredicates.get(scripts, () -> compileConstraintPredicate(scripts));
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to compile security constraints", e);
+        }
+    }
+
+    protected ConstraintPredicate compileConstraintPredicate(List<String> scripts) {
+        List<Class<? extends Script>> scriptClasses = new ArrayList<>(scripts.size());
+        for (String script : scripts) {
+            Class<? extends Script> scriptClass = null;
             try {
-                Object o = evaluateConstraintScript(entity, groovyScript);
-                if (Boolean.FALSE.equals(o)) {
-                    log.trace("Entity does not match security constraint. Entity class [{}]. Entity [{}]. Constraint [{}].",
-                            metaClassName, entity.getId(), constraint.getCheckType());
-                    return false;
-                }
+                scriptClass = scripting.compileGroovy(script.replace("{E}", ConstraintPredicate.ENTITY_VARIABLE));
             } catch (Exception e) {
-                log.error("An error occurred while applying constraint's Groovy script. The entity has been filtered out." +
-                        "Entity class [{}]. Entity [{}].", metaClassName, entity.getId(), e);
-                return false;
+                log.error("An error occurred while compiling constraint's Groovy script. The entities will be " +
+                        "filtered out. Script [{}].", script, e);
             }
+            scriptClasses.add(scriptClass);
         }
-        return true;
+        return new ConstraintPredicate(scripts, scriptClasses);
     }
 
     @Override
     public Object evaluateConstraintScript(Entity entity, String groovyScript) {
+        Map<String, Object> context = createGroovyConstraintsContext();
+        context.put(ConstraintPredicate.ENTITY_VARIABLE, entity);
+        return scripting.evaluateGroovy(groovyScript.replace("{E}", ConstraintPredicate.ENTITY_VARIABLE), context);
+    }
+
+    /**
+     * @return variables of Groovy constraints except the checked entity
+     */
+    protected Map<String, Object> createGroovyConstraintsContext() {
         Map<String, Object> context = new HashMap<>();
-        context.put("__entity__", entity);
         context.put("parse", new MethodClosure(this, "parseValue"));
         context.put("userSession", userSessionSource.getUserSession());
         fillGroovyConstraintsContext(context);
-        return scripting.evaluateGroovy(groovyScript.replace("{E}", "__entity__"), context);
+        return context;
     }
 
     /**
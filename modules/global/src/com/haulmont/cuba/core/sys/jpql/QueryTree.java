@@ -43,18 +43,53 @@ public class QueryTree {
 
     public QueryTree(DomainModel model, String query, boolean failOnErrors) {
         Preconditions.checkNotNull(query, "query is null");
-        String modifiedQuery = StringUtils.replaceChars(query, "\n\r\t", "   ");
+        String modifiedQuery = normalizeQuery(query);
 
         this.model = model;
         this.queryString = modifiedQuery;
+        this.tree = parseTree(modifiedQuery, failOnErrors);
+
+        this.idVarSelector = new IdVarSelector(model);
+        new TreeVisitor().visit(tree, idVarSelector);
+    }
+
+    /**
+     * Creates a query tree on top of an already parsed AST, see {@link QueryTreeCache}.
+     *
+     * @param model domain model to resolve entity variables
+     * @param query normalized query string, see {@link #normalizeQuery(String)}
+     * @param tree  AST of the query, it is owned and can be modified by the created object
+     */
+    public QueryTree(DomainModel model, String query, CommonTree tree) {
+        Preconditions.checkNotNull(query, "query is null");
+        Preconditions.checkNotNull(tree, "tree is null");
+
+        this.model = model;
+        this.queryString = query;
+        this.tree = tree;
+
+        this.idVarSelector = new IdVarSelector(model);
+        new TreeVisitor().visit(tree, idVarSelector);
+    }
+
+    /**
+     * @return query string with line breaks and tabs replaced by spaces, as it is passed to the parser
+     */
+    public static String normalizeQuery(String query) {
+        return StringUtils.replaceChars(query, "\n\r\t", "   ");
+    }
+
+    /**
+     * Parses the normalized query string into an AST.
+     *
+     * @throws JPA2RecognitionException if the query cannot be recognized
+     */
+    public static CommonTree parseTree(String query, boolean failOnErrors) {
         try {
-            this.tree = Parser.parse(modifiedQuery, failOnErrors);
+            return Parser.parse(query, failOnErrors);
         } catch (RecognitionException e) {
             throw new JPA2RecognitionException("JPA grammar recognition error", e);
         }
-
-        this.idVarSelector = new IdVarSelector(model);
-        new TreeVisitor().visit(tree, idVarSelector);
     }
 
     public DomainModel getModel() {
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.jpql;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.haulmont.cuba.core.global.GlobalConfig;
+import org.antlr.runtime.tree.CommonTree;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+/**
+ * Bounded cache of parsed JPQL syntax trees.
+ * <p>
+ * The AST produced by the parser does not depend on the domain model, so the cache keeps pristine trees keyed by
+ * the normalized query string. Each {@link #getQueryTree(DomainModel, String)} call returns a {@link QueryTree}
+ * built on a private copy of the cached AST, hence callers may modify it without affecting each other.
+ * Entity variables are resolved against the passed domain model for every returned tree.
+ * <p>
+ * The cache size is determined by the {@code cuba.jpqlParsedQueryCacheSize} app property, 0 disables caching.
+ */
+@Component(QueryTreeCache.NAME)
+public class QueryTreeCache {
+
+    public static final String NAME = "cuba_QueryTreeCache";
+
+    @Inject
+    protected GlobalConfig config;
+
+    protected Cache<String, CommonTree> cache;
+
+    protected long maxSize;
+
+    @PostConstruct
+    protected void init() {
+        maxSize = config.getJpqlParsedQueryCacheSize();
+        cache = createCache(maxSize);
+    }
+
+    protected Cache<String, CommonTree> createCache(long maxSize) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the query tree for the given query, parsing the query only if its AST is not cached yet.
+     *
+     * @param model domain model to resolve entity variables
+     * @param query JPQL query string
+     * @return new query tree instance which is not shared with other callers
+     * @throws JpqlSyntaxException      if the query contains syntax errors
+     * @throws JPA2RecognitionException if the query cannot be recognized
+     */
+    public QueryTree getQueryTree(DomainModel model, String query) {
+        Preconditions.checkNotNull(query, "query is null");
+        if (maxSize <= 0) {
+            return new QueryTree(model, query);
+        }
+
+        String normalizedQuery = QueryTree.normalizeQuery(query);
+        CommonTree tree = cache.getIfPresent(normalizedQuery);
+        if (tree == null) {
+            tree = QueryTree.parseTree(normalizedQuery, true);
+            cache.put(normalizedQuery, tree);
+        }
+        return new QueryTree(model, normalizedQuery, copyTree(tree));
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Creates a deep copy of the tree. The cached tree is only read here, so it can be copied concurrently.
+     */
+    protected CommonTree copyTree(CommonTree node) {
+        CommonTree copy = (CommonTree) node.dupNode();
+        copyChildren(node, copy);
+        return copy;
+    }
+
+    /*
+     * Custom nodes duplicate their children in dupNode() while plain ANTLR nodes don't,
+     * so walk down the duplicated children and complete the subtrees which are missing.
+     */
+    protected void copyChildren(CommonTree source, CommonTree target) {
+        int count = source.getChildCount();
+        if (target.getChildCount() == count) {
+            for (int i = 0; i < count; i++) {
+                copyChildren((CommonTree) source.getChild(i), (CommonTree) target.getChild(i));
+            }
+        } else {
+            while (target.getChildCount() > 0) {
+                target.deleteChild(target.getChildCount() - 1);
+            }
+            for (int i = 0; i < count; i++) {
+                target.addChild(copyTree((CommonTree) source.getChild(i)));
+            }
+        }
+    }
+}
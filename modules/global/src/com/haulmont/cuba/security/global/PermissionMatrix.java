@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.security.global;
+
+import com.haulmont.cuba.security.entity.*;
+
+import java.util.*;
+
+/**
+ * INTERNAL.
+ * Effective permissions of a user session: values assigned by the session permissions combined with values
+ * of the role types. Entity operation and attribute permissions are precomputed for each entity, so they are
+ * checked by the entity name without building permission targets.
+ * <p>Instances are immutable and can be shared by all sessions having the same permissions and role types,
+ * see {@link UserSessionSecurityData#getPermissionMatrix(Set)}.
+ */
+public class PermissionMatrix {
+
+    protected static final EntityOp[] ENTITY_OPS = EntityOp.values();
+
+    protected final Map<String, Integer>[] permissions;
+    protected final RoleType[] roleTypes;
+    protected final boolean superRole;
+
+    // values assigned by role types to screens, specific permissions, etc., which don't depend on the target
+    protected final Integer[] roleTypeValues;
+
+    protected final Map<String, EntityPermissions> entityPermissions;
+    protected final EntityPermissions defaultEntityPermissions;
+
+    public PermissionMatrix(Map<String, Integer>[] permissions, Set<RoleType> roleTypes) {
+        this.permissions = permissions;
+        this.roleTypes = roleTypes.toArray(new RoleType[0]);
+        this.superRole = roleTypes.contains(RoleType.SUPER);
+
+        roleTypeValues = new Integer[PermissionType.values().length];
+        for (PermissionType type : PermissionType.values()) {
+            if (type != PermissionType.ENTITY_OP) {
+                roleTypeValues[type.ordinal()] = getRoleTypesValue(type, "");
+            }
+        }
+
+        Map<String, Map<String, Integer>> attributes = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : permissions[PermissionType.ENTITY_ATTR.ordinal()].entrySet()) {
+            String target = entry.getKey();
+            int index = target.indexOf(Permission.TARGET_PATH_DELIMETER);
+            if (index > 0) {
+                attributes.computeIfAbsent(target.substring(0, index), k -> new HashMap<>())
+                        .put(target.substring(index + 1), entry.getValue());
+            }
+        }
+        Set<String> entityNames = new HashSet<>(attributes.keySet());
+        for (String target : permissions[PermissionType.ENTITY_OP.ordinal()].keySet()) {
+            int index = target.indexOf(Permission.TARGET_PATH_DELIMETER);
+            if (index > 0) {
+                entityNames.add(target.substring(0, index));
+            }
+        }
+
+        entityPermissions = new HashMap<>(entityNames.size() * 2);
+        for (String entityName : entityNames) {
+            entityPermissions.put(entityName, new EntityPermissions(
+                    getEntityOpPermitted(entityName),
+                    attributes.getOrDefault(entityName, Collections.emptyMap())));
+        }
+        // an entity without explicit permissions: only role types define its operations
+        defaultEntityPermissions = new EntityPermissions(getEntityOpPermitted(""), Collections.emptyMap());
+    }
+
+    /**
+     * @see UserSession#isPermitted(PermissionType, String, int)
+     */
+    public boolean isPermitted(PermissionType type, String target, int value) {
+        if (superRole) {
+            return true;
+        }
+        Integer v = permissions[type.ordinal()].get(target);
+        Integer roleTypesValue = type == PermissionType.ENTITY_OP
+                ? getRoleTypesValue(type, target)
+                : roleTypeValues[type.ordinal()];
+        if (roleTypesValue != null && (v == null || v < roleTypesValue)) {
+            v = roleTypesValue;
+        }
+        return v == null || v >= value;
+    }
+
+    /**
+     * @see UserSession#isEntityOpPermitted(com.haulmont.chile.core.model.MetaClass, EntityOp)
+     */
+    public boolean isEntityOpPermitted(String entityName, EntityOp entityOp) {
+        return superRole || getEntityPermissions(entityName).opPermitted[entityOp.ordinal()];
+    }
+
+    /**
+     * @see UserSession#isEntityAttrPermitted(com.haulmont.chile.core.model.MetaClass, String, EntityAttrAccess)
+     */
+    public boolean isEntityAttrPermitted(String entityName, String property, EntityAttrAccess access) {
+        if (superRole) {
+            return true;
+        }
+        Integer v = getEntityPermissions(entityName).attributes.get(property);
+        Integer roleTypesValue = roleTypeValues[PermissionType.ENTITY_ATTR.ordinal()];
+        if (roleTypesValue != null && (v == null || v < roleTypesValue)) {
+            v = roleTypesValue;
+        }
+        return v == null || v >= access.getId();
+    }
+
+    protected EntityPermissions getEntityPermissions(String entityName) {
+        EntityPermissions result = entityPermissions.get(entityName);
+        return result != null ? result : defaultEntityPermissions;
+    }
+
+    protected boolean[] getEntityOpPermitted(String entityName) {
+        boolean[] result = new boolean[ENTITY_OPS.length];
+        for (EntityOp entityOp : ENTITY_OPS) {
+            String target = entityName + Permission.TARGET_PATH_DELIMETER + entityOp.getId();
+            result[entityOp.ordinal()] = isPermitted(PermissionType.ENTITY_OP, target, 1);
+        }
+        return result;
+    }
+
+    protected Integer getRoleTypesValue(PermissionType type, String target) {
+        Integer result = null;
+        for (RoleType roleType : roleTypes) {
+            Integer v = roleType.permissionValue(type, target);
+            if (v != null && (result == null || result < v)) {
+                result = v;
+            }
+        }
+        return result;
+    }
+
+    protected static class EntityPermissions {
+
+        protected final boolean[] opPermitted;
+        protected final Map<String, Integer> attributes;
+
+        protected EntityPermissions(boolean[] opPermitted, Map<String, Integer> attributes) {
+            this.opPermitted = opPermitted;
+            this.attributes = attributes;
+        }
+    }
+}
@@ -58,6 +58,10 @@ public class UserSession implements Serializable {
 
     protected transient Map<String, Object> localAttributes;
 
+    protected transient UserSessionSecurityData securityData;
+
+    protected transient volatile PermissionMatrix permissionMatrix;
+
     /**
      * INTERNAL
      * Used only for kryo serialization
@@ -117,6 +121,7 @@ public class UserSession implements Serializable {
         timeZone = src.timeZone;
         permissions = src.permissions;
         constraints = src.constraints;
+        securityData = src.securityData;
         attributes = src.attributes;
         roleTypes = src.roleTypes;
         localAttributes = src.localAttributes;
@@ -129,6 +134,69 @@ public class UserSession implements Serializable {
         localAttributes = new ConcurrentHashMap<>();
     }
 
+    /**
+     * INTERNAL.
+     * Returns permissions and constraints of the session. If the session shares them with other sessions,
+     * the shared instance is returned.
+     */
+    public UserSessionSecurityData getSecurityData() {
+        UserSessionSecurityData data = securityData;
+        return data != null ? data : new UserSessionSecurityData(permissions, constraints);
+    }
+
+    /**
+     * INTERNAL.
+     * Returns the fingerprint of permissions and constraints if the session shares them with other sessions.
+     */
+    @Nullable
+    public String getSharedSecurityDataFingerprint() {
+        UserSessionSecurityData data = securityData;
+        return data != null ? data.getFingerprint() : null;
+    }
+
+    /**
+     * INTERNAL.
+     * Makes the session use permissions and constraints of the given instance, which can be shared with other
+     * sessions. The session copies them before the first modification.
+     */
+    public void setSecurityData(UserSessionSecurityData securityData) {
+        this.permissions = securityData.getPermissions();
+        this.constraints = securityData.getConstraints();
+        this.securityData = securityData;
+        this.permissionMatrix = null;
+    }
+
+    /**
+     * INTERNAL.
+     * Returns a shallow copy of the session without permissions and constraints.
+     */
+    public UserSession copyWithoutSecurityData() {
+        UserSession copy = new UserSession(this);
+        copy.permissions = null;
+        copy.constraints = null;
+        copy.securityData = null;
+        copy.permissionMatrix = null;
+        return copy;
+    }
+
+    protected void unshareSecurityData() {
+        if (securityData == null) {
+            return;
+        }
+        //noinspection unchecked
+        Map<String, Integer>[] permissionsCopy = new Map[permissions.length];
+        for (int i = 0; i < permissions.length; i++) {
+            permissionsCopy[i] = new HashMap<>(permissions[i]);
+        }
+        Map<String, List<ConstraintData>> constraintsCopy = new HashMap<>();
+        for (Map.Entry<String, List<ConstraintData>> entry : constraints.entrySet()) {
+            constraintsCopy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        permissions = permissionsCopy;
+        constraints = constraintsCopy;
+        securityData = null;
+    }
+
     /**
      * Session ID
      */
@@ -259,11 +327,13 @@ public class UserSession implements Serializable {
      * INTERNAL
      */
     public void addPermission(PermissionType type, String target, @Nullable String extTarget, int value) {
+        unshareSecurityData();
         Integer currentValue = permissions[type.ordinal()].get(target);
         if (currentValue == null || currentValue < value) {
             permissions[type.ordinal()].put(target, value);
             if (extTarget != null)
                 permissions[type.ordinal()].put(extTarget, value);
+            permissionMatrix = null;
         }
     }
 
@@ -271,14 +341,18 @@ public class UserSession implements Serializable {
      * INTERNAL
      */
     public void removePermission(PermissionType type, String target) {
+        unshareSecurityData();
         permissions[type.ordinal()].remove(target);
+        permissionMatrix = null;
     }
 
     /**
      * INTERNAL
      */
     public void removePermissions(PermissionType type) {
+        unshareSecurityData();
         permissions[type.ordinal()].clear();
+        permissionMatrix = null;
     }
 
     /**
@@ -306,17 +380,14 @@ public class UserSession implements Serializable {
      * Check user permission for the entity operation
      */
     public boolean isEntityOpPermitted(MetaClass metaClass, EntityOp entityOp) {
-        return isPermitted(PermissionType.ENTITY_OP,
-                metaClass.getName() + Permission.TARGET_PATH_DELIMETER + entityOp.getId());
+        return getPermissionMatrix().isEntityOpPermitted(metaClass.getName(), entityOp);
     }
 
     /**
      * Check user permission for the entity attribute
      */
     public boolean isEntityAttrPermitted(MetaClass metaClass, String property, EntityAttrAccess access) {
-        return isPermitted(PermissionType.ENTITY_ATTR,
-                metaClass.getName() + Permission.TARGET_PATH_DELIMETER + property,
-                access.getId());
+        return getPermissionMatrix().isEntityAttrPermitted(metaClass.getName(), property, access);
     }
 
     /**
@@ -360,26 +431,29 @@ public class UserSession implements Serializable {
      * @return true if permitted, false otherwise
      */
     public boolean isPermitted(PermissionType type, String target, int value) {
-        // If we have super-role no need to check anything
-        if (roleTypes.contains(RoleType.SUPER))
-            return true;
-        // Get permission value assigned by the set of permissions
-        Integer v = permissions[type.ordinal()].get(target);
-        // Get permission value assigned by non-standard roles
-        for (RoleType roleType : roleTypes) {
-            Integer v1 = roleType.permissionValue(type, target);
-            if (v1 != null && (v == null || v < v1)) {
-                v = v1;
-            }
+        return getPermissionMatrix().isPermitted(type, target, value);
+    }
+
+    /**
+     * INTERNAL.
+     * Returns effective permissions of the session. If the session shares permissions with other sessions,
+     * the effective permissions are shared too.
+     */
+    public PermissionMatrix getPermissionMatrix() {
+        PermissionMatrix matrix = permissionMatrix;
+        if (matrix == null) {
+            UserSessionSecurityData data = securityData;
+            matrix = data != null ? data.getPermissionMatrix(roleTypes) : new PermissionMatrix(permissions, roleTypes);
+            permissionMatrix = matrix;
         }
-        // Return true if no value set for this target, or if the value is more than requested
-        return v == null || v >= value;
+        return matrix;
     }
 
     /**
      * INTERNAL
      */
     public void addConstraint(Constraint constraint) {
+        unshareSecurityData();
         String entityName = constraint.getEntityName();
         List<ConstraintData> list = constraints.computeIfAbsent(entityName, k -> new ArrayList<>());
         list.add(new ConstraintData(constraint));
@@ -389,6 +463,7 @@ public class UserSession implements Serializable {
      * INTERNAL
      */
     public void removeConstraint(Constraint constraintToRemove) {
+        unshareSecurityData();
         String entityName = constraintToRemove.getEntityName();
         List<ConstraintData> constraintDataList = this.constraints.get(entityName);
         if (constraintDataList != null && !constraintDataList.isEmpty()) {
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.security.global;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.haulmont.cuba.security.entity.RoleType;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * INTERNAL.
+ * Permissions and constraints of a user session. Sessions of users having the same roles usually have equal
+ * permissions and constraints, so an instance can be shared between such sessions, see
+ * {@link UserSession#setSecurityData(UserSessionSecurityData)}.
+ * <p>
+ * The fingerprint is a hash of the content, it identifies equal data on all cluster nodes.
+ */
+public class UserSessionSecurityData implements Serializable {
+
+    private static final long serialVersionUID = 5108727290420376542L;
+
+    protected final Map<String, Integer>[] permissions;
+    protected final Map<String, List<ConstraintData>> constraints;
+
+    protected transient volatile String fingerprint;
+
+    protected transient volatile Map<Set<RoleType>, PermissionMatrix> permissionMatrices;
+
+    public UserSessionSecurityData(Map<String, Integer>[] permissions, Map<String, List<ConstraintData>> constraints) {
+        this.permissions = permissions;
+        this.constraints = constraints;
+    }
+
+    public Map<String, Integer>[] getPermissions() {
+        return permissions;
+    }
+
+    public Map<String, List<ConstraintData>> getConstraints() {
+        return constraints;
+    }
+
+    /**
+     * Returns effective permissions for the given role types. The result is created once and shared by all
+     * sessions using this instance and having the same role types.
+     */
+    public PermissionMatrix getPermissionMatrix(Set<RoleType> roleTypes) {
+        Map<Set<RoleType>, PermissionMatrix> matrices = permissionMatrices;
+        if (matrices == null) {
+            synchronized (this) {
+                matrices = permissionMatrices;
+                if (matrices == null) {
+                    matrices = new ConcurrentHashMap<>();
+                    permissionMatrices = matrices;
+                }
+            }
+        }
+        Set<RoleType> key = roleTypes.isEmpty() ? EnumSet.noneOf(RoleType.class) : EnumSet.copyOf(roleTypes);
+        return matrices.computeIfAbsent(key, k -> new PermissionMatrix(permissions, k));
+    }
+
+    /**
+     * @return hash of permissions and constraints which doesn't depend on the order of map entries
+     */
+    public String getFingerprint() {
+        String result = fingerprint;
+        if (result == null) {
+            result = calculateFingerprint();
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    protected String calculateFingerprint() {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(permissions.length);
+        for (Map<String, Integer> typePermissions : permissions) {
+            hasher.putInt(typePermissions.size());
+            for (Map.Entry<String, Integer> entry : new TreeMap<>(typePermissions).entrySet()) {
+                putString(hasher, entry.getKey());
+                hasher.putInt(entry.getValue());
+            }
+        }
+        hasher.putInt(constraints.size());
+        for (Map.Entry<String, List<ConstraintData>> entry : new TreeMap<>(constraints).entrySet()) {
+            putString(hasher, entry.getKey());
+            hasher.putInt(entry.getValue().size());
+            for (ConstraintData constraint : entry.getValue()) {
+                putString(hasher, constraint.getId() != null ? constraint.getId().toString() : null);
+                putString(hasher, constraint.getCode());
+                putString(hasher, constraint.getOperationType() != null ? constraint.getOperationType().name() : null);
+                putString(hasher, constraint.getCheckType() != null ? constraint.getCheckType().name() : null);
+                putString(hasher, constraint.getJoin());
+                putString(hasher, constraint.getWhereClause());
+                putString(hasher, constraint.getGroovyScript());
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    protected void putString(Hasher hasher, @Nullable String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length());
+            hasher.putString(value, StandardCharsets.UTF_8);
+        }
+    }
+}
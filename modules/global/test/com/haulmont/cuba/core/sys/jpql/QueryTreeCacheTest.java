@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys.jpql;
+
+import com.haulmont.cuba.core.sys.jpql.model.EntityBuilder;
+import com.haulmont.cuba.core.sys.jpql.model.JpqlEntityModel;
+import com.haulmont.cuba.core.sys.jpql.transform.QueryTreeTransformer;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QueryTreeCacheTest {
+
+    private DomainModel model;
+    private QueryTreeCache queryTreeCache;
+
+    @Before
+    public void setUp() throws Exception {
+        EntityBuilder builder = new EntityBuilder();
+        JpqlEntityModel teamEntity = builder.produceImmediately("Team", "name");
+        builder.startNewEntity("Player");
+        builder.addStringAttribute("name");
+        builder.addReferenceAttribute("team", "Team");
+        JpqlEntityModel playerEntity = builder.produce();
+        model = new DomainModel(playerEntity, teamEntity);
+
+        queryTreeCache = new QueryTreeCache();
+        queryTreeCache.maxSize = 2;
+        queryTreeCache.cache = queryTreeCache.createCache(queryTreeCache.maxSize);
+    }
+
+    @Test
+    public void testCachedTreeIsEqualToParsed() {
+        String query = "select p from Player p join p.team t where p.name = :name and t.name in (:names) order by p.name";
+
+        QueryTree parsed = new QueryTree(model, query);
+        QueryTree first = queryTreeCache.getQueryTree(model, query);
+        QueryTree second = queryTreeCache.getQueryTree(model, query);
+
+        assertEquals(toQuery(parsed), toQuery(first));
+        assertEquals(toQuery(parsed), toQuery(second));
+        assertNotSame(first.getAstTree(), second.getAstTree());
+        assertEquals("Player", second.getQueryVariableContext().getEntityByVariableName("p").getName());
+        assertEquals("Team", second.getQueryVariableContext().getEntityByVariableName("t").getName());
+
+        assertEquals(1, queryTreeCache.getStats().missCount());
+        assertEquals(1, queryTreeCache.getStats().hitCount());
+    }
+
+    @Test
+    public void testModificationOfCopyDoesNotAffectCache() {
+        String query = "select p from Player p where p.name = :name order by p.name";
+
+        QueryTree first = queryTreeCache.getQueryTree(model, query);
+        new QueryTreeTransformer(first).removeOrderBy();
+        assertEquals(toQuery(new QueryTree(model, "select p from Player p where p.name = :name")), toQuery(first));
+
+        QueryTree second = queryTreeCache.getQueryTree(model, query);
+        assertEquals(toQuery(new QueryTree(model, query)), toQuery(second));
+    }
+
+    @Test
+    public void testEviction() {
+        queryTreeCache.getQueryTree(model, "select p from Player p");
+        queryTreeCache.getQueryTree(model, "select t from Team t");
+        queryTreeCache.getQueryTree(model, "select p.name from Player p");
+
+        assertTrue(queryTreeCache.size() <= 2);
+        assertTrue(queryTreeCache.getStats().evictionCount() > 0);
+    }
+
+    @Test
+    public void testSyntaxErrorIsNotCached() {
+        try {
+            queryTreeCache.getQueryTree(model, "select p from Player p where");
+            fail();
+        } catch (JpqlSyntaxException | JPA2RecognitionException e) {
+            // expected
+        }
+        assertEquals(0, queryTreeCache.size());
+    }
+
+    private String toQuery(QueryTree queryTree) {
+        return queryTree.visit(new TreeToQuery()).getQueryString().trim();
+    }
+}
@@ -42,4 +42,30 @@ public interface AggregatableTableItems<E extends Entity> extends TableItems<E>
      * @return map with aggregation info and aggregation column type
      */
     Map<AggregationInfo, Object> aggregateValues(AggregationInfo[] aggregationInfos, Collection<?> itemIds);
+
+    /**
+     * Perform aggregation and return map with formatted string values.
+     *
+     * @param aggregationInfos aggregation infos
+     * @param itemIds          collection of item ids
+     * @param totalAggregation true if all items are aggregated, false if the items of a group
+     * @return map with aggregation info and formatted string values
+     */
+    default Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection<?> itemIds,
+                                                   boolean totalAggregation) {
+        return aggregate(aggregationInfos, itemIds);
+    }
+
+    /**
+     * Perform aggregation and return map with aggregation info and aggregation column type.
+     *
+     * @param aggregationInfos aggregation infos
+     * @param itemIds          collection of item ids
+     * @param totalAggregation true if all items are aggregated, false if the items of a group
+     * @return map with aggregation info and aggregation column type
+     */
+    default Map<AggregationInfo, Object> aggregateValues(AggregationInfo[] aggregationInfos, Collection<?> itemIds,
+                                                         boolean totalAggregation) {
+        return aggregateValues(aggregationInfos, itemIds);
+    }
 }
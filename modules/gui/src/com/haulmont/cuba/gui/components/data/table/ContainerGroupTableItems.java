@@ -20,9 +20,11 @@ import com.google.common.collect.ImmutableList;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.chile.core.model.MetaPropertyPath;
 import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.AppBeans;
 import com.haulmont.cuba.gui.components.data.GroupTableItems;
 import com.haulmont.cuba.gui.data.GroupInfo;
-import com.haulmont.cuba.gui.model.CollectionContainer;
+import com.haulmont.cuba.gui.data.impl.GroupingLoader;
+import com.haulmont.cuba.gui.model.*;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.map.LinkedMap;
 import org.apache.commons.lang3.ArrayUtils;
@@ -35,6 +37,8 @@ public class ContainerGroupTableItems<E extends Entity<K>, K>
         extends ContainerTableItems<E>
         implements GroupTableItems<E> {
 
+    public static final int DEFAULT_GROUP_PAGE_SIZE = 100;
+
     protected Object[] groupProperties = null;
 
     protected Map<GroupInfo, GroupInfo> parents;
@@ -52,10 +56,65 @@ public class ContainerGroupTableItems<E extends Entity<K>, K>
     protected Object[] sortProperties;
     protected boolean[] sortAscending;
 
+    protected boolean serverSideGrouping;
+    protected int groupPageSize = DEFAULT_GROUP_PAGE_SIZE;
+
+    // numbers of entities in groups loaded from the data store, null if items are grouped in memory
+    protected Map<GroupInfo, Integer> groupCounts;
+    protected Object[] loadedGroupProperties;
+    protected boolean groupsStale;
+    protected boolean loadingGroupItems;
+
     public ContainerGroupTableItems(CollectionContainer<E> container) {
         super(container);
     }
 
+    /**
+     * @return whether the items are grouped on the data store
+     * @see #setServerSideGrouping(boolean)
+     */
+    public boolean isServerSideGrouping() {
+        return serverSideGrouping;
+    }
+
+    /**
+     * Sets whether the items are grouped on the data store. If true and the container is loaded by a
+     * {@link CollectionLoader} with a JPQL query, groups and numbers of their entities are loaded by {@code group by}
+     * queries over all entities matching the loader's query and condition, regardless of the loaded page. Nested
+     * groups are loaded when the parent group is expanded, entities of a group are loaded by queries of
+     * {@link #getGroupPageSize()} size when the group is expanded and added to the container.
+     * <p>Grouping by attributes of references or by non-persistent attributes, as well as grouping of entities
+     * having in-memory read constraints, is performed in memory.
+     */
+    public void setServerSideGrouping(boolean serverSideGrouping) {
+        this.serverSideGrouping = serverSideGrouping;
+    }
+
+    /**
+     * @return maximum number of entities of a group loaded by one query in server-side grouping mode
+     */
+    public int getGroupPageSize() {
+        return groupPageSize;
+    }
+
+    public void setGroupPageSize(int groupPageSize) {
+        if (groupPageSize <= 0) {
+            throw new IllegalArgumentException("groupPageSize must be positive");
+        }
+        this.groupPageSize = groupPageSize;
+    }
+
+    @Override
+    protected void containerCollectionChanged(CollectionContainer.CollectionChangeEvent<E> e) {
+        if (e.getChangeType() == CollectionChangeType.REFRESH) {
+            groupsStale = true;
+        }
+        // loaded entities of an expanded group are already included in its item ids
+        if (!loadingGroupItems) {
+            super.containerCollectionChanged(e);
+        }
+    }
+
     @Override
     public void sort(Object[] propertyId, boolean[] ascending) {
         sortProperties = propertyId;
@@ -81,6 +140,7 @@ public class ContainerGroupTableItems<E extends Entity<K>, K>
                     children = null;
                     groupItems = null;
                     itemGroups = null;
+                    groupCounts = null;
                 }
             }
         } finally {
@@ -92,6 +152,13 @@ public class ContainerGroupTableItems<E extends Entity<K>, K>
     }
 
     protected void doGroup() {
+        CollectionLoader<E> loader = getServerSideGroupingLoader();
+        if (loader != null) {
+            doServerSideGroup(loader);
+            return;
+        }
+
+        groupCounts = null;
         roots = new LinkedList<>();
         parents = new LinkedHashMap<>();
         children = new LinkedHashMap<>();
@@ -110,6 +177,115 @@ public class ContainerGroupTableItems<E extends Entity<K>, K>
         }
     }
 
+    protected void doServerSideGroup(CollectionLoader<E> loader) {
+        if (!groupsStale && groupCounts != null && Arrays.equals(loadedGroupProperties, groupProperties)) {
+            // only items of the container have been added or removed
+            return;
+        }
+
+        roots = new LinkedList<>();
+        parents = new LinkedHashMap<>();
+        children = new LinkedHashMap<>();
+        groupItems = new HashMap<>();
+        itemGroups = new HashMap<>();
+        groupCounts = new HashMap<>();
+        loadedGroupProperties = groupProperties;
+        groupsStale = false;
+
+        roots.addAll(loadGroups(loader, null));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    protected CollectionLoader<E> getServerSideGroupingLoader() {
+        if (!serverSideGrouping || !(container instanceof HasLoader)) {
+            return null;
+        }
+        DataLoader loader = ((HasLoader) container).getLoader();
+        if (!(loader instanceof CollectionLoader)) {
+            return null;
+        }
+        GroupingLoader groupingLoader = AppBeans.get(GroupingLoader.NAME);
+        return groupingLoader.isSupported((CollectionLoader<?>) loader, groupProperties) ? (CollectionLoader<E>) loader : null;
+    }
+
+    protected List<GroupInfo> loadGroups(CollectionLoader<E> loader, @Nullable GroupInfo parent) {
+        int level = parent == null ? 0 : getGroupLevel(parent) + 1;
+        MetaPropertyPath property = (MetaPropertyPath) groupProperties[level];
+        LinkedMap<MetaPropertyPath, Object> parentValues = getGroupValues(parent);
+
+        GroupingLoader groupingLoader = AppBeans.get(GroupingLoader.NAME);
+        Map<Object, Integer> groups = groupingLoader.loadGroups(loader, property, parentValues);
+
+        List<GroupInfo> result = new ArrayList<>(groups.size());
+        for (Map.Entry<Object, Integer> entry : groups.entrySet()) {
+            LinkedMap<MetaPropertyPath, Object> groupValues = new LinkedMap<>(parentValues);
+            groupValues.put(property, entry.getKey());
+
+            GroupInfo<MetaPropertyPath> groupInfo = new GroupInfo<>(groupValues);
+            parents.put(groupInfo, parent);
+            groupCounts.put(groupInfo, entry.getValue());
+            result.add(groupInfo);
+        }
+        if (parent != null) {
+            children.put(parent, result);
+        }
+        return result;
+    }
+
+    protected void loadGroupItems(GroupInfo groupId) {
+        List<K> itemIds = groupItems.computeIfAbsent(groupId, k -> new ArrayList<>());
+        CollectionLoader<E> loader = getServerSideGroupingLoader();
+        if (loader == null) {
+            return;
+        }
+
+        GroupingLoader groupingLoader = AppBeans.get(GroupingLoader.NAME);
+        LinkedMap<MetaPropertyPath, Object> groupValues = getGroupValues(groupId);
+        int count = groupCounts.getOrDefault(groupId, 0);
+
+        DataContext dataContext = loader.getDataContext();
+        List<E> newItems = new ArrayList<>();
+        List<E> loaded;
+        do {
+            loaded = groupingLoader.loadGroupItems(loader, groupValues, itemIds.size(), groupPageSize);
+            for (E item : loaded) {
+                E entity = dataContext != null ? dataContext.merge(item) : item;
+                itemIds.add(entity.getId());
+                itemGroups.put(entity.getId(), groupId);
+                if (container.getItemOrNull(entity.getId()) == null) {
+                    newItems.add(entity);
+                }
+            }
+            // the group could shrink since its entities were counted
+        } while (loaded.size() == groupPageSize && itemIds.size() < count);
+
+        if (!newItems.isEmpty()) {
+            loadingGroupItems = true;
+            try {
+                container.getMutableItems().addAll(newItems);
+            } finally {
+                loadingGroupItems = false;
+            }
+        }
+    }
+
+    protected int getGroupLevel(GroupInfo groupId) {
+        return ArrayUtils.indexOf(groupProperties, groupId.getProperty());
+    }
+
+    @SuppressWarnings("unchecked")
+    protected LinkedMap<MetaPropertyPath, Object> getGroupValues(@Nullable GroupInfo groupId) {
+        LinkedMap<MetaPropertyPath, Object> values = new LinkedMap<>();
+        if (groupId != null) {
+            for (int i = 0; i <= getGroupLevel(groupId); i++) {
+                MetaPropertyPath property = (MetaPropertyPath) groupProperties[i];
+                values.put(property, groupId.getPropertyValue(property));
+            }
+        }
+        return values;
+    }
+
     protected GroupInfo<MetaPropertyPath> groupItems(int propertyIndex, GroupInfo parent, List<GroupInfo> children,
                                                      E item, LinkedMap<MetaPropertyPath, Object> groupValues) {
         MetaPropertyPath property = (MetaPropertyPath) groupProperties[propertyIndex++];
@@ -153,6 +329,10 @@ public class ContainerGroupTableItems<E extends Entity<K>, K>
 
     @Override
     public boolean hasChildren(GroupInfo groupId) {
+        if (groupCounts != null) {
+            return containsGroup(groupId) && getGroupLevel(groupId) < groupProperties.length - 1;
+        }
+
         boolean groupExists = containsGroup(groupId);
         List<GroupInfo> groupChildren = this.children.get(groupId);
         return groupExists && CollectionUtils.isNotEmpty(groupChildren);
@@ -161,7 +341,13 @@ public class ContainerGroupTableItems<E extends Entity<K>, K>
     @Override
     public List<GroupInfo> getChildren(GroupInfo groupId) {
         if (hasChildren(groupId)) {
-            return Collections.unmodifiableList(children.get(groupId));
+            if (groupCounts != null && !children.containsKey(groupId)) {
+                CollectionLoader<E> loader = getServerSideGroupingLoader();
+                if (loader != null) {
+                    loadGroups(loader, groupId);
+                }
+            }
+            return Collections.unmodifiableList(children.getOrDefault(groupId, Collections.emptyList()));
         }
         return Collections.emptyList();
     }
@@ -175,7 +361,8 @@ public class ContainerGroupTableItems<E extends Entity<K>, K>
         List<K> idsList = groupItems.get(groupId);
         if (containsGroup(groupId) && CollectionUtils.isNotEmpty(idsList)) {
             return idsList.stream()
-                    .map(id -> container.getItem(id))
+                    .map(id -> container.getItemOrNull(id))
+                    .filter(Objects::nonNull)
                     .collect(Collectors.toList());
         }
         return Collections.emptyList();
@@ -199,8 +386,10 @@ public class ContainerGroupTableItems<E extends Entity<K>, K>
             }
 
             for (K id : groupItems.getOrDefault(groupId, Collections.emptyList())) {
-                E item = container.getItem(id);
-                entities.add(item);
+                E item = container.getItemOrNull(id);
+                if (item != null) {
+                    entities.add(item);
+                }
             }
 
             return entities;
@@ -211,7 +400,8 @@ public class ContainerGroupTableItems<E extends Entity<K>, K>
     // return collection as is
     public List<GroupInfo> getChildrenInternal(GroupInfo groupId) {
         if (hasChildren(groupId)) {
-            return children.get(groupId);
+            // nested groups loaded from the data store are absent until the group is expanded
+            return children.getOrDefault(groupId, Collections.emptyList());
         }
         return Collections.emptyList();
     }
@@ -276,6 +466,10 @@ public class ContainerGroupTableItems<E extends Entity<K>, K>
     @Override
     public Collection<K> getGroupItemIds(GroupInfo groupId) {
         if (containsGroup(groupId)) {
+            if (groupCounts != null) {
+                return getServerSideGroupItemIds(groupId);
+            }
+
             List<K> itemIds;
             if ((itemIds = groupItems.get(groupId)) == null) {
                 itemIds = new ArrayList<>();
@@ -289,8 +483,33 @@ public class ContainerGroupTableItems<E extends Entity<K>, K>
         return Collections.emptyList();
     }
 
+    protected Collection<K> getServerSideGroupItemIds(GroupInfo groupId) {
+        // only entities of a requested leaf group are loaded, not of all groups nested in the requested one
+        if (!hasChildren(groupId) && !groupItems.containsKey(groupId)) {
+            loadGroupItems(groupId);
+        }
+        List<K> itemIds = new ArrayList<>();
+        collectLoadedGroupItemIds(groupId, itemIds);
+        return ImmutableList.copyOf(itemIds);
+    }
+
+    protected void collectLoadedGroupItemIds(GroupInfo groupId, List<K> itemIds) {
+        for (GroupInfo child : getChildrenInternal(groupId)) {
+            collectLoadedGroupItemIds(child, itemIds);
+        }
+        for (K id : groupItems.getOrDefault(groupId, Collections.emptyList())) {
+            // the entity could be removed from the container
+            if (container.getItemOrNull(id) != null) {
+                itemIds.add(id);
+            }
+        }
+    }
+
     @Override
     public int getGroupItemsCount(GroupInfo groupId) {
+        if (groupCounts != null) {
+            return containsGroup(groupId) ? groupCounts.getOrDefault(groupId, 0) : 0;
+        }
         if (containsGroup(groupId)) {
             List<K> itemIds;
             if ((itemIds = groupItems.get(groupId)) == null) {
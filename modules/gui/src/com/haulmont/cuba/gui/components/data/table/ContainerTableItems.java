@@ -21,6 +21,7 @@ import com.haulmont.bali.events.Subscription;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetaPropertyPath;
 import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.AppBeans;
 import com.haulmont.cuba.core.global.Sort;
 import com.haulmont.cuba.gui.components.AggregationInfo;
 import com.haulmont.cuba.gui.components.data.AggregatableTableItems;
@@ -28,14 +29,21 @@ import com.haulmont.cuba.gui.components.data.BindingState;
 import com.haulmont.cuba.gui.components.data.TableItems;
 import com.haulmont.cuba.gui.components.data.meta.ContainerDataUnit;
 import com.haulmont.cuba.gui.components.data.meta.EntityTableItems;
+import com.haulmont.cuba.gui.data.aggregation.AggregationLoader;
 import com.haulmont.cuba.gui.data.impl.AggregatableDelegate;
+import com.haulmont.cuba.gui.model.CollectionChangeType;
 import com.haulmont.cuba.gui.model.CollectionContainer;
+import com.haulmont.cuba.gui.model.CollectionLoader;
+import com.haulmont.cuba.gui.model.DataContext;
+import com.haulmont.cuba.gui.model.DataLoader;
+import com.haulmont.cuba.gui.model.HasLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -52,6 +60,14 @@ public class ContainerTableItems<E extends Entity> implements EntityTableItems<E
 
     protected AggregatableDelegate aggregatableDelegate;
 
+    protected boolean serverSideAggregation;
+
+    // values calculated on the data store, reused until the container items change
+    protected Map<AggregationInfo, Object> serverSideAggregationResults = new HashMap<>();
+
+    // items have been added, removed or replaced after loading, so the data store has another state
+    protected boolean itemsModified;
+
     protected EventHub events = new EventHub();
 
     public ContainerTableItems(CollectionContainer<E> container) {
@@ -74,9 +90,91 @@ public class ContainerTableItems<E extends Entity> implements EntityTableItems<E
             public Object getItemValue(MetaPropertyPath property, Object itemId) {
                 return ContainerTableItems.this.getItemValue(itemId, property);
             }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            protected Map<AggregationInfo, Object> doValuesAggregation(Collection itemIds, AggregationInfo[] aggregationInfos,
+                                                                       boolean totalAggregation) {
+                CollectionLoader<E> loader = totalAggregation ? getServerSideAggregationLoader() : null;
+                if (loader == null) {
+                    return super.doValuesAggregation(itemIds, aggregationInfos, false);
+                }
+
+                AggregationLoader aggregationLoader = AppBeans.get(AggregationLoader.NAME);
+                List<AggregationInfo> queryAggregationInfos = new ArrayList<>();
+                List<AggregationInfo> memoryAggregationInfos = new ArrayList<>();
+                Map<AggregationInfo, Object> results = new HashMap<>();
+                for (AggregationInfo aggregationInfo : aggregationInfos) {
+                    if (!aggregationLoader.isSupported(loader, aggregationInfo)) {
+                        memoryAggregationInfos.add(aggregationInfo);
+                    } else if (serverSideAggregationResults.containsKey(aggregationInfo)) {
+                        results.put(aggregationInfo, serverSideAggregationResults.get(aggregationInfo));
+                    } else {
+                        queryAggregationInfos.add(aggregationInfo);
+                    }
+                }
+
+                if (!queryAggregationInfos.isEmpty()) {
+                    Map<AggregationInfo, Object> loaded = aggregationLoader.load(loader, queryAggregationInfos);
+                    serverSideAggregationResults.putAll(loaded);
+                    results.putAll(loaded);
+                }
+                if (!memoryAggregationInfos.isEmpty()) {
+                    results.putAll(super.doValuesAggregation(itemIds,
+                            memoryAggregationInfos.toArray(new AggregationInfo[0]), false));
+                }
+                return results;
+            }
         };
     }
 
+    /**
+     * @return whether total aggregation is calculated on the data store
+     * @see #setServerSideAggregation(boolean)
+     */
+    public boolean isServerSideAggregation() {
+        return serverSideAggregation;
+    }
+
+    /**
+     * Sets whether total aggregation is calculated on the data store. If true and the container is loaded by a
+     * {@link CollectionLoader} with a JPQL query, SUM, AVG, MIN, MAX and COUNT aggregations of persistent attributes
+     * are calculated by a query for all entities matching the loader's query and condition, regardless of the
+     * loaded page. COUNT is the number of the entities. Other aggregations and aggregation of groups are calculated
+     * for the loaded items. The values are calculated once after the container is loaded.
+     * <p>Total aggregation is calculated for the loaded items if the entity has in-memory read constraints,
+     * which the query cannot apply, or if the items have been added, removed or modified after loading.
+     */
+    public void setServerSideAggregation(boolean serverSideAggregation) {
+        this.serverSideAggregation = serverSideAggregation;
+        serverSideAggregationResults.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    protected CollectionLoader<E> getServerSideAggregationLoader() {
+        if (!serverSideAggregation || !(container instanceof HasLoader)) {
+            return null;
+        }
+        DataLoader loader = ((HasLoader) container).getLoader();
+        if (!(loader instanceof CollectionLoader) || isItemsModified((CollectionLoader<E>) loader)) {
+            return null;
+        }
+        AggregationLoader aggregationLoader = AppBeans.get(AggregationLoader.NAME);
+        return aggregationLoader.isSupported((CollectionLoader<?>) loader) ? (CollectionLoader<E>) loader : null;
+    }
+
+    /**
+     * @return true if the loaded items differ from the data store, so they should be aggregated in memory
+     */
+    protected boolean isItemsModified(CollectionLoader<E> loader) {
+        if (itemsModified) {
+            return true;
+        }
+        DataContext dataContext = loader.getDataContext();
+        return dataContext != null && container.getItems().stream().anyMatch(dataContext::isModified);
+    }
+
     public CollectionContainer<E> getContainer() {
         return container;
     }
@@ -85,7 +183,10 @@ public class ContainerTableItems<E extends Entity> implements EntityTableItems<E
         events.publish(SelectedItemChangeEvent.class, new SelectedItemChangeEvent<>(this, event.getItem()));
     }
 
-    protected void containerCollectionChanged(@SuppressWarnings("unused") CollectionContainer.CollectionChangeEvent<E> e) {
+    protected void containerCollectionChanged(CollectionContainer.CollectionChangeEvent<E> e) {
+        itemsModified = e.getChangeType() != CollectionChangeType.REFRESH;
+        serverSideAggregationResults.clear();
+
         events.publish(ItemSetChangeEvent.class, new ItemSetChangeEvent<>(this));
     }
 
@@ -281,4 +382,18 @@ public class ContainerTableItems<E extends Entity> implements EntityTableItems<E
     public Map<AggregationInfo, Object> aggregateValues(AggregationInfo[] aggregationInfos, Collection<?> itemIds) {
         return aggregatableDelegate.aggregateValues(aggregationInfos, itemIds);
     }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection<?> itemIds,
+                                                  boolean totalAggregation) {
+        return aggregatableDelegate.aggregate(aggregationInfos, itemIds, totalAggregation);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<AggregationInfo, Object> aggregateValues(AggregationInfo[] aggregationInfos, Collection<?> itemIds,
+                                                        boolean totalAggregation) {
+        return aggregatableDelegate.aggregateValues(aggregationInfos, itemIds, totalAggregation);
+    }
 }
\ No newline at end of file
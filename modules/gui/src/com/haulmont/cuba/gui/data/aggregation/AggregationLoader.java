@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.data.aggregation;
+
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.MetaPropertyPath;
+import com.haulmont.cuba.core.entity.KeyValueEntity;
+import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.gui.components.AggregationInfo;
+import com.haulmont.cuba.gui.model.CollectionLoader;
+import com.haulmont.cuba.gui.model.impl.LoaderQueryBuilder;
+import com.haulmont.cuba.security.entity.ConstraintOperationType;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Calculates aggregation values by a JPQL query on the data store instead of iterating over loaded items.
+ * <p>The aggregation query selects all entities matching the query, condition and parameters of a
+ * {@link CollectionLoader}, ignoring its paging, so the results are exact for the whole dataset. The query is
+ * executed by {@link DataManager#secure()}, so security constraints are applied. Entities with in-memory read
+ * constraints are not supported, because such constraints cannot be applied to aggregation queries.
+ */
+@Component(AggregationLoader.NAME)
+public class AggregationLoader {
+
+    public static final String NAME = "cuba_AggregationLoader";
+
+    protected static final String ALIAS = "_agg";
+
+    @Inject
+    protected DataManager dataManager;
+
+    @Inject
+    protected Metadata metadata;
+
+    @Inject
+    protected Security security;
+
+    @Inject
+    protected LoaderQueryBuilder loaderQueryBuilder;
+
+    /**
+     * @return true if the loader loads persistent entities by a JPQL query, so its results can be aggregated
+     * by a query, and the entity has no in-memory read constraints, which the query would not apply
+     */
+    public boolean isSupported(CollectionLoader<?> loader) {
+        return loaderQueryBuilder.isSupported(loader)
+                && !security.hasInMemoryConstraints(loader.getContainer().getEntityMetaClass(),
+                ConstraintOperationType.READ, ConstraintOperationType.ALL);
+    }
+
+    /**
+     * @return true if the aggregation can be calculated by a query, i.e. it uses a standard aggregation type
+     * for a persistent attribute readable by the current user
+     */
+    public boolean isSupported(CollectionLoader<?> loader, AggregationInfo aggregationInfo) {
+        if (aggregationInfo.getStrategy() != null
+                || aggregationInfo.getType() == null
+                || aggregationInfo.getType() == AggregationInfo.Type.CUSTOM) {
+            return false;
+        }
+        MetaPropertyPath propertyPath = aggregationInfo.getPropertyPath();
+        if (propertyPath == null || !propertyPath.getRange().isDatatype()) {
+            return false;
+        }
+        MetadataTools metadataTools = metadata.getTools();
+        if (!metadataTools.isPersistent(propertyPath) || metadataTools.isLob(propertyPath.getMetaProperty())) {
+            return false;
+        }
+        Class<?> javaClass = propertyPath.getRangeJavaClass();
+        if (Aggregations.get(javaClass) == null) {
+            return false;
+        }
+        if ((aggregationInfo.getType() == AggregationInfo.Type.SUM || aggregationInfo.getType() == AggregationInfo.Type.AVG)
+                && !Number.class.isAssignableFrom(javaClass)) {
+            return false;
+        }
+        MetaClass metaClass = loader.getContainer().getEntityMetaClass();
+        return security.isEntityAttrReadPermitted(metaClass, propertyPath.toPathString());
+    }
+
+    /**
+     * Calculates aggregation values by a single query.
+     *
+     * @param loader           loader defining the dataset
+     * @param aggregationInfos aggregations supported by {@link #isSupported(CollectionLoader, AggregationInfo)}
+     * @return map of aggregation infos to values of the same types as in-memory aggregation returns
+     */
+    public Map<AggregationInfo, Object> load(CollectionLoader<?> loader, List<AggregationInfo> aggregationInfos) {
+        Map<AggregationInfo, Object> results = new HashMap<>();
+        if (aggregationInfos.isEmpty()) {
+            return results;
+        }
+
+        MetaClass metaClass = loader.getContainer().getEntityMetaClass();
+        MetadataTools metadataTools = metadata.getTools();
+
+        Map<String, Object> parameters = new HashMap<>(loader.getParameters());
+        String idQuery = loaderQueryBuilder.createIdQuery(loader, parameters);
+
+        List<String> keys = new ArrayList<>(aggregationInfos.size());
+        StringBuilder sb = new StringBuilder("select ");
+        for (int i = 0; i < aggregationInfos.size(); i++) {
+            AggregationInfo aggregationInfo = aggregationInfos.get(i);
+            if (i > 0) {
+                sb.append(", ");
+            }
+            if (aggregationInfo.getType() == AggregationInfo.Type.COUNT) {
+                // number of entities, not of non-null values of the attribute
+                sb.append("count(").append(ALIAS).append(")");
+            } else {
+                sb.append(aggregationInfo.getType().name().toLowerCase())
+                        .append("(").append(ALIAS).append(".").append(aggregationInfo.getPropertyPath().toPathString()).append(")");
+            }
+            keys.add("a" + i);
+        }
+        sb.append(" from ").append(metaClass.getName()).append(" ").append(ALIAS)
+                .append(" where ").append(ALIAS).append(".").append(metadataTools.getPrimaryKeyName(metaClass))
+                .append(" in (").append(idQuery).append(")");
+
+        ValueLoadContext context = ValueLoadContext.create()
+                .setQuery(ValueLoadContext.createQuery(sb.toString()).setParameters(parameters))
+                .setProperties(keys)
+                .setSoftDeletion(loader.isSoftDeletion())
+                .setStoreName(metadataTools.getStoreName(metaClass));
+
+        List<KeyValueEntity> list = dataManager.secure().loadValues(context);
+        KeyValueEntity row = list.isEmpty() ? null : list.get(0);
+        for (int i = 0; i < aggregationInfos.size(); i++) {
+            AggregationInfo aggregationInfo = aggregationInfos.get(i);
+            Object value = row != null ? row.getValue(keys.get(i)) : null;
+            results.put(aggregationInfo, convertResult(aggregationInfo, value));
+        }
+        return results;
+    }
+
+    /**
+     * Converts a value returned by the query to the type returned by in-memory aggregation.
+     */
+    protected Object convertResult(AggregationInfo aggregationInfo, Object value) {
+        if (aggregationInfo.getType() == AggregationInfo.Type.COUNT) {
+            return value == null ? 0 : ((Number) value).intValue();
+        }
+
+        Class<?> resultClass = Aggregations.get(aggregationInfo.getPropertyPath().getRangeJavaClass()).getResultClass();
+        if (value == null) {
+            // in-memory sum of an empty collection is zero
+            value = aggregationInfo.getType() == AggregationInfo.Type.SUM ? 0L : null;
+        }
+        if (!(value instanceof Number) || resultClass.isInstance(value)) {
+            return value;
+        }
+
+        Number number = (Number) value;
+        if (resultClass == Long.class) {
+            return number.longValue();
+        } else if (resultClass == Integer.class) {
+            return number.intValue();
+        } else if (resultClass == Double.class) {
+            return number.doubleValue();
+        } else if (resultClass == BigDecimal.class) {
+            return new BigDecimal(number.toString());
+        }
+        return value;
+    }
+}
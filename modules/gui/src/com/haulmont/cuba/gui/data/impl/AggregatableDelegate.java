@@ -31,17 +31,32 @@ import java.util.stream.Collectors;
 
 public abstract class AggregatableDelegate<K> {
     public Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection<K> itemIds) {
+        return aggregate(aggregationInfos, itemIds, false);
+    }
+
+    /**
+     * @param totalAggregation true if all items are aggregated, false if the items of a group
+     */
+    public Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection<K> itemIds,
+                                                  boolean totalAggregation) {
         if (aggregationInfos == null || aggregationInfos.length == 0) {
             throw new NullPointerException("Aggregation must be executed at least by one field");
         }
 
-        return doAggregation(itemIds, aggregationInfos);
+        return doAggregation(itemIds, aggregationInfos, totalAggregation);
     }
 
     protected Map<AggregationInfo, String> doAggregation(Collection<K> itemIds, AggregationInfo[] aggregationInfos) {
+        return doAggregation(itemIds, aggregationInfos, false);
+    }
+
+    protected Map<AggregationInfo, String> doAggregation(Collection<K> itemIds, AggregationInfo[] aggregationInfos,
+                                                         boolean totalAggregation) {
+        Map<AggregationInfo, Object> values = doValuesAggregation(itemIds, aggregationInfos, totalAggregation);
+
         Map<AggregationInfo, String> aggregationResults = new HashMap<>();
         for (AggregationInfo aggregationInfo : aggregationInfos) {
-            final Object value = doPropertyAggregation(aggregationInfo, itemIds);
+            final Object value = values.get(aggregationInfo);
 
             String formattedValue;
             if (aggregationInfo.getFormatter() != null) {
@@ -87,10 +102,27 @@ public abstract class AggregatableDelegate<K> {
     }
 
     public Map<AggregationInfo, Object> aggregateValues(AggregationInfo[] aggregationInfos, Collection<K> itemIds) {
+        return aggregateValues(aggregationInfos, itemIds, false);
+    }
+
+    /**
+     * @param totalAggregation true if all items are aggregated, false if the items of a group
+     */
+    public Map<AggregationInfo, Object> aggregateValues(AggregationInfo[] aggregationInfos, Collection<K> itemIds,
+                                                        boolean totalAggregation) {
         if (aggregationInfos == null || aggregationInfos.length == 0) {
             throw new NullPointerException("Aggregation must be executed at least by one field");
         }
 
+        return doValuesAggregation(itemIds, aggregationInfos, totalAggregation);
+    }
+
+    /**
+     * Calculates aggregation values for the given items. The default implementation aggregates the item values
+     * in memory regardless of {@code totalAggregation}.
+     */
+    protected Map<AggregationInfo, Object> doValuesAggregation(Collection<K> itemIds, AggregationInfo[] aggregationInfos,
+                                                               boolean totalAggregation) {
         Map<AggregationInfo, Object> aggregationResults = new HashMap<>();
 
         for (AggregationInfo aggregationInfo : aggregationInfos) {
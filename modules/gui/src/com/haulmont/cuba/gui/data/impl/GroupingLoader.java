@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.data.impl;
+
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.MetaPropertyPath;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.KeyValueEntity;
+import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.gui.model.CollectionLoader;
+import com.haulmont.cuba.gui.model.impl.LoaderQueryBuilder;
+import com.haulmont.cuba.security.entity.ConstraintOperationType;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.util.*;
+
+/**
+ * Groups entities of a {@link CollectionLoader} dataset by {@code group by} queries on the data store.
+ * <p>Groups of each level and entities of each group are loaded separately, so the whole dataset is never loaded
+ * to the client tier.
+ */
+@Component(GroupingLoader.NAME)
+public class GroupingLoader {
+
+    public static final String NAME = "cuba_GroupingLoader";
+
+    protected static final String ALIAS = "_grp";
+    protected static final String PARAM_PREFIX = "_grp";
+
+    @Inject
+    protected DataManager dataManager;
+
+    @Inject
+    protected Metadata metadata;
+
+    @Inject
+    protected Security security;
+
+    @Inject
+    protected QueryTransformerFactory queryTransformerFactory;
+
+    @Inject
+    protected LoaderQueryBuilder loaderQueryBuilder;
+
+    /**
+     * @return true if the loader dataset can be grouped by the given properties on the data store, i.e. the loader
+     * loads entities by a JPQL query, the entity has no in-memory read constraints, which {@code group by} queries
+     * would not apply, and all properties are readable persistent attributes of the entity itself
+     */
+    public boolean isSupported(CollectionLoader<?> loader, Object[] groupProperties) {
+        if (!loaderQueryBuilder.isSupported(loader)) {
+            return false;
+        }
+        MetaClass metaClass = loader.getContainer().getEntityMetaClass();
+        if (security.hasInMemoryConstraints(metaClass, ConstraintOperationType.READ, ConstraintOperationType.ALL)) {
+            return false;
+        }
+        MetadataTools metadataTools = metadata.getTools();
+        for (Object groupProperty : groupProperties) {
+            if (!(groupProperty instanceof MetaPropertyPath)) {
+                return false;
+            }
+            MetaPropertyPath propertyPath = (MetaPropertyPath) groupProperty;
+            // a path through a reference makes an inner join losing the entities with null reference
+            if (propertyPath.length() != 1
+                    || !propertyPath.getRange().isDatatype()
+                    || !metadataTools.isPersistent(propertyPath)
+                    || metadataTools.isLob(propertyPath.getMetaProperty())
+                    || !security.isEntityAttrReadPermitted(metaClass, propertyPath.toPathString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Loads values of a group property and numbers of entities having each value.
+     *
+     * @param loader        loader defining the dataset
+     * @param groupProperty property to group by
+     * @param parentValues  values of the parent group properties, the dataset is restricted by them
+     * @return map of the property values to numbers of entities in the order of values
+     */
+    public Map<Object, Integer> loadGroups(CollectionLoader<?> loader, MetaPropertyPath groupProperty,
+                                           Map<MetaPropertyPath, Object> parentValues) {
+        MetaClass metaClass = loader.getContainer().getEntityMetaClass();
+        MetadataTools metadataTools = metadata.getTools();
+
+        Map<String, Object> parameters = new HashMap<>(loader.getParameters());
+        String idQuery = loaderQueryBuilder.createIdQuery(loader, parameters);
+
+        String property = ALIAS + "." + groupProperty.toPathString();
+        StringBuilder sb = new StringBuilder("select ").append(property).append(", count(").append(ALIAS).append(")")
+                .append(" from ").append(metaClass.getName()).append(" ").append(ALIAS)
+                .append(" where ").append(ALIAS).append(".").append(metadataTools.getPrimaryKeyName(metaClass))
+                .append(" in (").append(idQuery).append(")");
+        for (String where : createGroupConditions(ALIAS, parentValues, parameters)) {
+            sb.append(" and ").append(where);
+        }
+        sb.append(" group by ").append(property).append(" order by ").append(property);
+
+        ValueLoadContext context = ValueLoadContext.create()
+                .setQuery(ValueLoadContext.createQuery(sb.toString()).setParameters(parameters))
+                .addProperty("value")
+                .addProperty("count")
+                .setSoftDeletion(loader.isSoftDeletion())
+                .setStoreName(metadataTools.getStoreName(metaClass));
+
+        Map<Object, Integer> groups = new LinkedHashMap<>();
+        for (KeyValueEntity entity : dataManager.secure().loadValues(context)) {
+            Number count = entity.getValue("count");
+            groups.put(entity.getValue("value"), count != null ? count.intValue() : 0);
+        }
+        return groups;
+    }
+
+    /**
+     * Loads a page of entities belonging to a group. The entities are loaded with the view, sort and condition
+     * of the loader.
+     *
+     * @param loader      loader defining the dataset
+     * @param groupValues values of the group properties
+     * @param firstResult index of the first entity in the group
+     * @param maxResults  maximum number of entities to load
+     * @return list of entities
+     */
+    public <E extends Entity> List<E> loadGroupItems(CollectionLoader<E> loader, Map<MetaPropertyPath, Object> groupValues,
+                                                     int firstResult, int maxResults) {
+        LoadContext<E> loadContext = loader.createLoadContext();
+        LoadContext.Query query = loadContext.getQuery();
+
+        QueryTransformer transformer = queryTransformerFactory.transformer(query.getQueryString());
+        Map<String, Object> parameters = new HashMap<>();
+        for (String where : createGroupConditions(QueryTransformer.ALIAS_PLACEHOLDER, groupValues, parameters)) {
+            transformer.addWhere(where);
+        }
+        query.setQueryString(transformer.getResult());
+        query.setParameters(parameters);
+
+        query.setKeysetValues(null);
+        query.setFirstResult(firstResult);
+        query.setMaxResults(maxResults);
+
+        return dataManager.loadList(loadContext);
+    }
+
+    protected List<String> createGroupConditions(String alias, Map<MetaPropertyPath, Object> groupValues,
+                                                 Map<String, Object> parameters) {
+        List<String> conditions = new ArrayList<>(groupValues.size());
+        int index = 0;
+        for (Map.Entry<MetaPropertyPath, Object> entry : groupValues.entrySet()) {
+            String property = alias + "." + entry.getKey().toPathString();
+            if (entry.getValue() == null) {
+                conditions.add(property + " is null");
+            } else {
+                String paramName = PARAM_PREFIX + index++;
+                conditions.add(property + " = :" + paramName);
+                parameters.put(paramName, entry.getValue());
+            }
+        }
+        return conditions;
+    }
+}
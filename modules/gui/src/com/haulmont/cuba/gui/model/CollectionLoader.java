@@ -70,6 +70,22 @@ public interface CollectionLoader<E extends Entity> extends BaseCollectionLoader
      */
     void setCacheable(boolean cacheable);
 
+    /**
+     * Returns true if pages are loaded using keyset pagination.
+     */
+    boolean isKeysetPagination();
+
+    /**
+     * Set to true to load a page following an already loaded one by the key of its last instance instead of
+     * skipping {@code firstResult} rows, see {@link LoadContext.Query#setKeysetValues(List)}. The results are sorted
+     * by the loader sort and the entity id. Keyset pagination is used only if the entity is stored in an RDBMS,
+     * the loader has no load delegate and its sort is set and contains persistent mandatory attributes of simple
+     * types in the same direction, otherwise pages are loaded by offset. Known keys are forgotten when the query,
+     * its parameters or the sort change, when the container items are added or removed and after committing
+     * the data context.
+     */
+    void setKeysetPagination(boolean keysetPagination);
+
     /**
      * Returns the view which is used when loading.
      */
@@ -18,9 +18,13 @@ package com.haulmont.cuba.gui.model.impl;
 
 import com.haulmont.bali.events.EventHub;
 import com.haulmont.bali.events.Subscription;
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.MetaProperty;
+import com.haulmont.chile.core.model.MetaPropertyPath;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.global.queryconditions.Condition;
+import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.gui.model.*;
 import org.springframework.context.ApplicationContext;
 
@@ -53,6 +57,9 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
     protected LoadContext.Query lastQuery;
     protected List<LoadContext.Query> prevQueries;
     protected Integer queryKey;
+    protected boolean keysetPagination;
+    // keys of the last instances of loaded pages by the position of the following instance
+    protected NavigableMap<Integer, List<Object>> keysets = new TreeMap<>();
 
     protected EventHub events = new EventHub();
 
@@ -72,6 +79,10 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
         return applicationContext.getBean(SorterFactory.NAME, SorterFactory.class);
     }
 
+    protected MetadataTools getMetadataTools() {
+        return applicationContext.getBean(MetadataTools.NAME, MetadataTools.class);
+    }
+
     @Nullable
     @Override
     public DataContext getDataContext() {
@@ -81,6 +92,10 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
     @Override
     public void setDataContext(DataContext dataContext) {
         this.dataContext = dataContext;
+        if (dataContext != null) {
+            // committed changes may move instances between pages
+            dataContext.addPostCommitListener(event -> keysets.clear());
+        }
     }
 
     @Override
@@ -105,6 +120,14 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
             list = delegate.apply(loadContext);
         }
 
+        if (loadContext.getQuery().getKeysetValues() != null && !list.isEmpty()) {
+            List<Object> keysetValues = getKeysetValues(list.get(list.size() - 1));
+            // null values cannot be compared, the next page will be loaded by offset from a previous key
+            if (!keysetValues.contains(null)) {
+                keysets.put(firstResult + list.size(), keysetValues);
+            }
+        }
+
         if (dataContext != null) {
             List<E> mergedList = new ArrayList<>(list.size());
             for (E entity : list) {
@@ -130,8 +153,16 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
 
         query.setCacheable(cacheable);
 
-        if (firstResult > 0)
+        if (keysetPagination && isKeysetPaginationApplicable()) {
+            // start from the nearest known key and skip the rest
+            Map.Entry<Integer, List<Object>> keyset = keysets.floorEntry(firstResult);
+            int position = keyset != null ? keyset.getKey() : 0;
+            query.setKeysetValues(keyset != null ? keyset.getValue() : Collections.emptyList());
+            if (firstResult > position)
+                query.setFirstResult(firstResult - position);
+        } else if (firstResult > 0) {
             query.setFirstResult(firstResult);
+        }
         if (maxResults < Integer.MAX_VALUE)
             query.setMaxResults(maxResults);
 
@@ -149,6 +180,63 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
         return loadContext;
     }
 
+    protected boolean isKeysetPaginationApplicable() {
+        if (delegate != null) {
+            // the delegate may ignore the key and apply the offset relative to the key as an absolute one
+            return false;
+        }
+        MetaClass metaClass = container.getEntityMetaClass();
+        MetadataTools metadataTools = getMetadataTools();
+
+        String storeName = metadataTools.getStoreName(metaClass);
+        if (storeName == null || AppContext.getProperty("cuba.storeImpl_" + storeName) != null) {
+            // only RdbmsStore, which is used when no custom store implementation is specified, supports keysets
+            return false;
+        }
+
+        MetaProperty primaryKeyProperty = metadataTools.getPrimaryKeyProperty(metaClass);
+        if (primaryKeyProperty == null || primaryKeyProperty.getRange().isClass()) {
+            return false;
+        }
+        if (sort == null) {
+            // keyset pagination replaces the order of the query, so it is used only with an explicit sort
+            return false;
+        }
+        Sort.Direction direction = sort.getOrders().get(0).getDirection();
+        for (Sort.Order order : sort.getOrders()) {
+            MetaPropertyPath propertyPath = metaClass.getPropertyPath(order.getProperty());
+            if (order.getDirection() != direction
+                    || propertyPath == null
+                    || !metadataTools.isPersistent(propertyPath)
+                    || !isMandatory(propertyPath)
+                    || propertyPath.getRange().isClass()
+                    || metadataTools.isLob(propertyPath.getMetaProperty())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected boolean isMandatory(MetaPropertyPath propertyPath) {
+        for (MetaProperty metaProperty : propertyPath.getMetaProperties()) {
+            if (!metaProperty.isMandatory()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected List<Object> getKeysetValues(E entity) {
+        List<Object> values = new ArrayList<>();
+        if (sort != null) {
+            for (Sort.Order order : sort.getOrders()) {
+                values.add(entity.getValueEx(order.getProperty()));
+            }
+        }
+        values.add(entity.getId());
+        return values;
+    }
+
     protected View resolveView() {
         View view = this.view;
         if (view == null && viewName != null) {
@@ -183,6 +271,12 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
             ((HasLoader) container).setLoader(this);
         }
         container.setSorter(getSorterFactory().createCollectionContainerSorter(container, this));
+        container.addCollectionChangeListener(event -> {
+            if (event.getChangeType() != CollectionChangeType.REFRESH) {
+                // added or removed instances shift the following pages
+                keysets.clear();
+            }
+        });
     }
 
     @Override
@@ -193,6 +287,7 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
     @Override
     public void setQuery(String query) {
         this.query = query;
+        keysets.clear();
     }
 
     @Override
@@ -203,6 +298,7 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
     @Override
     public void setCondition(Condition condition) {
         this.condition = condition;
+        keysets.clear();
     }
 
     @Override
@@ -213,6 +309,7 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
     @Override
     public void setParameters(Map<String, Object> parameters) {
         this.parameters.clear();
+        keysets.clear();
         for (Map.Entry<String, Object> entry : parameters.entrySet()) {
             setParameter(entry.getKey(), entry.getValue());
         }
@@ -226,11 +323,13 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
     @Override
     public void setParameter(String name, Object value) {
         parameters.put(name, value);
+        keysets.clear();
     }
 
     @Override
     public void removeParameter(String name) {
         parameters.remove(name);
+        keysets.clear();
     }
 
     @Override
@@ -261,6 +360,7 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
     @Override
     public void setSoftDeletion(boolean softDeletion) {
         this.softDeletion = softDeletion;
+        keysets.clear();
     }
 
     @Override
@@ -283,6 +383,17 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
         this.cacheable = cacheable;
     }
 
+    @Override
+    public boolean isKeysetPagination() {
+        return keysetPagination;
+    }
+
+    @Override
+    public void setKeysetPagination(boolean keysetPagination) {
+        this.keysetPagination = keysetPagination;
+        keysets.clear();
+    }
+
     @Override
     public View getView() {
         return view;
@@ -312,6 +423,7 @@ public class CollectionLoaderImpl<E extends Entity> implements CollectionLoader<
         } else {
             this.sort = sort;
         }
+        keysets.clear();
     }
 
     @Override
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.model.impl;
+
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.MetaProperty;
+import com.haulmont.cuba.core.global.Metadata;
+import com.haulmont.cuba.core.global.MetadataTools;
+import com.haulmont.cuba.core.global.QueryTransformer;
+import com.haulmont.cuba.core.global.QueryTransformerFactory;
+import com.haulmont.cuba.core.global.queryconditions.Condition;
+import com.haulmont.cuba.core.global.queryconditions.ConditionJpqlGenerator;
+import com.haulmont.cuba.gui.model.CollectionLoader;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * INTERNAL.
+ * Builds JPQL queries over the dataset of a {@link CollectionLoader}, e.g. to aggregate or group it on the data store.
+ */
+@Component(LoaderQueryBuilder.NAME)
+public class LoaderQueryBuilder {
+
+    public static final String NAME = "cuba_LoaderQueryBuilder";
+
+    @Inject
+    protected Metadata metadata;
+
+    @Inject
+    protected QueryTransformerFactory queryTransformerFactory;
+
+    @Inject
+    protected ConditionJpqlGenerator conditionJpqlGenerator;
+
+    /**
+     * @return true if the loader loads persistent entities with a simple primary key by a JPQL query
+     */
+    public boolean isSupported(CollectionLoader<?> loader) {
+        if (loader.getQuery() == null || loader.getLoadDelegate() != null || loader.getContainer() == null) {
+            return false;
+        }
+        MetaClass metaClass = loader.getContainer().getEntityMetaClass();
+        MetadataTools metadataTools = metadata.getTools();
+        if (!metadataTools.isPersistent(metaClass)) {
+            return false;
+        }
+        MetaProperty primaryKeyProperty = metadataTools.getPrimaryKeyProperty(metaClass);
+        return primaryKeyProperty != null && !primaryKeyProperty.getRange().isClass();
+    }
+
+    /**
+     * Creates a query selecting identifiers of all entities matching the loader's query and condition, regardless
+     * of the loader's paging.
+     *
+     * @param loader     loader supported by {@link #isSupported(CollectionLoader)}
+     * @param parameters parameters of the loader, the parameters not used in the resulting query are removed
+     * @return JPQL query
+     */
+    public String createIdQuery(CollectionLoader<?> loader, Map<String, Object> parameters) {
+        MetaClass metaClass = loader.getContainer().getEntityMetaClass();
+
+        String query = loader.getQuery();
+        Condition condition = loader.getCondition();
+        if (condition != null) {
+            Set<String> nonNullParamNames = parameters.entrySet().stream()
+                    .filter(e -> e.getValue() != null)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toSet());
+            query = conditionJpqlGenerator.processQuery(query, condition.actualize(nonNullParamNames));
+        }
+
+        QueryTransformer transformer = queryTransformerFactory.transformer(query);
+        transformer.replaceWithSelectId(metadata.getTools().getPrimaryKeyName(metaClass));
+        transformer.removeOrderBy();
+        String result = transformer.getResult();
+
+        Set<String> paramNames = queryTransformerFactory.parser(result).getParamNames();
+        parameters.keySet().retainAll(paramNames);
+        return result;
+    }
+}
@@ -308,6 +308,7 @@ public class ScreenDataXmlLoader {
             loadFirstResult(element, loader);
             loadMaxResults(element, loader);
             loadCacheable(element, loader);
+            loadKeysetPagination(element, loader);
         }
 
         screenData.registerLoader(loaderId, loader);
@@ -461,6 +462,12 @@ public class ScreenDataXmlLoader {
             loader.setCacheable(Boolean.valueOf(cacheableVal));
     }
 
+    protected void loadKeysetPagination(Element element, CollectionLoader<Entity> loader) {
+        String keysetPaginationVal = element.attributeValue("keysetPagination");
+        if (!Strings.isNullOrEmpty(keysetPaginationVal))
+            loader.setKeysetPagination(Boolean.valueOf(keysetPaginationVal));
+    }
+
     protected String getRequiredAttr(Element element, String attributeName) {
         String id = element.attributeValue(attributeName);
         if (id == null)
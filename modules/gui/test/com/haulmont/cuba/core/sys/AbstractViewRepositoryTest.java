@@ -19,14 +19,21 @@ package com.haulmont.cuba.core.sys;
 
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.cuba.client.testsupport.CubaClientTestCase;
+import com.haulmont.cuba.core.global.DevelopmentException;
 import com.haulmont.cuba.core.global.View;
 import com.haulmont.cuba.core.global.ViewProperty;
 import com.haulmont.cuba.gui.data.impl.testmodel1.TestDetailEntity;
 import com.haulmont.cuba.gui.data.impl.testmodel1.TestMasterEntity;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
 
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -87,4 +94,39 @@ public class AbstractViewRepositoryTest extends CubaClientTestCase {
         assertTrue(detail.getView().containsProperty("embeddable"));
         assertTrue(detail.getView().containsProperty("parts"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void deployViewsPublishesSingleEvent() {
+        List<ApplicationEvent> events = new ArrayList<>();
+        viewRepository.events = events::add;
+
+        viewRepository.deployViews(new StringReader("<views>" +
+                "<view class=\"com.haulmont.cuba.gui.data.impl.testmodel1.TestMasterEntity\" name=\"deployedOne\" extends=\"_local\"/>" +
+                "<view class=\"com.haulmont.cuba.gui.data.impl.testmodel1.TestDetailEntity\" name=\"deployedTwo\" extends=\"_local\"/>" +
+                "</views>"));
+
+        assertEquals(1, events.size());
+        assertNotNull(viewRepository.findView(testMasterEntity, "deployedOne"));
+        assertNotNull(viewRepository.findView(testDetailEntity, "deployedTwo"));
+    }
+
+    @Test
+    public void failedDeploymentPublishesNoEvent() {
+        List<ApplicationEvent> events = new ArrayList<>();
+        viewRepository.events = events::add;
+
+        Element rootElem = DocumentHelper.createDocument().addElement("views");
+        Element viewElem = rootElem.addElement("view")
+                .addAttribute("class", TestMasterEntity.class.getName())
+                .addAttribute("name", "broken");
+        viewElem.addElement("property").addAttribute("name", "nonExistent");
+
+        try {
+            viewRepository.deployView(rootElem, viewElem);
+            fail();
+        } catch (DevelopmentException e) {
+            // expected
+        }
+        assertTrue(events.isEmpty());
+    }
+}
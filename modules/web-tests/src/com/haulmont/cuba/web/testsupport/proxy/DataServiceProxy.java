@@ -24,6 +24,7 @@ import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.web.testsupport.TestContainer;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -122,4 +123,27 @@ public class DataServiceProxy implements DataService {
     public List<KeyValueEntity> loadValues(ValueLoadContext context) {
         return Collections.emptyList();
     }
+
+    @Override
+    public ValueTable loadValueTable(ValueLoadContext context) {
+        return ValueTable.of(context.getProperties(), context.getIdName(), Collections.emptyList());
+    }
+
+    @Override
+    public List<Object> executeBatch(DataLoadBatch batch) {
+        List<Object> results = new ArrayList<>();
+        for (DataLoadBatch.Item<?> item : batch.getItems()) {
+            switch (item.getOperation()) {
+                case LOAD:
+                    results.add(null);
+                    break;
+                case GET_COUNT:
+                    results.add(0L);
+                    break;
+                default:
+                    results.add(Collections.emptyList());
+            }
+        }
+        return results;
+    }
 }
@@ -64,5 +64,12 @@ public interface AggregationContainer extends Container {
         public Collection getItemIds() {
             return itemIds;
         }
+
+        /**
+         * @return true if all items of the container are aggregated, false if the items of a group
+         */
+        public boolean isTotalAggregation() {
+            return true;
+        }
     }
 }
\ No newline at end of file
@@ -2668,7 +2668,8 @@ public abstract class WebAbstractTable<T extends com.vaadin.v7.ui.Table & CubaEn
 
         Map<AggregationInfo, Object> results = ((AggregatableTableItems<E>) getItems()).aggregateValues(
                 aggregationInfos.toArray(new AggregationInfo[0]),
-                context.getItemIds()
+                context.getItemIds(),
+                context.isTotalAggregation()
         );
 
         return convertAggregationKeyMapToColumnIdKeyMap(container, results);
@@ -2684,7 +2685,8 @@ public abstract class WebAbstractTable<T extends com.vaadin.v7.ui.Table & CubaEn
 
         Map<AggregationInfo, String> results = ((AggregatableTableItems<E>) getItems()).aggregate(
                 aggregationInfos.toArray(new AggregationInfo[0]),
-                context.getItemIds()
+                context.getItemIds(),
+                context.isTotalAggregation()
         );
 
         Map<Object, Object> resultsByColumns = convertAggregationKeyMapToColumnIdKeyMap(container, results);
@@ -18,10 +18,13 @@ package spec.cuba.web.datacontext
 
 import com.haulmont.cuba.core.app.DataService
 import com.haulmont.cuba.core.global.DataManager
+import com.haulmont.cuba.core.global.LoadContext
 import com.haulmont.cuba.core.global.Metadata
+import com.haulmont.cuba.core.global.Sort
 import com.haulmont.cuba.gui.model.CollectionContainer
 import com.haulmont.cuba.gui.model.CollectionLoader
 import com.haulmont.cuba.gui.model.DataComponents
+import com.haulmont.cuba.security.entity.User
 import com.haulmont.cuba.web.container.CubaTestContainer
 import com.haulmont.cuba.web.testmodel.datacontext.Foo
 import com.haulmont.cuba.web.testsupport.TestContainer
@@ -105,4 +108,78 @@ class CollectionLoaderTest extends Specification {
 
         0 * postLoadListener.accept(_)
     }
+
+    def "keyset pagination without sort loads by offset"() {
+        CollectionLoader<User> loader = factory.createCollectionLoader()
+        CollectionContainer<User> container = factory.createCollectionContainer(User)
+        List<LoadContext> contexts = []
+
+        TestServiceProxy.mock(DataService, Mock(DataService) {
+            loadList(_) >> { LoadContext context -> contexts << context; [] }
+        })
+
+        when:
+
+        loader.setContainer(container)
+        loader.setQuery('select u from sec$User u')
+        loader.setKeysetPagination(true)
+        loader.setFirstResult(10)
+        loader.setMaxResults(10)
+        loader.load()
+
+        then:
+
+        contexts[0].query.keysetValues == null
+        contexts[0].query.firstResult == 10
+    }
+
+    def "keysets are forgotten when parameters are replaced or items are removed"() {
+        CollectionLoader<User> loader = factory.createCollectionLoader()
+        CollectionContainer<User> container = factory.createCollectionContainer(User)
+        List<LoadContext> contexts = []
+        User user = new User(login: 'user1')
+
+        TestServiceProxy.mock(DataService, Mock(DataService) {
+            loadList(_) >> { LoadContext context -> contexts << context; [reserialize(user)] }
+        })
+
+        loader.setContainer(container)
+        loader.setQuery('select u from sec$User u where u.active = :active')
+        loader.setParameter('active', true)
+        loader.setSort(Sort.by('login'))
+        loader.setKeysetPagination(true)
+        loader.setMaxResults(1)
+
+        when: "the next page is loaded"
+
+        loader.load()
+        loader.setFirstResult(1)
+        loader.load()
+
+        then: "it starts after the key of the previous page"
+
+        contexts[1].query.keysetValues == ['user1', user.id]
+        contexts[1].query.firstResult == 0
+
+        when: "parameters are replaced"
+
+        loader.setParameters([:])
+        loader.load()
+
+        then: "the page is loaded by offset from the beginning"
+
+        contexts[2].query.keysetValues == []
+        contexts[2].query.firstResult == 1
+
+        when: "an item is removed"
+
+        loader.setFirstResult(2)
+        container.getMutableItems().remove(container.getItems()[0])
+        loader.load()
+
+        then:
+
+        contexts[3].query.keysetValues == []
+        contexts[3].query.firstResult == 2
+    }
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.web.datacontext
+
+import com.haulmont.cuba.core.app.DataService
+import com.haulmont.cuba.core.entity.KeyValueEntity
+import com.haulmont.cuba.core.global.ValueLoadContext
+import com.haulmont.cuba.gui.components.AggregationInfo
+import com.haulmont.cuba.gui.components.data.table.ContainerTableItems
+import com.haulmont.cuba.gui.model.CollectionContainer
+import com.haulmont.cuba.gui.model.CollectionLoader
+import com.haulmont.cuba.web.testmodel.sales.Order
+import com.haulmont.cuba.web.testsupport.proxy.TestServiceProxy
+import spec.cuba.web.WebSpec
+
+class ServerSideAggregationTest extends WebSpec {
+
+    private Order order1
+    private Order order2
+
+    @Override
+    void setup() {
+        order1 = new Order(number: '111', amount: 100)
+        order2 = new Order(number: '112', amount: 200)
+    }
+
+    def "total aggregation is calculated by a query for the whole dataset"() {
+        CollectionContainer<Order> container = dataComponents.createCollectionContainer(Order)
+        CollectionLoader<Order> loader = dataComponents.createCollectionLoader()
+        loader.setContainer(container)
+        loader.setQuery('select o from test$Order o where o.number like :number order by o.number')
+        loader.setParameter('number', '11%')
+        loader.setMaxResults(2)
+        container.setItems([order1, order2])
+
+        ContainerTableItems<Order> tableItems = new ContainerTableItems<>(container)
+        tableItems.setServerSideAggregation(true)
+
+        AggregationInfo sum = aggregationInfo('amount', AggregationInfo.Type.SUM)
+        AggregationInfo count = aggregationInfo('number', AggregationInfo.Type.COUNT)
+
+        ValueLoadContext loadContext = null
+        TestServiceProxy.mock(DataService, Mock(DataService) {
+            loadValues(_) >> { ValueLoadContext context ->
+                loadContext = context
+                KeyValueEntity entity = new KeyValueEntity()
+                entity.setValue('a0', 1000)
+                entity.setValue('a1', 10L)
+                [entity]
+            }
+        })
+
+        when:
+
+        def results = tableItems.aggregateValues([sum, count] as AggregationInfo[], [order1.id, order2.id], true)
+
+        then:
+
+        results[sum] == new BigDecimal(1000)
+        results[count] == 10
+
+        def queryString = loadContext.query.queryString
+        queryString.startsWith('select sum(_agg.amount), count(_agg) from test$Order _agg where _agg.id in (')
+        queryString.contains('select o.id from test$Order o')
+        !queryString.contains('order by')
+        loadContext.query.parameters == [number: '11%']
+        loadContext.query.maxResults == 0
+    }
+
+    def "group aggregation is calculated for loaded items"() {
+        CollectionContainer<Order> container = dataComponents.createCollectionContainer(Order)
+        CollectionLoader<Order> loader = dataComponents.createCollectionLoader()
+        loader.setContainer(container)
+        loader.setQuery('select o from test$Order o')
+        container.setItems([order1, order2])
+
+        ContainerTableItems<Order> tableItems = new ContainerTableItems<>(container)
+        tableItems.setServerSideAggregation(true)
+
+        AggregationInfo sum = aggregationInfo('amount', AggregationInfo.Type.SUM)
+
+        boolean queried = false
+        TestServiceProxy.mock(DataService, Mock(DataService) {
+            loadValues(_) >> { queried = true; [] }
+        })
+
+        when:
+
+        def results = tableItems.aggregateValues([sum] as AggregationInfo[], [order1.id, order2.id], false)
+
+        then:
+
+        results[sum] == new BigDecimal(300)
+        !queried
+    }
+
+    def "total aggregation is queried once until the container is reloaded"() {
+        CollectionContainer<Order> container = dataComponents.createCollectionContainer(Order)
+        CollectionLoader<Order> loader = dataComponents.createCollectionLoader()
+        loader.setContainer(container)
+        loader.setQuery('select o from test$Order o')
+        container.setItems([order1, order2])
+
+        ContainerTableItems<Order> tableItems = new ContainerTableItems<>(container)
+        tableItems.setServerSideAggregation(true)
+
+        AggregationInfo sum = aggregationInfo('amount', AggregationInfo.Type.SUM)
+
+        int queries = 0
+        TestServiceProxy.mock(DataService, Mock(DataService) {
+            loadValues(_) >> {
+                queries++
+                KeyValueEntity entity = new KeyValueEntity()
+                entity.setValue('a0', 1000)
+                [entity]
+            }
+        })
+
+        when:
+
+        tableItems.aggregateValues([sum] as AggregationInfo[], [order1.id, order2.id], true)
+        def results = tableItems.aggregateValues([sum] as AggregationInfo[], [order1.id, order2.id], true)
+
+        then:
+
+        results[sum] == new BigDecimal(1000)
+        queries == 1
+
+        when:
+
+        container.setItems([order1, order2])
+        tableItems.aggregateValues([sum] as AggregationInfo[], [order1.id, order2.id], true)
+
+        then:
+
+        queries == 2
+    }
+
+    def "total aggregation is calculated for loaded items after they are modified"() {
+        CollectionContainer<Order> container = dataComponents.createCollectionContainer(Order)
+        CollectionLoader<Order> loader = dataComponents.createCollectionLoader()
+        loader.setContainer(container)
+        loader.setQuery('select o from test$Order o')
+        container.setItems([order1, order2])
+
+        ContainerTableItems<Order> tableItems = new ContainerTableItems<>(container)
+        tableItems.setServerSideAggregation(true)
+
+        AggregationInfo sum = aggregationInfo('amount', AggregationInfo.Type.SUM)
+
+        boolean queried = false
+        TestServiceProxy.mock(DataService, Mock(DataService) {
+            loadValues(_) >> { queried = true; [] }
+        })
+
+        when:
+
+        container.getMutableItems().remove(order2)
+        def results = tableItems.aggregateValues([sum] as AggregationInfo[], [order1.id], true)
+
+        then:
+
+        results[sum] == new BigDecimal(100)
+        !queried
+    }
+
+    private AggregationInfo aggregationInfo(String property, AggregationInfo.Type type) {
+        AggregationInfo info = new AggregationInfo()
+        info.setPropertyPath(metadata.getClassNN(Order).getPropertyPath(property))
+        info.setType(type)
+        return info
+    }
+}
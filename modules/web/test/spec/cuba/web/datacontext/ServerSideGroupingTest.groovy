@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2008-2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package spec.cuba.web.datacontext
+
+import com.haulmont.cuba.core.app.DataService
+import com.haulmont.cuba.core.entity.KeyValueEntity
+import com.haulmont.cuba.core.global.LoadContext
+import com.haulmont.cuba.core.global.ValueLoadContext
+import com.haulmont.cuba.gui.components.data.table.ContainerGroupTableItems
+import com.haulmont.cuba.gui.data.GroupInfo
+import com.haulmont.cuba.gui.model.CollectionContainer
+import com.haulmont.cuba.gui.model.CollectionLoader
+import com.haulmont.cuba.web.testmodel.sales.Order
+import com.haulmont.cuba.web.testsupport.proxy.TestServiceProxy
+import spec.cuba.web.WebSpec
+
+import static com.haulmont.cuba.client.testsupport.TestSupport.reserialize
+
+class ServerSideGroupingTest extends WebSpec {
+
+    private Order order1
+    private Order order2
+    private Order order3
+
+    @Override
+    void setup() {
+        order1 = new Order(number: '111', amount: 100)
+        order2 = new Order(number: '111', amount: 200)
+        order3 = new Order(number: '112', amount: 300)
+    }
+
+    def "groups are loaded by a query and group items are loaded on demand by pages"() {
+        CollectionContainer<Order> container = dataComponents.createCollectionContainer(Order)
+        CollectionLoader<Order> loader = dataComponents.createCollectionLoader()
+        loader.setContainer(container)
+        loader.setQuery('select o from test$Order o where o.amount > :amount')
+        loader.setParameter('amount', 10)
+
+        ContainerGroupTableItems<Order, UUID> tableItems = new ContainerGroupTableItems<>(container)
+        tableItems.setServerSideGrouping(true)
+        tableItems.setGroupPageSize(1)
+
+        List<ValueLoadContext> groupContexts = []
+        List<LoadContext> itemContexts = []
+        List<Order> itemPages = [order1, order2]
+        TestServiceProxy.mock(DataService, Mock(DataService) {
+            loadValues(_) >> { ValueLoadContext context ->
+                groupContexts << context
+                [group('111', 2L), group('112', 1L)]
+            }
+            loadList(_) >> { LoadContext context ->
+                itemContexts << context
+                [reserialize(itemPages[itemContexts.size() - 1])]
+            }
+        })
+
+        when:
+
+        tableItems.groupBy([metadata.getClassNN(Order).getPropertyPath('number')] as Object[])
+
+        then:
+
+        tableItems.rootGroups().size() == 2
+        GroupInfo group = tableItems.rootGroups()[0]
+        group.value == '111'
+        tableItems.getGroupItemsCount(group) == 2
+        !tableItems.hasChildren(group)
+        itemContexts.isEmpty()
+
+        def groupQuery = groupContexts[0].query.queryString
+        groupQuery.startsWith('select _grp.number, count(_grp) from test$Order _grp where _grp.id in (')
+        groupQuery.endsWith('group by _grp.number order by _grp.number')
+        groupContexts[0].query.parameters == [amount: 10]
+
+        when:
+
+        def itemIds = tableItems.getGroupItemIds(group)
+
+        then:
+
+        itemIds == [order1.id, order2.id]
+        container.getItemOrNull(order1.id) != null
+        itemContexts.size() == 2
+        itemContexts[0].query.queryString.contains('o.number = :_grp0')
+        itemContexts[0].query.parameters['_grp0'] == '111'
+        itemContexts[0].query.maxResults == 1
+        itemContexts[1].query.firstResult == 1
+        tableItems.getParentGroup(container.getItem(order2.id)) == group
+
+        when:
+
+        tableItems.getGroupItemIds(group)
+
+        then:
+
+        itemContexts.size() == 2
+    }
+
+    def "entities are not loaded for a group having nested groups"() {
+        CollectionContainer<Order> container = dataComponents.createCollectionContainer(Order)
+        CollectionLoader<Order> loader = dataComponents.createCollectionLoader()
+        loader.setContainer(container)
+        loader.setQuery('select o from test$Order o')
+
+        ContainerGroupTableItems<Order, UUID> tableItems = new ContainerGroupTableItems<>(container)
+        tableItems.setServerSideGrouping(true)
+
+        int itemQueries = 0
+        TestServiceProxy.mock(DataService, Mock(DataService) {
+            loadValues(_) >> { ValueLoadContext context ->
+                context.query.queryString.startsWith('select _grp.number')
+                        ? [group('111', 2L)]
+                        : [group(100, 1L), group(200, 1L)]
+            }
+            loadList(_) >> {
+                itemQueries++
+                [reserialize(order1)]
+            }
+        })
+
+        def orderClass = metadata.getClassNN(Order)
+        tableItems.groupBy([orderClass.getPropertyPath('number'), orderClass.getPropertyPath('amount')] as Object[])
+        GroupInfo root = tableItems.rootGroups()[0]
+
+        when:
+
+        def children = tableItems.getChildren(root)
+        def itemIds = tableItems.getGroupItemIds(root)
+
+        then:
+
+        children.size() == 2
+        itemIds.isEmpty()
+        itemQueries == 0
+
+        when:
+
+        tableItems.getGroupItemIds(children[0])
+
+        then:
+
+        itemQueries == 1
+        tableItems.getGroupItemIds(root) == [order1.id]
+    }
+
+    private static KeyValueEntity group(Object value, long count) {
+        KeyValueEntity entity = new KeyValueEntity()
+        entity.setValue('value', value)
+        entity.setValue('count', count)
+        return entity
+    }
+}